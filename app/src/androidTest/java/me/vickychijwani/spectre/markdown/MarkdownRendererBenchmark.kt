@@ -0,0 +1,81 @@
+package me.vickychijwani.spectre.markdown
+
+import android.support.test.filters.LargeTest
+import android.support.test.runner.AndroidJUnit4
+import android.util.Log
+import org.hamcrest.MatcherAssert.assertThat
+import org.hamcrest.Matchers.greaterThan
+import org.junit.Test
+import org.junit.runner.RunWith
+
+
+/**
+ * TYPE: benchmark (instrumentation, to get numbers for a real device's CPU and ART)
+ * PURPOSE: measuring the throughput of the JVM markdown renderer on a short post (the common
+ * case for list excerpts) and a long one (the worst case for previews), results are logged under
+ * the "MarkdownRendererBenchmark" tag
+ */
+
+@RunWith(AndroidJUnit4::class) @LargeTest
+class MarkdownRendererBenchmark {
+
+    private val TAG = "MarkdownRendererBenchmark"
+    private val NUM_WARMUP_RUNS = 10
+    private val NUM_RUNS = 25
+
+    private val SECTION = """
+        |## Section heading
+        |
+        |Lorem ipsum *dolor* sit amet, **consectetur** adipiscing elit, with `inline code`, a
+        |[link](https://ghost.org "Ghost") and an autolinked https://example.com/path?q=1 URL.
+        |Sed do eiusmod tempor incididunt ut labore et dolore magna aliqua[^note].
+        |
+        |> Ut enim ad minim veniam, quis nostrud exercitation ullamco laboris nisi ut aliquip
+        |> ex ea commodo consequat.
+        |
+        |- Duis aute irure dolor in reprehenderit
+        |- in voluptate velit esse ==cillum== dolore
+        |  1. eu fugiat nulla pariatur
+        |  2. excepteur sint occaecat ~~cupidatat~~
+        |
+        |```java
+        |public static void main(String[] args) { System.out.println("<hello>"); }
+        |```
+        |
+        || Column | Other column |
+        ||:-------|-------------:|
+        || cell   | &copy; cell  |
+        |
+        |![image](https://example.com/image.png)
+        |
+        |""".trimMargin()
+    private val FOOTNOTE = "\n[^note]: Non proident, sunt in culpa qui officia deserunt.\n"
+
+    @Test
+    fun render_shortPost() {
+        benchmark("short post", SECTION + FOOTNOTE)
+    }
+
+    @Test
+    fun render_longPost() {
+        benchmark("long post", SECTION.repeat(200) + FOOTNOTE)
+    }
+
+
+
+    // helpers
+    private fun benchmark(name: String, markdown: String) {
+        repeat(NUM_WARMUP_RUNS) { MarkdownRenderer.render(markdown) }
+        val timings = (1..NUM_RUNS).map {
+            val start = System.nanoTime()
+            val html = MarkdownRenderer.render(markdown)
+            val elapsed = System.nanoTime() - start
+            assertThat(html.length, greaterThan(0))
+            elapsed
+        }
+        val medianMicros = timings.sorted()[NUM_RUNS / 2] / 1000
+        val kbPerSecond = markdown.length * 1_000_000L / 1024 / maxOf(medianMicros, 1)
+        Log.i(TAG, "$name: ${markdown.length} chars rendered in $medianMicros us ($kbPerSecond KB/s)")
+    }
+
+}
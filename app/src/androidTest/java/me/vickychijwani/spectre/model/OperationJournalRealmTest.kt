@@ -0,0 +1,141 @@
+package me.vickychijwani.spectre.model
+
+import android.support.test.InstrumentationRegistry.getTargetContext
+import android.support.test.filters.SmallTest
+import android.support.test.runner.AndroidJUnit4
+import io.realm.Realm
+import io.realm.RealmConfiguration
+import me.vickychijwani.spectre.model.OperationJournal.Upload
+import me.vickychijwani.spectre.model.entity.Post
+import me.vickychijwani.spectre.model.entity.PostOperation
+import org.hamcrest.MatcherAssert.assertThat
+import org.hamcrest.Matchers.contains
+import org.hamcrest.Matchers.empty
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.hamcrest.Matchers.`is` as Is
+
+
+/**
+ * TYPE: unit tests (instrumentation, needs a device because Realm is a native library)
+ * PURPOSE: testing how the operation journal is persisted: appending, acknowledging and renaming
+ * operations (compaction is tested in OperationJournalTest)
+ */
+
+@RunWith(AndroidJUnit4::class) @SmallTest
+class OperationJournalRealmTest {
+
+    private lateinit var realm: Realm
+
+    @Before
+    fun setup() {
+        Realm.init(getTargetContext())
+        val config = RealmConfiguration.Builder()
+                .name("operation-journal-test.realm")
+                .inMemory()
+                .modules(BlogDataModule())
+                .build()
+        realm = Realm.getInstance(config)
+        realm.executeTransaction { it.deleteAll() }
+    }
+
+    @After
+    fun teardown() {
+        realm.close()
+    }
+
+    @Test
+    fun append_ordersOperations() {
+        val first = append("1", PostOperation.SET_FIELDS, Post.FIELD_TITLE)
+        val second = append("2", PostOperation.CREATE, 0)
+        val third = append("1", PostOperation.PUBLISH, Post.FIELD_STATUS)
+
+        assertThat(listOf(first.seq, second.seq, third.seq), contains(1L, 2L, 3L))
+        val uploads = OperationJournal.getUploads(realm)
+        assertThat(uploads.map { it.postId }, contains("1", "2"))
+        assertThat(uploads[0].keys, contains(first.key, third.key))
+        assertThat(uploads[0].fields, Is(Post.FIELD_TITLE or Post.FIELD_STATUS))
+        assertThat(uploads[1].type, Is(Upload.Type.CREATE))
+    }
+
+    @Test
+    fun append_rolledBackWithTheTransaction() {
+        try {
+            realm.executeTransaction {
+                OperationJournal.append(it, "1", PostOperation.SET_FIELDS, Post.FIELD_TITLE)
+                throw IllegalStateException("saving the post failed")
+            }
+        } catch (e: IllegalStateException) {
+            // expected
+        }
+        assertThat(OperationJournal.hasOperations(realm, "1"), Is(false))
+    }
+
+    @Test
+    fun acknowledge() {
+        val first = append("1", PostOperation.SET_FIELDS, Post.FIELD_TITLE)
+        val second = append("1", PostOperation.SET_FIELDS, Post.FIELD_TAGS)
+        val other = append("2", PostOperation.SET_FIELDS, Post.FIELD_TITLE)
+
+        realm.executeTransaction { OperationJournal.acknowledge(it, listOf(first.key)) }
+
+        val uploads = OperationJournal.getUploads(realm)
+        assertThat(uploads.map { it.postId }, contains("1", "2"))
+        assertThat(uploads[0].keys, contains(second.key))
+        assertThat(uploads[0].fields, Is(Post.FIELD_TAGS))
+        assertThat(uploads[1].keys, contains(other.key))
+    }
+
+    @Test
+    fun acknowledge_alreadyRemoved() {
+        val op = append("1", PostOperation.SET_FIELDS, Post.FIELD_TITLE)
+        realm.executeTransaction { OperationJournal.acknowledge(it, listOf(op.key)) }
+        realm.executeTransaction { OperationJournal.acknowledge(it, listOf(op.key)) }
+        assertThat(OperationJournal.getUploads(realm), empty())
+    }
+
+    @Test
+    fun acknowledge_nothing() {
+        append("1", PostOperation.SET_FIELDS, Post.FIELD_TITLE)
+        realm.executeTransaction { OperationJournal.acknowledge(it, emptyList()) }
+        assertThat(OperationJournal.hasOperations(realm, "1"), Is(true))
+    }
+
+    @Test
+    fun renamePost() {
+        val create = append("-1", PostOperation.CREATE, 0)
+        val edit = append("-1", PostOperation.SET_FIELDS, Post.FIELD_TITLE)
+        append("2", PostOperation.SET_FIELDS, Post.FIELD_TITLE)
+
+        realm.executeTransaction { OperationJournal.renamePost(it, "-1", "1") }
+
+        assertThat(OperationJournal.hasOperations(realm, "-1"), Is(false))
+        val uploads = OperationJournal.getUploads(realm)
+        // renaming keeps the journal order
+        assertThat(uploads.map { it.postId }, contains("1", "2"))
+        assertThat(uploads[0].keys, contains(create.key, edit.key))
+    }
+
+    @Test
+    fun discard() {
+        append("1", PostOperation.SET_FIELDS, Post.FIELD_TITLE)
+        append("2", PostOperation.SET_FIELDS, Post.FIELD_TITLE)
+        realm.executeTransaction { OperationJournal.discard(it, "1") }
+        assertThat(OperationJournal.getUploads(realm).map { it.postId }, contains("2"))
+    }
+
+
+
+    // helpers
+    private fun append(postId: String, @PostOperation.Type type: String,
+                       @Post.Field fields: Int): PostOperation {
+        var operation: PostOperation? = null
+        realm.executeTransaction {
+            operation = it.copyFromRealm(OperationJournal.append(it, postId, type, fields))
+        }
+        return operation!!
+    }
+
+}
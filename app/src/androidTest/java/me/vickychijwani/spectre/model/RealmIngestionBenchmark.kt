@@ -0,0 +1,106 @@
+package me.vickychijwani.spectre.model
+
+import android.support.test.InstrumentationRegistry.getTargetContext
+import android.support.test.filters.LargeTest
+import android.support.test.runner.AndroidJUnit4
+import android.util.Log
+import io.realm.Realm
+import io.realm.RealmConfiguration
+import io.realm.RealmList
+import me.vickychijwani.spectre.model.entity.Post
+import me.vickychijwani.spectre.model.entity.Tag
+import me.vickychijwani.spectre.network.GhostApiUtils
+import org.hamcrest.MatcherAssert.assertThat
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import java.util.*
+import org.hamcrest.Matchers.`is` as Is
+
+
+/**
+ * TYPE: benchmark (instrumentation, needs a device because Realm is a native library)
+ * PURPOSE: comparing ingestion throughput of copyToRealmOrUpdate (which builds managed copies)
+ * against insertOrUpdate (which doesn't) on a 1,000-post fixture, results are logged under the
+ * "RealmIngestionBenchmark" tag
+ */
+
+@RunWith(AndroidJUnit4::class) @LargeTest
+class RealmIngestionBenchmark {
+
+    private val TAG = "RealmIngestionBenchmark"
+    private val NUM_POSTS = 1000
+    private val NUM_RUNS = 5
+
+    private lateinit var realm: Realm
+
+    @Before
+    fun setup() {
+        Realm.init(getTargetContext())
+        val config = RealmConfiguration.Builder()
+                .name("ingestion-benchmark.realm")
+                .inMemory()
+                .modules(BlogDataModule())
+                .build()
+        realm = Realm.getInstance(config)
+    }
+
+    @After
+    fun teardown() {
+        realm.close()
+    }
+
+    @Test
+    fun copyToRealmOrUpdate_vs_insertOrUpdate() {
+        val copyMillis = median(NUM_RUNS) { posts ->
+            realm.executeTransaction { it.copyToRealmOrUpdate(posts) }
+        }
+        val insertMillis = median(NUM_RUNS) { posts ->
+            realm.executeTransaction { it.insertOrUpdate(posts) }
+        }
+        Log.i(TAG, "copyToRealmOrUpdate: $copyMillis ms for $NUM_POSTS posts " +
+                "(${NUM_POSTS * 1000 / maxOf(copyMillis, 1)} posts/s)")
+        Log.i(TAG, "insertOrUpdate: $insertMillis ms for $NUM_POSTS posts " +
+                "(${NUM_POSTS * 1000 / maxOf(insertMillis, 1)} posts/s)")
+    }
+
+
+
+    // helpers
+    // runs the write against an empty Realm each time, as in the first sync after login
+    private fun median(runs: Int, write: (List<Post>) -> Unit): Long {
+        val timings = (1..runs).map {
+            realm.executeTransaction { it.deleteAll() }
+            val posts = makePosts()
+            val start = System.nanoTime()
+            write(posts)
+            val elapsed = (System.nanoTime() - start) / 1_000_000
+            assertThat(realm.where(Post::class.java).count(), Is(NUM_POSTS.toLong()))
+            elapsed
+        }
+        return timings.sorted()[runs / 2]
+    }
+
+    private fun makePosts(): List<Post> {
+        val markdown = "Lorem ipsum dolor sit amet, consectetur adipiscing elit. ".repeat(100)
+        return (1..NUM_POSTS).map { i ->
+            Post().apply {
+                id = "post-$i"
+                uuid = UUID.randomUUID().toString()
+                title = "Post $i"
+                slug = "post-$i"
+                status = Post.PUBLISHED
+                mobiledoc = GhostApiUtils.initializeMobiledoc()
+                this.markdown = markdown
+                html = "<p>$markdown</p>"
+                tags = RealmList(Tag("tag-${i % 10}").apply { id = "tag-${i % 10}" })
+                createdAt = Date(i * 1000L)
+                updatedAt = Date(i * 1000L)
+                publishedAt = Date(i * 1000L)
+                updateSortKeys()
+            }
+        }
+    }
+
+}
@@ -7,7 +7,6 @@ import com.facebook.stetho.Stetho;
 import com.squareup.leakcanary.LeakCanary;
 import com.uphyca.stetho_realm.RealmInspectorModulesProvider;
 
-import java.io.File;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import io.palaima.debugdrawer.DebugDrawer;
@@ -46,11 +45,7 @@ public class DebugSpectreApplication extends SpectreApplication {
 
     @Override
     protected void initOkHttpClient() {
-        if (mOkHttpClient != null) {
-            return;
-        }
-        File cacheDir = createCacheDir(this);
-        mOkHttpClient = new UnsafeHttpClientFactory().create(cacheDir);
+        initHttpClients(new UnsafeHttpClientFactory());
     }
 
     @Override
@@ -58,6 +53,7 @@ public class DebugSpectreApplication extends SpectreApplication {
         new DebugDrawer.Builder(activity).modules(
                 new ScalpelModule(activity),
                 new OkHttp3Module(mOkHttpClient),
+                new OkHttp3Module(mImageHttpClient),
                 new PicassoModule(mPicasso),
                 new DeviceModule(activity),
                 new BuildModule(activity),
@@ -15,9 +15,11 @@ import com.squareup.picasso.Picasso;
 import com.tsengvn.typekit.Typekit;
 
 import java.io.File;
+import java.io.IOException;
 
 import io.fabric.sdk.android.Fabric;
 import io.reactivex.plugins.RxJavaPlugins;
+import io.reactivex.schedulers.Schedulers;
 import io.realm.Realm;
 import io.realm.RealmConfiguration;
 import me.vickychijwani.spectre.analytics.AnalyticsService;
@@ -27,9 +29,13 @@ import me.vickychijwani.spectre.event.ApiErrorEvent;
 import me.vickychijwani.spectre.event.BusProvider;
 import me.vickychijwani.spectre.model.BlogMetadataDBMigration;
 import me.vickychijwani.spectre.model.BlogMetadataModule;
+import me.vickychijwani.spectre.network.HttpCacheStats;
+import me.vickychijwani.spectre.network.HttpClientFactory;
 import me.vickychijwani.spectre.network.NetworkService;
 import me.vickychijwani.spectre.network.ProductionHttpClientFactory;
 import me.vickychijwani.spectre.util.log.Log;
+import me.vickychijwani.spectre.view.image.ThumbnailRequestHandler;
+import okhttp3.Cache;
 import okhttp3.OkHttpClient;
 import retrofit2.Response;
 
@@ -40,12 +46,21 @@ public class SpectreApplication extends Application {
     private static final String TAG = "SpectreApplication";
     private static SpectreApplication sInstance;
 
-    // this is named "images" but it actually caches all HTTP responses
-    private static final String HTTP_CACHE_PATH = "images";
+    private static final String API_CACHE_PATH = "http-api";
+    private static final String IMAGE_CACHE_PATH = "http-images";
+    // cached all HTTP responses, before API responses and images were cached separately
+    private static final String LEGACY_HTTP_CACHE_PATH = "images";
+    // small copies of images for lists (see ThumbnailRequestHandler)
+    private static final String THUMBNAIL_CACHE_PATH = "thumbnails";
 
     protected OkHttpClient mOkHttpClient = null;
+    protected OkHttpClient mImageHttpClient = null;
     protected Picasso mPicasso = null;
 
+    // last reported stats of the HTTP caches, to report only what changed since
+    private HttpCacheStats mApiCacheStats = null;
+    private HttpCacheStats mImageCacheStats = null;
+
     @SuppressWarnings("FieldCanBeLocal")
     private AnalyticsService mAnalyticsService = null;
 
@@ -68,6 +83,7 @@ public class SpectreApplication extends Application {
         setupMetadataRealm();
         setupFonts();
         initOkHttpClient();
+        deleteLegacyHttpCache();
         initPicasso();
 
         NetworkService networkService = new NetworkService();
@@ -103,11 +119,30 @@ public class SpectreApplication extends Application {
     }
 
     protected void initOkHttpClient() {
+        initHttpClients(new ProductionHttpClientFactory());
+    }
+
+    protected void initHttpClients(@NonNull HttpClientFactory factory) {
         if (mOkHttpClient != null) {
             return;
         }
-        File cacheDir = createCacheDir(this);
-        mOkHttpClient = new ProductionHttpClientFactory().create(cacheDir);
+        mOkHttpClient = factory.create(createCacheDir(this, API_CACHE_PATH));
+        mImageHttpClient = factory.createForImages(mOkHttpClient,
+                createCacheDir(this, IMAGE_CACHE_PATH));
+    }
+
+    private void deleteLegacyHttpCache() {
+        File cacheDir = new File(getHttpCacheRoot(this), LEGACY_HTTP_CACHE_PATH);
+        if (! cacheDir.exists()) {
+            return;
+        }
+        Schedulers.io().scheduleDirect(() -> {
+            try {
+                new Cache(cacheDir, 1).delete();
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to delete legacy HTTP cache: %s", e.getMessage());
+            }
+        });
     }
 
     @SuppressWarnings("WeakerAccess")
@@ -116,7 +151,9 @@ public class SpectreApplication extends Application {
             return;
         }
         mPicasso = new Picasso.Builder(this)
-                .downloader(new OkHttp3Downloader(mOkHttpClient))
+                .downloader(new OkHttp3Downloader(mImageHttpClient))
+                .addRequestHandler(new ThumbnailRequestHandler(mImageHttpClient,
+                        new File(getCacheDir(), THUMBNAIL_CACHE_PATH)))
                 .listener((picasso, uri, exception) -> {
                     Log.e("Picasso", "Failed to load image: %s", uri);
                     Log.exception(exception);
@@ -140,13 +177,38 @@ public class SpectreApplication extends Application {
         // no-op, overridden in debug build
     }
 
-    @Nullable protected static File createCacheDir(Context context) {
-        File cacheDir = context.getApplicationContext().getExternalCacheDir();
-        if (cacheDir == null) {
-            cacheDir = context.getApplicationContext().getCacheDir();
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (level == TRIM_MEMORY_UI_HIDDEN) {
+            // the app went to the background, a good time to report how well the caches did
+            Schedulers.io().scheduleDirect(this::reportHttpCacheStats);
         }
+    }
+
+    private synchronized void reportHttpCacheStats() {
+        mApiCacheStats = reportHttpCacheStats("API", mOkHttpClient, mApiCacheStats);
+        mImageCacheStats = reportHttpCacheStats("Images", mImageHttpClient, mImageCacheStats);
+    }
+
+    @Nullable
+    private static HttpCacheStats reportHttpCacheStats(@NonNull String cacheName,
+                                                       @Nullable OkHttpClient httpClient,
+                                                       @Nullable HttpCacheStats lastStats) {
+        Cache cache = (httpClient != null) ? httpClient.cache() : null;
+        if (cache == null) {
+            return lastStats;
+        }
+        HttpCacheStats stats = HttpCacheStats.of(cache);
+        HttpCacheStats newStats = stats.since(lastStats);
+        if (newStats.requestCount > 0) {
+            AnalyticsService.logHttpCacheStats(cacheName, newStats);
+        }
+        return stats;
+    }
 
-        File cache = new File(cacheDir, HTTP_CACHE_PATH);
+    @Nullable private static File createCacheDir(Context context, String name) {
+        File cache = new File(getHttpCacheRoot(context), name);
         if (cache.exists() || cache.mkdirs()) {
             return cache;
         } else {
@@ -154,6 +216,14 @@ public class SpectreApplication extends Application {
         }
     }
 
+    @NonNull private static File getHttpCacheRoot(Context context) {
+        File cacheDir = context.getApplicationContext().getExternalCacheDir();
+        if (cacheDir == null) {
+            cacheDir = context.getApplicationContext().getCacheDir();
+        }
+        return cacheDir;
+    }
+
     @Subscribe
     public void onApiErrorEvent(ApiErrorEvent event) {
         Response errorResponse = event.apiFailure.response;
@@ -15,6 +15,7 @@ import me.vickychijwani.spectre.event.LoadGhostVersionEvent;
 import me.vickychijwani.spectre.event.LoginDoneEvent;
 import me.vickychijwani.spectre.event.LoginErrorEvent;
 import me.vickychijwani.spectre.event.LogoutStatusEvent;
+import me.vickychijwani.spectre.network.HttpCacheStats;
 import me.vickychijwani.spectre.util.log.Log;
 
 public class AnalyticsService {
@@ -99,6 +100,16 @@ public class AnalyticsService {
                 .putCustomAttribute("version", dbSchemaVersion));
     }
 
+    public static void logHttpCacheStats(@NonNull String cacheName, @NonNull HttpCacheStats stats) {
+        Log.i(TAG, "HTTP CACHE STATS (%s): %s", cacheName, stats);
+        Answers.getInstance().logCustom(new CustomEvent("HTTP Cache")
+                .putCustomAttribute("cache", cacheName)
+                .putCustomAttribute("requests", stats.requestCount)
+                .putCustomAttribute("hit %", stats.getHitPercent())
+                .putCustomAttribute("writes", stats.writeCount)
+                .putCustomAttribute("fill %", stats.getFillPercent()));
+    }
+
 
     // post actions
     public static void logNewDraftUploaded() {
@@ -0,0 +1,11 @@
+package me.vickychijwani.spectre.event;
+
+public class CancelFileUploadEvent {
+
+    public final String uploadId;
+
+    public CancelFileUploadEvent(String uploadId) {
+        this.uploadId = uploadId;
+    }
+
+}
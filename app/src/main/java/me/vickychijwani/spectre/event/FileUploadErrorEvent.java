@@ -1,13 +1,25 @@
 package me.vickychijwani.spectre.event;
 
+import android.support.annotation.Nullable;
+
 import me.vickychijwani.spectre.network.ApiFailure;
 
 @SuppressWarnings({"WeakerAccess", "unused"})
 public class FileUploadErrorEvent {
 
+    // null if the image failed before it was queued for upload
+    @Nullable public final String uploadId;
+    @Nullable public final String postId;
     public final ApiFailure apiFailure;
 
     public FileUploadErrorEvent(ApiFailure apiFailure) {
+        this(null, null, apiFailure);
+    }
+
+    public FileUploadErrorEvent(@Nullable String uploadId, @Nullable String postId,
+                                ApiFailure apiFailure) {
+        this.uploadId = uploadId;
+        this.postId = postId;
         this.apiFailure = apiFailure;
     }
 
@@ -2,23 +2,25 @@ package me.vickychijwani.spectre.event;
 
 import android.support.annotation.NonNull;
 
-import java.io.InputStream;
+/**
+ * Queues an image for upload, see {@link me.vickychijwani.spectre.model.ImageUploadQueue}.
+ */
+public class FileUploadEvent {
 
-public class FileUploadEvent implements ApiCallEvent {
-
-    public final InputStream inputStream;
+    @NonNull public final String postId;
+    @NonNull public final String uploadId;
+    // private copy of the image, it's deleted once the upload is done or has failed
+    @NonNull public final String filePath;
     @NonNull public final String filename;
     public final String mimeType;
 
-    public FileUploadEvent(InputStream inputStream, @NonNull String filename, String mimeType) {
-        this.inputStream = inputStream;
+    public FileUploadEvent(@NonNull String postId, @NonNull String uploadId,
+                           @NonNull String filePath, @NonNull String filename, String mimeType) {
+        this.postId = postId;
+        this.uploadId = uploadId;
+        this.filePath = filePath;
         this.filename = filename;
         this.mimeType = mimeType;
     }
 
-    @Override
-    public void loadCachedData() {
-        // no-op; this event cannot be handled with cached data
-    }
-
 }
@@ -0,0 +1,15 @@
+package me.vickychijwani.spectre.event;
+
+public class FileUploadProgressEvent {
+
+    public final String uploadId;
+    public final long bytesUploaded;
+    public final long totalBytes;       // -1 if unknown
+
+    public FileUploadProgressEvent(String uploadId, long bytesUploaded, long totalBytes) {
+        this.uploadId = uploadId;
+        this.bytesUploaded = bytesUploaded;
+        this.totalBytes = totalBytes;
+    }
+
+}
@@ -2,9 +2,13 @@ package me.vickychijwani.spectre.event;
 
 public class FileUploadedEvent {
 
+    public final String uploadId;
+    public final String postId;
     public final String relativeUrl;
 
-    public FileUploadedEvent(String relativeUrl) {
+    public FileUploadedEvent(String uploadId, String postId, String relativeUrl) {
+        this.uploadId = uploadId;
+        this.postId = postId;
         this.relativeUrl = relativeUrl;
     }
 
@@ -0,0 +1,17 @@
+package me.vickychijwani.spectre.event;
+
+public class LoadPostContentEvent implements ApiCallEvent {
+
+    public final String postId;
+    public boolean loadCachedData = false;
+
+    public LoadPostContentEvent(String postId) {
+        this.postId = postId;
+    }
+
+    @Override
+    public void loadCachedData() {
+        loadCachedData = true;
+    }
+
+}
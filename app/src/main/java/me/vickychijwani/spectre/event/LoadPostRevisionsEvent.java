@@ -0,0 +1,11 @@
+package me.vickychijwani.spectre.event;
+
+public class LoadPostRevisionsEvent {
+
+    public final String postId;
+
+    public LoadPostRevisionsEvent(String postId) {
+        this.postId = postId;
+    }
+
+}
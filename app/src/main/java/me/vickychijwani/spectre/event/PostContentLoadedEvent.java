@@ -0,0 +1,14 @@
+package me.vickychijwani.spectre.event;
+
+import me.vickychijwani.spectre.model.entity.Post;
+
+public class PostContentLoadedEvent {
+
+    // check Post#isContentLoaded(), the content may have failed to load
+    public final Post post;
+
+    public PostContentLoadedEvent(Post post) {
+        this.post = post;
+    }
+
+}
@@ -0,0 +1,14 @@
+package me.vickychijwani.spectre.event;
+
+import me.vickychijwani.spectre.model.entity.Post;
+
+// edits from the server were merged into the local copy of a post during a sync
+public class PostMergedEvent {
+
+    public final Post post;
+
+    public PostMergedEvent(Post post) {
+        this.post = post;
+    }
+
+}
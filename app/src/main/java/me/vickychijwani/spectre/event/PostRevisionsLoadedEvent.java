@@ -0,0 +1,18 @@
+package me.vickychijwani.spectre.event;
+
+import java.util.List;
+
+import me.vickychijwani.spectre.model.entity.PostRevision;
+
+public class PostRevisionsLoadedEvent {
+
+    public final String postId;
+    // newest first, without their contents (see RevisionStore#getRevisionSummaries)
+    public final List<PostRevision> revisions;
+
+    public PostRevisionsLoadedEvent(String postId, List<PostRevision> revisions) {
+        this.postId = postId;
+        this.revisions = revisions;
+    }
+
+}
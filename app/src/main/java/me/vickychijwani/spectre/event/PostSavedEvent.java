@@ -5,9 +5,11 @@ import me.vickychijwani.spectre.model.entity.Post;
 public class PostSavedEvent {
 
     public final Post post;
+    public final boolean isBackgroundSave;  // see SavePostEvent#isBackgroundSave()
 
-    public PostSavedEvent(Post post) {
+    public PostSavedEvent(Post post, boolean isBackgroundSave) {
         this.post = post;
+        this.isBackgroundSave = isBackgroundSave;
     }
 
 }
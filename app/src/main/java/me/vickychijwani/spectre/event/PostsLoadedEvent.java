@@ -1,17 +1,9 @@
 package me.vickychijwani.spectre.event;
 
-import java.util.List;
-
-import me.vickychijwani.spectre.model.entity.Post;
-
+/**
+ * Posted when the posts in the database have changed, e.g., after a sync; subscribers read
+ * whatever they need from the database themselves.
+ */
 public class PostsLoadedEvent {
 
-    public final List<Post> posts;
-    public final int postsFetchLimit;
-
-    public PostsLoadedEvent(List<Post> posts, int postsFetchLimit) {
-        this.posts = posts;
-        this.postsFetchLimit = postsFetchLimit;
-    }
-
 }
@@ -0,0 +1,13 @@
+package me.vickychijwani.spectre.event;
+
+public class RestorePostRevisionEvent {
+
+    public final String postId;
+    public final String revisionId;
+
+    public RestorePostRevisionEvent(String postId, String revisionId) {
+        this.postId = postId;
+        this.revisionId = revisionId;
+    }
+
+}
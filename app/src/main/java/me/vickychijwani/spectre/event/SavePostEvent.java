@@ -7,9 +7,23 @@ public class SavePostEvent {
     public final Post post;
     public final boolean isAutoSave;    // was this post saved automatically or explicitly?
 
+    // non-zero only for saves made in the background while the post is still being edited (see
+    // AutoSaveScheduler), in which case only these fields have changed, and the post is neither
+    // synced nor reloaded in the editor right away
+    @Post.Field public final int changedFields;
+
     public SavePostEvent(Post post, boolean isAutoSave) {
+        this(post, isAutoSave, 0);
+    }
+
+    public SavePostEvent(Post post, boolean isAutoSave, @Post.Field int changedFields) {
         this.post = post;
         this.isAutoSave = isAutoSave;
+        this.changedFields = changedFields;
+    }
+
+    public boolean isBackgroundSave() {
+        return changedFields != 0;
     }
 
 }
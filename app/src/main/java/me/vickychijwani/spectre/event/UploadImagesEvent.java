@@ -0,0 +1,13 @@
+package me.vickychijwani.spectre.event;
+
+/**
+ * Resumes uploading queued images, see {@link me.vickychijwani.spectre.model.ImageUploadQueue}.
+ */
+public class UploadImagesEvent implements ApiCallEvent {
+
+    @Override
+    public void loadCachedData() {
+        // no-op; this event cannot be handled with cached data
+    }
+
+}
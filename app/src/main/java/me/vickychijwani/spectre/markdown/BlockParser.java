@@ -0,0 +1,1494 @@
+package me.vickychijwani.spectre.markdown;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static me.vickychijwani.spectre.markdown.MarkdownUtils.isSpace;
+import static me.vickychijwani.spectre.markdown.MarkdownUtils.normalizeReference;
+import static me.vickychijwani.spectre.markdown.MarkdownUtils.trim;
+
+// block-level rules, ported from markdown-it 8.4.1's lib/parser_block.js and lib/rules_block/, plus
+// markdown-it-footnote's footnote_def and markdown-it-lazy-headers' heading rules
+/* package */ final class BlockParser {
+
+    interface Rule {
+        boolean apply(BlockState state, int startLine, int endLine, boolean silent);
+    }
+
+    private static final int MAX_NESTING = 100;
+
+    private static final Rule TABLE = BlockParser::table;
+    private static final Rule CODE = BlockParser::code;
+    private static final Rule FENCE = BlockParser::fence;
+    private static final Rule BLOCKQUOTE = BlockParser::blockquote;
+    private static final Rule HR = BlockParser::hr;
+    private static final Rule LIST = BlockParser::list;
+    private static final Rule FOOTNOTE_DEF = BlockParser::footnoteDef;
+    private static final Rule REFERENCE = BlockParser::reference;
+    private static final Rule HEADING = BlockParser::heading;
+    private static final Rule LHEADING = BlockParser::lheading;
+    private static final Rule HTML_BLOCK = BlockParser::htmlBlock;
+    private static final Rule PARAGRAPH = BlockParser::paragraph;
+
+    private static final Rule[] RULES = {
+            TABLE, CODE, FENCE, BLOCKQUOTE, HR, LIST, FOOTNOTE_DEF, REFERENCE, HEADING, LHEADING,
+            HTML_BLOCK, PARAGRAPH
+    };
+
+    // rules that can terminate a paragraph, reference, blockquote or list, respectively
+    private static final Rule[] PARAGRAPH_TERMINATORS = {
+            TABLE, FENCE, BLOCKQUOTE, HR, LIST, FOOTNOTE_DEF, HEADING, HTML_BLOCK
+    };
+    private static final Rule[] REFERENCE_TERMINATORS = PARAGRAPH_TERMINATORS;
+    private static final Rule[] BLOCKQUOTE_TERMINATORS = {
+            FENCE, BLOCKQUOTE, HR, LIST, HEADING, HTML_BLOCK
+    };
+    private static final Rule[] LIST_TERMINATORS = {
+            FENCE, BLOCKQUOTE, HR
+    };
+
+    private static final String[] BLOCK_NAMES = {
+            "address", "article", "aside", "base", "basefont", "blockquote", "body", "caption",
+            "center", "col", "colgroup", "dd", "details", "dialog", "dir", "div", "dl", "dt",
+            "fieldset", "figcaption", "figure", "footer", "form", "frame", "frameset", "h1", "h2",
+            "h3", "h4", "h5", "h6", "head", "header", "hr", "html", "iframe", "legend", "li", "link",
+            "main", "menu", "menuitem", "meta", "nav", "noframes", "ol", "optgroup", "option", "p",
+            "param", "section", "source", "summary", "table", "tbody", "td", "tfoot", "th", "thead",
+            "title", "tr", "track", "ul"
+    };
+
+    // { opening line, closing line, can terminate a paragraph }
+    private static final Object[][] HTML_SEQUENCES = {
+            { Pattern.compile("^<(script|pre|style)(?=(\\s|>|$))", Pattern.CASE_INSENSITIVE),
+                    Pattern.compile("</(script|pre|style)>", Pattern.CASE_INSENSITIVE), true },
+            { Pattern.compile("^<!--"), Pattern.compile("-->"), true },
+            { Pattern.compile("^<\\?"), Pattern.compile("\\?>"), true },
+            { Pattern.compile("^<![A-Z]"), Pattern.compile(">"), true },
+            { Pattern.compile("^<!\\[CDATA\\["), Pattern.compile("\\]\\]>"), true },
+            { Pattern.compile("^</?(" + join(BLOCK_NAMES, "|") + ")(?=(\\s|/?>|$))",
+                    Pattern.CASE_INSENSITIVE), Pattern.compile("^$"), true },
+            { Pattern.compile(HtmlPatterns.HTML_OPEN_CLOSE_TAG + "\\s*$"), Pattern.compile("^$"), false },
+    };
+
+    private static final Pattern TABLE_ALIGN = Pattern.compile("^:?-+:?$");
+
+    private BlockParser() {}
+
+    static void parse(String src, Env env, List<Token> tokens) {
+        if (src.isEmpty()) {
+            return;
+        }
+        BlockState state = new BlockState(src, env, tokens);
+        tokenize(state, state.line, state.lineMax);
+    }
+
+    // generate tokens for the input range
+    static void tokenize(BlockState state, int startLine, int endLine) {
+        int line = startLine;
+        boolean hasEmptyLines = false;
+
+        while (line < endLine) {
+            state.line = line = state.skipEmptyLines(line);
+            if (line >= endLine) {
+                break;
+            }
+
+            // termination condition for nested calls: nested calls currently used for blockquotes
+            // and lists
+            if (state.sCount[line] < state.blkIndent) {
+                break;
+            }
+
+            // if nesting level exceeded, skip the tail to the end; that's not ordinary situation
+            // and we should not care about content
+            if (state.level >= MAX_NESTING) {
+                state.line = endLine;
+                break;
+            }
+
+            // try all possible rules; on success, rule should:
+            // - update `state.line`
+            // - update `state.tokens`
+            // - return true
+            for (Rule rule : RULES) {
+                if (rule.apply(state, line, endLine, false)) {
+                    break;
+                }
+            }
+
+            // set state.tight if we had an empty line before current tag, i.e., latest empty line
+            // should not count
+            state.tight = ! hasEmptyLines;
+
+            // paragraph might "eat" one newline after it in nested lists
+            if (state.isEmpty(state.line - 1)) {
+                hasEmptyLines = true;
+            }
+
+            line = state.line;
+
+            if (line < endLine && state.isEmpty(line)) {
+                hasEmptyLines = true;
+                ++line;
+                state.line = line;
+            }
+        }
+    }
+
+    private static boolean anyApplies(Rule[] rules, BlockState state, int line, int endLine) {
+        for (Rule rule : rules) {
+            if (rule.apply(state, line, endLine, true)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    // GFM table, non-standard
+
+    private static String getLine(BlockState state, int line) {
+        int pos = state.bMarks[line] + state.blkIndent;
+        int max = state.eMarks[line];
+        // JavaScript's substr clamps a negative length to 0
+        return (pos < max) ? state.src.substring(pos, max) : "";
+    }
+
+    private static List<String> escapedSplit(String str) {
+        List<String> result = new ArrayList<>();
+        int pos = 0, max = str.length(), escapes = 0, lastPos = 0, lastBackTick = 0;
+        boolean backTicked = false;
+        int ch = (max > 0) ? str.charAt(pos) : -1;
+
+        while (pos < max) {
+            if (ch == '`') {
+                if (backTicked) {
+                    // make \` close code sequence, but not open it; the reason is: `\` is correct
+                    // code block
+                    backTicked = false;
+                    lastBackTick = pos;
+                } else if (escapes % 2 == 0) {
+                    backTicked = true;
+                    lastBackTick = pos;
+                }
+            } else if (ch == '|' && (escapes % 2 == 0) && ! backTicked) {
+                result.add(str.substring(lastPos, pos));
+                lastPos = pos + 1;
+            }
+
+            if (ch == '\\') {
+                ++escapes;
+            } else {
+                escapes = 0;
+            }
+
+            ++pos;
+
+            // if there was an un-closed backtick, go back to just after the last backtick, but as
+            // if it was a normal character
+            if (pos == max && backTicked) {
+                backTicked = false;
+                pos = lastBackTick + 1;
+            }
+
+            ch = (pos < max) ? str.charAt(pos) : -1;
+        }
+
+        result.add(str.substring(lastPos));
+        return result;
+    }
+
+    private static String stripOuterPipes(String str) {
+        int start = (str.startsWith("|")) ? 1 : 0;
+        int end = str.length();
+        if (end > start && str.charAt(end - 1) == '|') {
+            --end;
+        }
+        // mirrors str.replace(/^\||\|$/g, ''), where a lone "|" matches only once
+        return (start <= end) ? str.substring(start, end) : "";
+    }
+
+    private static boolean table(BlockState state, int startLine, int endLine, boolean silent) {
+        // should have at least two lines
+        if (startLine + 2 > endLine) { return false; }
+
+        int nextLine = startLine + 1;
+
+        if (state.sCount[nextLine] < state.blkIndent) { return false; }
+
+        // if it's indented more than 3 spaces, it should be a code block
+        if (state.sCount[nextLine] - state.blkIndent >= 4) { return false; }
+
+        // first character of the second line should be '|', '-', ':', and no other characters are
+        // allowed but spaces; basically, this is the equivalent of /^[-:|][-:|\s]*$/ regexp
+        int pos = state.bMarks[nextLine] + state.tShift[nextLine];
+        if (pos >= state.eMarks[nextLine]) { return false; }
+
+        int ch = state.src.charAt(pos++);
+        if (ch != '|' && ch != '-' && ch != ':') { return false; }
+
+        while (pos < state.eMarks[nextLine]) {
+            ch = state.src.charAt(pos);
+            if (ch != '|' && ch != '-' && ch != ':' && ! isSpace(ch)) { return false; }
+            ++pos;
+        }
+
+        String lineText = getLine(state, startLine + 1);
+
+        String[] columns = lineText.split("\\|", -1);
+        List<String> aligns = new ArrayList<>();
+        for (int i = 0; i < columns.length; ++i) {
+            String t = trim(columns[i]);
+            if (t.isEmpty()) {
+                // allow empty columns before and after table, but not in between columns; e.g.,
+                // allow ` |---| `, disallow ` ---||--- `
+                if (i == 0 || i == columns.length - 1) {
+                    continue;
+                } else {
+                    return false;
+                }
+            }
+
+            if (! TABLE_ALIGN.matcher(t).find()) { return false; }
+            if (t.charAt(t.length() - 1) == ':') {
+                aligns.add(t.charAt(0) == ':' ? "center" : "right");
+            } else if (t.charAt(0) == ':') {
+                aligns.add("left");
+            } else {
+                aligns.add("");
+            }
+        }
+
+        lineText = trim(getLine(state, startLine));
+        if (lineText.indexOf('|') == -1) { return false; }
+        if (state.sCount[startLine] - state.blkIndent >= 4) { return false; }
+        List<String> headers = escapedSplit(stripOuterPipes(lineText));
+
+        // header row will define an amount of columns in the entire table, and align row shouldn't
+        // be smaller than that (the rest of the row can be omitted)
+        int columnCount = headers.size();
+        if (columnCount > aligns.size()) { return false; }
+
+        if (silent) { return true; }
+
+        Token token = state.push("table_open", "table", 1);
+        int[] tableLines = new int[] { startLine, 0 };
+        token.map = tableLines;
+
+        token = state.push("thead_open", "thead", 1);
+        token.map = new int[] { startLine, startLine + 1 };
+
+        token = state.push("tr_open", "tr", 1);
+        token.map = new int[] { startLine, startLine + 1 };
+
+        for (int i = 0; i < headers.size(); ++i) {
+            token = state.push("th_open", "th", 1);
+            token.map = new int[] { startLine, startLine + 1 };
+            if (! aligns.get(i).isEmpty()) {
+                token.attrPush("style", "text-align:" + aligns.get(i));
+            }
+
+            token = state.push("inline", "", 0);
+            token.content = trim(headers.get(i));
+            token.map = new int[] { startLine, startLine + 1 };
+            token.children = new ArrayList<>();
+
+            state.push("th_close", "th", -1);
+        }
+
+        state.push("tr_close", "tr", -1);
+        state.push("thead_close", "thead", -1);
+
+        token = state.push("tbody_open", "tbody", 1);
+        int[] tbodyLines = new int[] { startLine + 2, 0 };
+        token.map = tbodyLines;
+
+        for (nextLine = startLine + 2; nextLine < endLine; ++nextLine) {
+            if (state.sCount[nextLine] < state.blkIndent) { break; }
+
+            lineText = trim(getLine(state, nextLine));
+            if (lineText.indexOf('|') == -1) { break; }
+            if (state.sCount[nextLine] - state.blkIndent >= 4) { break; }
+            columns = escapedSplit(stripOuterPipes(lineText)).toArray(new String[0]);
+
+            state.push("tr_open", "tr", 1);
+            for (int i = 0; i < columnCount; ++i) {
+                token = state.push("td_open", "td", 1);
+                if (! aligns.get(i).isEmpty()) {
+                    token.attrPush("style", "text-align:" + aligns.get(i));
+                }
+
+                token = state.push("inline", "", 0);
+                token.content = (i < columns.length) ? trim(columns[i]) : "";
+                token.children = new ArrayList<>();
+
+                state.push("td_close", "td", -1);
+            }
+            state.push("tr_close", "tr", -1);
+        }
+        state.push("tbody_close", "tbody", -1);
+        state.push("table_close", "table", -1);
+
+        tableLines[1] = tbodyLines[1] = nextLine;
+        state.line = nextLine;
+        return true;
+    }
+
+
+    // code block (4 spaces padded)
+
+    private static boolean code(BlockState state, int startLine, int endLine, boolean silent) {
+        if (state.sCount[startLine] - state.blkIndent < 4) { return false; }
+
+        int nextLine = startLine + 1;
+        int last = nextLine;
+
+        while (nextLine < endLine) {
+            if (state.isEmpty(nextLine)) {
+                ++nextLine;
+                continue;
+            }
+            if (state.sCount[nextLine] - state.blkIndent >= 4) {
+                ++nextLine;
+                last = nextLine;
+                continue;
+            }
+            break;
+        }
+
+        state.line = last;
+
+        Token token = state.push("code_block", "code", 0);
+        token.content = state.getLines(startLine, last, 4 + state.blkIndent, true);
+        token.map = new int[] { startLine, state.line };
+        return true;
+    }
+
+
+    // fences (``` lang, ~~~ lang)
+
+    private static boolean fence(BlockState state, int startLine, int endLine, boolean silent) {
+        boolean haveEndMarker = false;
+        int pos = state.bMarks[startLine] + state.tShift[startLine];
+        int max = state.eMarks[startLine];
+
+        // if it's indented more than 3 spaces, it should be a code block
+        if (state.sCount[startLine] - state.blkIndent >= 4) { return false; }
+
+        if (pos + 3 > max) { return false; }
+
+        int marker = state.src.charAt(pos);
+
+        if (marker != '~' && marker != '`') { return false; }
+
+        // scan marker length
+        int mem = pos;
+        pos = state.skipChars(pos, marker);
+
+        int len = pos - mem;
+
+        if (len < 3) { return false; }
+
+        String markup = state.src.substring(mem, pos);
+        String params = state.src.substring(pos, max);
+
+        if (params.indexOf((char) marker) >= 0) { return false; }
+
+        // since start is found, we can report success here in validation mode
+        if (silent) { return true; }
+
+        // search end of block
+        int nextLine = startLine;
+
+        for (;;) {
+            ++nextLine;
+            if (nextLine >= endLine) {
+                // unclosed block should be autoclosed by end of document; also block seems to be
+                // autoclosed by end of parent
+                break;
+            }
+
+            pos = mem = state.bMarks[nextLine] + state.tShift[nextLine];
+            max = state.eMarks[nextLine];
+
+            if (pos < max && state.sCount[nextLine] < state.blkIndent) {
+                // non-empty line with negative indent should stop the list:
+                // - ```
+                //  test
+                break;
+            }
+
+            if (state.charCodeAt(pos) != marker) { continue; }
+
+            if (state.sCount[nextLine] - state.blkIndent >= 4) {
+                // closing fence should be indented less than 4 spaces
+                continue;
+            }
+
+            pos = state.skipChars(pos, marker);
+
+            // closing code fence must be at least as long as the opening one
+            if (pos - mem < len) { continue; }
+
+            // make sure tail has spaces only
+            pos = state.skipSpaces(pos);
+
+            if (pos < max) { continue; }
+
+            haveEndMarker = true;
+            // found!
+            break;
+        }
+
+        // if a fence has heading spaces, they should be removed from its inner block
+        len = state.sCount[startLine];
+
+        state.line = nextLine + (haveEndMarker ? 1 : 0);
+
+        Token token = state.push("fence", "code", 0);
+        token.info = params;
+        token.content = state.getLines(startLine + 1, nextLine, len, true);
+        token.markup = markup;
+        token.map = new int[] { startLine, state.line };
+        return true;
+    }
+
+
+    // block quotes
+
+    private static boolean blockquote(BlockState state, int startLine, int endLine, boolean silent) {
+        int oldLineMax = state.lineMax;
+        int pos = state.bMarks[startLine] + state.tShift[startLine];
+        int max = state.eMarks[startLine];
+
+        // if it's indented more than 3 spaces, it should be a code block
+        if (state.sCount[startLine] - state.blkIndent >= 4) { return false; }
+
+        // check the block quote marker
+        if (state.charCodeAt(pos++) != '>') { return false; }
+
+        // we know that it's going to be a valid blockquote, so no point trying to find the end of
+        // it in silent mode
+        if (silent) { return true; }
+
+        int initial, offset;
+        boolean adjustTab, spaceAfterMarker;
+
+        // skip spaces after ">" and re-calculate offset
+        initial = offset = state.sCount[startLine] + pos - (state.bMarks[startLine] + state.tShift[startLine]);
+
+        // skip one optional space after '>'
+        if (state.charCodeAt(pos) == 0x20 /* space */) {
+            // ' >   test '
+            //     ^ -- position start of line here:
+            ++pos;
+            ++initial;
+            ++offset;
+            adjustTab = false;
+            spaceAfterMarker = true;
+        } else if (state.charCodeAt(pos) == 0x09 /* tab */) {
+            spaceAfterMarker = true;
+
+            if ((state.bsCount[startLine] + offset) % 4 == 3) {
+                // '  >\t  test '
+                //       ^ -- position start of line here (tab has width===1)
+                ++pos;
+                ++initial;
+                ++offset;
+                adjustTab = false;
+            } else {
+                // ' >\t  test '
+                //    ^ -- position start of line here + shift bsCount slightly to make extra space
+                //         appear
+                adjustTab = true;
+            }
+        } else {
+            spaceAfterMarker = false;
+            adjustTab = false;
+        }
+
+        List<Integer> oldBMarks = new ArrayList<>();
+        oldBMarks.add(state.bMarks[startLine]);
+        state.bMarks[startLine] = pos;
+
+        while (pos < max) {
+            int ch = state.src.charAt(pos);
+            if (isSpace(ch)) {
+                if (ch == 0x09) {
+                    offset += 4 - (offset + state.bsCount[startLine] + (adjustTab ? 1 : 0)) % 4;
+                } else {
+                    ++offset;
+                }
+            } else {
+                break;
+            }
+            ++pos;
+        }
+
+        List<Integer> oldBSCount = new ArrayList<>();
+        oldBSCount.add(state.bsCount[startLine]);
+        state.bsCount[startLine] = state.sCount[startLine] + 1 + (spaceAfterMarker ? 1 : 0);
+
+        boolean lastLineEmpty = pos >= max;
+
+        List<Integer> oldSCount = new ArrayList<>();
+        oldSCount.add(state.sCount[startLine]);
+        state.sCount[startLine] = offset - initial;
+
+        List<Integer> oldTShift = new ArrayList<>();
+        oldTShift.add(state.tShift[startLine]);
+        state.tShift[startLine] = pos - state.bMarks[startLine];
+
+        String oldParentType = state.parentType;
+        state.parentType = "blockquote";
+        boolean wasOutdented = false;
+
+        // search the end of the block
+        //
+        // block ends with either:
+        //  1. an empty line outside:
+        //     ```
+        //     > test
+        //
+        //     ```
+        //  2. an empty line inside:
+        //     ```
+        //     >
+        //     test
+        //     ```
+        //  3. another tag:
+        //     ```
+        //     > test
+        //      - - -
+        //     ```
+        int nextLine;
+        for (nextLine = startLine + 1; nextLine < endLine; ++nextLine) {
+            // check if it's outdented, i.e. it's inside list item and indented less than said
+            // list item:
+            //
+            // ```
+            // 1. anything
+            //    > current blockquote
+            // 2. checking this line
+            // ```
+            if (state.sCount[nextLine] < state.blkIndent) {
+                wasOutdented = true;
+            }
+
+            pos = state.bMarks[nextLine] + state.tShift[nextLine];
+            max = state.eMarks[nextLine];
+
+            if (pos >= max) {
+                // case 1: line is not inside the blockquote, and this line is empty
+                break;
+            }
+
+            if (state.charCodeAt(pos++) == '>' && ! wasOutdented) {
+                // this line is inside the blockquote
+
+                // skip spaces after ">" and re-calculate offset
+                initial = offset = state.sCount[nextLine] + pos - (state.bMarks[nextLine] + state.tShift[nextLine]);
+
+                // skip one optional space after '>'
+                if (state.charCodeAt(pos) == 0x20 /* space */) {
+                    ++pos;
+                    ++initial;
+                    ++offset;
+                    adjustTab = false;
+                    spaceAfterMarker = true;
+                } else if (state.charCodeAt(pos) == 0x09 /* tab */) {
+                    spaceAfterMarker = true;
+
+                    if ((state.bsCount[nextLine] + offset) % 4 == 3) {
+                        ++pos;
+                        ++initial;
+                        ++offset;
+                        adjustTab = false;
+                    } else {
+                        adjustTab = true;
+                    }
+                } else {
+                    spaceAfterMarker = false;
+                }
+
+                oldBMarks.add(state.bMarks[nextLine]);
+                state.bMarks[nextLine] = pos;
+
+                while (pos < max) {
+                    int ch = state.src.charAt(pos);
+                    if (isSpace(ch)) {
+                        if (ch == 0x09) {
+                            offset += 4 - (offset + state.bsCount[nextLine] + (adjustTab ? 1 : 0)) % 4;
+                        } else {
+                            ++offset;
+                        }
+                    } else {
+                        break;
+                    }
+                    ++pos;
+                }
+
+                lastLineEmpty = pos >= max;
+
+                oldBSCount.add(state.bsCount[nextLine]);
+                state.bsCount[nextLine] = state.sCount[nextLine] + 1 + (spaceAfterMarker ? 1 : 0);
+
+                oldSCount.add(state.sCount[nextLine]);
+                state.sCount[nextLine] = offset - initial;
+
+                oldTShift.add(state.tShift[nextLine]);
+                state.tShift[nextLine] = pos - state.bMarks[nextLine];
+                continue;
+            }
+
+            // case 2: line is not inside the blockquote, and the last line was empty
+            if (lastLineEmpty) { break; }
+
+            // case 3: another tag found
+            if (anyApplies(BLOCKQUOTE_TERMINATORS, state, nextLine, endLine)) {
+                // quirk to enforce "hard termination mode" for paragraphs; normally if you call
+                // `tokenize(state, startLine, nextLine)`, paragraphs will look below nextLine for
+                // paragraph continuation, but if blockquote is terminated by another tag, they
+                // shouldn't
+                state.lineMax = nextLine;
+
+                if (state.blkIndent != 0) {
+                    // state.blkIndent was non-zero, we now set it to zero, so we need to re-calculate
+                    // all offsets to appear as if indent wasn't changed
+                    oldBMarks.add(state.bMarks[nextLine]);
+                    oldBSCount.add(state.bsCount[nextLine]);
+                    oldTShift.add(state.tShift[nextLine]);
+                    oldSCount.add(state.sCount[nextLine]);
+                    state.sCount[nextLine] -= state.blkIndent;
+                }
+
+                break;
+            }
+
+            oldBMarks.add(state.bMarks[nextLine]);
+            oldBSCount.add(state.bsCount[nextLine]);
+            oldTShift.add(state.tShift[nextLine]);
+            oldSCount.add(state.sCount[nextLine]);
+
+            // a negative indentation means that this is a paragraph continuation
+            state.sCount[nextLine] = -1;
+        }
+
+        int oldIndent = state.blkIndent;
+        state.blkIndent = 0;
+
+        Token token = state.push("blockquote_open", "blockquote", 1);
+        token.markup = ">";
+        int[] lines = new int[] { startLine, 0 };
+        token.map = lines;
+
+        tokenize(state, startLine, nextLine);
+
+        token = state.push("blockquote_close", "blockquote", -1);
+        token.markup = ">";
+
+        state.lineMax = oldLineMax;
+        state.parentType = oldParentType;
+        lines[1] = state.line;
+
+        // restore original tShift; this might not be necessary since the parser has already been
+        // here, but just to make sure we can do that
+        for (int i = 0; i < oldTShift.size(); ++i) {
+            state.bMarks[i + startLine] = oldBMarks.get(i);
+            state.tShift[i + startLine] = oldTShift.get(i);
+            state.sCount[i + startLine] = oldSCount.get(i);
+            state.bsCount[i + startLine] = oldBSCount.get(i);
+        }
+        state.blkIndent = oldIndent;
+
+        return true;
+    }
+
+
+    // horizontal rule
+
+    private static boolean hr(BlockState state, int startLine, int endLine, boolean silent) {
+        int pos = state.bMarks[startLine] + state.tShift[startLine];
+        int max = state.eMarks[startLine];
+
+        // if it's indented more than 3 spaces, it should be a code block
+        if (state.sCount[startLine] - state.blkIndent >= 4) { return false; }
+
+        int marker = state.charCodeAt(pos++);
+
+        // check hr marker
+        if (marker != '*' && marker != '-' && marker != '_') { return false; }
+
+        // markers can be mixed with spaces, but there should be at least 3 of them
+        int count = 1;
+        while (pos < max) {
+            int ch = state.src.charAt(pos++);
+            if (ch != marker && ! isSpace(ch)) { return false; }
+            if (ch == marker) { ++count; }
+        }
+
+        if (count < 3) { return false; }
+
+        if (silent) { return true; }
+
+        state.line = startLine + 1;
+
+        Token token = state.push("hr", "hr", 0);
+        token.map = new int[] { startLine, state.line };
+        token.markup = MarkdownUtils.repeat((char) marker, count);
+        return true;
+    }
+
+
+    // lists
+
+    // search `[-+*][\n ]`, returns next pos after marker on success or -1 on fail
+    private static int skipBulletListMarker(BlockState state, int startLine) {
+        int pos = state.bMarks[startLine] + state.tShift[startLine];
+        int max = state.eMarks[startLine];
+
+        int marker = state.charCodeAt(pos++);
+        // check bullet
+        if (marker != '*' && marker != '-' && marker != '+') { return -1; }
+
+        if (pos < max) {
+            int ch = state.src.charAt(pos);
+            if (! isSpace(ch)) {
+                // " -test " - is not a list item
+                return -1;
+            }
+        }
+        return pos;
+    }
+
+    // search `\d+[.)][\n ]`, returns next pos after marker on success or -1 on fail
+    private static int skipOrderedListMarker(BlockState state, int startLine) {
+        int start = state.bMarks[startLine] + state.tShift[startLine];
+        int pos = start;
+        int max = state.eMarks[startLine];
+
+        // list marker should have at least 2 chars (digit + dot)
+        if (pos + 1 >= max) { return -1; }
+
+        int ch = state.src.charAt(pos++);
+        if (ch < '0' || ch > '9') { return -1; }
+
+        for (;;) {
+            // EOL -> fail
+            if (pos >= max) { return -1; }
+
+            ch = state.src.charAt(pos++);
+
+            if (ch >= '0' && ch <= '9') {
+                // list marker should have no more than 9 digits (prevents integer overflow in
+                // browsers)
+                if (pos - start >= 10) { return -1; }
+                continue;
+            }
+
+            // found valid marker
+            if (ch == ')' || ch == '.') { break; }
+
+            return -1;
+        }
+
+        if (pos < max) {
+            ch = state.src.charAt(pos);
+            if (! isSpace(ch)) {
+                // " 1.test " - is not a list item
+                return -1;
+            }
+        }
+        return pos;
+    }
+
+    private static void markTightParagraphs(BlockState state, int idx) {
+        int level = state.level + 2;
+        for (int i = idx + 2, l = state.tokens.size() - 2; i < l; ++i) {
+            if (state.tokens.get(i).level == level && state.tokens.get(i).type.equals("paragraph_open")) {
+                state.tokens.get(i + 2).hidden = true;
+                state.tokens.get(i).hidden = true;
+                i += 2;
+            }
+        }
+    }
+
+    private static boolean list(BlockState state, int startLine, int endLine, boolean silent) {
+        boolean isTerminatingParagraph = false;
+        boolean tight = true;
+        boolean isOrdered;
+        int markerValue = 0;
+        int posAfterMarker;
+
+        // if it's indented more than 3 spaces, it should be a code block
+        if (state.sCount[startLine] - state.blkIndent >= 4) { return false; }
+
+        // limit conditions when list can interrupt a paragraph (validation mode only)
+        if (silent && state.parentType.equals("paragraph")) {
+            // next list item should still terminate previous list item, e.g.:
+            //
+            // - this is a paragraph continuation
+            // - this is a list item
+            //
+            if (state.tShift[startLine] >= state.blkIndent) {
+                isTerminatingParagraph = true;
+            }
+        }
+
+        // detect list type and position after marker
+        if ((posAfterMarker = skipOrderedListMarker(state, startLine)) >= 0) {
+            isOrdered = true;
+            int start = state.bMarks[startLine] + state.tShift[startLine];
+            markerValue = Integer.parseInt(state.src.substring(start, posAfterMarker - 1));
+
+            // if we're starting a new ordered list right after a paragraph, it should start with 1
+            if (isTerminatingParagraph && markerValue != 1) { return false; }
+
+        } else if ((posAfterMarker = skipBulletListMarker(state, startLine)) >= 0) {
+            isOrdered = false;
+
+        } else {
+            return false;
+        }
+
+        // if we're starting a new unordered list right after a paragraph, first line should not be
+        // empty
+        if (isTerminatingParagraph) {
+            if (state.skipSpaces(posAfterMarker) >= state.eMarks[startLine]) { return false; }
+        }
+
+        // we should terminate list on style change; remember first one to compare
+        int markerCharCode = state.src.charAt(posAfterMarker - 1);
+
+        // for validation mode we can terminate immediately
+        if (silent) { return true; }
+
+        // start list
+        int listTokIdx = state.tokens.size();
+
+        Token token;
+        if (isOrdered) {
+            token = state.push("ordered_list_open", "ol", 1);
+            if (markerValue != 1) {
+                token.attrPush("start", String.valueOf(markerValue));
+            }
+        } else {
+            token = state.push("bullet_list_open", "ul", 1);
+        }
+
+        int[] listLines = new int[] { startLine, 0 };
+        token.map = listLines;
+        token.markup = String.valueOf((char) markerCharCode);
+
+        // iterate list items
+        int nextLine = startLine;
+        boolean prevEmptyEnd = false;
+
+        String oldParentType = state.parentType;
+        state.parentType = "list";
+
+        while (nextLine < endLine) {
+            int pos = posAfterMarker;
+            int max = state.eMarks[nextLine];
+
+            int initial, offset;
+            initial = offset = state.sCount[nextLine] + posAfterMarker - (state.bMarks[startLine] + state.tShift[startLine]);
+
+            while (pos < max) {
+                int ch = state.src.charAt(pos);
+                if (ch == 0x09) {
+                    offset += 4 - (offset + state.bsCount[nextLine]) % 4;
+                } else if (ch == 0x20) {
+                    ++offset;
+                } else {
+                    break;
+                }
+                ++pos;
+            }
+
+            int contentStart = pos;
+            int indentAfterMarker;
+
+            if (contentStart >= max) {
+                // trimming space in "-    \n  3" case, indent is 1 here
+                indentAfterMarker = 1;
+            } else {
+                indentAfterMarker = offset - initial;
+            }
+
+            // if we have more than 4 spaces, the indent is 1 (the rest is just indented code block)
+            if (indentAfterMarker > 4) { indentAfterMarker = 1; }
+
+            // "  -  test"
+            //  ^^^^^ - calculating total length of this thing
+            int indent = initial + indentAfterMarker;
+
+            // run subparser & write tokens
+            token = state.push("list_item_open", "li", 1);
+            token.markup = String.valueOf((char) markerCharCode);
+            int[] itemLines = new int[] { startLine, 0 };
+            token.map = itemLines;
+
+            int oldIndent = state.blkIndent;
+            boolean oldTight = state.tight;
+            int oldTShift = state.tShift[startLine];
+            int oldLIndent = state.sCount[startLine];
+            state.blkIndent = indent;
+            state.tight = true;
+            state.tShift[startLine] = contentStart - state.bMarks[startLine];
+            state.sCount[startLine] = offset;
+
+            if (contentStart >= max && state.isEmpty(startLine + 1)) {
+                // workaround for this case (list item is empty, 1 line paragraph); just remove the
+                // empty paragraph and go on
+                //
+                // - foo
+                //
+                //   bar
+                //
+                state.line = Math.min(state.line + 2, endLine);
+            } else {
+                tokenize(state, startLine, endLine);
+            }
+
+            // if any of list item is tight, mark list as tight
+            if (! state.tight || prevEmptyEnd) {
+                tight = false;
+            }
+            // item become loose if finish with empty line, but we should filter last element,
+            // because it means list finish
+            prevEmptyEnd = (state.line - startLine) > 1 && state.isEmpty(state.line - 1);
+
+            state.blkIndent = oldIndent;
+            state.tShift[startLine] = oldTShift;
+            state.sCount[startLine] = oldLIndent;
+            state.tight = oldTight;
+
+            token = state.push("list_item_close", "li", -1);
+            token.markup = String.valueOf((char) markerCharCode);
+
+            nextLine = startLine = state.line;
+            itemLines[1] = nextLine;
+
+            if (nextLine >= endLine) { break; }
+
+            // try to check if list is terminated or continued
+            if (state.sCount[nextLine] < state.blkIndent) { break; }
+
+            // fail if terminating block found
+            if (anyApplies(LIST_TERMINATORS, state, nextLine, endLine)) { break; }
+
+            // fail if list has another type
+            if (isOrdered) {
+                posAfterMarker = skipOrderedListMarker(state, nextLine);
+                if (posAfterMarker < 0) { break; }
+            } else {
+                posAfterMarker = skipBulletListMarker(state, nextLine);
+                if (posAfterMarker < 0) { break; }
+            }
+
+            if (markerCharCode != state.src.charAt(posAfterMarker - 1)) { break; }
+        }
+
+        // finalize list
+        if (isOrdered) {
+            token = state.push("ordered_list_close", "ol", -1);
+        } else {
+            token = state.push("bullet_list_close", "ul", -1);
+        }
+        token.markup = String.valueOf((char) markerCharCode);
+
+        listLines[1] = nextLine;
+        state.line = nextLine;
+
+        state.parentType = oldParentType;
+
+        // mark paragraphs tight if needed
+        if (tight) {
+            markTightParagraphs(state, listTokIdx);
+        }
+
+        return true;
+    }
+
+
+    // footnote definitions: [^label]: text
+
+    private static boolean footnoteDef(BlockState state, int startLine, int endLine, boolean silent) {
+        int start = state.bMarks[startLine] + state.tShift[startLine];
+        int max = state.eMarks[startLine];
+
+        // line should be at least 5 chars - "[^x]:"
+        if (start + 4 > max) { return false; }
+
+        if (state.src.charAt(start) != '[') { return false; }
+        if (state.src.charAt(start + 1) != '^') { return false; }
+
+        int pos;
+        for (pos = start + 2; pos < max; ++pos) {
+            if (state.src.charAt(pos) == ' ') { return false; }
+            if (state.src.charAt(pos) == ']') {
+                break;
+            }
+        }
+
+        if (pos == start + 2) { return false; } // no empty footnote labels
+        if (pos + 1 >= max || state.src.charAt(++pos) != ':') { return false; }
+        if (silent) { return true; }
+        ++pos;
+
+        String label = state.src.substring(start + 2, pos - 2);
+        state.env.getFootnoteRefs().put(label, -1);
+
+        Token token = new Token("footnote_reference_open", "", 1);
+        token.meta = label;
+        token.level = state.level++;
+        state.tokens.add(token);
+
+        int oldBMark = state.bMarks[startLine];
+        int oldTShift = state.tShift[startLine];
+        int oldSCount = state.sCount[startLine];
+        String oldParentType = state.parentType;
+
+        int posAfterColon = pos;
+        int initial, offset;
+        initial = offset = state.sCount[startLine] + pos - (state.bMarks[startLine] + state.tShift[startLine]);
+
+        while (pos < max) {
+            int ch = state.src.charAt(pos);
+            if (isSpace(ch)) {
+                if (ch == 0x09) {
+                    offset += 4 - offset % 4;
+                } else {
+                    ++offset;
+                }
+            } else {
+                break;
+            }
+            ++pos;
+        }
+
+        state.tShift[startLine] = pos - posAfterColon;
+        state.sCount[startLine] = offset - initial;
+
+        state.bMarks[startLine] = posAfterColon;
+        state.blkIndent += 4;
+        state.parentType = "footnote";
+
+        if (state.sCount[startLine] < state.blkIndent) {
+            state.sCount[startLine] += state.blkIndent;
+        }
+
+        tokenize(state, startLine, endLine);
+
+        state.parentType = oldParentType;
+        state.blkIndent -= 4;
+        state.tShift[startLine] = oldTShift;
+        state.sCount[startLine] = oldSCount;
+        state.bMarks[startLine] = oldBMark;
+
+        token = new Token("footnote_reference_close", "", -1);
+        token.level = --state.level;
+        state.tokens.add(token);
+
+        return true;
+    }
+
+
+    // link reference definitions: [label]: href "title"
+
+    private static boolean reference(BlockState state, int startLine, int endLine_, boolean silent) {
+        int lines = 0;
+        int pos = state.bMarks[startLine] + state.tShift[startLine];
+        int max = state.eMarks[startLine];
+        int nextLine = startLine + 1;
+
+        // if it's indented more than 3 spaces, it should be a code block
+        if (state.sCount[startLine] - state.blkIndent >= 4) { return false; }
+
+        if (state.charCodeAt(pos) != '[') { return false; }
+
+        // simple check to quickly interrupt scan on [link](url) at the start of line; can be
+        // useful on practice: https://github.com/markdown-it/markdown-it/issues/54
+        while (++pos < max) {
+            if (state.src.charAt(pos) == ']' && state.src.charAt(pos - 1) != '\\') {
+                if (pos + 1 == max) { return false; }
+                if (state.src.charAt(pos + 1) != ':') { return false; }
+                break;
+            }
+        }
+
+        int endLine = state.lineMax;
+
+        // jump line-by-line until empty one or EOF
+        String oldParentType = state.parentType;
+        state.parentType = "reference";
+
+        for (; nextLine < endLine && ! state.isEmpty(nextLine); ++nextLine) {
+            // this would be a code block normally, but after paragraph it's considered a lazy
+            // continuation regardless of what's there
+            if (state.sCount[nextLine] - state.blkIndent > 3) { continue; }
+
+            // quirk for blockquotes, this line should already be checked by that rule
+            if (state.sCount[nextLine] < 0) { continue; }
+
+            // some tags can terminate paragraph without empty line
+            if (anyApplies(REFERENCE_TERMINATORS, state, nextLine, endLine)) { break; }
+        }
+
+        String str = trim(state.getLines(startLine, nextLine, state.blkIndent, false));
+        max = str.length();
+
+        int labelEnd = -1;
+        for (pos = 1; pos < max; ++pos) {
+            int ch = str.charAt(pos);
+            if (ch == '[') {
+                return false;
+            } else if (ch == ']') {
+                labelEnd = pos;
+                break;
+            } else if (ch == '\n') {
+                ++lines;
+            } else if (ch == '\\') {
+                ++pos;
+                if (pos < max && str.charAt(pos) == '\n') {
+                    ++lines;
+                }
+            }
+        }
+
+        if (labelEnd < 0 || labelEnd + 1 >= max || str.charAt(labelEnd + 1) != ':') { return false; }
+
+        // [label]:   destination   'title'
+        //         ^^^ skip optional whitespace here
+        for (pos = labelEnd + 2; pos < max; ++pos) {
+            int ch = str.charAt(pos);
+            if (ch == '\n') {
+                ++lines;
+            } else if (! isSpace(ch)) {
+                break;
+            }
+        }
+
+        // [label]:   destination   'title'
+        //            ^^^^^^^^^^^ parse this
+        LinkHelpers.Result res = LinkHelpers.parseLinkDestination(str, pos, max);
+        if (! res.ok) { return false; }
+
+        String href = LinkHelpers.normalizeLink(res.str);
+        if (! LinkHelpers.validateLink(href)) { return false; }
+
+        pos = res.pos;
+        lines += res.lines;
+
+        // save cursor state, we could require to rollback later
+        int destEndPos = pos;
+        int destEndLineNo = lines;
+
+        // [label]:   destination   'title'
+        //                       ^^^ skipping those spaces
+        int start = pos;
+        for (; pos < max; ++pos) {
+            int ch = str.charAt(pos);
+            if (ch == '\n') {
+                ++lines;
+            } else if (! isSpace(ch)) {
+                break;
+            }
+        }
+
+        // [label]:   destination   'title'
+        //                          ^^^^^^^ parse this
+        res = LinkHelpers.parseLinkTitle(str, pos, max);
+        String title;
+        if (pos < max && start != pos && res.ok) {
+            title = res.str;
+            pos = res.pos;
+            lines += res.lines;
+        } else {
+            title = "";
+            pos = destEndPos;
+            lines = destEndLineNo;
+        }
+
+        // skip trailing spaces until the rest of the line
+        while (pos < max) {
+            int ch = str.charAt(pos);
+            if (! isSpace(ch)) { break; }
+            ++pos;
+        }
+
+        if (pos < max && str.charAt(pos) != '\n') {
+            if (! title.isEmpty()) {
+                // garbage at the end of the line after title, but it could still be a valid
+                // reference if we roll back
+                title = "";
+                pos = destEndPos;
+                lines = destEndLineNo;
+                while (pos < max) {
+                    int ch = str.charAt(pos);
+                    if (! isSpace(ch)) { break; }
+                    ++pos;
+                }
+            }
+        }
+
+        if (pos < max && str.charAt(pos) != '\n') {
+            // garbage at the end of the line
+            return false;
+        }
+
+        String label = normalizeReference(str.substring(1, labelEnd));
+        if (label.isEmpty()) {
+            // CommonMark 0.20 disallows empty labels
+            return false;
+        }
+
+        // reference can not terminate anything; this check is for safety only
+        if (silent) { return true; }
+
+        if (state.env.references == null) {
+            state.env.references = new java.util.HashMap<>();
+        }
+        if (! state.env.references.containsKey(label)) {
+            state.env.references.put(label, new Env.Reference(href, title));
+        }
+
+        state.parentType = oldParentType;
+
+        state.line = startLine + lines + 1;
+        return true;
+    }
+
+
+    // headings (#, ##, ...), with or without a space after the #s
+
+    private static boolean heading(BlockState state, int startLine, int endLine, boolean silent) {
+        int pos = state.bMarks[startLine] + state.tShift[startLine];
+        int max = state.eMarks[startLine];
+
+        int ch = state.charCodeAt(pos);
+
+        if (ch != '#' || pos >= max) { return false; }
+
+        // count heading level
+        int level = 1;
+        ch = state.charCodeAt(++pos);
+        while (ch == '#' && pos < max && level <= 6) {
+            ++level;
+            ch = state.charCodeAt(++pos);
+        }
+
+        if (level > 6) { return false; }
+
+        if (silent) { return true; }
+
+        // let's cut tails like '    ###  ' from the end of string
+        max = state.skipCharsBack(max, 0x20, pos);
+        int tmp = state.skipCharsBack(max, '#', pos);
+        if (tmp > pos && state.charCodeAt(tmp - 1) == 0x20) {
+            max = tmp;
+        }
+
+        state.line = startLine + 1;
+
+        Token token = state.push("heading_open", "h" + level, 1);
+        token.markup = "########".substring(0, level);
+        token.map = new int[] { startLine, state.line };
+
+        token = state.push("inline", "", 0);
+        token.content = trim(state.src.substring(pos, Math.max(pos, max)));
+        token.map = new int[] { startLine, state.line };
+        token.children = new ArrayList<>();
+
+        token = state.push("heading_close", "h" + level, -1);
+        token.markup = "########".substring(0, level);
+
+        return true;
+    }
+
+
+    // setext headings (underlined with = or -)
+
+    private static boolean lheading(BlockState state, int startLine, int endLine, boolean silent) {
+        int nextLine = startLine + 1;
+        int level = 0;
+        int marker = 0;
+
+        // if it's indented more than 3 spaces, it should be a code block
+        if (state.sCount[startLine] - state.blkIndent >= 4) { return false; }
+
+        String oldParentType = state.parentType;
+        state.parentType = "paragraph"; // use paragraph to match terminatorRules
+
+        // jump line-by-line until empty one or EOF
+        for (; nextLine < endLine && ! state.isEmpty(nextLine); ++nextLine) {
+            // this would be a code block normally, but after paragraph it's considered a lazy
+            // continuation regardless of what's there
+            if (state.sCount[nextLine] - state.blkIndent > 3) { continue; }
+
+            // check for underline in setext header
+            if (state.sCount[nextLine] >= state.blkIndent) {
+                int pos = state.bMarks[nextLine] + state.tShift[nextLine];
+                int max = state.eMarks[nextLine];
+
+                if (pos < max) {
+                    marker = state.src.charAt(pos);
+
+                    if (marker == '-' || marker == '=') {
+                        pos = state.skipChars(pos, marker);
+                        pos = state.skipSpaces(pos);
+
+                        if (pos >= max) {
+                            level = (marker == '=') ? 1 : 2;
+                            break;
+                        }
+                    }
+                }
+            }
+
+            // quirk for blockquotes, this line should already be checked by that rule
+            if (state.sCount[nextLine] < 0) { continue; }
+
+            // some tags can terminate paragraph without empty line
+            if (anyApplies(PARAGRAPH_TERMINATORS, state, nextLine, endLine)) { break; }
+        }
+
+        if (level == 0) {
+            // didn't find valid underline
+            return false;
+        }
+
+        String content = trim(state.getLines(startLine, nextLine, state.blkIndent, false));
+
+        state.line = nextLine + 1;
+
+        Token token = state.push("heading_open", "h" + level, 1);
+        token.markup = String.valueOf((char) marker);
+        token.map = new int[] { startLine, state.line };
+
+        token = state.push("inline", "", 0);
+        token.content = content;
+        token.map = new int[] { startLine, state.line - 1 };
+        token.children = new ArrayList<>();
+
+        token = state.push("heading_close", "h" + level, -1);
+        token.markup = String.valueOf((char) marker);
+
+        state.parentType = oldParentType;
+
+        return true;
+    }
+
+
+    // HTML block
+
+    private static boolean htmlBlock(BlockState state, int startLine, int endLine, boolean silent) {
+        int pos = state.bMarks[startLine] + state.tShift[startLine];
+        int max = state.eMarks[startLine];
+
+        // if it's indented more than 3 spaces, it should be a code block
+        if (state.sCount[startLine] - state.blkIndent >= 4) { return false; }
+
+        if (state.charCodeAt(pos) != '<') { return false; }
+
+        String lineText = state.src.substring(pos, max);
+
+        int i = 0;
+        for (; i < HTML_SEQUENCES.length; ++i) {
+            if (((Pattern) HTML_SEQUENCES[i][0]).matcher(lineText).find()) { break; }
+        }
+
+        if (i == HTML_SEQUENCES.length) { return false; }
+
+        if (silent) {
+            // true if this sequence can be a terminator, false otherwise
+            return (Boolean) HTML_SEQUENCES[i][2];
+        }
+
+        int nextLine = startLine + 1;
+
+        // if we are here - we detected HTML block; let's roll down till block end
+        Pattern endPattern = (Pattern) HTML_SEQUENCES[i][1];
+        if (! endPattern.matcher(lineText).find()) {
+            for (; nextLine < endLine; ++nextLine) {
+                if (state.sCount[nextLine] < state.blkIndent) { break; }
+
+                pos = state.bMarks[nextLine] + state.tShift[nextLine];
+                max = state.eMarks[nextLine];
+                lineText = state.src.substring(pos, Math.max(pos, max));
+
+                if (endPattern.matcher(lineText).find()) {
+                    if (lineText.length() != 0) { ++nextLine; }
+                    break;
+                }
+            }
+        }
+
+        state.line = nextLine;
+
+        Token token = state.push("html_block", "", 0);
+        token.map = new int[] { startLine, nextLine };
+        token.content = state.getLines(startLine, nextLine, state.blkIndent, true);
+
+        return true;
+    }
+
+
+    // paragraph
+
+    private static boolean paragraph(BlockState state, int startLine, int endLine_, boolean silent) {
+        int nextLine = startLine + 1;
+        int endLine = state.lineMax;
+
+        String oldParentType = state.parentType;
+        state.parentType = "paragraph";
+
+        // jump line-by-line until empty one or EOF
+        for (; nextLine < endLine && ! state.isEmpty(nextLine); ++nextLine) {
+            // this would be a code block normally, but after paragraph it's considered a lazy
+            // continuation regardless of what's there
+            if (state.sCount[nextLine] - state.blkIndent > 3) { continue; }
+
+            // quirk for blockquotes, this line should already be checked by that rule
+            if (state.sCount[nextLine] < 0) { continue; }
+
+            // some tags can terminate paragraph without empty line
+            if (anyApplies(PARAGRAPH_TERMINATORS, state, nextLine, endLine)) { break; }
+        }
+
+        String content = trim(state.getLines(startLine, nextLine, state.blkIndent, false));
+
+        state.line = nextLine;
+
+        Token token = state.push("paragraph_open", "p", 1);
+        token.map = new int[] { startLine, state.line };
+
+        token = state.push("inline", "", 0);
+        token.content = content;
+        token.map = new int[] { startLine, state.line };
+        token.children = new ArrayList<>();
+
+        state.push("paragraph_close", "p", -1);
+
+        state.parentType = oldParentType;
+
+        return true;
+    }
+
+
+    private static String join(String[] parts, String separator) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < parts.length; ++i) {
+            if (i > 0) {
+                result.append(separator);
+            }
+            result.append(parts[i]);
+        }
+        return result.toString();
+    }
+
+}
@@ -0,0 +1,213 @@
+package me.vickychijwani.spectre.markdown;
+
+import java.util.List;
+
+import static me.vickychijwani.spectre.markdown.MarkdownUtils.isSpace;
+
+// line-oriented parser state, see markdown-it's lib/rules_block/state_block.js
+/* package */ final class BlockState {
+
+    final String src;
+    final Env env;
+    final List<Token> tokens;
+
+    // line begin offsets, for fast jumps
+    int[] bMarks;
+    // line end offsets, for fast jumps
+    int[] eMarks;
+    // offsets of the first non-space characters (tabs not expanded)
+    int[] tShift;
+    // indents for each line (tabs expanded)
+    int[] sCount;
+    // an amount of virtual spaces (tabs expanded) between beginning of each line and the
+    // beginning of its block content, only needed to expand tabs inside blockquotes correctly
+    int[] bsCount;
+
+    // required block content indent (e.g., for list items)
+    int blkIndent = 0;
+    int line = 0;
+    int lineMax;
+    // loose/tight mode for lists
+    boolean tight = false;
+    // used to decide which rules can interrupt a paragraph, list or blockquote
+    String parentType = "root";
+    int level = 0;
+
+    BlockState(String src, Env env, List<Token> tokens) {
+        this.src = src;
+        this.env = env;
+        this.tokens = tokens;
+
+        int len = src.length();
+        int lines = 1;
+        for (int i = 0; i < len; ++i) {
+            if (src.charAt(i) == '\n') {
+                ++lines;
+            }
+        }
+        bMarks = new int[lines + 1];
+        eMarks = new int[lines + 1];
+        tShift = new int[lines + 1];
+        sCount = new int[lines + 1];
+        bsCount = new int[lines + 1];
+
+        // create caches, generate markers
+        int n = 0, start = 0, indent = 0, offset = 0;
+        boolean indentFound = false;
+        for (int pos = 0; pos < len; ++pos) {
+            char ch = src.charAt(pos);
+            if (! indentFound) {
+                if (isSpace(ch)) {
+                    ++indent;
+                    if (ch == '\t') {
+                        offset += 4 - offset % 4;
+                    } else {
+                        ++offset;
+                    }
+                    continue;
+                } else {
+                    indentFound = true;
+                }
+            }
+            if (ch == '\n' || pos == len - 1) {
+                if (ch != '\n') {
+                    ++pos;
+                }
+                bMarks[n] = start;
+                eMarks[n] = pos;
+                tShift[n] = indent;
+                sCount[n] = offset;
+                bsCount[n] = 0;
+                ++n;
+                indentFound = false;
+                indent = 0;
+                offset = 0;
+                start = pos + 1;
+            }
+        }
+
+        // push fake entry to simplify cache bounds checks
+        bMarks[n] = len;
+        eMarks[n] = len;
+        tShift[n] = 0;
+        sCount[n] = 0;
+        bsCount[n] = 0;
+        lineMax = n;
+    }
+
+    // like JavaScript's charCodeAt, returns -1 (instead of NaN) if the position is out of bounds
+    int charCodeAt(int pos) {
+        return (pos >= 0 && pos < src.length()) ? src.charAt(pos) : -1;
+    }
+
+    Token push(String type, String tag, int nesting) {
+        Token token = new Token(type, tag, nesting);
+        token.block = true;
+        if (nesting < 0) {
+            --level;
+        }
+        token.level = level;
+        if (nesting > 0) {
+            ++level;
+        }
+        tokens.add(token);
+        return token;
+    }
+
+    boolean isEmpty(int line) {
+        return bMarks[line] + tShift[line] >= eMarks[line];
+    }
+
+    int skipEmptyLines(int from) {
+        for (int max = lineMax; from < max; ++from) {
+            if (bMarks[from] + tShift[from] < eMarks[from]) {
+                break;
+            }
+        }
+        return from;
+    }
+
+    int skipSpaces(int pos) {
+        for (int max = src.length(); pos < max; ++pos) {
+            if (! isSpace(src.charAt(pos))) {
+                break;
+            }
+        }
+        return pos;
+    }
+
+    int skipSpacesBack(int pos, int min) {
+        if (pos <= min) {
+            return pos;
+        }
+        while (pos > min) {
+            if (! isSpace(src.charAt(--pos))) {
+                return pos + 1;
+            }
+        }
+        return pos;
+    }
+
+    int skipChars(int pos, int code) {
+        for (int max = src.length(); pos < max; ++pos) {
+            if (src.charAt(pos) != code) {
+                break;
+            }
+        }
+        return pos;
+    }
+
+    int skipCharsBack(int pos, int code, int min) {
+        if (pos <= min) {
+            return pos;
+        }
+        while (pos > min) {
+            if (code != src.charAt(--pos)) {
+                return pos + 1;
+            }
+        }
+        return pos;
+    }
+
+    // cut lines range from source
+    String getLines(int begin, int end, int indent, boolean keepLastLF) {
+        if (begin >= end) {
+            return "";
+        }
+        StringBuilder result = new StringBuilder();
+        for (int line = begin; line < end; ++line) {
+            int lineIndent = 0;
+            int lineStart = bMarks[line];
+            int first = lineStart;
+            int last = (line + 1 < end || keepLastLF) ? eMarks[line] + 1 : eMarks[line];
+            // eMarks[line] + 1 can be past the end of the source for the last line
+            last = Math.min(last, src.length());
+
+            while (first < last && lineIndent < indent) {
+                char ch = src.charAt(first);
+                if (isSpace(ch)) {
+                    if (ch == '\t') {
+                        lineIndent += 4 - (lineIndent + bsCount[line]) % 4;
+                    } else {
+                        ++lineIndent;
+                    }
+                } else if (first - lineStart < tShift[line]) {
+                    // patched tShift masked characters to look like spaces (blockquotes, list markers)
+                    ++lineIndent;
+                } else {
+                    break;
+                }
+                ++first;
+            }
+
+            if (lineIndent > indent) {
+                // partially expanding tabs in code blocks, e.g '\t\tfoobar' with indent=2 becomes
+                // '  \tfoobar'
+                result.append(MarkdownUtils.repeat(' ', lineIndent - indent));
+            }
+            result.append(src, first, last);
+        }
+        return result.toString();
+    }
+
+}
@@ -0,0 +1,50 @@
+package me.vickychijwani.spectre.markdown;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// document-wide state shared by the block and inline parsers: link reference definitions and
+// footnotes
+/* package */ final class Env {
+
+    static final class Reference {
+        final String href;
+        final String title;
+
+        Reference(String href, String title) {
+            this.href = href;
+            this.title = title;
+        }
+    }
+
+    static final class Footnote {
+        String label = null;
+        int count = 0;
+        // only for inline footnotes: ^[like this]
+        List<Token> tokens = null;
+    }
+
+    // null until the first definition, some rules check for that
+    Map<String, Reference> references = null;
+
+    // footnote label -> index in footnoteList, or -1 if it is defined but not referenced yet
+    Map<String, Integer> footnoteRefs = null;
+    List<Footnote> footnoteList = null;
+
+    Map<String, Integer> getFootnoteRefs() {
+        if (footnoteRefs == null) {
+            footnoteRefs = new HashMap<>();
+        }
+        return footnoteRefs;
+    }
+
+    List<Footnote> getFootnoteList() {
+        if (footnoteList == null) {
+            footnoteList = new ArrayList<>();
+        }
+        return footnoteList;
+    }
+
+}
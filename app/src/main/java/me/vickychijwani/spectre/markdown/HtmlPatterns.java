@@ -0,0 +1,32 @@
+package me.vickychijwani.spectre.markdown;
+
+import java.util.regex.Pattern;
+
+// regexps for recognizing raw HTML, see markdown-it's lib/common/html_re.js
+/* package */ final class HtmlPatterns {
+
+    // JavaScript's \s, Java's is ASCII-only
+    private static final String WS = "[\\t\\n\\x0B\\f\\r \\u00A0\\u1680\\u2000-\\u200A\\u2028\\u2029\\u202F\\u205F\\u3000\\uFEFF]";
+
+    private static final String ATTR_NAME = "[a-zA-Z_:][a-zA-Z0-9:._-]*";
+    private static final String UNQUOTED = "[^\"'=<>`\\x00-\\x20]+";
+    private static final String SINGLE_QUOTED = "'[^']*'";
+    private static final String DOUBLE_QUOTED = "\"[^\"]*\"";
+    private static final String ATTR_VALUE = "(?:" + UNQUOTED + "|" + SINGLE_QUOTED + "|" + DOUBLE_QUOTED + ")";
+    private static final String ATTRIBUTE = "(?:" + WS + "+" + ATTR_NAME + "(?:" + WS + "*=" + WS + "*" + ATTR_VALUE + ")?)";
+
+    private static final String OPEN_TAG = "<[A-Za-z][A-Za-z0-9\\-]*" + ATTRIBUTE + "*" + WS + "*\\/?>";
+    private static final String CLOSE_TAG = "<\\/[A-Za-z][A-Za-z0-9\\-]*" + WS + "*>";
+    private static final String COMMENT = "<!---->|<!--(?:-?[^>-])(?:-?[^-])*-->";
+    private static final String PROCESSING = "<[?].*?[?]>";
+    private static final String DECLARATION = "<![A-Z]+" + WS + "+[^>]*>";
+    private static final String CDATA = "<!\\[CDATA\\[[\\s\\S]*?\\]\\]>";
+
+    static final String HTML_OPEN_CLOSE_TAG = "^(?:" + OPEN_TAG + "|" + CLOSE_TAG + ")";
+
+    static final Pattern HTML_TAG = Pattern.compile("^(?:" + OPEN_TAG + "|" + CLOSE_TAG + "|" + COMMENT
+            + "|" + PROCESSING + "|" + DECLARATION + "|" + CDATA + ")");
+
+    private HtmlPatterns() {}
+
+}
@@ -0,0 +1,228 @@
+package me.vickychijwani.spectre.markdown;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static me.vickychijwani.spectre.markdown.MarkdownUtils.escapeHtml;
+
+// turns a token stream into HTML, see markdown-it's lib/renderer.js; includes markdown-it-footnote's
+// render rules, and the Showdown-compatible heading ids added by markdown-converter.js
+/* package */ final class HtmlRenderer {
+
+    private static final Pattern NON_WORD_CHARS = Pattern.compile("[^\\w]");
+
+    private HtmlRenderer() {}
+
+    static String render(List<Token> tokens) {
+        StringBuilder result = new StringBuilder();
+        render(tokens, result);
+        return result.toString();
+    }
+
+    static void render(List<Token> tokens, StringBuilder out) {
+        for (int i = 0, len = tokens.size(); i < len; ++i) {
+            Token token = tokens.get(i);
+            if (token.type.equals("inline")) {
+                renderInline(token.children, out);
+            } else if (! renderRule(tokens, i, out)) {
+                renderToken(tokens, i, out);
+            }
+        }
+    }
+
+    private static void renderInline(List<Token> tokens, StringBuilder out) {
+        for (int i = 0, len = tokens.size(); i < len; ++i) {
+            if (! renderRule(tokens, i, out)) {
+                renderToken(tokens, i, out);
+            }
+        }
+    }
+
+    // renders the token at idx with a special-case rule, if there is one for its type
+    private static boolean renderRule(List<Token> tokens, int idx, StringBuilder out) {
+        Token token = tokens.get(idx);
+        switch (token.type) {
+            case "code_inline":
+                out.append("<code").append(renderAttrs(token)).append('>')
+                        .append(escapeHtml(token.content)).append("</code>");
+                return true;
+            case "code_block":
+                out.append("<pre").append(renderAttrs(token)).append("><code>")
+                        .append(escapeHtml(token.content)).append("</code></pre>\n");
+                return true;
+            case "fence":
+                renderFence(token, out);
+                return true;
+            case "image":
+                token.attrs.get(token.attrIndex("alt"))[1] = renderInlineAsText(token.children);
+                renderToken(tokens, idx, out);
+                return true;
+            case "hardbreak":
+            case "softbreak":
+                // the converter sets breaks: true, so soft breaks are rendered like hard ones
+                out.append("<br>\n");
+                return true;
+            case "text":
+                out.append(escapeHtml(token.content));
+                return true;
+            case "html_block":
+            case "html_inline":
+                out.append(token.content);
+                return true;
+            case "heading_open":
+                token.attrPush("id", headingId(tokens.get(idx + 1).children));
+                renderToken(tokens, idx, out);
+                return true;
+            case "footnote_ref":
+                renderFootnoteRef(token, out);
+                return true;
+            case "footnote_block_open":
+                out.append("<hr class=\"footnotes-sep\">\n<section class=\"footnotes\">\n<ol class=\"footnotes-list\">\n");
+                return true;
+            case "footnote_block_close":
+                out.append("</ol>\n</section>\n");
+                return true;
+            case "footnote_open":
+                out.append("<li id=\"fn").append(footnoteAnchorName(token)).append("\" class=\"footnote-item\">");
+                return true;
+            case "footnote_close":
+                out.append("</li>\n");
+                return true;
+            case "footnote_anchor":
+                out.append(" <a href=\"#fnref").append(footnoteAnchorName(token))
+                        .append("\" class=\"footnote-backref\">\u21A9\uFE0E</a>");
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static void renderFence(Token token, StringBuilder out) {
+        String info = token.info.isEmpty() ? "" : MarkdownUtils.trim(MarkdownUtils.unescapeAll(token.info));
+        String highlighted = escapeHtml(token.content);
+
+        if (info.isEmpty()) {
+            out.append("<pre><code").append(renderAttrs(token)).append('>')
+                    .append(highlighted).append("</code></pre>\n");
+            return;
+        }
+
+        int langEnd = 0;
+        while (langEnd < info.length() && ! MarkdownUtils.isJsWhiteSpace(info.charAt(langEnd))) {
+            ++langEnd;
+        }
+        String langName = info.substring(0, langEnd);
+
+        // fake token just to render attributes
+        Token tmpToken = new Token(token.type, token.tag, token.nesting);
+        int i = token.attrIndex("class");
+        if (token.attrs != null) {
+            for (String[] attr : token.attrs) {
+                tmpToken.attrPush(attr[0], attr[1]);
+            }
+        }
+        if (i < 0) {
+            tmpToken.attrPush("class", "language-" + langName);
+        } else {
+            tmpToken.attrs.get(i)[1] += " language-" + langName;
+        }
+
+        out.append("<pre><code").append(renderAttrs(tmpToken)).append('>')
+                .append(highlighted).append("</code></pre>\n");
+    }
+
+    // Showdown-style ids: the heading's text with all non-word characters stripped, lowercased
+    private static String headingId(List<Token> inlineTokens) {
+        StringBuilder text = new StringBuilder();
+        for (Token token : inlineTokens) {
+            text.append(token.content);
+        }
+        return NON_WORD_CHARS.matcher(text).replaceAll("").toLowerCase(java.util.Locale.ROOT);
+    }
+
+    private static String footnoteAnchorName(Token token) {
+        InlineParser.FootnoteMeta meta = (InlineParser.FootnoteMeta) token.meta;
+        String name = String.valueOf(meta.id + 1);
+        return (meta.subId > 0) ? name + ":" + meta.subId : name;
+    }
+
+    private static void renderFootnoteRef(Token token, StringBuilder out) {
+        InlineParser.FootnoteMeta meta = (InlineParser.FootnoteMeta) token.meta;
+        String id = String.valueOf(meta.id + 1);
+        String caption = (meta.subId > 0) ? id + ":" + meta.subId : id;
+        out.append("<sup class=\"footnote-ref\"><a href=\"#fn").append(id).append("\" id=\"fnref")
+                .append(footnoteAnchorName(token)).append("\">[").append(caption).append("]</a></sup>");
+    }
+
+    private static String renderAttrs(Token token) {
+        if (token.attrs == null) {
+            return "";
+        }
+        StringBuilder result = new StringBuilder();
+        for (String[] attr : token.attrs) {
+            result.append(' ').append(escapeHtml(attr[0])).append("=\"").append(escapeHtml(attr[1])).append('"');
+        }
+        return result.toString();
+    }
+
+    // special kludge for image `alt` attributes to conform CommonMark spec; don't try to use it!
+    // spec requires to show `alt` content with stripped markup, instead of simple escaping
+    private static String renderInlineAsText(List<Token> tokens) {
+        StringBuilder result = new StringBuilder();
+        for (Token token : tokens) {
+            if (token.type.equals("text")) {
+                result.append(token.content);
+            } else if (token.type.equals("image")) {
+                result.append(renderInlineAsText(token.children));
+            }
+        }
+        return result.toString();
+    }
+
+    // default token renderer, can be overridden by custom function in `renderRule`
+    private static void renderToken(List<Token> tokens, int idx, StringBuilder out) {
+        Token token = tokens.get(idx);
+
+        // tight list paragraphs
+        if (token.hidden) {
+            return;
+        }
+
+        // insert a newline between hidden paragraph and subsequent opening block-level tag; for
+        // example, here we should insert a newline before blockquote:
+        //  - a
+        //    >
+        if (token.block && token.nesting != -1 && idx > 0 && tokens.get(idx - 1).hidden) {
+            out.append('\n');
+        }
+
+        // add token name, e.g. `<img`
+        out.append(token.nesting == -1 ? "</" : "<").append(token.tag);
+
+        // encode attributes, e.g. `<img src="foo"`
+        out.append(renderAttrs(token));
+
+        // check if we need to add a newline after this tag
+        boolean needLf = false;
+        if (token.block) {
+            needLf = true;
+
+            if (token.nesting == 1) {
+                if (idx + 1 < tokens.size()) {
+                    Token nextToken = tokens.get(idx + 1);
+
+                    if (nextToken.type.equals("inline") || nextToken.hidden) {
+                        // block-level tag containing an inline tag
+                        needLf = false;
+                    } else if (nextToken.nesting == -1 && nextToken.tag.equals(token.tag)) {
+                        // opening tag + closing tag of the same type, e.g. `<li></li>`
+                        needLf = false;
+                    }
+                }
+            }
+        }
+
+        out.append(needLf ? ">\n" : ">");
+    }
+
+}
@@ -0,0 +1,1048 @@
+package me.vickychijwani.spectre.markdown;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static me.vickychijwani.spectre.markdown.MarkdownUtils.isSpace;
+import static me.vickychijwani.spectre.markdown.MarkdownUtils.normalizeReference;
+
+// inline rules, ported from markdown-it 8.4.1's lib/parser_inline.js and lib/rules_inline/, plus
+// the inline parts of markdown-it-footnote and markdown-it-mark
+/* package */ final class InlineParser {
+
+    interface Rule {
+        boolean apply(InlineState state, boolean silent);
+    }
+
+    // meta attached to footnote_ref, footnote_open and footnote_anchor tokens
+    static final class FootnoteMeta {
+        final int id;
+        final int subId;
+        final String label;
+
+        FootnoteMeta(int id, int subId, String label) {
+            this.id = id;
+            this.subId = subId;
+            this.label = label;
+        }
+    }
+
+    private static final int MAX_NESTING = 100;
+
+    private static final Rule[] RULES = {
+            InlineParser::text,
+            InlineParser::newline,
+            InlineParser::escape,
+            InlineParser::backticks,
+            (state, silent) -> delimiterPair(state, silent, '~'),
+            (state, silent) -> delimiterPair(state, silent, '='),
+            InlineParser::emphasis,
+            InlineParser::link,
+            InlineParser::image,
+            InlineParser::footnoteInline,
+            InlineParser::footnoteRef,
+            InlineParser::autolink,
+            InlineParser::htmlInline,
+            InlineParser::entity,
+    };
+
+    private static final String ESCAPABLE = "\\!\"#$%&'()*+,./:;<=>?@[]^_`{|}~-";
+
+    private static final Pattern EMAIL_AUTOLINK = Pattern.compile(
+            "^<([a-zA-Z0-9.!#$%&'*+/=?^_`{|}~-]+@[a-zA-Z0-9](?:[a-zA-Z0-9-]{0,61}[a-zA-Z0-9])?"
+                    + "(?:\\.[a-zA-Z0-9](?:[a-zA-Z0-9-]{0,61}[a-zA-Z0-9])?)*)>");
+    private static final Pattern AUTOLINK = Pattern.compile(
+            "^<([a-zA-Z][a-zA-Z0-9+.\\-]{1,31}):([^<>\\x00-\\x20]*)>");
+
+    private static final Pattern DIGITAL_ENTITY = Pattern.compile(
+            "^&#((?:x[a-f0-9]{1,8}|[0-9]{1,8}));", Pattern.CASE_INSENSITIVE);
+    private static final Pattern NAMED_ENTITY = Pattern.compile(
+            "^&([a-z][a-z0-9]{1,31});", Pattern.CASE_INSENSITIVE);
+
+    private InlineParser() {}
+
+    // parse input string into tokens, including post-processing
+    static void parse(String src, Env env, List<Token> outTokens) {
+        InlineState state = new InlineState(src, env, outTokens);
+
+        tokenize(state);
+
+        balancePairs(state);
+        delimiterPairPostProcess(state, '~', "s", "~~");
+        delimiterPairPostProcess(state, '=', "mark", "==");
+        emphasisPostProcess(state);
+        textCollapse(state);
+    }
+
+    // generate tokens for input range
+    static void tokenize(InlineState state) {
+        int end = state.posMax;
+
+        while (state.pos < end) {
+            // try all possible rules; on success, rule should:
+            // - update `state.pos`
+            // - update `state.tokens`
+            // - return true
+            boolean ok = false;
+            if (state.level < MAX_NESTING) {
+                for (Rule rule : RULES) {
+                    ok = rule.apply(state, false);
+                    if (ok) { break; }
+                }
+            }
+
+            if (ok) {
+                if (state.pos >= end) { break; }
+                continue;
+            }
+
+            state.pending.append(state.src.charAt(state.pos++));
+        }
+
+        if (state.pending.length() > 0) {
+            state.pushPending();
+        }
+    }
+
+    // skip single token by running all rules in validation mode; returns true if any rule reported
+    // success
+    static void skipToken(InlineState state) {
+        int pos = state.pos;
+        Integer cached = state.cache.get(pos);
+        if (cached != null) {
+            state.pos = cached;
+            return;
+        }
+
+        boolean ok = false;
+        if (state.level < MAX_NESTING) {
+            for (Rule rule : RULES) {
+                // increment state.level and decrement it later to limit recursion; it's harmless
+                // to do here, because no tokens are created; but ideally, we'd need a separate
+                // private state variable for this purpose
+                ++state.level;
+                ok = rule.apply(state, true);
+                --state.level;
+
+                if (ok) { break; }
+            }
+        } else {
+            // too much nesting, just skip until the end of the paragraph
+            state.pos = state.posMax;
+        }
+
+        if (! ok) { ++state.pos; }
+        state.cache.put(pos, state.pos);
+    }
+
+
+    // skip text characters for text token, place those to pending buffer and increment current pos
+
+    // rule to skip pure text; '{}$%@~+=:' reserved for extentions
+    private static boolean isTerminatorChar(int ch) {
+        switch (ch) {
+            case 0x0A/* \n */: case 0x21/* ! */: case 0x23/* # */: case 0x24/* $ */:
+            case 0x25/* % */: case 0x26/* & */: case 0x2A/* * */: case 0x2B/* + */:
+            case 0x2D/* - */: case 0x3A/* : */: case 0x3C/* < */: case 0x3D/* = */:
+            case 0x3E/* > */: case 0x40/* @ */: case 0x5B/* [ */: case 0x5C/* \ */:
+            case 0x5D/* ] */: case 0x5E/* ^ */: case 0x5F/* _ */: case 0x60/* ` */:
+            case 0x7B/* { */: case 0x7D/* } */: case 0x7E/* ~ */:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean text(InlineState state, boolean silent) {
+        int pos = state.pos;
+
+        while (pos < state.posMax && ! isTerminatorChar(state.src.charAt(pos))) {
+            ++pos;
+        }
+
+        if (pos == state.pos) { return false; }
+
+        if (! silent) { state.pending.append(state.src, state.pos, pos); }
+
+        state.pos = pos;
+
+        return true;
+    }
+
+
+    // proceess '\n'
+
+    private static boolean newline(InlineState state, boolean silent) {
+        int pos = state.pos;
+
+        if (state.charCodeAt(pos) != 0x0A) { return false; }
+
+        int pmax = state.pending.length() - 1;
+        int max = state.posMax;
+
+        // '  \n' -> hardbreak; lookup in pending chars is bad practice! don't copy to other rules;
+        // pending string is stored in concat mode, indexed lookups will cause convertion to flat mode
+        if (! silent) {
+            if (pmax >= 0 && state.pending.charAt(pmax) == 0x20) {
+                if (pmax >= 1 && state.pending.charAt(pmax - 1) == 0x20) {
+                    int end = pmax;
+                    while (end >= 0 && state.pending.charAt(end) == 0x20) { --end; }
+                    state.pending.setLength(end + 1);
+                    state.push("hardbreak", "br", 0);
+                } else {
+                    state.pending.setLength(pmax);
+                    state.push("softbreak", "br", 0);
+                }
+            } else {
+                state.push("softbreak", "br", 0);
+            }
+        }
+
+        ++pos;
+
+        // skip heading spaces for next line
+        while (pos < max && isSpace(state.src.charAt(pos))) { ++pos; }
+
+        state.pos = pos;
+        return true;
+    }
+
+
+    // process escaped chars and hardbreaks
+
+    private static boolean escape(InlineState state, boolean silent) {
+        int pos = state.pos;
+        int max = state.posMax;
+
+        if (state.charCodeAt(pos) != '\\') { return false; }
+
+        ++pos;
+
+        if (pos < max) {
+            int ch = state.src.charAt(pos);
+
+            if (ch < 256 && ESCAPABLE.indexOf(ch) >= 0) {
+                if (! silent) { state.pending.append((char) ch); }
+                state.pos += 2;
+                return true;
+            }
+
+            if (ch == 0x0A) {
+                if (! silent) {
+                    state.push("hardbreak", "br", 0);
+                }
+
+                ++pos;
+                // skip leading whitespaces from next line
+                while (pos < max) {
+                    ch = state.src.charAt(pos);
+                    if (! isSpace(ch)) { break; }
+                    ++pos;
+                }
+
+                state.pos = pos;
+                return true;
+            }
+        }
+
+        if (! silent) { state.pending.append('\\'); }
+        ++state.pos;
+        return true;
+    }
+
+
+    // parse backticks
+
+    private static boolean backticks(InlineState state, boolean silent) {
+        int pos = state.pos;
+        int ch = state.charCodeAt(pos);
+
+        if (ch != 0x60/* ` */) { return false; }
+
+        int start = pos;
+        ++pos;
+        int max = state.posMax;
+
+        while (pos < max && state.src.charAt(pos) == 0x60/* ` */) { ++pos; }
+
+        String marker = state.src.substring(start, pos);
+
+        int matchStart, matchEnd = pos;
+
+        while ((matchStart = state.src.indexOf('`', matchEnd)) != -1) {
+            matchEnd = matchStart + 1;
+
+            while (matchEnd < max && state.src.charAt(matchEnd) == 0x60/* ` */) { ++matchEnd; }
+
+            if (matchEnd - matchStart == marker.length()) {
+                if (! silent) {
+                    Token token = state.push("code_inline", "code", 0);
+                    token.markup = marker;
+                    token.content = MarkdownUtils.trim(state.src.substring(pos, matchStart)
+                            .replaceAll("[ \n]+", " "));
+                }
+                state.pos = matchEnd;
+                return true;
+            }
+        }
+
+        if (! silent) { state.pending.append(marker); }
+        state.pos += marker.length();
+        return true;
+    }
+
+
+    // ~~strike through~~ and ==marked text==
+
+    private static boolean delimiterPair(InlineState state, boolean silent, int marker) {
+        int start = state.pos;
+
+        if (silent) { return false; }
+
+        if (state.charCodeAt(start) != marker) { return false; }
+
+        InlineState.DelimiterRun scanned = state.scanDelims(state.pos, true);
+        int len = scanned.length;
+        String ch = String.valueOf((char) marker);
+
+        if (len < 2) { return false; }
+
+        Token token;
+        if (len % 2 == 1) {
+            token = state.push("text", "", 0);
+            token.content = ch;
+            --len;
+        }
+
+        for (int i = 0; i < len; i += 2) {
+            token = state.push("text", "", 0);
+            token.content = ch + ch;
+
+            InlineState.Delimiter delim = new InlineState.Delimiter();
+            delim.marker = marker;
+            delim.jump = i;
+            delim.token = state.tokens.size() - 1;
+            delim.level = state.level;
+            delim.end = -1;
+            delim.open = scanned.canOpen;
+            delim.close = scanned.canClose;
+            state.delimiters.add(delim);
+        }
+
+        state.pos += scanned.length;
+
+        return true;
+    }
+
+    // walk through delimiter list and replace text tokens with tags
+    private static void delimiterPairPostProcess(InlineState state, int marker, String tag, String markup) {
+        List<Integer> loneMarkers = new ArrayList<>();
+        List<InlineState.Delimiter> delimiters = state.delimiters;
+        String openType = tag + "_open";
+        String closeType = tag + "_close";
+        String lone = String.valueOf((char) marker);
+
+        for (int i = 0, max = delimiters.size(); i < max; ++i) {
+            InlineState.Delimiter startDelim = delimiters.get(i);
+
+            if (startDelim.marker != marker) { continue; }
+
+            if (startDelim.end == -1) { continue; }
+
+            InlineState.Delimiter endDelim = delimiters.get(startDelim.end);
+
+            Token token = state.tokens.get(startDelim.token);
+            token.type = openType;
+            token.tag = tag;
+            token.nesting = 1;
+            token.markup = markup;
+            token.content = "";
+
+            token = state.tokens.get(endDelim.token);
+            token.type = closeType;
+            token.tag = tag;
+            token.nesting = -1;
+            token.markup = markup;
+            token.content = "";
+
+            Token before = state.tokens.get(endDelim.token - 1);
+            if (before.type.equals("text") && before.content.equals(lone)) {
+                loneMarkers.add(endDelim.token - 1);
+            }
+        }
+
+        // if a marker sequence has an odd number of characters, it's splitted like this:
+        // `~~~~~` -> `~` + `~~` + `~~`, leaving one marker at the start of the sequence; so, we
+        // have to move all those markers after subsequent s_close tags
+        while (! loneMarkers.isEmpty()) {
+            int i = loneMarkers.remove(loneMarkers.size() - 1);
+            int j = i + 1;
+
+            while (j < state.tokens.size() && state.tokens.get(j).type.equals(closeType)) {
+                ++j;
+            }
+
+            --j;
+
+            if (i != j) {
+                Token token = state.tokens.get(j);
+                state.tokens.set(j, state.tokens.get(i));
+                state.tokens.set(i, token);
+            }
+        }
+    }
+
+
+    // process *this* and _that_
+
+    private static boolean emphasis(InlineState state, boolean silent) {
+        int start = state.pos;
+        int marker = state.charCodeAt(start);
+
+        if (silent) { return false; }
+
+        if (marker != 0x5F/* _ */ && marker != 0x2A/* * */) { return false; }
+
+        InlineState.DelimiterRun scanned = state.scanDelims(state.pos, marker == 0x2A);
+
+        for (int i = 0; i < scanned.length; ++i) {
+            Token token = state.push("text", "", 0);
+            token.content = String.valueOf((char) marker);
+
+            InlineState.Delimiter delim = new InlineState.Delimiter();
+            // char code of the starting marker (number)
+            delim.marker = marker;
+            // total length of these series of delimiters
+            delim.length = scanned.length;
+            // an amount of characters before this one that's equivalent to current one; in plain
+            // English: if this delimiter does not open an emphasis, neither do previous `jump`
+            // characters; used to skip sequences like "*****" in one step, for 1st asterisk value
+            // will be 0, for 2nd it's 1 and so on
+            delim.jump = i;
+            // a position of the token this delimiter corresponds to
+            delim.token = state.tokens.size() - 1;
+            // token state.level when the delimiter was created (used to avoid matching delimiters
+            // from different inline elements)
+            delim.level = state.level;
+            // if this delimiter is matched as a valid opener, `end` will be equal to its position,
+            // otherwise it's `-1`
+            delim.end = -1;
+            // boolean flags that determine if this delimiter could open or close an emphasis
+            delim.open = scanned.canOpen;
+            delim.close = scanned.canClose;
+            state.delimiters.add(delim);
+        }
+
+        state.pos += scanned.length;
+
+        return true;
+    }
+
+    // walk through delimiter list and replace text tokens with tags
+    private static void emphasisPostProcess(InlineState state) {
+        List<InlineState.Delimiter> delimiters = state.delimiters;
+
+        for (int i = delimiters.size() - 1; i >= 0; --i) {
+            InlineState.Delimiter startDelim = delimiters.get(i);
+
+            if (startDelim.marker != 0x5F/* _ */ && startDelim.marker != 0x2A/* * */) { continue; }
+
+            // process only opening markers
+            if (startDelim.end == -1) { continue; }
+
+            InlineState.Delimiter endDelim = delimiters.get(startDelim.end);
+
+            // if the next delimiter has the same marker and is adjacent to this one, merge those
+            // into one strong delimiter: `<em><em>whatever</em></em>` -> `<strong>whatever</strong>`
+            boolean isStrong = i > 0
+                    && delimiters.get(i - 1).end == startDelim.end + 1
+                    && delimiters.get(i - 1).token == startDelim.token - 1
+                    && delimiters.get(startDelim.end + 1).token == endDelim.token + 1
+                    && delimiters.get(i - 1).marker == startDelim.marker;
+
+            String ch = String.valueOf((char) startDelim.marker);
+
+            Token token = state.tokens.get(startDelim.token);
+            token.type = isStrong ? "strong_open" : "em_open";
+            token.tag = isStrong ? "strong" : "em";
+            token.nesting = 1;
+            token.markup = isStrong ? ch + ch : ch;
+            token.content = "";
+
+            token = state.tokens.get(endDelim.token);
+            token.type = isStrong ? "strong_close" : "em_close";
+            token.tag = isStrong ? "strong" : "em";
+            token.nesting = -1;
+            token.markup = isStrong ? ch + ch : ch;
+            token.content = "";
+
+            if (isStrong) {
+                state.tokens.get(delimiters.get(i - 1).token).content = "";
+                state.tokens.get(delimiters.get(startDelim.end + 1).token).content = "";
+                --i;
+            }
+        }
+    }
+
+
+    // process [link](<to> "stuff")
+
+    private static boolean link(InlineState state, boolean silent) {
+        String href = "";
+        String title = "";
+        int oldPos = state.pos;
+        int max = state.posMax;
+        int start;
+        boolean parseReference = true;
+
+        if (state.charCodeAt(state.pos) != 0x5B/* [ */) { return false; }
+
+        int labelStart = state.pos + 1;
+        int labelEnd = LinkHelpers.parseLinkLabel(state, state.pos, true);
+
+        // parser failed to find ']', so it's not a valid link
+        if (labelEnd < 0) { return false; }
+
+        int pos = labelEnd + 1;
+        if (pos < max && state.src.charAt(pos) == 0x28/* ( */) {
+            // inline link
+
+            // might have found a valid shortcut link, disable reference parsing
+            parseReference = false;
+
+            // [link](  <href>  "title"  )
+            //        ^^ skipping these spaces
+            ++pos;
+            for (; pos < max; ++pos) {
+                int code = state.src.charAt(pos);
+                if (! isSpace(code) && code != 0x0A) { break; }
+            }
+            if (pos >= max) { return false; }
+
+            // [link](  <href>  "title"  )
+            //          ^^^^^^ parsing link destination
+            LinkHelpers.Result res = LinkHelpers.parseLinkDestination(state.src, pos, state.posMax);
+            if (res.ok) {
+                href = LinkHelpers.normalizeLink(res.str);
+                if (LinkHelpers.validateLink(href)) {
+                    pos = res.pos;
+                } else {
+                    href = "";
+                }
+            }
+
+            // [link](  <href>  "title"  )
+            //                ^^ skipping these spaces
+            start = pos;
+            for (; pos < max; ++pos) {
+                int code = state.src.charAt(pos);
+                if (! isSpace(code) && code != 0x0A) { break; }
+            }
+
+            // [link](  <href>  "title"  )
+            //                  ^^^^^^^ parsing link title
+            res = LinkHelpers.parseLinkTitle(state.src, pos, state.posMax);
+            if (pos < max && start != pos && res.ok) {
+                title = res.str;
+                pos = res.pos;
+
+                // [link](  <href>  "title"  )
+                //                         ^^ skipping these spaces
+                for (; pos < max; ++pos) {
+                    int code = state.src.charAt(pos);
+                    if (! isSpace(code) && code != 0x0A) { break; }
+                }
+            } else {
+                title = "";
+            }
+
+            if (pos >= max || state.src.charAt(pos) != 0x29/* ) */) {
+                // parsing a valid shortcut link failed, fallback to reference
+                parseReference = true;
+            }
+            ++pos;
+        }
+
+        if (parseReference) {
+            // link reference
+            if (state.env.references == null) { return false; }
+
+            String label = null;
+            if (pos < max && state.src.charAt(pos) == 0x5B/* [ */) {
+                start = pos + 1;
+                pos = LinkHelpers.parseLinkLabel(state, pos, false);
+                if (pos >= 0) {
+                    label = state.src.substring(start, pos++);
+                } else {
+                    pos = labelEnd + 1;
+                }
+            } else {
+                pos = labelEnd + 1;
+            }
+
+            // covers label === '' and label === undefined (collapsed reference link and shortcut
+            // reference link respectively)
+            if (label == null || label.isEmpty()) { label = state.src.substring(labelStart, labelEnd); }
+
+            Env.Reference ref = state.env.references.get(normalizeReference(label));
+            if (ref == null) {
+                state.pos = oldPos;
+                return false;
+            }
+            href = ref.href;
+            title = ref.title;
+        }
+
+        // we found the end of the link, and know for a fact it's a valid link; so all that's left
+        // to do is to call tokenizer
+        if (! silent) {
+            state.pos = labelStart;
+            state.posMax = labelEnd;
+
+            Token token = state.push("link_open", "a", 1);
+            token.attrPush("href", href);
+            if (! title.isEmpty()) {
+                token.attrPush("title", title);
+            }
+
+            tokenize(state);
+
+            state.push("link_close", "a", -1);
+        }
+
+        state.pos = pos;
+        state.posMax = max;
+        return true;
+    }
+
+
+    // process ![image](<src> "title")
+
+    private static boolean image(InlineState state, boolean silent) {
+        String href = "";
+        String title;
+        int oldPos = state.pos;
+        int max = state.posMax;
+        int start;
+
+        if (state.charCodeAt(state.pos) != 0x21/* ! */) { return false; }
+        if (state.charCodeAt(state.pos + 1) != 0x5B/* [ */) { return false; }
+
+        int labelStart = state.pos + 2;
+        int labelEnd = LinkHelpers.parseLinkLabel(state, state.pos + 1, false);
+
+        // parser failed to find ']', so it's not a valid link
+        if (labelEnd < 0) { return false; }
+
+        int pos = labelEnd + 1;
+        if (pos < max && state.src.charAt(pos) == 0x28/* ( */) {
+            // inline link
+
+            // [link](  <href>  "title"  )
+            //        ^^ skipping these spaces
+            ++pos;
+            for (; pos < max; ++pos) {
+                int code = state.src.charAt(pos);
+                if (! isSpace(code) && code != 0x0A) { break; }
+            }
+            if (pos >= max) { return false; }
+
+            // [link](  <href>  "title"  )
+            //          ^^^^^^ parsing link destination
+            LinkHelpers.Result res = LinkHelpers.parseLinkDestination(state.src, pos, state.posMax);
+            if (res.ok) {
+                href = LinkHelpers.normalizeLink(res.str);
+                if (LinkHelpers.validateLink(href)) {
+                    pos = res.pos;
+                } else {
+                    href = "";
+                }
+            }
+
+            // [link](  <href>  "title"  )
+            //                ^^ skipping these spaces
+            start = pos;
+            for (; pos < max; ++pos) {
+                int code = state.src.charAt(pos);
+                if (! isSpace(code) && code != 0x0A) { break; }
+            }
+
+            // [link](  <href>  "title"  )
+            //                  ^^^^^^^ parsing link title
+            res = LinkHelpers.parseLinkTitle(state.src, pos, state.posMax);
+            if (pos < max && start != pos && res.ok) {
+                title = res.str;
+                pos = res.pos;
+
+                // [link](  <href>  "title"  )
+                //                         ^^ skipping these spaces
+                for (; pos < max; ++pos) {
+                    int code = state.src.charAt(pos);
+                    if (! isSpace(code) && code != 0x0A) { break; }
+                }
+            } else {
+                title = "";
+            }
+
+            if (pos >= max || state.src.charAt(pos) != 0x29/* ) */) {
+                state.pos = oldPos;
+                return false;
+            }
+            ++pos;
+        } else {
+            // link reference
+            if (state.env.references == null) { return false; }
+
+            String label = null;
+            if (pos < max && state.src.charAt(pos) == 0x5B/* [ */) {
+                start = pos + 1;
+                pos = LinkHelpers.parseLinkLabel(state, pos, false);
+                if (pos >= 0) {
+                    label = state.src.substring(start, pos++);
+                } else {
+                    pos = labelEnd + 1;
+                }
+            } else {
+                pos = labelEnd + 1;
+            }
+
+            // covers label === '' and label === undefined (collapsed reference link and shortcut
+            // reference link respectively)
+            if (label == null || label.isEmpty()) { label = state.src.substring(labelStart, labelEnd); }
+
+            Env.Reference ref = state.env.references.get(normalizeReference(label));
+            if (ref == null) {
+                state.pos = oldPos;
+                return false;
+            }
+            href = ref.href;
+            title = ref.title;
+        }
+
+        // we found the end of the link, and know for a fact it's a valid link; so all that's left
+        // to do is to call tokenizer
+        if (! silent) {
+            String content = state.src.substring(labelStart, labelEnd);
+
+            List<Token> tokens = new ArrayList<>();
+            parse(content, state.env, tokens);
+
+            Token token = state.push("image", "img", 0);
+            token.attrPush("src", href);
+            token.attrPush("alt", "");
+            token.children = tokens;
+            token.content = content;
+
+            if (! title.isEmpty()) {
+                token.attrPush("title", title);
+            }
+        }
+
+        state.pos = pos;
+        state.posMax = max;
+        return true;
+    }
+
+
+    // process inline footnotes (^[...])
+
+    private static boolean footnoteInline(InlineState state, boolean silent) {
+        int max = state.posMax;
+        int start = state.pos;
+
+        if (start + 2 >= max) { return false; }
+        if (state.src.charAt(start) != '^') { return false; }
+        if (state.src.charAt(start + 1) != '[') { return false; }
+
+        int labelStart = start + 2;
+        int labelEnd = LinkHelpers.parseLinkLabel(state, start + 1, false);
+
+        // parser failed to find ']', so it's not a valid note
+        if (labelEnd < 0) { return false; }
+
+        // we found the end of the link, and know for a fact it's a valid link; so all that's left
+        // to do is to call tokenizer
+        if (! silent) {
+            List<Env.Footnote> list = state.env.getFootnoteList();
+            int footnoteId = list.size();
+
+            List<Token> tokens = new ArrayList<>();
+            parse(state.src.substring(labelStart, labelEnd), state.env, tokens);
+
+            Token token = state.push("footnote_ref", "", 0);
+            token.meta = new FootnoteMeta(footnoteId, 0, null);
+
+            Env.Footnote footnote = new Env.Footnote();
+            footnote.tokens = tokens;
+            // a nested inline footnote will have taken this id already, and markdown-it-footnote
+            // overwrites it in that case
+            if (footnoteId < list.size()) {
+                list.set(footnoteId, footnote);
+            } else {
+                list.add(footnote);
+            }
+        }
+
+        state.pos = labelEnd + 1;
+        state.posMax = max;
+        return true;
+    }
+
+    // process footnote references ([^...])
+
+    private static boolean footnoteRef(InlineState state, boolean silent) {
+        int max = state.posMax;
+        int start = state.pos;
+
+        // should be at least 4 chars - "[^x]"
+        if (start + 3 > max) { return false; }
+
+        Map<String, Integer> refs = state.env.footnoteRefs;
+        if (refs == null) { return false; }
+        if (state.src.charAt(start) != '[') { return false; }
+        if (state.src.charAt(start + 1) != '^') { return false; }
+
+        int pos;
+        for (pos = start + 2; pos < max; ++pos) {
+            if (state.src.charAt(pos) == ' ') { return false; }
+            if (state.src.charAt(pos) == '\n') { return false; }
+            if (state.src.charAt(pos) == ']') {
+                break;
+            }
+        }
+
+        if (pos == start + 2) { return false; } // no empty footnote labels
+        if (pos >= max) { return false; }
+        ++pos;
+
+        String label = state.src.substring(start + 2, pos - 1);
+        Integer footnoteId = refs.get(label);
+        if (footnoteId == null) { return false; }
+
+        if (! silent) {
+            List<Env.Footnote> list = state.env.getFootnoteList();
+
+            if (footnoteId < 0) {
+                footnoteId = list.size();
+                Env.Footnote footnote = new Env.Footnote();
+                footnote.label = label;
+                footnote.count = 0;
+                list.add(footnote);
+                refs.put(label, footnoteId);
+            }
+
+            int footnoteSubId = list.get(footnoteId).count;
+            list.get(footnoteId).count++;
+
+            Token token = state.push("footnote_ref", "", 0);
+            token.meta = new FootnoteMeta(footnoteId, footnoteSubId, label);
+        }
+
+        state.pos = pos;
+        state.posMax = max;
+        return true;
+    }
+
+
+    // process autolinks '<protocol:...>'
+
+    private static boolean autolink(InlineState state, boolean silent) {
+        int pos = state.pos;
+
+        if (state.charCodeAt(pos) != 0x3C/* < */) { return false; }
+
+        if (state.src.indexOf('>', pos) < 0) { return false; }
+
+        Matcher linkMatch = AUTOLINK.matcher(state.src).region(pos, state.src.length());
+        if (linkMatch.find()) {
+            String url = linkMatch.group().substring(1, linkMatch.group().length() - 1);
+            String fullUrl = LinkHelpers.normalizeLink(url);
+            if (! LinkHelpers.validateLink(fullUrl)) { return false; }
+
+            if (! silent) {
+                pushAutolink(state, fullUrl, LinkHelpers.normalizeLinkText(url));
+            }
+
+            state.pos += linkMatch.group().length();
+            return true;
+        }
+
+        Matcher emailMatch = EMAIL_AUTOLINK.matcher(state.src).region(pos, state.src.length());
+        if (emailMatch.find()) {
+            String url = emailMatch.group().substring(1, emailMatch.group().length() - 1);
+            String fullUrl = LinkHelpers.normalizeLink("mailto:" + url);
+            if (! LinkHelpers.validateLink(fullUrl)) { return false; }
+
+            if (! silent) {
+                pushAutolink(state, fullUrl, LinkHelpers.normalizeLinkText(url));
+            }
+
+            state.pos += emailMatch.group().length();
+            return true;
+        }
+
+        return false;
+    }
+
+    private static void pushAutolink(InlineState state, String href, String text) {
+        Token token = state.push("link_open", "a", 1);
+        token.attrPush("href", href);
+        token.markup = "autolink";
+        token.info = "auto";
+
+        token = state.push("text", "", 0);
+        token.content = text;
+
+        token = state.push("link_close", "a", -1);
+        token.markup = "autolink";
+        token.info = "auto";
+    }
+
+
+    // process html tags
+
+    private static boolean isLetter(int ch) {
+        int lc = ch | 0x20; // to lower case
+        return (lc >= 0x61/* a */) && (lc <= 0x7a/* z */);
+    }
+
+    private static boolean htmlInline(InlineState state, boolean silent) {
+        int pos = state.pos;
+        int max = state.posMax;
+
+        // check start
+        if (state.charCodeAt(pos) != 0x3C/* < */ || pos + 2 >= max) {
+            return false;
+        }
+
+        // quick fail on second char
+        int ch = state.src.charAt(pos + 1);
+        if (ch != 0x21/* ! */ && ch != 0x3F/* ? */ && ch != 0x2F/* / */ && ! isLetter(ch)) {
+            return false;
+        }
+
+        Matcher match = HtmlPatterns.HTML_TAG.matcher(state.src).region(pos, state.src.length());
+        if (! match.find()) { return false; }
+
+        if (! silent) {
+            Token token = state.push("html_inline", "", 0);
+            token.content = state.src.substring(pos, match.end());
+        }
+        state.pos += match.end() - pos;
+        return true;
+    }
+
+
+    // process html entity - &#123;, &#xAF;, &quot;, ...
+
+    private static boolean entity(InlineState state, boolean silent) {
+        int pos = state.pos;
+        int max = state.posMax;
+
+        if (state.charCodeAt(pos) != 0x26/* & */) { return false; }
+
+        if (pos + 1 < max) {
+            int ch = state.src.charAt(pos + 1);
+
+            if (ch == 0x23 /* # */) {
+                Matcher match = DIGITAL_ENTITY.matcher(state.src).region(pos, state.src.length());
+                if (match.find()) {
+                    if (! silent) {
+                        long code = MarkdownUtils.parseNumericEntity(match.group(1));
+                        state.pending.append(MarkdownUtils.fromCodePoint(
+                                MarkdownUtils.isValidEntityCode(code) ? (int) code : 0xFFFD));
+                    }
+                    state.pos += match.group().length();
+                    return true;
+                }
+            } else {
+                Matcher match = NAMED_ENTITY.matcher(state.src).region(pos, state.src.length());
+                if (match.find()) {
+                    String entity = MarkdownUtils.getEntities().get(match.group(1));
+                    if (entity != null) {
+                        if (! silent) { state.pending.append(entity); }
+                        state.pos += match.group().length();
+                        return true;
+                    }
+                }
+            }
+        }
+
+        if (! silent) { state.pending.append('&'); }
+        ++state.pos;
+        return true;
+    }
+
+
+    // for each opening emphasis-like marker find a matching closing one
+
+    private static void balancePairs(InlineState state) {
+        List<InlineState.Delimiter> delimiters = state.delimiters;
+        int max = delimiters.size();
+
+        for (int i = 0; i < max; ++i) {
+            InlineState.Delimiter lastDelim = delimiters.get(i);
+
+            if (! lastDelim.close) { continue; }
+
+            int j = i - lastDelim.jump - 1;
+
+            while (j >= 0) {
+                InlineState.Delimiter currDelim = delimiters.get(j);
+
+                if (currDelim.open && currDelim.marker == lastDelim.marker && currDelim.end < 0
+                        && currDelim.level == lastDelim.level) {
+
+                    // typeofs are for backward compatibility with plugins
+                    boolean oddMatch = (currDelim.close || lastDelim.open)
+                            && currDelim.length >= 0 && lastDelim.length >= 0
+                            && (currDelim.length + lastDelim.length) % 3 == 0;
+
+                    if (! oddMatch) {
+                        lastDelim.jump = i - j;
+                        lastDelim.open = false;
+                        currDelim.end = i;
+                        currDelim.jump = 0;
+                        break;
+                    }
+                }
+
+                j -= currDelim.jump + 1;
+            }
+        }
+    }
+
+
+    // merge adjacent text nodes into one, and re-calculate all token levels
+
+    private static void textCollapse(InlineState state) {
+        int level = 0;
+        List<Token> tokens = state.tokens;
+        int max = tokens.size();
+
+        int curr, last;
+        for (curr = last = 0; curr < max; ++curr) {
+            // re-calculate levels
+            level += tokens.get(curr).nesting;
+            tokens.get(curr).level = level;
+
+            if (tokens.get(curr).type.equals("text") && curr + 1 < max
+                    && tokens.get(curr + 1).type.equals("text")) {
+                // collapse two adjacent text nodes
+                tokens.get(curr + 1).content = tokens.get(curr).content + tokens.get(curr + 1).content;
+            } else {
+                if (curr != last) { tokens.set(last, tokens.get(curr)); }
+
+                ++last;
+            }
+        }
+
+        if (curr != last) {
+            tokens.subList(last, tokens.size()).clear();
+        }
+    }
+
+}
@@ -0,0 +1,150 @@
+package me.vickychijwani.spectre.markdown;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static me.vickychijwani.spectre.markdown.MarkdownUtils.isMdAsciiPunct;
+import static me.vickychijwani.spectre.markdown.MarkdownUtils.isPunctChar;
+import static me.vickychijwani.spectre.markdown.MarkdownUtils.isWhiteSpace;
+
+// parser state for a single inline token, see markdown-it's lib/rules_inline/state_inline.js
+/* package */ final class InlineState {
+
+    // an emphasis-like delimiter run (*, _, ~~ or ==), matched into pairs by balancePairs()
+    static final class Delimiter {
+        int marker;
+        // total length of the run, only for emphasis (which needs the "rule of 3")
+        int length = -1;
+        // the position of this delimiter within its run
+        int jump;
+        // the index of the text token holding this delimiter
+        int token;
+        int level;
+        // the index of the matching closing delimiter, or -1
+        int end = -1;
+        boolean open;
+        boolean close;
+    }
+
+    static final class DelimiterRun {
+        final boolean canOpen;
+        final boolean canClose;
+        final int length;
+
+        DelimiterRun(boolean canOpen, boolean canClose, int length) {
+            this.canOpen = canOpen;
+            this.canClose = canClose;
+            this.length = length;
+        }
+    }
+
+    final String src;
+    final Env env;
+    final List<Token> tokens;
+
+    int pos = 0;
+    int posMax;
+    int level = 0;
+    StringBuilder pending = new StringBuilder();
+    int pendingLevel = 0;
+
+    // stores { start: end } pairs, useful for backtracking optimization of pairs parsing
+    final Map<Integer, Integer> cache = new HashMap<>();
+
+    final List<Delimiter> delimiters = new ArrayList<>();
+
+    InlineState(String src, Env env, List<Token> tokens) {
+        this.src = src;
+        this.env = env;
+        this.tokens = tokens;
+        this.posMax = src.length();
+    }
+
+    // like JavaScript's charCodeAt, returns -1 (instead of NaN) if the position is out of bounds
+    int charCodeAt(int pos) {
+        return (pos >= 0 && pos < src.length()) ? src.charAt(pos) : -1;
+    }
+
+    // flush pending text
+    Token pushPending() {
+        Token token = new Token("text", "", 0);
+        token.content = pending.toString();
+        token.level = pendingLevel;
+        tokens.add(token);
+        pending.setLength(0);
+        return token;
+    }
+
+    // push new token to "stream"; if pending text exists, flush it as a text token
+    Token push(String type, String tag, int nesting) {
+        if (pending.length() > 0) {
+            pushPending();
+        }
+
+        Token token = new Token(type, tag, nesting);
+
+        if (nesting < 0) { --level; }
+        token.level = level;
+        if (nesting > 0) { ++level; }
+
+        pendingLevel = level;
+        tokens.add(token);
+        return token;
+    }
+
+    // scan a sequence of emphasis-like markers, and determine whether it can start an emphasis
+    // sequence or end an emphasis sequence
+    DelimiterRun scanDelims(int start, boolean canSplitWord) {
+        int pos = start;
+        boolean leftFlanking = true;
+        boolean rightFlanking = true;
+        int max = posMax;
+        int marker = src.charAt(start);
+
+        // treat beginning of the line as a whitespace
+        int lastChar = (start > 0) ? src.charAt(start - 1) : 0x20;
+
+        while (pos < max && src.charAt(pos) == marker) { ++pos; }
+
+        int count = pos - start;
+
+        // treat end of the line as a whitespace
+        int nextChar = (pos < max) ? src.charAt(pos) : 0x20;
+
+        boolean isLastPunctChar = isMdAsciiPunct(lastChar) || isPunctChar((char) lastChar);
+        boolean isNextPunctChar = isMdAsciiPunct(nextChar) || isPunctChar((char) nextChar);
+
+        boolean isLastWhiteSpace = isWhiteSpace(lastChar);
+        boolean isNextWhiteSpace = isWhiteSpace(nextChar);
+
+        if (isNextWhiteSpace) {
+            leftFlanking = false;
+        } else if (isNextPunctChar) {
+            if (! (isLastWhiteSpace || isLastPunctChar)) {
+                leftFlanking = false;
+            }
+        }
+
+        if (isLastWhiteSpace) {
+            rightFlanking = false;
+        } else if (isLastPunctChar) {
+            if (! (isNextWhiteSpace || isNextPunctChar)) {
+                rightFlanking = false;
+            }
+        }
+
+        boolean canOpen, canClose;
+        if (! canSplitWord) {
+            canOpen = leftFlanking && (! rightFlanking || isLastPunctChar);
+            canClose = rightFlanking && (! leftFlanking || isNextPunctChar);
+        } else {
+            canOpen = leftFlanking;
+            canClose = rightFlanking;
+        }
+
+        return new DelimiterRun(canOpen, canClose, count);
+    }
+
+}
@@ -0,0 +1,195 @@
+package me.vickychijwani.spectre.markdown;
+
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+import static me.vickychijwani.spectre.markdown.MarkdownUtils.isSpace;
+import static me.vickychijwani.spectre.markdown.MarkdownUtils.unescapeAll;
+
+// link parsing and URL sanitization shared by the block and inline parsers, see markdown-it's
+// lib/helpers/ and the validateLink / normalizeLink functions in lib/index.js
+/* package */ final class LinkHelpers {
+
+    // this validator can prohibit more than really needed to prevent XSS; it's a tradeoff to keep
+    // code simple and to be secure by default
+    private static final Pattern BAD_PROTO = Pattern.compile("^(vbscript|javascript|file|data):");
+    private static final Pattern GOOD_DATA = Pattern.compile("^data:image/(gif|png|jpeg|webp);");
+
+    static final class Result {
+        boolean ok = false;
+        int pos = 0;
+        int lines = 0;
+        String str = "";
+    }
+
+    private LinkHelpers() {}
+
+    static boolean validateLink(String url) {
+        // url should be normalized at this point, and existing entities are decoded
+        String str = MarkdownUtils.trim(url).toLowerCase(Locale.ROOT);
+        return ! BAD_PROTO.matcher(str).find() || GOOD_DATA.matcher(str).find();
+    }
+
+    static String normalizeLink(String url) {
+        Urls.Url parsed = Urls.parse(url);
+        Urls.convertHostname(parsed, true);
+        return Urls.encode(Urls.format(parsed));
+    }
+
+    static String normalizeLinkText(String url) {
+        Urls.Url parsed = Urls.parse(url);
+        Urls.convertHostname(parsed, false);
+        return Urls.decode(Urls.format(parsed));
+    }
+
+    /**
+     * Parses a link label: given the position of the opening "[", returns the position of the
+     * matching "]" or -1 if there isn't one.
+     */
+    static int parseLinkLabel(InlineState state, int start, boolean disableNested) {
+        int labelEnd = -1;
+        int max = state.posMax;
+        int oldPos = state.pos;
+        boolean found = false;
+
+        state.pos = start + 1;
+        int level = 1;
+
+        while (state.pos < max) {
+            int marker = state.src.charAt(state.pos);
+            if (marker == ']') {
+                --level;
+                if (level == 0) {
+                    found = true;
+                    break;
+                }
+            }
+
+            int prevPos = state.pos;
+            InlineParser.skipToken(state);
+            if (marker == '[') {
+                if (prevPos == state.pos - 1) {
+                    // increase level if we find text `[`, which is not a part of any token
+                    ++level;
+                } else if (disableNested) {
+                    state.pos = oldPos;
+                    return -1;
+                }
+            }
+        }
+
+        if (found) {
+            labelEnd = state.pos;
+        }
+
+        // restore old state
+        state.pos = oldPos;
+
+        return labelEnd;
+    }
+
+    static Result parseLinkDestination(String str, int pos, int max) {
+        int start = pos;
+        Result result = new Result();
+
+        if (pos < max && str.charAt(pos) == '<') {
+            ++pos;
+            while (pos < max) {
+                int code = str.charAt(pos);
+                if (code == '\n' || isSpace(code)) { return result; }
+                if (code == '>') {
+                    result.pos = pos + 1;
+                    result.str = unescapeAll(str.substring(start + 1, pos));
+                    result.ok = true;
+                    return result;
+                }
+                if (code == '\\' && pos + 1 < max) {
+                    pos += 2;
+                    continue;
+                }
+
+                ++pos;
+            }
+
+            // no closing '>'
+            return result;
+        }
+
+        // this should be ... } else { ... branch
+
+        int level = 0;
+        while (pos < max) {
+            int code = str.charAt(pos);
+
+            if (code == 0x20) { break; }
+
+            // ascii control characters
+            if (code < 0x20 || code == 0x7F) { break; }
+
+            if (code == '\\' && pos + 1 < max) {
+                pos += 2;
+                continue;
+            }
+
+            if (code == '(') {
+                ++level;
+            }
+
+            if (code == ')') {
+                if (level == 0) { break; }
+                --level;
+            }
+
+            ++pos;
+        }
+
+        if (start == pos) { return result; }
+        if (level != 0) { return result; }
+
+        result.str = unescapeAll(str.substring(start, pos));
+        result.lines = 0;
+        result.pos = pos;
+        result.ok = true;
+        return result;
+    }
+
+    static Result parseLinkTitle(String str, int pos, int max) {
+        int lines = 0;
+        int start = pos;
+        Result result = new Result();
+
+        if (pos >= max) { return result; }
+
+        int marker = str.charAt(pos);
+
+        if (marker != '"' && marker != '\'' && marker != '(') { return result; }
+
+        ++pos;
+
+        // if opening marker is "(", switch it to closing marker ")"
+        if (marker == '(') { marker = ')'; }
+
+        while (pos < max) {
+            int code = str.charAt(pos);
+            if (code == marker) {
+                result.pos = pos + 1;
+                result.lines = lines;
+                result.str = unescapeAll(str.substring(start + 1, pos));
+                result.ok = true;
+                return result;
+            } else if (code == '\n') {
+                ++lines;
+            } else if (code == '\\' && pos + 1 < max) {
+                ++pos;
+                if (str.charAt(pos) == '\n') {
+                    ++lines;
+                }
+            }
+
+            ++pos;
+        }
+
+        return result;
+    }
+
+}
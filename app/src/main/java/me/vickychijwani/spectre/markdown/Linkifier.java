@@ -0,0 +1,310 @@
+package me.vickychijwani.spectre.markdown;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// turns URL-like text into links, ported from linkify-it 2.0 (which markdown-it uses) and
+// markdown-it's lib/rules_core/linkify.js; only the options used by our converter are supported,
+// i.e., links with an explicit schema and fuzzy emails, but not fuzzy links like "example.com"
+/* package */ final class Linkifier {
+
+    static final class Match {
+        String schema;
+        int index;
+        int lastIndex;
+        String text;
+        String url;
+    }
+
+    private static final int FLAGS = Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+
+    // see linkify-it's lib/re.js; JavaScript's $ is Java's \z, and Java's . already matches any
+    // code point (except line terminators, like JavaScript)
+    private static final String SRC_ANY = "[\\x{0}-\\x{10FFFF}]";
+    private static final String SRC_CC = "[\\x00-\\x1F\\x7F-\\x9F]";
+    private static final String SRC_Z = "[ \\u00A0\\u1680\\u2000-\\u200A\\u202F\\u205F\\u3000]";
+    private static final String SRC_P = "\\p{P}";
+    private static final String SRC_ZPCC = SRC_Z + "|" + SRC_P + "|" + SRC_CC;
+    private static final String SRC_ZCC = SRC_Z + "|" + SRC_CC;
+
+    private static final String SRC_PSEUDO_LETTER = "(?:(?![><\uFF5C]|" + SRC_ZPCC + ")" + SRC_ANY + ")";
+    private static final String SRC_IP4 = "(?:(25[0-5]|2[0-4][0-9]|[01]?[0-9][0-9]?)\\.){3}(25[0-5]|2[0-4][0-9]|[01]?[0-9][0-9]?)";
+    private static final String SRC_AUTH = "(?:(?:(?!" + SRC_ZCC + "|[@/\\[\\]()]).)+@)?";
+    private static final String SRC_PORT = "(?::(?:6(?:[0-4]\\d{3}|5(?:[0-4]\\d{2}|5(?:[0-2]\\d|3[0-5])))|[1-5]?\\d{1,4}))?";
+    private static final String SRC_HOST_TERMINATOR = "(?=\\z|[><\uFF5C]|" + SRC_ZPCC + ")(?!-|_|:\\d|\\.-|\\.(?!\\z|" + SRC_ZPCC + "))";
+    private static final String SRC_PATH = "(?:"
+            + "[/?#]"
+            + "(?:"
+            + "(?!" + SRC_ZCC + "|[><\uFF5C]|[()\\[\\]{}.,\"'?!\\-])."
+            + "|\\[(?:(?!" + SRC_ZCC + "|\\]).)*\\]"
+            + "|\\((?:(?!" + SRC_ZCC + "|[)]).)*\\)"
+            + "|\\{(?:(?!" + SRC_ZCC + "|[}]).)*\\}"
+            + "|\\\"(?:(?!" + SRC_ZCC + "|[\"]).)+\\\""
+            + "|\\'(?:(?!" + SRC_ZCC + "|[']).)+\\'"
+            + "|\\'(?=" + SRC_PSEUDO_LETTER + "|[-])."
+            + "|\\.{2,3}[a-zA-Z0-9%/]"
+            + "|\\.(?!" + SRC_ZCC + "|[.])."
+            + "|\\-+"
+            + "|\\,(?!" + SRC_ZCC + ")."
+            + "|\\!(?!" + SRC_ZCC + "|[!])."
+            + "|\\?(?!" + SRC_ZCC + "|[?])."
+            + ")+"
+            + "|\\/"
+            + ")?";
+    private static final String SRC_EMAIL_NAME = "[\\-;:&=\\+\\$,\\\"\\.a-zA-Z0-9_]+";
+    private static final String SRC_XN = "xn--[a-z0-9\\-]{1,59}";
+    private static final String SRC_DOMAIN_ROOT = "(?:" + SRC_XN + "|" + SRC_PSEUDO_LETTER + "{1,63})";
+    private static final String SRC_DOMAIN = "(?:" + SRC_XN + "|(?:" + SRC_PSEUDO_LETTER + ")|(?:"
+            + SRC_PSEUDO_LETTER + "(?:-(?!-)|" + SRC_PSEUDO_LETTER + "){0,61}" + SRC_PSEUDO_LETTER + "))";
+    private static final String SRC_HOST = "(?:(?:(?:(?:" + SRC_DOMAIN + ")\\.)*" + SRC_DOMAIN + "))";
+
+    private static final String SRC_TLDS = "biz|com|edu|gov|net|org|pro|web|xxx|aero|asia|coop|info|museum|name|shop|\u0440\u0444"
+            + "|a[cdefgilmnoqrstuwxz]|b[abdefghijmnorstvwyz]|c[acdfghiklmnoruvwxyz]|d[ejkmoz]|e[cegrstu]"
+            + "|f[ijkmor]|g[abdefghilmnpqrstuwy]|h[kmnrtu]|i[delmnoqrst]|j[emop]|k[eghimnprwyz]"
+            + "|l[abcikrstuvy]|m[acdeghklmnopqrstuvwxyz]|n[acefgilopruz]|om|p[aefghklmnrstwy]|qa"
+            + "|r[eosuw]|s[abcdeghijklmnortuvxyz]|t[cdfghjklmnortvwz]|u[agksyz]|v[aceginu]|w[fs]"
+            + "|y[et]|z[amw]"
+            + "|" + SRC_XN;
+
+    private static final String SRC_HOST_FUZZY = "(?:" + SRC_IP4 + "|(?:(?:(?:" + SRC_DOMAIN + ")\\.)+(?:" + SRC_TLDS + ")))";
+    private static final String SRC_HOST_FUZZY_STRICT = SRC_HOST_FUZZY + SRC_HOST_TERMINATOR;
+    private static final String SRC_HOST_STRICT = SRC_HOST + SRC_HOST_TERMINATOR;
+    private static final String SRC_HOST_PORT_STRICT = SRC_HOST + SRC_PORT + SRC_HOST_TERMINATOR;
+
+    private static final String SRC_SCHEMAS = "http:|https:|ftp:|//|mailto:";
+    private static final String SRC_SCHEMA_TEST = "(^|(?!_)(?:[><\uFF5C]|" + SRC_ZPCC + "))(" + SRC_SCHEMAS + ")";
+    private static final String SRC_HOST_FUZZY_TEST = "localhost|www\\.|\\.\\d{1,3}\\.|(?:\\.(?:" + SRC_TLDS + ")(?:" + SRC_ZPCC + "|>|\\z))";
+
+    private static final Pattern SCHEMA_SEARCH = Pattern.compile(SRC_SCHEMA_TEST, FLAGS);
+    private static final Pattern PRETEST = Pattern.compile(
+            "(" + SRC_SCHEMA_TEST + ")|(" + SRC_HOST_FUZZY_TEST + ")|@", FLAGS);
+    private static final Pattern EMAIL_FUZZY = Pattern.compile(
+            "(^|[><\uFF5C]|\\(|" + SRC_ZCC + ")(" + SRC_EMAIL_NAME + "@" + SRC_HOST_FUZZY_STRICT + ")", FLAGS);
+
+    private static final Pattern HTTP = Pattern.compile(
+            "^\\/\\/" + SRC_AUTH + SRC_HOST_PORT_STRICT + SRC_PATH, FLAGS);
+    private static final Pattern NO_HTTP = Pattern.compile(
+            "^" + SRC_AUTH + "(?:localhost|(?:(?:" + SRC_DOMAIN + ")\\.)+" + SRC_DOMAIN_ROOT + ")"
+                    + SRC_PORT + SRC_HOST_TERMINATOR + SRC_PATH, FLAGS);
+    private static final Pattern MAILTO = Pattern.compile(
+            "^" + SRC_EMAIL_NAME + "@" + SRC_HOST_STRICT, FLAGS);
+
+    private static final Pattern LINK_OPEN = Pattern.compile("^<a[>\\s]", Pattern.CASE_INSENSITIVE);
+    private static final Pattern LINK_CLOSE = Pattern.compile("^</a\\s*>", Pattern.CASE_INSENSITIVE);
+    private static final Pattern MAILTO_PREFIX = Pattern.compile("^mailto:", Pattern.CASE_INSENSITIVE);
+
+    private Linkifier() {}
+
+    // quick check whether the text can contain a link at all
+    static boolean pretest(String text) {
+        return PRETEST.matcher(text).find();
+    }
+
+    // returns the length of the link that follows the schema at pos, or 0 if there isn't one
+    private static int testSchemaAt(String text, String schema, int pos) {
+        switch (schema.toLowerCase(Locale.ROOT)) {
+            case "http:": case "https:": case "ftp:": {
+                Matcher m = HTTP.matcher(text.substring(pos));
+                return m.find() ? m.end() : 0;
+            }
+            case "//": {
+                Matcher m = NO_HTTP.matcher(text.substring(pos));
+                if (! m.find()) {
+                    return 0;
+                }
+                // should not be `://` & `///`, that protects from errors in protocol name
+                if (pos >= 3 && (text.charAt(pos - 3) == ':' || text.charAt(pos - 3) == '/')) {
+                    return 0;
+                }
+                return m.end();
+            }
+            case "mailto:": {
+                Matcher m = MAILTO.matcher(text.substring(pos));
+                return m.find() ? m.end() : 0;
+            }
+            default:
+                return 0;
+        }
+    }
+
+    // finds the first link in text, or returns null if there is none
+    private static Match test(String text) {
+        if (text.isEmpty()) {
+            return null;
+        }
+
+        String schema = "";
+        int index = -1;
+        int lastIndex = -1;
+
+        // try to scan for link with schema - that's the most simple rule
+        Matcher search = SCHEMA_SEARCH.matcher(text);
+        while (search.find()) {
+            int len = testSchemaAt(text, search.group(2), search.end());
+            if (len > 0) {
+                schema = search.group(2);
+                index = search.start() + search.group(1).length();
+                lastIndex = search.end() + len;
+                break;
+            }
+        }
+
+        if (text.indexOf('@') >= 0) {
+            // we can't skip this check, because this cases are possible: 192.168.1.1@gmail.com,
+            // my.in@example.com
+            Matcher email = EMAIL_FUZZY.matcher(text);
+            if (email.find()) {
+                int shift = email.start() + email.group(1).length();
+                int next = email.end();
+
+                if (index < 0 || shift < index || (shift == index && next > lastIndex)) {
+                    schema = "mailto:";
+                    index = shift;
+                    lastIndex = next;
+                }
+            }
+        }
+
+        if (index < 0) {
+            return null;
+        }
+
+        Match match = new Match();
+        match.schema = schema.toLowerCase(Locale.ROOT);
+        match.index = index;
+        match.lastIndex = lastIndex;
+        match.text = match.url = text.substring(index, lastIndex);
+        if (match.schema.equals("mailto:") && ! MAILTO_PREFIX.matcher(match.url).find()) {
+            match.url = "mailto:" + match.url;
+        }
+        return match;
+    }
+
+    // returns all links in text, with index / lastIndex relative to the start of text
+    static List<Match> match(String text) {
+        List<Match> result = new ArrayList<>();
+        int shift = 0;
+        String tail = text;
+        Match match;
+        while ((match = test(tail)) != null) {
+            tail = tail.substring(match.lastIndex);
+            match.index += shift;
+            match.lastIndex += shift;
+            shift = match.lastIndex;
+            result.add(match);
+        }
+        return result;
+    }
+
+    // core rule: replace links in text tokens with link tokens
+    static void linkify(List<Token> blockTokens) {
+        for (Token blockToken : blockTokens) {
+            if (! blockToken.type.equals("inline") || ! pretest(blockToken.content)) {
+                continue;
+            }
+
+            List<Token> tokens = blockToken.children;
+            int htmlLinkLevel = 0;
+
+            // we scan from the end, to keep position when new tags added; use reversed logic in
+            // links start/end match
+            for (int i = tokens.size() - 1; i >= 0; --i) {
+                Token currentToken = tokens.get(i);
+
+                // skip content of markdown links
+                if (currentToken.type.equals("link_close")) {
+                    --i;
+                    while (tokens.get(i).level != currentToken.level
+                            && ! tokens.get(i).type.equals("link_open")) {
+                        --i;
+                    }
+                    continue;
+                }
+
+                // skip content of html tag links
+                if (currentToken.type.equals("html_inline")) {
+                    if (LINK_OPEN.matcher(currentToken.content).find() && htmlLinkLevel > 0) {
+                        --htmlLinkLevel;
+                    }
+                    if (LINK_CLOSE.matcher(currentToken.content).find()) {
+                        ++htmlLinkLevel;
+                    }
+                }
+                if (htmlLinkLevel > 0) { continue; }
+
+                if (! currentToken.type.equals("text")) { continue; }
+
+                String text = currentToken.content;
+                List<Match> links = match(text);
+                if (links.isEmpty()) { continue; }
+
+                // now split string to nodes
+                List<Token> nodes = new ArrayList<>();
+                int level = currentToken.level;
+                int lastPos = 0;
+
+                for (Match link : links) {
+                    String url = link.url;
+                    String fullUrl = LinkHelpers.normalizeLink(url);
+                    if (! LinkHelpers.validateLink(fullUrl)) { continue; }
+
+                    String urlText = link.text;
+
+                    // linkifier might send raw hostnames like "example.com", where url starts
+                    // with domain name; so we prepend http:// in those cases, and remove it
+                    // afterwards
+                    if (link.schema.isEmpty()) {
+                        urlText = LinkHelpers.normalizeLinkText("http://" + urlText).replaceFirst("^http://", "");
+                    } else if (link.schema.equals("mailto:") && ! MAILTO_PREFIX.matcher(urlText).find()) {
+                        urlText = LinkHelpers.normalizeLinkText("mailto:" + urlText).replaceFirst("^mailto:", "");
+                    } else {
+                        urlText = LinkHelpers.normalizeLinkText(urlText);
+                    }
+
+                    int pos = link.index;
+
+                    if (pos > lastPos) {
+                        Token token = new Token("text", "", 0);
+                        token.content = text.substring(lastPos, pos);
+                        token.level = level;
+                        nodes.add(token);
+                    }
+
+                    Token token = new Token("link_open", "a", 1);
+                    token.attrPush("href", fullUrl);
+                    token.level = level++;
+                    token.markup = "linkify";
+                    token.info = "auto";
+                    nodes.add(token);
+
+                    token = new Token("text", "", 0);
+                    token.content = urlText;
+                    token.level = level;
+                    nodes.add(token);
+
+                    token = new Token("link_close", "a", -1);
+                    token.level = --level;
+                    token.markup = "linkify";
+                    token.info = "auto";
+                    nodes.add(token);
+
+                    lastPos = link.lastIndex;
+                }
+                if (lastPos < text.length()) {
+                    Token token = new Token("text", "", 0);
+                    token.content = text.substring(lastPos);
+                    token.level = level;
+                    nodes.add(token);
+                }
+
+                // replace current node
+                tokens.remove(i);
+                tokens.addAll(i, nodes);
+            }
+        }
+    }
+
+}
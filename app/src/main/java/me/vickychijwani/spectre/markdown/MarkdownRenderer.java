@@ -0,0 +1,127 @@
+package me.vickychijwani.spectre.markdown;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Renders markdown to HTML exactly like markdown/markdown-converter.js does in the preview WebView
+ * (markdown-it 8.4 with html, breaks and linkify enabled, plus the footnote, lazy headers and mark
+ * plugins and Showdown-compatible heading ids), but without needing a WebView.
+ *
+ * All state is local to a call, so this is safe to use from any thread.
+ */
+public final class MarkdownRenderer {
+
+    private static final Pattern NEWLINES = Pattern.compile("\\r[\\n\\u0085]?|[\\u2424\\u2028\\u0085]");
+
+    private MarkdownRenderer() {}
+
+    public static String render(String markdown) {
+        return HtmlRenderer.render(parse(markdown));
+    }
+
+    /* package */ static List<Token> parse(String markdown) {
+        // normalize input
+        String src = NEWLINES.matcher(markdown).replaceAll("\n");
+        src = src.replace('\u0000', '\uFFFD');
+
+        Env env = new Env();
+        List<Token> tokens = new ArrayList<>();
+
+        BlockParser.parse(src, env, tokens);
+        for (Token token : tokens) {
+            if (token.type.equals("inline")) {
+                InlineParser.parse(token.content, env, token.children);
+            }
+        }
+        tokens = appendFootnotes(tokens, env);
+        Linkifier.linkify(tokens);
+        return tokens;
+    }
+
+    // move footnote definitions to a list at the end of the document, see markdown-it-footnote's
+    // footnote_tail rule
+    private static List<Token> appendFootnotes(List<Token> tokens, Env env) {
+        if (env.footnoteRefs == null && env.footnoteList == null) {
+            return tokens;
+        }
+
+        List<Token> result = new ArrayList<>(tokens.size());
+        Map<String, List<Token>> refTokens = new HashMap<>();
+        boolean insideRef = false;
+        List<Token> current = null;
+        String currentLabel = null;
+        for (Token token : tokens) {
+            if (token.type.equals("footnote_reference_open")) {
+                insideRef = true;
+                current = new ArrayList<>();
+                currentLabel = (String) token.meta;
+            } else if (token.type.equals("footnote_reference_close")) {
+                // definitions can be nested, in which case the outer one ends up with the tokens
+                // of the inner one, like in markdown-it-footnote
+                insideRef = false;
+                refTokens.put(currentLabel, current);
+            } else if (insideRef) {
+                current.add(token);
+            } else {
+                result.add(token);
+            }
+        }
+
+        if (env.footnoteList == null) {
+            return result;
+        }
+
+        List<Env.Footnote> list = env.footnoteList;
+        result.add(new Token("footnote_block_open", "", 1));
+
+        for (int i = 0; i < list.size(); ++i) {
+            Env.Footnote footnote = list.get(i);
+            Token token = new Token("footnote_open", "", 1);
+            token.meta = new InlineParser.FootnoteMeta(i, 0, footnote.label);
+            result.add(token);
+
+            if (footnote.tokens != null) {
+                token = new Token("paragraph_open", "p", 1);
+                token.block = true;
+                result.add(token);
+
+                token = new Token("inline", "", 0);
+                token.children = footnote.tokens;
+                token.content = "";
+                result.add(token);
+
+                token = new Token("paragraph_close", "p", -1);
+                token.block = true;
+                result.add(token);
+            } else if (footnote.label != null && refTokens.containsKey(footnote.label)) {
+                result.addAll(refTokens.get(footnote.label));
+            }
+
+            Token lastParagraph = null;
+            if (result.get(result.size() - 1).type.equals("paragraph_close")) {
+                lastParagraph = result.remove(result.size() - 1);
+            }
+
+            int count = (footnote.count > 0) ? footnote.count : 1;
+            for (int j = 0; j < count; ++j) {
+                token = new Token("footnote_anchor", "", 0);
+                token.meta = new InlineParser.FootnoteMeta(i, j, footnote.label);
+                result.add(token);
+            }
+
+            if (lastParagraph != null) {
+                result.add(lastParagraph);
+            }
+
+            result.add(new Token("footnote_close", "", -1));
+        }
+
+        result.add(new Token("footnote_block_close", "", -1));
+        return result;
+    }
+
+}
@@ -0,0 +1,239 @@
+package me.vickychijwani.spectre.markdown;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// character classes and string helpers, matching markdown-it's lib/common/utils.js (and JavaScript's
+// own definitions of whitespace, which differ from Java's)
+/* package */ final class MarkdownUtils {
+
+    private static final Pattern UNESCAPE_ALL = Pattern.compile(
+            "\\\\([!\"#$%&'()*+,\\-./:;<=>?@\\[\\\\\\]^_`{|}~])|&([a-z#][a-z0-9]{1,31});",
+            Pattern.CASE_INSENSITIVE);
+    private static final Pattern NUMERIC_ENTITY = Pattern.compile(
+            "^#((?:x[a-f0-9]{1,8}|[0-9]{1,8}))", Pattern.CASE_INSENSITIVE);
+
+    // loaded on first use, it has over 2000 entries
+    private static Map<String, String> sEntities = null;
+
+    private MarkdownUtils() {}
+
+    static synchronized Map<String, String> getEntities() {
+        if (sEntities == null) {
+            sEntities = loadEntities();
+        }
+        return sEntities;
+    }
+
+    private static Map<String, String> loadEntities() {
+        Map<String, String> entities = new HashMap<>(4096);
+        InputStream in = MarkdownUtils.class.getResourceAsStream("entities.txt");
+        if (in == null) {
+            throw new IllegalStateException("HTML entities table is missing");
+        }
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.charAt(0) == '#') {
+                    continue;
+                }
+                String[] parts = line.split(" ");
+                StringBuilder value = new StringBuilder();
+                for (int i = 1; i < parts.length; ++i) {
+                    value.appendCodePoint(Integer.parseInt(parts[i], 16));
+                }
+                entities.put(parts[0], value.toString());
+            }
+            reader.close();
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to load HTML entities table", e);
+        }
+        return entities;
+    }
+
+    // the digits of a numeric character reference, i.e., without the "&#"
+    static long parseNumericEntity(String digits) {
+        return (Character.toLowerCase(digits.charAt(0)) == 'x')
+                ? Long.parseLong(digits.substring(1), 16)
+                : Long.parseLong(digits, 10);
+    }
+
+    static boolean isValidEntityCode(long c) {
+        // broken sequence
+        if (c >= 0xD800 && c <= 0xDFFF) { return false; }
+        // never used
+        if (c >= 0xFDD0 && c <= 0xFDEF) { return false; }
+        if ((c & 0xFFFF) == 0xFFFF || (c & 0xFFFF) == 0xFFFE) { return false; }
+        // control codes
+        if (c >= 0x00 && c <= 0x08) { return false; }
+        if (c == 0x0B) { return false; }
+        if (c >= 0x0E && c <= 0x1F) { return false; }
+        if (c >= 0x7F && c <= 0x9F) { return false; }
+        // out of range
+        return c <= 0x10FFFF;
+    }
+
+    static String fromCodePoint(int c) {
+        return new String(Character.toChars(c));
+    }
+
+    private static String replaceEntityPattern(String match, String name) {
+        String entity = getEntities().get(name);
+        if (entity != null) {
+            return entity;
+        }
+        if (name.charAt(0) == '#') {
+            Matcher m = NUMERIC_ENTITY.matcher(name);
+            if (m.lookingAt()) {
+                String digits = m.group(1);
+                long code = parseNumericEntity(digits);
+                if (isValidEntityCode(code)) {
+                    return fromCodePoint((int) code);
+                }
+            }
+        }
+        return match;
+    }
+
+    /** Resolves backslash escapes and entities. */
+    static String unescapeAll(String str) {
+        if (str.indexOf('\\') < 0 && str.indexOf('&') < 0) {
+            return str;
+        }
+        Matcher m = UNESCAPE_ALL.matcher(str);
+        StringBuilder result = new StringBuilder(str.length());
+        int last = 0;
+        while (m.find()) {
+            result.append(str, last, m.start());
+            if (m.group(1) != null) {
+                result.append(m.group(1));
+            } else {
+                result.append(replaceEntityPattern(m.group(), m.group(2)));
+            }
+            last = m.end();
+        }
+        result.append(str, last, str.length());
+        return result.toString();
+    }
+
+    static String escapeHtml(String str) {
+        int i = 0, len = str.length();
+        while (i < len) {
+            char c = str.charAt(i);
+            if (c == '&' || c == '<' || c == '>' || c == '"') {
+                break;
+            }
+            ++i;
+        }
+        if (i == len) {
+            return str;
+        }
+        StringBuilder result = new StringBuilder(len + 16);
+        result.append(str, 0, i);
+        for (; i < len; ++i) {
+            char c = str.charAt(i);
+            switch (c) {
+                case '&': result.append("&amp;"); break;
+                case '<': result.append("&lt;"); break;
+                case '>': result.append("&gt;"); break;
+                case '"': result.append("&quot;"); break;
+                default: result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    static boolean isSpace(int code) {
+        return code == 0x09 || code == 0x20;
+    }
+
+    // Zs (unicode class) || [\t\f\v\r\n]
+    static boolean isWhiteSpace(int code) {
+        if (code >= 0x2000 && code <= 0x200A) { return true; }
+        switch (code) {
+            case 0x09: case 0x0A: case 0x0B: case 0x0C: case 0x0D: case 0x20: case 0xA0:
+            case 0x1680: case 0x202F: case 0x205F: case 0x3000:
+                return true;
+        }
+        return false;
+    }
+
+    static boolean isPunctChar(char c) {
+        switch (Character.getType(c)) {
+            case Character.CONNECTOR_PUNCTUATION:
+            case Character.DASH_PUNCTUATION:
+            case Character.START_PUNCTUATION:
+            case Character.END_PUNCTUATION:
+            case Character.INITIAL_QUOTE_PUNCTUATION:
+            case Character.FINAL_QUOTE_PUNCTUATION:
+            case Character.OTHER_PUNCTUATION:
+                return true;
+        }
+        return false;
+    }
+
+    // markdown ASCII punctuation characters: !"#$%&'()*+,-./:;<=>?@[\]^_`{|}~
+    static boolean isMdAsciiPunct(int code) {
+        return (code >= 0x21 && code <= 0x2F) || (code >= 0x3A && code <= 0x40)
+                || (code >= 0x5B && code <= 0x60) || (code >= 0x7B && code <= 0x7E);
+    }
+
+    // JavaScript's \s, which is also what String.prototype.trim() strips
+    static boolean isJsWhiteSpace(char c) {
+        switch (c) {
+            case '\t': case '\n': case 0x0B: case '\f': case '\r': case ' ': case 0xA0:
+            case 0x1680: case 0x2028: case 0x2029: case 0x202F: case 0x205F: case 0x3000:
+            case 0xFEFF:
+                return true;
+        }
+        return c >= 0x2000 && c <= 0x200A;
+    }
+
+    static String trim(String str) {
+        int start = 0, end = str.length();
+        while (start < end && isJsWhiteSpace(str.charAt(start))) {
+            ++start;
+        }
+        while (end > start && isJsWhiteSpace(str.charAt(end - 1))) {
+            --end;
+        }
+        return str.substring(start, end);
+    }
+
+    /** Normalizes a link label for case- and whitespace-insensitive lookup. */
+    static String normalizeReference(String str) {
+        String trimmed = trim(str);
+        StringBuilder result = new StringBuilder(trimmed.length());
+        boolean inWhiteSpace = false;
+        for (int i = 0; i < trimmed.length(); ++i) {
+            char c = trimmed.charAt(i);
+            if (isJsWhiteSpace(c)) {
+                if (! inWhiteSpace) {
+                    result.append(' ');
+                }
+                inWhiteSpace = true;
+            } else {
+                result.append(c);
+                inWhiteSpace = false;
+            }
+        }
+        return result.toString().toUpperCase(Locale.ROOT);
+    }
+
+    static String repeat(char c, int count) {
+        StringBuilder result = new StringBuilder(count);
+        for (int i = 0; i < count; ++i) {
+            result.append(c);
+        }
+        return result.toString();
+    }
+
+}
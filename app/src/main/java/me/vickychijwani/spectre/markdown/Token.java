@@ -0,0 +1,48 @@
+package me.vickychijwani.spectre.markdown;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// a markdown-it token: the parsers produce a flat list of these, which the renderer turns into HTML
+/* package */ final class Token {
+
+    String type;
+    String tag;
+    List<String[]> attrs = null;
+    int[] map = null;
+    int nesting;
+    int level = 0;
+    List<Token> children = null;
+    String content = "";
+    String markup = "";
+    String info = "";
+    Object meta = null;
+    boolean block = false;
+    boolean hidden = false;
+
+    Token(String type, String tag, int nesting) {
+        this.type = type;
+        this.tag = tag;
+        this.nesting = nesting;
+    }
+
+    int attrIndex(String name) {
+        if (attrs == null) {
+            return -1;
+        }
+        for (int i = 0; i < attrs.size(); ++i) {
+            if (attrs.get(i)[0].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    void attrPush(String name, String value) {
+        if (attrs == null) {
+            attrs = new ArrayList<>();
+        }
+        attrs.add(new String[] { name, value });
+    }
+
+}
@@ -0,0 +1,393 @@
+package me.vickychijwani.spectre.markdown;
+
+import java.io.UnsupportedEncodingException;
+import java.net.IDN;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// URL parsing, formatting and percent-encoding, ported from the mdurl package that markdown-it uses
+// to normalize links; note that java.net.URI is too strict for this, since link destinations
+// written by hand are frequently not valid URIs
+/* package */ final class Urls {
+
+    private static final String ENCODE_DEFAULT_CHARS = ";/?:@&=+$,-_.!~*'()#";
+    private static final String DECODE_DEFAULT_CHARS = ";/?:@&=+$,#";
+
+    private static final Pattern PROTOCOL = Pattern.compile("^([a-z0-9.+-]+:)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern PORT = Pattern.compile(":[0-9]*$");
+    private static final Pattern HOSTNAME_PART = Pattern.compile("^[+a-z0-9A-Z_-]{0,63}$");
+    private static final Pattern HOSTNAME_PART_START = Pattern.compile("^([+a-z0-9A-Z_-]{0,63})(.*)$", Pattern.DOTALL);
+    private static final Pattern PERCENT_SEQUENCE = Pattern.compile("(%[a-f0-9]{2})+", Pattern.CASE_INSENSITIVE);
+
+    // characters that never appear in a hostname, the hostname ends at the first one of these
+    private static final String[] NON_HOST_CHARS = {
+            "%", "/", "?", ";", "#", "'", "{", "}", "|", "\\", "^", "`", "<", ">", "\"", "`", " ",
+            "\r", "\n", "\t"
+    };
+    private static final String[] HOST_ENDING_CHARS = { "/", "?", "#" };
+
+    /** The components of a parsed URL, any of which may be null. */
+    static final class Url {
+        String protocol = null;
+        boolean slashes = false;
+        String auth = null;
+        String port = null;
+        String hostname = null;
+        String hash = null;
+        String search = null;
+        String pathname = null;
+    }
+
+    private Urls() {}
+
+    // same as mdurl's parse(url, true), i.e., "//" always denotes a host
+    static Url parse(String url) {
+        Url result = new Url();
+        String rest = MarkdownUtils.trim(url);
+
+        String lowerProto = null;
+        Matcher protoMatch = PROTOCOL.matcher(rest);
+        if (protoMatch.find()) {
+            String proto = protoMatch.group();
+            lowerProto = proto.toLowerCase(java.util.Locale.ROOT);
+            result.protocol = proto;
+            rest = rest.substring(proto.length());
+        }
+
+        boolean slashes = rest.startsWith("//");
+        boolean isJavascript = "javascript:".equals(result.protocol);
+        if (slashes && ! isJavascript) {
+            rest = rest.substring(2);
+            result.slashes = true;
+        }
+
+        if (! isJavascript && (slashes || (result.protocol != null && ! isSlashedProtocol(result.protocol)))) {
+            // find the first instance of any hostEndingChars
+            int hostEnd = -1;
+            for (String c : HOST_ENDING_CHARS) {
+                int hec = rest.indexOf(c);
+                if (hec != -1 && (hostEnd == -1 || hec < hostEnd)) {
+                    hostEnd = hec;
+                }
+            }
+
+            // at this point, either we have an explicit point where the auth portion cannot go
+            // past, or the last @ char is the decider
+            int atSign = (hostEnd == -1) ? rest.lastIndexOf('@') : rest.lastIndexOf('@', hostEnd);
+
+            // now we have a portion which is definitely the auth; pull that off
+            if (atSign != -1) {
+                result.auth = rest.substring(0, atSign);
+                rest = rest.substring(atSign + 1);
+            }
+
+            // the host is the remaining to the left of the first non-host char
+            hostEnd = -1;
+            for (String c : NON_HOST_CHARS) {
+                int hec = rest.indexOf(c);
+                if (hec != -1 && (hostEnd == -1 || hec < hostEnd)) {
+                    hostEnd = hec;
+                }
+            }
+            // if we still have not hit it, then the entire thing is a host
+            if (hostEnd == -1) {
+                hostEnd = rest.length();
+            }
+
+            if (hostEnd > 0 && rest.charAt(hostEnd - 1) == ':') {
+                --hostEnd;
+            }
+            String host = rest.substring(0, hostEnd);
+            rest = rest.substring(hostEnd);
+
+            // pull out port
+            parseHost(result, host);
+
+            // we've indicated that there is a hostname, so even if it's empty, it has to be present
+            if (result.hostname == null) {
+                result.hostname = "";
+            }
+
+            // if hostname begins with [ and ends with ], assume that it's an IPv6 address
+            String hostname = result.hostname;
+            boolean ipv6Hostname = hostname.length() > 0 && hostname.charAt(0) == '['
+                    && hostname.charAt(hostname.length() - 1) == ']';
+
+            // validate a little
+            if (! ipv6Hostname) {
+                String[] hostparts = hostname.split("\\.", -1);
+                for (int i = 0; i < hostparts.length; ++i) {
+                    String part = hostparts[i];
+                    if (part.isEmpty() || HOSTNAME_PART.matcher(part).find()) {
+                        continue;
+                    }
+                    StringBuilder newpart = new StringBuilder();
+                    for (int j = 0; j < part.length(); ++j) {
+                        // we replace non-ASCII char with a temporary placeholder; we need this to
+                        // make sure size of hostname is not broken by replacing non-ASCII by nothing
+                        newpart.append(part.charAt(j) > 127 ? 'x' : part.charAt(j));
+                    }
+                    // we test again with ASCII char only
+                    if (! HOSTNAME_PART.matcher(newpart).find()) {
+                        StringBuilder validParts = new StringBuilder();
+                        for (int j = 0; j < i; ++j) {
+                            validParts.append(hostparts[j]).append('.');
+                        }
+                        StringBuilder notHost = new StringBuilder();
+                        Matcher bit = HOSTNAME_PART_START.matcher(part);
+                        if (bit.find()) {
+                            validParts.append(bit.group(1));
+                            notHost.append(bit.group(2));
+                        }
+                        for (int j = i + 1; j < hostparts.length; ++j) {
+                            notHost.append('.').append(hostparts[j]);
+                        }
+                        rest = notHost.toString() + rest;
+                        result.hostname = validParts.toString();
+                        break;
+                    }
+                }
+            }
+
+            if (result.hostname.length() > 255) {
+                result.hostname = "";
+            }
+
+            // strip [ and ] from the hostname; the host field still retains them, though
+            if (ipv6Hostname) {
+                result.hostname = result.hostname.substring(1, result.hostname.length() - 1);
+            }
+        }
+
+        // chop off from the tail first
+        int hash = rest.indexOf('#');
+        if (hash != -1) {
+            // got a fragment string
+            result.hash = rest.substring(hash);
+            rest = rest.substring(0, hash);
+        }
+        int qm = rest.indexOf('?');
+        if (qm != -1) {
+            result.search = rest.substring(qm);
+            rest = rest.substring(0, qm);
+        }
+        if (! rest.isEmpty()) {
+            result.pathname = rest;
+        }
+        if (lowerProto != null && isSlashedProtocol(lowerProto) && result.hostname != null
+                && ! result.hostname.isEmpty() && result.pathname == null) {
+            result.pathname = "";
+        }
+
+        return result;
+    }
+
+    private static void parseHost(Url url, String host) {
+        Matcher port = PORT.matcher(host);
+        if (port.find()) {
+            String p = port.group();
+            if (! p.equals(":")) {
+                url.port = p.substring(1);
+            }
+            host = host.substring(0, host.length() - p.length());
+        }
+        if (! host.isEmpty()) {
+            url.hostname = host;
+        }
+    }
+
+    // protocols that always contain a // bit
+    private static boolean isSlashedProtocol(String protocol) {
+        switch (protocol) {
+            case "http": case "https": case "ftp": case "gopher": case "file":
+            case "http:": case "https:": case "ftp:": case "gopher:": case "file:":
+                return true;
+        }
+        return false;
+    }
+
+    static String format(Url url) {
+        StringBuilder result = new StringBuilder();
+        if (url.protocol != null) { result.append(url.protocol); }
+        if (url.slashes) { result.append("//"); }
+        if (url.auth != null && ! url.auth.isEmpty()) { result.append(url.auth).append('@'); }
+        if (url.hostname != null && url.hostname.indexOf(':') != -1) {
+            // IPv6 address
+            result.append('[').append(url.hostname).append(']');
+        } else if (url.hostname != null) {
+            result.append(url.hostname);
+        }
+        if (url.port != null && ! url.port.isEmpty()) { result.append(':').append(url.port); }
+        if (url.pathname != null) { result.append(url.pathname); }
+        if (url.search != null) { result.append(url.search); }
+        if (url.hash != null) { result.append(url.hash); }
+        return result.toString();
+    }
+
+    // the part of markdown-it's normalizeLink / normalizeLinkText that converts internationalized
+    // domain names, which only applies to schemes known to use DNS
+    static void convertHostname(Url url, boolean toAscii) {
+        if (url.hostname == null || url.hostname.isEmpty()) {
+            return;
+        }
+        if (url.protocol != null && ! url.protocol.equals("http:") && ! url.protocol.equals("https:")
+                && ! url.protocol.equals("mailto:")) {
+            return;
+        }
+        // punycode.js only touches labels that need converting, IDN would also validate the rest
+        if (toAscii ? isAscii(url.hostname) : ! url.hostname.contains("xn--")) {
+            return;
+        }
+        try {
+            url.hostname = toAscii ? IDN.toASCII(url.hostname, IDN.ALLOW_UNASSIGNED)
+                    : IDN.toUnicode(url.hostname, IDN.ALLOW_UNASSIGNED);
+        } catch (IllegalArgumentException ignored) {
+            // leave the hostname alone, just like markdown-it does when punycode throws
+        }
+    }
+
+    /** Percent-encodes everything except the default set of safe characters and existing escapes. */
+    static String encode(String str) {
+        StringBuilder result = null;
+        for (int i = 0, len = str.length(); i < len; ++i) {
+            char c = str.charAt(i);
+            if (c == '%' && i + 2 < len && isHexDigit(str.charAt(i + 1)) && isHexDigit(str.charAt(i + 2))) {
+                if (result != null) { result.append(str, i, i + 3); }
+                i += 2;
+                continue;
+            }
+            if (c < 128 && (isAsciiAlphanumeric(c) || ENCODE_DEFAULT_CHARS.indexOf(c) >= 0)) {
+                if (result != null) { result.append(c); }
+                continue;
+            }
+            if (result == null) {
+                result = new StringBuilder(len + 16);
+                result.append(str, 0, i);
+            }
+            if (c < 128) {
+                appendPercentEncoded(result, c);
+            } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(str.charAt(i + 1))) {
+                appendUtf8(result, str.substring(i, i + 2));
+                ++i;
+            } else if (Character.isSurrogate(c)) {
+                result.append("%EF%BF%BD");
+            } else {
+                appendUtf8(result, String.valueOf(c));
+            }
+        }
+        return (result != null) ? result.toString() : str;
+    }
+
+    /** Decodes percent-encoded UTF-8 sequences, except for the reserved URL characters. */
+    static String decode(String str) {
+        if (str.indexOf('%') < 0) {
+            return str;
+        }
+        Matcher m = PERCENT_SEQUENCE.matcher(str);
+        StringBuilder result = new StringBuilder(str.length());
+        int last = 0;
+        while (m.find()) {
+            result.append(str, last, m.start());
+            decodeSequence(m.group(), result);
+            last = m.end();
+        }
+        result.append(str, last, str.length());
+        return result.toString();
+    }
+
+    private static void decodeSequence(String seq, StringBuilder result) {
+        for (int i = 0, l = seq.length(); i < l; i += 3) {
+            int b1 = Integer.parseInt(seq.substring(i + 1, i + 3), 16);
+
+            if (b1 < 0x80) {
+                if (DECODE_DEFAULT_CHARS.indexOf(b1) >= 0) {
+                    appendPercentEncoded(result, b1);
+                } else {
+                    result.append((char) b1);
+                }
+                continue;
+            }
+
+            if ((b1 & 0xE0) == 0xC0 && (i + 3 < l)) {
+                // 110xxxxx 10xxxxxx
+                int b2 = Integer.parseInt(seq.substring(i + 4, i + 6), 16);
+                if ((b2 & 0xC0) == 0x80) {
+                    int chr = ((b1 << 6) & 0x7C0) | (b2 & 0x3F);
+                    result.append(chr < 0x80 ? "\uFFFD\uFFFD" : String.valueOf((char) chr));
+                    i += 3;
+                    continue;
+                }
+            }
+
+            if ((b1 & 0xF0) == 0xE0 && (i + 6 < l)) {
+                // 1110xxxx 10xxxxxx 10xxxxxx
+                int b2 = Integer.parseInt(seq.substring(i + 4, i + 6), 16);
+                int b3 = Integer.parseInt(seq.substring(i + 7, i + 9), 16);
+                if ((b2 & 0xC0) == 0x80 && (b3 & 0xC0) == 0x80) {
+                    int chr = ((b1 << 12) & 0xF000) | ((b2 << 6) & 0xFC0) | (b3 & 0x3F);
+                    if (chr < 0x800 || (chr >= 0xD800 && chr <= 0xDFFF)) {
+                        result.append("\uFFFD\uFFFD\uFFFD");
+                    } else {
+                        result.append((char) chr);
+                    }
+                    i += 6;
+                    continue;
+                }
+            }
+
+            if ((b1 & 0xF8) == 0xF0 && (i + 9 < l)) {
+                // 111110xx 10xxxxxx 10xxxxxx 10xxxxxx
+                int b2 = Integer.parseInt(seq.substring(i + 4, i + 6), 16);
+                int b3 = Integer.parseInt(seq.substring(i + 7, i + 9), 16);
+                int b4 = Integer.parseInt(seq.substring(i + 10, i + 12), 16);
+                if ((b2 & 0xC0) == 0x80 && (b3 & 0xC0) == 0x80 && (b4 & 0xC0) == 0x80) {
+                    int chr = ((b1 << 18) & 0x1C0000) | ((b2 << 12) & 0x3F000) | ((b3 << 6) & 0xFC0) | (b4 & 0x3F);
+                    if (chr < 0x10000 || chr > 0x10FFFF) {
+                        result.append("\uFFFD\uFFFD\uFFFD\uFFFD");
+                    } else {
+                        result.appendCodePoint(chr);
+                    }
+                    i += 9;
+                    continue;
+                }
+            }
+
+            result.append('\uFFFD');
+        }
+    }
+
+    private static void appendUtf8(StringBuilder result, String str) {
+        try {
+            for (byte b : str.getBytes("UTF-8")) {
+                appendPercentEncoded(result, b & 0xFF);
+            }
+        } catch (UnsupportedEncodingException e) {
+            // UTF-8 is always supported
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void appendPercentEncoded(StringBuilder result, int b) {
+        result.append('%');
+        result.append(Character.toUpperCase(Character.forDigit(b >> 4, 16)));
+        result.append(Character.toUpperCase(Character.forDigit(b & 0xF, 16)));
+    }
+
+    private static boolean isAscii(String str) {
+        for (int i = 0; i < str.length(); ++i) {
+            if (str.charAt(i) > 127) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isHexDigit(char c) {
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+
+    private static boolean isAsciiAlphanumeric(char c) {
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+}
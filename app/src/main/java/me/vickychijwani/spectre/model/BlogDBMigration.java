@@ -1,8 +1,18 @@
 package me.vickychijwani.spectre.model;
 
+import java.util.Date;
+import java.util.UUID;
+
 import io.realm.DynamicRealm;
+import io.realm.DynamicRealmObject;
+import io.realm.FieldAttribute;
 import io.realm.RealmMigration;
 import io.realm.RealmSchema;
+import me.vickychijwani.spectre.model.entity.PendingAction;
+import me.vickychijwani.spectre.model.entity.Post;
+import me.vickychijwani.spectre.model.entity.PostOperation;
+import me.vickychijwani.spectre.network.GhostApiUtils;
+import me.vickychijwani.spectre.util.PostUtils;
 import me.vickychijwani.spectre.util.log.Log;
 
 public class BlogDBMigration implements RealmMigration {
@@ -47,6 +57,165 @@ public class BlogDBMigration implements RealmMigration {
 
             ++oldVersion;
         }
+
+        if (oldVersion == 4) {
+            // paged post sync, replacing the fixed limit on the number of posts
+            Log.i(TAG, "ADDING SYNC CURSOR TABLE AND POST SYNC GENERATION FIELD");
+            schema.create("SyncCursor")
+                    .addField("type", String.class, FieldAttribute.PRIMARY_KEY)
+                    .addField("nextPage", int.class)
+                    .addField("generation", long.class);
+            schema.get("Post")
+                    .addField("syncGeneration", long.class);
+            ++oldVersion;
+        }
+
+        if (oldVersion == 5) {
+            // delta post sync based on the newest updated_at seen
+            Log.i(TAG, "ADDING WATERMARK FIELDS TO SYNC CURSOR TABLE");
+            schema.get("SyncCursor")
+                    .addField("watermark", Date.class)
+                    .addField("lastFullSyncAt", Date.class);
+            ++oldVersion;
+        }
+
+        if (oldVersion == 6) {
+            // list sync fetches post summaries, content is loaded lazily when a post is opened
+            Log.i(TAG, "ADDING CONTENT LOADED FIELD TO POST TABLE");
+            schema.get("Post")
+                    .addField("contentLoaded", boolean.class)
+                    .transform(obj -> obj.setBoolean("contentLoaded", true));
+            ++oldVersion;
+        }
+
+        if (oldVersion == 7) {
+            // persisted sort keys, so the post list can be sorted by the database
+            Log.i(TAG, "ADDING SORT KEY FIELDS TO POST TABLE");
+            schema.get("Post")
+                    .addField("sortGroup", int.class, FieldAttribute.INDEXED)
+                    .addField("sortDate", Date.class, FieldAttribute.INDEXED)
+                    .transform(obj -> {
+                        boolean isNew = false;
+                        for (DynamicRealmObject action : obj.getList("pendingActions")) {
+                            if (PendingAction.CREATE.equals(action.getString("type"))) {
+                                isNew = true;
+                                break;
+                            }
+                        }
+                        int sortGroup = PostUtils.getSortGroup(isNew, obj.getString("status"));
+                        obj.setInt("sortGroup", sortGroup);
+                        obj.setDate("sortDate", PostUtils.getSortDate(sortGroup,
+                                obj.getDate("publishedAt"), obj.getDate("updatedAt"),
+                                obj.getDate("createdAt")));
+                    });
+            ++oldVersion;
+        }
+
+        if (oldVersion == 8) {
+            // field-level tracking of local edits, for partial uploads
+            // the default value of 0 means "unknown", so existing edits are uploaded in full
+            Log.i(TAG, "ADDING UNSYNCED FIELDS TO POST TABLE");
+            schema.get("Post")
+                    .addField("unsyncedFields", int.class);
+            ++oldVersion;
+        }
+
+        if (oldVersion == 9) {
+            // journal of local post operations, which replaces the pending actions as the record
+            // of what must be uploaded (they're still used by the UI)
+            Log.i(TAG, "ADDING POST OPERATION TABLE");
+            schema.create("PostOperation")
+                    .addField("key", String.class, FieldAttribute.PRIMARY_KEY)
+                    .addField("seq", long.class, FieldAttribute.INDEXED)
+                    .addField("postId", String.class, FieldAttribute.REQUIRED, FieldAttribute.INDEXED)
+                    .addField("type", String.class, FieldAttribute.REQUIRED)
+                    .addField("fields", int.class);
+
+            // journal the uploads that were pending, in the order they used to be synced
+            Log.i(TAG, "MIGRATING PENDING ACTIONS TO POST OPERATIONS");
+            long seq = 0;
+            String[][] actionsToOperations = {
+                    { PendingAction.CREATE, PostOperation.CREATE },
+                    { PendingAction.EDIT, PostOperation.SET_FIELDS },
+                    { PendingAction.DELETE, PostOperation.DELETE },
+            };
+            for (String[] actionToOperation : actionsToOperations) {
+                for (DynamicRealmObject post : realm.where("Post")
+                        .equalTo("pendingActions.type", actionToOperation[0])
+                        .findAll()) {
+                    String key = UUID.randomUUID().toString();
+                    DynamicRealmObject operation = realm.createObject("PostOperation", key);
+                    operation.setLong("seq", ++seq);
+                    operation.setString("postId", post.getString("id"));
+                    operation.setString("type", actionToOperation[1]);
+                    if (PostOperation.SET_FIELDS.equals(actionToOperation[1])) {
+                        operation.setInt("fields", post.getInt("unsyncedFields"));
+                    } else if (PostOperation.CREATE.equals(actionToOperation[1])) {
+                        post.setString("uuid", key);
+                    }
+                }
+            }
+
+            ++oldVersion;
+        }
+
+        if (oldVersion == 10) {
+            // local revision history of posts, starting from the next save of each post
+            Log.i(TAG, "ADDING POST REVISION TABLE");
+            schema.create("PostRevision")
+                    .addField("id", String.class, FieldAttribute.PRIMARY_KEY)
+                    .addField("postId", String.class, FieldAttribute.REQUIRED, FieldAttribute.INDEXED)
+                    .addField("seq", long.class, FieldAttribute.INDEXED)
+                    .addField("createdAt", Date.class, FieldAttribute.REQUIRED)
+                    .addField("contentHash", String.class, FieldAttribute.REQUIRED)
+                    .addField("length", int.class)
+                    .addField("markdown", String.class)
+                    .addField("delta", byte[].class);
+            ++oldVersion;
+        }
+
+        if (oldVersion == 11) {
+            // base revisions for 3-way merges of sync conflicts, starting from the next sync of
+            // each post
+            Log.i(TAG, "ADDING SYNCED FLAG TO POST REVISIONS");
+            schema.get("PostRevision")
+                    .addField("synced", boolean.class);
+            ++oldVersion;
+        }
+
+        if (oldVersion == 12) {
+            // persisted editor compatibility, so the post list and editor don't parse mobiledocs
+            Log.i(TAG, "ADDING EDITOR COMPATIBILITY FIELD TO POST TABLE");
+            schema.get("Post")
+                    .addField("editorCompatibility", String.class, FieldAttribute.REQUIRED)
+                    .transform(obj -> {
+                        String mobiledoc = obj.getString("mobiledoc");
+                        String compatibility = Post.EDITOR_COMPATIBILITY_UNKNOWN;
+                        if (obj.getBoolean("contentLoaded") && mobiledoc != null) {
+                            compatibility = GhostApiUtils.INSTANCE.hasOnlyMarkdownCard(mobiledoc)
+                                    ? Post.EDITOR_COMPATIBLE : Post.EDITOR_INCOMPATIBLE;
+                        }
+                        obj.setString("editorCompatibility", compatibility);
+                    });
+            ++oldVersion;
+        }
+
+        if (oldVersion == 13) {
+            // persistent queue of image uploads
+            Log.i(TAG, "ADDING IMAGE UPLOAD TABLE");
+            schema.create("ImageUpload")
+                    .addField("id", String.class, FieldAttribute.PRIMARY_KEY)
+                    .addField("postId", String.class, FieldAttribute.REQUIRED, FieldAttribute.INDEXED)
+                    .addField("filePath", String.class, FieldAttribute.REQUIRED)
+                    .addField("filename", String.class, FieldAttribute.REQUIRED)
+                    .addField("mimeType", String.class)
+                    .addField("state", String.class, FieldAttribute.REQUIRED, FieldAttribute.INDEXED)
+                    .addField("attempts", int.class)
+                    .addField("nextAttemptAt", Date.class)
+                    .addField("url", String.class)
+                    .addField("createdAt", Date.class, FieldAttribute.REQUIRED);
+            ++oldVersion;
+        }
     }
 
     // override equals and hashCode to prevent this error in e2e tests:
@@ -4,10 +4,14 @@ import io.realm.annotations.RealmModule;
 import me.vickychijwani.spectre.model.entity.AuthToken;
 import me.vickychijwani.spectre.model.entity.ConfigurationParam;
 import me.vickychijwani.spectre.model.entity.ETag;
+import me.vickychijwani.spectre.model.entity.ImageUpload;
 import me.vickychijwani.spectre.model.entity.PendingAction;
 import me.vickychijwani.spectre.model.entity.Post;
+import me.vickychijwani.spectre.model.entity.PostOperation;
+import me.vickychijwani.spectre.model.entity.PostRevision;
 import me.vickychijwani.spectre.model.entity.Role;
 import me.vickychijwani.spectre.model.entity.Setting;
+import me.vickychijwani.spectre.model.entity.SyncCursor;
 import me.vickychijwani.spectre.model.entity.Tag;
 import me.vickychijwani.spectre.model.entity.User;
 
@@ -17,10 +21,14 @@ import me.vickychijwani.spectre.model.entity.User;
         AuthToken.class,
         ConfigurationParam.class,
         ETag.class,
+        ImageUpload.class,
         PendingAction.class,
         Post.class,
+        PostOperation.class,
+        PostRevision.class,
         Role.class,
         Setting.class,
+        SyncCursor.class,
         Tag.class,
         User.class
 })
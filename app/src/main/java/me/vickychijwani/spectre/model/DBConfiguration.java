@@ -4,6 +4,6 @@ public abstract class DBConfiguration {
 
     public static final int METADATA_DB_SCHEMA_VERSION = 4;
 
-    public static final int DATA_DB_SCHEMA_VERSION = 4;
+    public static final int DATA_DB_SCHEMA_VERSION = 14;
 
 }
@@ -0,0 +1,384 @@
+package me.vickychijwani.spectre.model;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import io.realm.Realm;
+import io.realm.RealmObject;
+import io.realm.RealmResults;
+import me.vickychijwani.spectre.model.entity.ImageUpload;
+import me.vickychijwani.spectre.model.entity.Post;
+import me.vickychijwani.spectre.util.log.Log;
+
+/**
+ * Persistent queue of images to upload, so that an upload survives the editor being closed, the
+ * network going away, and the app process being killed.
+ *
+ * Picking an image copies it into the app's files dir and queues it, and a placeholder url (see
+ * {@link #getPlaceholderUrl(String)}) is inserted into the post's markdown right away, so the user
+ * can keep writing. Jobs are uploaded one at a time, oldest first; a job that fails with a
+ * retryable error is retried later with exponential backoff, up to {@link #MAX_ATTEMPTS} times.
+ * When a job is done, the placeholder is replaced with the url of the uploaded image; when it
+ * fails for good or is cancelled, the image is removed from the markdown instead.
+ *
+ * Placeholders never reach the server: while a post has queued images, its body is held back from
+ * syncs (see {@link #getHeldBackFields(Post, int)}), and uploaded by the first sync after the
+ * images are.
+ *
+ * Done jobs are kept for a while, to resolve the placeholder in copies of the post that were saved
+ * after the upload finished (e.g., by an editor that was paused in the meantime). Once a job is
+ * done or removed from the queue, its copy of the image is deleted (see
+ * {@link #deleteFile(ImageUpload)}), but only after the transaction is committed, so that a job is
+ * never left without its image if the transaction fails.
+ *
+ * NOTE: methods that modify the queue must be called inside a transaction.
+ */
+public final class ImageUploadQueue {
+
+    private static final String TAG = "ImageUploadQueue";
+
+    private static final String PLACEHOLDER_SCHEME = "spectre-upload:";
+    private static final Pattern ANY_PLACEHOLDER_IMAGE = Pattern.compile("!\\[[^\\]\\n]*\\]\\("
+            + Pattern.quote(PLACEHOLDER_SCHEME) + "[^)\\s]*\\)");
+    private static final Pattern ANY_PLACEHOLDER = Pattern.compile(
+            Pattern.quote(PLACEHOLDER_SCHEME) + "[0-9a-fA-F-]*");
+
+    // retries back off exponentially from 30 seconds to an hour, i.e., they span a few hours
+    static final int MAX_ATTEMPTS = 10;
+    private static final long RETRY_BASE_DELAY = TimeUnit.SECONDS.toMillis(30);
+    private static final long RETRY_MAX_DELAY = TimeUnit.HOURS.toMillis(1);
+
+    private static final long DONE_RETENTION = TimeUnit.DAYS.toMillis(7);
+
+    private ImageUploadQueue() {}
+
+    /**
+     * @return the directory that queued images are copied into; unlike the cache dir, the system
+     * never clears it
+     */
+    @NonNull
+    public static File getFilesDir(@NonNull Context context) {
+        return new File(context.getFilesDir(), "image-uploads");
+    }
+
+    @NonNull
+    public static String getPlaceholderUrl(@NonNull String uploadId) {
+        return PLACEHOLDER_SCHEME + uploadId;
+    }
+
+    public static void enqueue(@NonNull Realm realm, @NonNull ImageUpload upload) {
+        realm.copyToRealm(upload);
+    }
+
+    /**
+     * @return the oldest queued job that's due at the given time, or null if there is none
+     */
+    @Nullable
+    public static ImageUpload getNext(@NonNull Realm realm, @NonNull Date now) {
+        RealmResults<ImageUpload> due = realm.where(ImageUpload.class)
+                .equalTo("state", ImageUpload.QUEUED)
+                .beginGroup()
+                    .isNull("nextAttemptAt")
+                    .or()
+                    .lessThanOrEqualTo("nextAttemptAt", now)
+                .endGroup()
+                .findAllSorted("createdAt");
+        return due.isEmpty() ? null : due.first();
+    }
+
+    /**
+     * @return the earliest time a queued job is due at, or null if no job is waiting to be retried
+     */
+    @Nullable
+    public static Date getNextAttemptAt(@NonNull Realm realm) {
+        return realm.where(ImageUpload.class)
+                .equalTo("state", ImageUpload.QUEUED)
+                .minimumDate("nextAttemptAt");
+    }
+
+    public static void markUploading(@NonNull Realm realm, @NonNull String uploadId) {
+        ImageUpload upload = find(realm, uploadId);
+        if (upload != null) {
+            upload.setState(ImageUpload.UPLOADING);
+        }
+    }
+
+    /**
+     * @return an unmanaged copy of the job, whose image is to be deleted after the transaction, or
+     * null if it was removed in the meantime (e.g., cancelled)
+     */
+    @Nullable
+    public static ImageUpload markDone(@NonNull Realm realm, @NonNull String uploadId,
+                                       @NonNull String url) {
+        ImageUpload upload = find(realm, uploadId);
+        if (upload == null) {
+            return null;
+        }
+        upload.setState(ImageUpload.DONE);
+        upload.setUrl(url);
+        upload.setNextAttemptAt(null);
+        return realm.copyFromRealm(upload);
+    }
+
+    /**
+     * Schedules a retry of the job if the failure is retryable and attempts remain, else removes
+     * it from the queue.
+     * @return an unmanaged copy of the job if it failed for good (and was removed), else null
+     */
+    @Nullable
+    public static ImageUpload markFailed(@NonNull Realm realm, @NonNull String uploadId,
+                                         boolean retryable, @NonNull Date now) {
+        ImageUpload upload = find(realm, uploadId);
+        if (upload == null) {
+            return null;
+        }
+        int attempts = upload.getAttempts() + 1;
+        if (retryable && attempts < MAX_ATTEMPTS) {
+            upload.setState(ImageUpload.QUEUED);
+            upload.setAttempts(attempts);
+            upload.setNextAttemptAt(new Date(now.getTime() + getRetryDelay(attempts)));
+            return null;
+        }
+        return remove(realm, uploadId);
+    }
+
+    /**
+     * Puts the job back in the queue without counting a failed attempt, e.g., if it was rejected
+     * because the access token had expired.
+     */
+    public static void requeue(@NonNull Realm realm, @NonNull String uploadId) {
+        ImageUpload upload = find(realm, uploadId);
+        if (upload != null && ImageUpload.UPLOADING.equals(upload.getState())) {
+            upload.setState(ImageUpload.QUEUED);
+        }
+    }
+
+    /**
+     * Puts jobs that were being uploaded when the app was killed back in the queue.
+     */
+    public static void resetInterrupted(@NonNull Realm realm) {
+        List<ImageUpload> interrupted = new ArrayList<>(realm.where(ImageUpload.class)
+                .equalTo("state", ImageUpload.UPLOADING)
+                .findAll());
+        for (ImageUpload upload : interrupted) {
+            upload.setState(ImageUpload.QUEUED);
+        }
+    }
+
+    /**
+     * @return an unmanaged copy of the removed job, whose image is to be deleted after the
+     * transaction, or null if it doesn't exist
+     */
+    @Nullable
+    public static ImageUpload remove(@NonNull Realm realm, @NonNull String uploadId) {
+        ImageUpload upload = find(realm, uploadId);
+        if (upload == null) {
+            return null;
+        }
+        ImageUpload copy = realm.copyFromRealm(upload);
+        RealmObject.deleteFromRealm(upload);
+        return copy;
+    }
+
+    /**
+     * Moves the jobs of a post to a new id, e.g., after a new post has been created on the server,
+     * which assigns a different id.
+     */
+    public static void renamePost(@NonNull Realm realm, @NonNull String oldId,
+                                  @NonNull String newId) {
+        List<ImageUpload> uploads = new ArrayList<>(realm.where(ImageUpload.class)
+                .equalTo("postId", oldId)
+                .findAll());
+        for (ImageUpload upload : uploads) {
+            upload.setPostId(newId);
+        }
+    }
+
+    /**
+     * @return unmanaged copies of the removed jobs, whose images are to be deleted after the
+     * transaction
+     */
+    @NonNull
+    public static List<ImageUpload> delete(@NonNull Realm realm, @NonNull String postId) {
+        List<ImageUpload> uploads = new ArrayList<>(realm.where(ImageUpload.class)
+                .equalTo("postId", postId)
+                .findAll());
+        List<ImageUpload> removed = new ArrayList<>(uploads.size());
+        for (ImageUpload upload : uploads) {
+            removed.add(remove(realm, upload.getId()));
+        }
+        return removed;
+    }
+
+    public static void pruneDone(@NonNull Realm realm, @NonNull Date now) {
+        realm.where(ImageUpload.class)
+                .equalTo("state", ImageUpload.DONE)
+                .lessThan("createdAt", new Date(now.getTime() - DONE_RETENTION))
+                .findAll()
+                .deleteAllFromRealm();
+    }
+
+    /**
+     * Deletes the copy of the image of a job that's done or has been removed from the queue.
+     * NOTE: must be called after the transaction that did so is committed, not inside it.
+     */
+    public static void deleteFile(@NonNull ImageUpload upload) {
+        deleteFile(upload.getFilePath());
+    }
+
+    public static void deleteFiles(@NonNull List<ImageUpload> uploads) {
+        for (ImageUpload upload : uploads) {
+            deleteFile(upload.getFilePath());
+        }
+    }
+
+    /**
+     * Deletes the copies of all queued images, e.g., before the whole database is deleted. Doesn't
+     * modify the queue.
+     */
+    public static void deleteFiles(@NonNull Realm realm) {
+        for (ImageUpload upload : realm.where(ImageUpload.class)
+                .notEqualTo("state", ImageUpload.DONE)
+                .findAll()) {
+            deleteFile(upload.getFilePath());
+        }
+    }
+
+    /**
+     * @return true if the post has images that are queued or being uploaded
+     */
+    public static boolean hasUnfinishedUploads(@NonNull Realm realm, @NonNull String postId) {
+        return realm.where(ImageUpload.class)
+                .equalTo("postId", postId)
+                .notEqualTo("state", ImageUpload.DONE)
+                .count() > 0;
+    }
+
+    public static boolean hasDoneUploads(@NonNull Realm realm, @NonNull String postId) {
+        return realm.where(ImageUpload.class)
+                .equalTo("postId", postId)
+                .equalTo("state", ImageUpload.DONE)
+                .count() > 0;
+    }
+
+    /**
+     * @return the given markdown of a post, with the placeholders of its done uploads replaced
+     */
+    @NonNull
+    public static String resolvePlaceholders(@NonNull Realm realm, @NonNull String postId,
+                                             @NonNull String markdown) {
+        if (! markdown.contains(PLACEHOLDER_SCHEME)) {
+            return markdown;
+        }
+        for (ImageUpload upload : realm.where(ImageUpload.class)
+                .equalTo("postId", postId)
+                .equalTo("state", ImageUpload.DONE)
+                .findAll()) {
+            markdown = replacePlaceholder(markdown, upload.getId(), upload.getUrl());
+        }
+        return markdown;
+    }
+
+    public static boolean hasPlaceholders(@Nullable String markdown) {
+        return markdown != null && markdown.contains(PLACEHOLDER_SCHEME);
+    }
+
+    /**
+     * @param fields - fields to upload, 0 meaning all of them
+     * @return the fields among those that must not be uploaded yet, because the post's body still
+     * has placeholders: the body itself, and the status of a post that's not a draft, so that it
+     * isn't published without its images
+     */
+    @Post.Field
+    public static int getHeldBackFields(@NonNull Post post, @Post.Field int fields) {
+        if (! post.isEditorCompatible() || ! hasPlaceholders(post.getMarkdown())) {
+            return 0;
+        }
+        @Post.Field int heldBackFields = post.isDraft()
+                ? Post.FIELD_MOBILEDOC
+                : Post.FIELD_MOBILEDOC | Post.FIELD_STATUS;
+        return (fields == 0) ? heldBackFields : (fields & heldBackFields);
+    }
+
+    /**
+     * @return a copy of the post that can be uploaded in full while its images are still queued,
+     * e.g., to create it on the server: without any placeholders, and as a draft
+     */
+    @NonNull
+    public static Post withoutPlaceholders(@NonNull Post post) {
+        Post copy = new Post(post);
+        if (getHeldBackFields(post, 0) != 0) {
+            copy.setMarkdown(removeAllPlaceholders(post.getMarkdown()));
+            copy.setStatus(Post.DRAFT);
+        }
+        return copy;
+    }
+
+    @NonNull
+    public static String replacePlaceholder(@NonNull String markdown, @NonNull String uploadId,
+                                            @NonNull String url) {
+        return markdown.replace(getPlaceholderUrl(uploadId), url);
+    }
+
+    /**
+     * @return the given markdown without the image (including its alt text) that has the
+     * placeholder of the given upload
+     */
+    @NonNull
+    public static String removePlaceholder(@NonNull String markdown, @NonNull String uploadId) {
+        String placeholderUrl = getPlaceholderUrl(uploadId);
+        if (! markdown.contains(placeholderUrl)) {
+            return markdown;
+        }
+        Pattern image = Pattern.compile("!\\[[^\\]\\n]*\\]\\(" + Pattern.quote(placeholderUrl)
+                + "\\)");
+        markdown = image.matcher(markdown).replaceAll("");
+        // in case the user changed the image syntax around it
+        return markdown.replace(placeholderUrl, "");
+    }
+
+    /**
+     * @return the given markdown without any placeholders, e.g., of uploads that are no longer in
+     * the queue
+     */
+    @NonNull
+    public static String removeAllPlaceholders(@NonNull String markdown) {
+        if (! hasPlaceholders(markdown)) {
+            return markdown;
+        }
+        markdown = ANY_PLACEHOLDER_IMAGE.matcher(markdown).replaceAll("");
+        return ANY_PLACEHOLDER.matcher(markdown).replaceAll("");
+    }
+
+    /**
+     * @return the delay before the next attempt, after the given number of failed attempts (>= 1)
+     */
+    static long getRetryDelay(int attempts) {
+        long delay = RETRY_BASE_DELAY;
+        for (int i = 1; i < attempts && delay < RETRY_MAX_DELAY; ++i) {
+            delay *= 2;
+        }
+        return Math.min(delay, RETRY_MAX_DELAY);
+    }
+
+    @Nullable
+    private static ImageUpload find(@NonNull Realm realm, @NonNull String uploadId) {
+        return realm.where(ImageUpload.class).equalTo("id", uploadId).findFirst();
+    }
+
+    private static void deleteFile(@NonNull String path) {
+        File file = new File(path);
+        if (file.exists() && ! file.delete()) {
+            Log.w(TAG, "Failed to delete image copy: %s", path);
+        }
+    }
+
+}
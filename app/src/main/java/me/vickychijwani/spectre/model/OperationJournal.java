@@ -0,0 +1,158 @@
+package me.vickychijwani.spectre.model;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import io.realm.Realm;
+import me.vickychijwani.spectre.model.entity.Post;
+import me.vickychijwani.spectre.model.entity.PostOperation;
+
+/**
+ * Append-only, persistent journal of the local post changes that are yet to be uploaded.
+ *
+ * Creating, saving, publishing or deleting a post locally appends an operation. Syncing compacts
+ * the journal into the minimal set of uploads (see {@link #compact(List)}), replays them in journal
+ * order, and removes the operations covered by each upload in the same transaction that saves the
+ * server's response, so an operation is never lost, and never applied twice.
+ *
+ * The pending actions on {@link Post} are still kept up-to-date for the UI and to protect local
+ * edits from being overwritten by a refresh, but the journal decides what is uploaded.
+ *
+ * NOTE: methods that modify the journal must be called inside a transaction.
+ */
+public final class OperationJournal {
+
+    public static final class Upload {
+
+        public enum Type {
+            CREATE,         // upload the whole post
+            UPDATE,         // upload the given fields
+            DELETE,         // delete the post on the server
+            DISCARD,        // created and deleted locally, nothing to upload
+        }
+
+        public final Type type;
+        public final String postId;
+        @Post.Field public final int fields;
+        // keys of the operations covered by this upload
+        public final List<String> keys;
+
+        Upload(Type type, String postId, @Post.Field int fields, List<String> keys) {
+            this.type = type;
+            this.postId = postId;
+            this.fields = fields;
+            this.keys = Collections.unmodifiableList(keys);
+        }
+
+    }
+
+    private OperationJournal() {}
+
+    public static PostOperation append(@NonNull Realm realm, @NonNull String postId,
+                                       @PostOperation.Type String type, @Post.Field int fields) {
+        Number lastSeq = realm.where(PostOperation.class).max("seq");
+        long seq = (lastSeq == null) ? 1 : lastSeq.longValue() + 1;
+        String key = UUID.randomUUID().toString();
+        return realm.copyToRealm(new PostOperation(key, seq, postId, type, fields));
+    }
+
+    public static boolean hasOperations(@NonNull Realm realm, @NonNull String postId) {
+        return realm.where(PostOperation.class).equalTo("postId", postId).count() > 0;
+    }
+
+    public static List<Upload> getUploads(@NonNull Realm realm) {
+        return compact(realm.copyFromRealm(realm.where(PostOperation.class).findAllSorted("seq")));
+    }
+
+    /**
+     * Removes the given operations, because the server has acknowledged them. Keys of operations
+     * that have already been removed are ignored.
+     */
+    public static void acknowledge(@NonNull Realm realm, @NonNull List<String> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        realm.where(PostOperation.class)
+                .in("key", keys.toArray(new String[keys.size()]))
+                .findAll()
+                .deleteAllFromRealm();
+    }
+
+    /**
+     * Removes all operations on the given post, e.g., because it was deleted.
+     */
+    public static void discard(@NonNull Realm realm, @NonNull String postId) {
+        realm.where(PostOperation.class).equalTo("postId", postId).findAll().deleteAllFromRealm();
+    }
+
+    /**
+     * Moves the operations on a post to a new id, e.g., after a new post has been created on the
+     * server, which assigns a different id.
+     */
+    public static void renamePost(@NonNull Realm realm, @NonNull String oldId,
+                                  @NonNull String newId) {
+        List<PostOperation> operations = new ArrayList<>(realm.where(PostOperation.class)
+                .equalTo("postId", oldId)
+                .findAll());
+        for (PostOperation operation : operations) {
+            operation.setPostId(newId);
+        }
+    }
+
+    /**
+     * Compacts a list of operations, sorted by sequence number, into one upload per post, ordered
+     * by each post's first operation:
+     * - a post that was both created and deleted needs no upload at all
+     * - a deletion supersedes all other changes
+     * - a new post is uploaded whole, so it includes all later changes
+     * - all other changes are merged into a single update of all the fields they changed
+     */
+    /* package */ static List<Upload> compact(@NonNull List<PostOperation> operations) {
+        Map<String, List<PostOperation>> operationsByPost = new LinkedHashMap<>();
+        for (PostOperation operation : operations) {
+            List<PostOperation> postOperations = operationsByPost.get(operation.getPostId());
+            if (postOperations == null) {
+                postOperations = new ArrayList<>();
+                operationsByPost.put(operation.getPostId(), postOperations);
+            }
+            postOperations.add(operation);
+        }
+
+        List<Upload> uploads = new ArrayList<>(operationsByPost.size());
+        for (Map.Entry<String, List<PostOperation>> entry : operationsByPost.entrySet()) {
+            boolean isCreated = false, isDeleted = false;
+            int fields = 0;
+            List<String> keys = new ArrayList<>(entry.getValue().size());
+            for (PostOperation operation : entry.getValue()) {
+                keys.add(operation.getKey());
+                if (PostOperation.CREATE.equals(operation.getType())) {
+                    isCreated = true;
+                } else if (PostOperation.DELETE.equals(operation.getType())) {
+                    isDeleted = true;
+                } else {
+                    fields |= (operation.getFields() == 0) ? Post.ALL_FIELDS : operation.getFields();
+                }
+            }
+
+            Upload.Type type;
+            if (isCreated && isDeleted) {
+                type = Upload.Type.DISCARD;
+            } else if (isDeleted) {
+                type = Upload.Type.DELETE;
+            } else if (isCreated) {
+                type = Upload.Type.CREATE;
+            } else {
+                type = Upload.Type.UPDATE;
+            }
+            uploads.add(new Upload(type, entry.getKey(), fields, keys));
+        }
+        return uploads;
+    }
+
+}
@@ -0,0 +1,142 @@
+package me.vickychijwani.spectre.model;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayDeque;
+
+import io.realm.Realm;
+import io.realm.RealmAsyncTask;
+import me.vickychijwani.spectre.util.functions.Action1;
+import me.vickychijwani.spectre.util.log.Log;
+
+/**
+ * Runs write transactions on a background thread, one at a time and in the order they were
+ * submitted, so that large writes (e.g., a page of posts) don't block the UI.
+ *
+ * Callbacks are invoked on the thread that owns the given Realm, <i>after</i> that Realm has been
+ * updated to include the committed changes, so they can safely query it or post UI events. This
+ * is why the writes go through Realm's async transactions instead of a plain executor.
+ *
+ * A failed transaction is rolled back and logged, and the writes after it still run. Pass an
+ * error callback to handle the failure, e.g., to fail the sync that depends on it.
+ *
+ * NOTE: objects must not cross threads, so transactions must only touch the {@link Realm} passed
+ * to them and unmanaged objects, and must return unmanaged copies.
+ */
+public final class RealmWriter {
+
+    private static final String TAG = "RealmWriter";
+
+    private final Realm mRealm;
+    private final ArrayDeque<Runnable> mPendingWrites = new ArrayDeque<>();
+    @Nullable private RealmAsyncTask mCurrentWrite = null;
+    private boolean mClosed = false;
+    @Nullable private Runnable mOnClosed = null;
+
+    /**
+     * @param realm a Realm opened on a Looper thread (i.e., the main thread), on which callbacks
+     *              are invoked
+     */
+    public RealmWriter(@NonNull Realm realm) {
+        mRealm = realm;
+    }
+
+    public void write(@NonNull RealmUtils.RealmTransaction transaction) {
+        write(transaction, null);
+    }
+
+    public void write(@NonNull RealmUtils.RealmTransaction transaction,
+                      @Nullable Runnable onCommitted) {
+        write(transaction, onCommitted, null);
+    }
+
+    public void write(@NonNull RealmUtils.RealmTransaction transaction,
+                      @Nullable Runnable onCommitted, @Nullable Action1<Throwable> onFailed) {
+        write(realm -> {
+            transaction.execute(realm);
+            return null;
+        }, result -> {
+            if (onCommitted != null) {
+                onCommitted.run();
+            }
+        }, onFailed);
+    }
+
+    public <T> void write(@NonNull RealmUtils.RealmTransactionWithReturn<T> transaction,
+                          @Nullable Action1<T> onCommitted) {
+        write(transaction, onCommitted, null);
+    }
+
+    public <T> void write(@NonNull RealmUtils.RealmTransactionWithReturn<T> transaction,
+                          @Nullable Action1<T> onCommitted, @Nullable Action1<Throwable> onFailed) {
+        if (mClosed) {
+            Log.w(TAG, "Ignoring write submitted after close()");
+            return;
+        }
+        mPendingWrites.addLast(() -> execute(transaction, onCommitted, onFailed));
+        if (mCurrentWrite == null) {
+            writeNext();
+        }
+    }
+
+    /**
+     * Drops all writes that haven't started yet and invokes the given callback once the one in
+     * progress, if any, is done. No more callbacks are invoked after this.
+     */
+    public void close(@NonNull Runnable onClosed) {
+        mClosed = true;
+        mPendingWrites.clear();
+        if (mCurrentWrite == null) {
+            onClosed.run();
+        } else {
+            mOnClosed = onClosed;
+        }
+    }
+
+    private <T> void execute(@NonNull RealmUtils.RealmTransactionWithReturn<T> transaction,
+                             @Nullable Action1<T> onCommitted,
+                             @Nullable Action1<Throwable> onFailed) {
+        // written on the background thread, read on this one after the transaction completes
+        final Object[] result = new Object[1];
+        mCurrentWrite = mRealm.executeTransactionAsync(
+                bgRealm -> result[0] = transaction.execute(bgRealm),
+                () -> {
+                    if (! mClosed && onCommitted != null) {
+                        //noinspection unchecked
+                        onCommitted.call((T) result[0]);
+                    }
+                    onWriteDone();
+                },
+                error -> {
+                    // the transaction has been rolled back, so the writes queued after it are
+                    // still consistent, let them run
+                    Log.exception(new RuntimeException("Write transaction failed", error));
+                    if (! mClosed && onFailed != null) {
+                        onFailed.call(error);
+                    }
+                    onWriteDone();
+                });
+    }
+
+    private void onWriteDone() {
+        mCurrentWrite = null;
+        if (mClosed) {
+            if (mOnClosed != null) {
+                Runnable onClosed = mOnClosed;
+                mOnClosed = null;
+                onClosed.run();
+            }
+            return;
+        }
+        writeNext();
+    }
+
+    private void writeNext() {
+        Runnable nextWrite = mPendingWrites.pollFirst();
+        if (nextWrite != null) {
+            nextWrite.run();
+        }
+    }
+
+}
@@ -0,0 +1,249 @@
+package me.vickychijwani.spectre.model;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import io.realm.Realm;
+import io.realm.RealmObject;
+import io.realm.RealmResults;
+import io.realm.Sort;
+import me.vickychijwani.spectre.model.entity.PostRevision;
+import me.vickychijwani.spectre.util.TextDelta;
+import me.vickychijwani.spectre.util.log.Log;
+
+/**
+ * Local history of the markdown of each post, so that no saved version is lost, e.g., when a sync
+ * conflict is resolved by keeping only one of the two copies.
+ *
+ * Revisions are stored as reverse deltas: the latest revision of a post is stored in full, and
+ * each older one as a compressed delta from the next newer one (see {@link TextDelta}). So saving
+ * a revision only re-encodes the previous latest one, recent revisions are the cheapest to
+ * restore, and the oldest ones can be evicted without touching the rest. Storage is capped per
+ * post, by the number of revisions and by the total size of the deltas, evicting the oldest
+ * revisions first.
+ *
+ * The revision that was last known to be on the server is marked as synced, and it is never
+ * evicted, nor are the ones after it: it's the base for 3-way merges of sync conflicts (see
+ * {@link me.vickychijwani.spectre.util.ThreeWayMerge}).
+ *
+ * NOTE: methods that modify the history must be called inside a transaction.
+ */
+public final class RevisionStore {
+
+    private static final String TAG = "RevisionStore";
+
+    private static final int MAX_REVISIONS_PER_POST = 100;
+    private static final int MAX_DELTA_BYTES_PER_POST = 256 * 1024;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private RevisionStore() {}
+
+    /**
+     * @return the new revision, or null if the markdown is the same as that of the latest revision
+     */
+    @Nullable
+    public static PostRevision save(@NonNull Realm realm, @NonNull String postId,
+                                    @NonNull String markdown, @NonNull Date createdAt) {
+        String contentHash = sha1(markdown);
+        RealmResults<PostRevision> revisions = getRevisions(realm, postId);
+        PostRevision latest = revisions.isEmpty() ? null : revisions.first();
+        if (latest != null && latest.getContentHash().equals(contentHash)) {
+            return null;
+        }
+        if (latest != null && latest.getMarkdown() != null) {
+            latest.setDelta(TextDelta.create(markdown, latest.getMarkdown()));
+            latest.setMarkdown(null);
+        }
+
+        Number lastSeq = realm.where(PostRevision.class).max("seq");
+        long seq = (lastSeq == null) ? 1 : lastSeq.longValue() + 1;
+        PostRevision revision = new PostRevision(UUID.randomUUID().toString(), postId, seq,
+                createdAt, contentHash, markdown.length());
+        revision.setMarkdown(markdown);
+        revision = realm.copyToRealm(revision);
+        evict(realm, postId);
+        return revision;
+    }
+
+    /**
+     * Marks the given markdown as the content of the post on the server, saving it as a revision
+     * if needed. Only one revision of a post is marked at a time.
+     */
+    public static void markSynced(@NonNull Realm realm, @NonNull String postId,
+                                  @NonNull String markdown, @NonNull Date createdAt) {
+        RealmResults<PostRevision> matches = realm.where(PostRevision.class)
+                .equalTo("postId", postId)
+                .equalTo("contentHash", sha1(markdown))
+                .findAllSorted("seq", Sort.DESCENDING);
+        PostRevision revision = matches.isEmpty() ? null : matches.first();
+        PostRevision previous = getSyncedRevision(realm, postId);
+        if (revision != null && previous != null && revision.getId().equals(previous.getId())) {
+            return;
+        }
+        if (previous != null) {
+            previous.setSynced(false);
+        }
+        if (revision == null) {
+            revision = save(realm, postId, markdown, createdAt);
+        }
+        if (revision != null) {
+            revision.setSynced(true);
+        }
+    }
+
+    /**
+     * @return the markdown that was last known to be on the server, or null if it's not known
+     */
+    @Nullable
+    public static String getSyncedMarkdown(@NonNull Realm realm, @NonNull String postId) {
+        PostRevision synced = getSyncedRevision(realm, postId);
+        return (synced == null) ? null : getMarkdown(realm, synced.getId());
+    }
+
+    /**
+     * @return revisions of the given post, newest first
+     */
+    @NonNull
+    public static RealmResults<PostRevision> getRevisions(@NonNull Realm realm,
+                                                          @NonNull String postId) {
+        return realm.where(PostRevision.class)
+                .equalTo("postId", postId)
+                .findAllSorted("seq", Sort.DESCENDING);
+    }
+
+    /**
+     * @return unmanaged copies of the revisions of the given post, newest first, without their
+     * (potentially large) contents, e.g., to list them in the UI
+     */
+    @NonNull
+    public static List<PostRevision> getRevisionSummaries(@NonNull Realm realm,
+                                                          @NonNull String postId) {
+        RealmResults<PostRevision> revisions = getRevisions(realm, postId);
+        List<PostRevision> summaries = new ArrayList<>(revisions.size());
+        for (PostRevision revision : revisions) {
+            summaries.add(new PostRevision(revision.getId(), revision.getPostId(),
+                    revision.getSeq(), revision.getCreatedAt(), revision.getContentHash(),
+                    revision.getLength()));
+        }
+        return summaries;
+    }
+
+    /**
+     * @return the markdown of the given revision, or null if it doesn't exist (e.g., because it
+     * was evicted) or can't be reconstructed
+     */
+    @Nullable
+    public static String getMarkdown(@NonNull Realm realm, @NonNull String revisionId) {
+        PostRevision target = realm.where(PostRevision.class)
+                .equalTo("id", revisionId)
+                .findFirst();
+        if (target == null) {
+            return null;
+        }
+        // walk back from the latest revision, applying each delta in turn
+        String markdown = null;
+        try {
+            for (PostRevision revision : getRevisions(realm, target.getPostId())) {
+                if (markdown == null) {
+                    markdown = revision.getMarkdown();
+                } else if (revision.getDelta() != null) {
+                    markdown = TextDelta.apply(markdown, revision.getDelta());
+                } else {
+                    markdown = null;
+                }
+                if (markdown == null) {
+                    Log.e(TAG, "Revision history of post %s is broken at revision %s",
+                            target.getPostId(), revision.getId());
+                    return null;
+                }
+                if (revision.getSeq() == target.getSeq()) {
+                    break;
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            Log.exception(e);
+            return null;
+        }
+        if (markdown == null || ! sha1(markdown).equals(target.getContentHash())) {
+            Log.e(TAG, "Reconstructed revision %s doesn't match its hash", revisionId);
+            return null;
+        }
+        return markdown;
+    }
+
+    /**
+     * Moves the history of a post to a new id, e.g., after a new post has been created on the
+     * server, which assigns a different id.
+     */
+    public static void renamePost(@NonNull Realm realm, @NonNull String oldId,
+                                  @NonNull String newId) {
+        List<PostRevision> revisions = new ArrayList<>(realm.where(PostRevision.class)
+                .equalTo("postId", oldId)
+                .findAll());
+        for (PostRevision revision : revisions) {
+            revision.setPostId(newId);
+        }
+    }
+
+    public static void delete(@NonNull Realm realm, @NonNull String postId) {
+        realm.where(PostRevision.class).equalTo("postId", postId).findAll().deleteAllFromRealm();
+    }
+
+    @Nullable
+    private static PostRevision getSyncedRevision(@NonNull Realm realm, @NonNull String postId) {
+        return realm.where(PostRevision.class)
+                .equalTo("postId", postId)
+                .equalTo("synced", true)
+                .findFirst();
+    }
+
+    // the latest revision is always kept, and so are the synced one and the ones after it, because
+    // reconstructing the synced one needs all the deltas after it
+    private static void evict(@NonNull Realm realm, @NonNull String postId) {
+        PostRevision synced = getSyncedRevision(realm, postId);
+        long keepFromSeq = (synced == null) ? Long.MAX_VALUE : synced.getSeq();
+        List<PostRevision> evicted = new ArrayList<>();
+        int count = 0;
+        long deltaBytes = 0;
+        for (PostRevision revision : getRevisions(realm, postId)) {
+            ++count;
+            if (revision.getDelta() != null) {
+                deltaBytes += revision.getDelta().length;
+            }
+            if (count > 1 && revision.getSeq() < keepFromSeq
+                    && (count > MAX_REVISIONS_PER_POST
+                    || deltaBytes > MAX_DELTA_BYTES_PER_POST)) {
+                evicted.add(revision);
+            }
+        }
+        for (PostRevision revision : evicted) {
+            RealmObject.deleteFromRealm(revision);
+        }
+    }
+
+    @NonNull
+    private static String sha1(@NonNull String text) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-1").digest(text.getBytes("UTF-8"));
+            char[] hex = new char[hash.length * 2];
+            for (int i = 0; i < hash.length; ++i) {
+                hex[2 * i] = HEX_DIGITS[(hash[i] >> 4) & 0xF];
+                hex[2 * i + 1] = HEX_DIGITS[hash[i] & 0xF];
+            }
+            return new String(hex);
+        } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+            // both are guaranteed to be available on all platforms
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
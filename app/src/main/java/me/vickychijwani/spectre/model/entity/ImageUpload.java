@@ -0,0 +1,155 @@
+package me.vickychijwani.spectre.model.entity;
+
+import android.support.annotation.StringDef;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.Date;
+
+import io.realm.RealmModel;
+import io.realm.annotations.Index;
+import io.realm.annotations.PrimaryKey;
+import io.realm.annotations.RealmClass;
+import io.realm.annotations.Required;
+
+/**
+ * An image waiting to be uploaded, or recently uploaded, for a post, see
+ * {@link me.vickychijwani.spectre.model.ImageUploadQueue}.
+ */
+@RealmClass
+public class ImageUpload implements RealmModel {
+
+    @Retention(RetentionPolicy.SOURCE)
+    @StringDef({ QUEUED, UPLOADING, DONE })
+    public @interface State {}
+
+    public static final String QUEUED = "queued";
+    public static final String UPLOADING = "uploading";
+    public static final String DONE = "done";
+
+    // also the token in the placeholder url that stands in for the image in the post's markdown
+    @PrimaryKey
+    private String id;
+
+    @Required @Index
+    private String postId;
+
+    // private copy of the image, in the app's files dir, deleted along with this
+    @Required
+    private String filePath;
+
+    @Required
+    private String filename;
+
+    private String mimeType = null;
+
+    @Required @State @Index
+    private String state = QUEUED;
+
+    // failed attempts so far
+    private int attempts = 0;
+
+    // not uploaded before this, null if it can be uploaded right away
+    private Date nextAttemptAt = null;
+
+    // url of the uploaded image, once it's DONE
+    private String url = null;
+
+    @Required
+    private Date createdAt;
+
+    @SuppressWarnings("unused")
+    public ImageUpload() {}
+
+    public ImageUpload(String id, String postId, String filePath, String filename,
+                       String mimeType, Date createdAt) {
+        this.id = id;
+        this.postId = postId;
+        this.filePath = filePath;
+        this.filename = filename;
+        this.mimeType = mimeType;
+        this.createdAt = createdAt;
+    }
+
+    // NOTE: DO NOT ADD / MODIFY METHODS, SEE https://realm.io/docs/java/#faq
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getPostId() {
+        return postId;
+    }
+
+    public void setPostId(String postId) {
+        this.postId = postId;
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    public void setFilePath(String filePath) {
+        this.filePath = filePath;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public void setFilename(String filename) {
+        this.filename = filename;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    public void setMimeType(String mimeType) {
+        this.mimeType = mimeType;
+    }
+
+    public @State String getState() {
+        return state;
+    }
+
+    public void setState(@State String state) {
+        this.state = state;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    public Date getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+
+    public void setNextAttemptAt(Date nextAttemptAt) {
+        this.nextAttemptAt = nextAttemptAt;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    public Date getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(Date createdAt) {
+        this.createdAt = createdAt;
+    }
+
+}
@@ -2,6 +2,7 @@ package me.vickychijwani.spectre.model.entity;
 
 import android.os.Parcel;
 import android.os.Parcelable;
+import android.support.annotation.IntDef;
 import android.support.annotation.NonNull;
 import android.support.annotation.StringDef;
 import android.text.TextUtils;
@@ -13,12 +14,14 @@ import java.util.List;
 
 import io.realm.RealmList;
 import io.realm.RealmModel;
+import io.realm.annotations.Index;
 import io.realm.annotations.PrimaryKey;
 import io.realm.annotations.RealmClass;
 import io.realm.annotations.Required;
 import me.vickychijwani.spectre.model.GsonExclude;
 import me.vickychijwani.spectre.network.GhostApiUtils;
 import me.vickychijwani.spectre.util.DateTimeUtils;
+import me.vickychijwani.spectre.util.PostUtils;
 
 @RealmClass
 public class Post implements RealmModel, Parcelable {
@@ -31,6 +34,16 @@ public class Post implements RealmModel, Parcelable {
     @StringDef({ CONFLICT_NONE, CONFLICT_UNRESOLVED })
     public @interface ConflictState {}
 
+    @Retention(RetentionPolicy.SOURCE)
+    @StringDef({ EDITOR_COMPATIBILITY_UNKNOWN, EDITOR_COMPATIBLE, EDITOR_INCOMPATIBLE })
+    public @interface EditorCompatibility {}
+
+    // flags for the fields that can be edited in the app, used to track which of them changed
+    @Retention(RetentionPolicy.SOURCE)
+    @IntDef(flag = true, value = { FIELD_TITLE, FIELD_MOBILEDOC, FIELD_TAGS, FIELD_CUSTOM_EXCERPT,
+            FIELD_FEATURED, FIELD_PAGE, FIELD_FEATURE_IMAGE, FIELD_SLUG, FIELD_STATUS })
+    public @interface Field {}
+
     public static final String DRAFT = "draft";
     public static final String SCHEDULED = "scheduled";
     public static final String PUBLISHED = "published";
@@ -38,6 +51,21 @@ public class Post implements RealmModel, Parcelable {
     public static final String CONFLICT_NONE = "conflict:none";
     public static final String CONFLICT_UNRESOLVED = "conflict:unresolved";
 
+    public static final String EDITOR_COMPATIBILITY_UNKNOWN = "editor:unknown";
+    public static final String EDITOR_COMPATIBLE = "editor:compatible";       // markdown-only post
+    public static final String EDITOR_INCOMPATIBLE = "editor:incompatible";   // Koenig post
+
+    public static final int FIELD_TITLE = 1;
+    public static final int FIELD_MOBILEDOC = 1 << 1;
+    public static final int FIELD_TAGS = 1 << 2;
+    public static final int FIELD_CUSTOM_EXCERPT = 1 << 3;
+    public static final int FIELD_FEATURED = 1 << 4;
+    public static final int FIELD_PAGE = 1 << 5;
+    public static final int FIELD_FEATURE_IMAGE = 1 << 6;
+    public static final int FIELD_SLUG = 1 << 7;
+    public static final int FIELD_STATUS = 1 << 8;
+    public static final int ALL_FIELDS = (1 << 9) - 1;
+
     public static final String DEFAULT_TITLE = "(Untitled)";
 
     @PrimaryKey
@@ -92,6 +120,32 @@ public class Post implements RealmModel, Parcelable {
     @Required @GsonExclude @ConflictState
     private String conflictState = CONFLICT_NONE;
 
+    // fields edited locally since the post was last synced (what is actually uploaded is decided
+    // by the OperationJournal); 0 for posts edited before this was tracked
+    @GsonExclude @Field
+    private int unsyncedFields = 0;
+
+    // generation of the last paged sync in which this post was seen on the server (see SyncCursor)
+    @GsonExclude
+    private long syncGeneration = 0;
+
+    // false if only the list summary of this post has been fetched, i.e., its mobiledoc and html
+    // are placeholders that must be loaded with a separate request before viewing / editing
+    @GsonExclude
+    private boolean contentLoaded = true;
+
+    // whether the mobiledoc can be edited in this app, derived from it whenever the post is saved
+    // (see updateEditorCompatibility()), so that the post list and editor don't have to parse it;
+    // unknown until the content is loaded
+    @Required @GsonExclude @EditorCompatibility
+    private String editorCompatibility = EDITOR_COMPATIBILITY_UNKNOWN;
+
+    // persisted sort keys for the post list, derived from other fields (see updateSortKeys())
+    @Index @GsonExclude
+    private int sortGroup = PostUtils.SORT_GROUP_NEW;
+    @Index @GsonExclude
+    private Date sortDate = null;
+
     public Post() {}
 
     // TODO remember to update this, equals, Parcelable methods, PostUtils.isDirty() and DB migration whenever fields are changed!
@@ -134,6 +188,12 @@ public class Post implements RealmModel, Parcelable {
             this.addPendingAction(action.getType());
         }
         this.setConflictState(post.getConflictState());
+        this.setUnsyncedFields(post.getUnsyncedFields());
+        this.setSyncGeneration(post.getSyncGeneration());
+        this.setContentLoaded(post.isContentLoaded());
+        this.setEditorCompatibility(post.getEditorCompatibility());
+        this.setSortGroup(post.getSortGroup());
+        this.setSortDate(post.getSortDate());
     }
 
     @SuppressWarnings("RedundantIfStatement")
@@ -145,6 +205,8 @@ public class Post implements RealmModel, Parcelable {
         Post post = (Post) o;
         if (isFeatured() != post.isFeatured()) return false;
         if (isPage() != post.isPage()) return false;
+        if (isContentLoaded() != post.isContentLoaded()) return false;
+        if (getUnsyncedFields() != post.getUnsyncedFields()) return false;
         if (getId() != null ? !getId().equals(post.getId()) : post.getId() != null)
             return false;
         if (getUuid() != null ? !getUuid().equals(post.getUuid()) : post.getUuid() != null)
@@ -189,6 +251,8 @@ public class Post implements RealmModel, Parcelable {
             return false;
         if (getConflictState() != null ? !getConflictState().equals(post.getConflictState()) : post.getConflictState() != null)
             return false;
+        // syncGeneration is sync bookkeeping, and the editor compatibility and sort keys are
+        // derived from other fields, so they're deliberately ignored here
         return true;
     }
 
@@ -224,6 +288,12 @@ public class Post implements RealmModel, Parcelable {
         dest.writeString(this.customExcerpt);
         dest.writeList(this.pendingActions);
         dest.writeString(this.conflictState);
+        dest.writeInt(this.unsyncedFields);
+        dest.writeLong(this.syncGeneration);
+        dest.writeByte(this.contentLoaded ? (byte) 1 : (byte) 0);
+        dest.writeString(this.editorCompatibility);
+        dest.writeInt(this.sortGroup);
+        dest.writeLong(this.sortDate != null ? this.sortDate.getTime() : -1);
     }
 
     protected Post(Parcel in) {
@@ -258,6 +328,14 @@ public class Post implements RealmModel, Parcelable {
         in.readList(this.pendingActions, PendingAction.class.getClassLoader());
         //noinspection WrongConstant
         this.conflictState = in.readString();
+        this.unsyncedFields = in.readInt();
+        this.syncGeneration = in.readLong();
+        this.contentLoaded = in.readByte() != 0;
+        //noinspection WrongConstant
+        this.editorCompatibility = in.readString();
+        this.sortGroup = in.readInt();
+        long tmpSortDate = in.readLong();
+        this.sortDate = tmpSortDate == -1 ? null : new Date(tmpSortDate);
     }
 
     public static final Parcelable.Creator<Post> CREATOR = new Parcelable.Creator<Post>() {
@@ -483,6 +561,91 @@ public class Post implements RealmModel, Parcelable {
         this.conflictState = conflictState;
     }
 
+    public @Field int getUnsyncedFields() {
+        return unsyncedFields;
+    }
+
+    public void setUnsyncedFields(@Field int unsyncedFields) {
+        this.unsyncedFields = unsyncedFields;
+    }
+
+    public long getSyncGeneration() {
+        return syncGeneration;
+    }
+
+    public void setSyncGeneration(long syncGeneration) {
+        this.syncGeneration = syncGeneration;
+    }
+
+    public boolean isContentLoaded() {
+        return contentLoaded;
+    }
+
+    public void setContentLoaded(boolean contentLoaded) {
+        this.contentLoaded = contentLoaded;
+    }
+
+    public @EditorCompatibility String getEditorCompatibility() {
+        return editorCompatibility;
+    }
+
+    public void setEditorCompatibility(@EditorCompatibility String editorCompatibility) {
+        this.editorCompatibility = editorCompatibility;
+    }
+
+    public int getSortGroup() {
+        return sortGroup;
+    }
+
+    public void setSortGroup(int sortGroup) {
+        this.sortGroup = sortGroup;
+    }
+
+    public Date getSortDate() {
+        return sortDate;
+    }
+
+    public void setSortDate(Date sortDate) {
+        this.sortDate = sortDate;
+    }
+
+    /**
+     * Recomputes the persisted sort keys. Must be called whenever the status, pending actions or
+     * dates change (must be called in a transaction if this is a managed object).
+     */
+    public void updateSortKeys() {
+        int group = PostUtils.getSortGroup(hasPendingAction(PendingAction.CREATE), getStatus());
+        setSortGroup(group);
+        setSortDate(PostUtils.getSortDate(group, getPublishedAt(), getUpdatedAt(), getCreatedAt()));
+    }
+
+    /**
+     * Classifies the mobiledoc, if it hasn't been classified yet. Whoever replaces the mobiledoc
+     * with another post's must copy that post's classification along with it, or reset it to
+     * unknown (must be called in a transaction if this is a managed object).
+     */
+    public void updateEditorCompatibility() {
+        if (! isContentLoaded() || getMobiledoc() == null) {
+            setEditorCompatibility(EDITOR_COMPATIBILITY_UNKNOWN);
+        } else if (EDITOR_COMPATIBILITY_UNKNOWN.equals(getEditorCompatibility())) {
+            setEditorCompatibility(GhostApiUtils.INSTANCE.hasOnlyMarkdownCard(getMobiledoc())
+                    ? EDITOR_COMPATIBLE : EDITOR_INCOMPATIBLE);
+        }
+    }
+
+    /**
+     * @return true if this post can be edited in this app, i.e., its markdown can be read without
+     * a {@code KoenigPostException}; false if it's a Koenig post or its content isn't loaded
+     */
+    public boolean isEditorCompatible() {
+        if (EDITOR_COMPATIBILITY_UNKNOWN.equals(getEditorCompatibility())
+                && isContentLoaded() && getMobiledoc() != null) {
+            // not classified yet, e.g., fetched but not saved yet
+            return GhostApiUtils.INSTANCE.hasOnlyMarkdownCard(getMobiledoc());
+        }
+        return EDITOR_COMPATIBLE.equals(getEditorCompatibility());
+    }
+
 
     public boolean isPendingActionsEmpty() {
         return this.pendingActions.isEmpty();
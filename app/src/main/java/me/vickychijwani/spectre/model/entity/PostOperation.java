@@ -0,0 +1,104 @@
+package me.vickychijwani.spectre.model.entity;
+
+import android.support.annotation.StringDef;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+import io.realm.RealmModel;
+import io.realm.annotations.Index;
+import io.realm.annotations.PrimaryKey;
+import io.realm.annotations.RealmClass;
+import io.realm.annotations.Required;
+
+/**
+ * One entry in the journal of local post changes that are yet to be uploaded, see
+ * {@link me.vickychijwani.spectre.model.OperationJournal}.
+ */
+@RealmClass
+public class PostOperation implements RealmModel {
+
+    @Retention(RetentionPolicy.SOURCE)
+    @StringDef({ CREATE, SET_FIELDS, PUBLISH, UNPUBLISH, DELETE })
+    public @interface Type {}
+
+    public static final String CREATE = "create";
+    public static final String SET_FIELDS = "set_fields";
+    public static final String PUBLISH = "publish";
+    public static final String UNPUBLISH = "unpublish";
+    public static final String DELETE = "delete";
+
+    // idempotency key: an operation is removed from the journal in the same transaction that saves
+    // the server's acknowledgement, so it's never applied twice; the key of a CREATE operation is
+    // also the new post's uuid, so the post can be found on the server if the response was lost
+    @PrimaryKey
+    private String key;
+
+    // position in the journal
+    @Index
+    private long seq;
+
+    @Required @Index
+    private String postId;
+
+    @Required @Type
+    private String type;
+
+    // fields to upload for SET_FIELDS, PUBLISH and UNPUBLISH, 0 if unknown (i.e., all of them)
+    @Post.Field
+    private int fields = 0;
+
+    @SuppressWarnings("unused")
+    public PostOperation() {}
+
+    public PostOperation(String key, long seq, String postId, @Type String type,
+                         @Post.Field int fields) {
+        this.key = key;
+        this.seq = seq;
+        this.postId = postId;
+        this.type = type;
+        this.fields = fields;
+    }
+
+    // NOTE: DO NOT ADD / MODIFY METHODS, SEE https://realm.io/docs/java/#faq
+    public String getKey() {
+        return key;
+    }
+
+    public void setKey(String key) {
+        this.key = key;
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    public void setSeq(long seq) {
+        this.seq = seq;
+    }
+
+    public String getPostId() {
+        return postId;
+    }
+
+    public void setPostId(String postId) {
+        this.postId = postId;
+    }
+
+    public @Type String getType() {
+        return type;
+    }
+
+    public void setType(@Type String type) {
+        this.type = type;
+    }
+
+    public @Post.Field int getFields() {
+        return fields;
+    }
+
+    public void setFields(@Post.Field int fields) {
+        this.fields = fields;
+    }
+
+}
@@ -0,0 +1,132 @@
+package me.vickychijwani.spectre.model.entity;
+
+import java.util.Date;
+
+import io.realm.RealmModel;
+import io.realm.annotations.Index;
+import io.realm.annotations.PrimaryKey;
+import io.realm.annotations.RealmClass;
+import io.realm.annotations.Required;
+
+/**
+ * A saved version of a post's markdown, see {@link me.vickychijwani.spectre.model.RevisionStore}.
+ */
+@RealmClass
+public class PostRevision implements RealmModel {
+
+    @PrimaryKey
+    private String id;
+
+    @Required @Index
+    private String postId;
+
+    // position in the history
+    @Index
+    private long seq;
+
+    @Required
+    private Date createdAt;
+
+    // SHA-1 of the markdown, to skip saving identical versions and to verify reconstructed ones
+    @Required
+    private String contentHash;
+
+    // length of the markdown, in chars
+    private int length = 0;
+
+    // the latest revision of a post has its full markdown, the others have a compressed delta from
+    // the next newer revision (see TextDelta)
+    private String markdown = null;
+    private byte[] delta = null;
+
+    // whether this was the content of the post on the server at some point, i.e., it can be the
+    // base of a 3-way merge when the local and server copies conflict
+    private boolean synced = false;
+
+    @SuppressWarnings("unused")
+    public PostRevision() {}
+
+    public PostRevision(String id, String postId, long seq, Date createdAt, String contentHash,
+                        int length) {
+        this.id = id;
+        this.postId = postId;
+        this.seq = seq;
+        this.createdAt = createdAt;
+        this.contentHash = contentHash;
+        this.length = length;
+    }
+
+    // NOTE: DO NOT ADD / MODIFY METHODS, SEE https://realm.io/docs/java/#faq
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getPostId() {
+        return postId;
+    }
+
+    public void setPostId(String postId) {
+        this.postId = postId;
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    public void setSeq(long seq) {
+        this.seq = seq;
+    }
+
+    public Date getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(Date createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public void setLength(int length) {
+        this.length = length;
+    }
+
+    public String getMarkdown() {
+        return markdown;
+    }
+
+    public void setMarkdown(String markdown) {
+        this.markdown = markdown;
+    }
+
+    public byte[] getDelta() {
+        return delta;
+    }
+
+    public void setDelta(byte[] delta) {
+        this.delta = delta;
+    }
+
+    public boolean isSynced() {
+        return synced;
+    }
+
+    public void setSynced(boolean synced) {
+        this.synced = synced;
+    }
+
+}
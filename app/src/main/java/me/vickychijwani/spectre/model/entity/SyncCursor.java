@@ -0,0 +1,89 @@
+package me.vickychijwani.spectre.model.entity;
+
+import android.support.annotation.StringDef;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.Date;
+
+import io.realm.RealmObject;
+import io.realm.annotations.PrimaryKey;
+import io.realm.annotations.RealmClass;
+
+/**
+ * Persisted progress of a paged walk over a collection endpoint. There is one cursor per
+ * collection type, and since each blog has its own data Realm, one cursor per blog.
+ */
+@RealmClass
+public class SyncCursor extends RealmObject {
+
+    @Retention(RetentionPolicy.SOURCE)
+    @StringDef({ TYPE_POSTS })
+    public @interface Type {}
+
+    public static final String TYPE_POSTS = "posts";
+
+    @PrimaryKey
+    private String type;
+
+    // page to fetch next in an unfinished walk, or 0 if no walk is in progress
+    private int nextPage = 0;
+
+    // incremented at the start of every walk; every object seen during a walk is stamped with it
+    private long generation = 0;
+
+    // newest updated_at seen on the server; delta syncs ask only for objects updated since then
+    private Date watermark = null;
+
+    // when the last full walk finished; deletions are only detected by full walks
+    private Date lastFullSyncAt = null;
+
+    @SuppressWarnings("unused")
+    public SyncCursor() {}
+
+    public SyncCursor(@Type String type) {
+        this.type = type;
+    }
+
+    // NOTE: DO NOT ADD / MODIFY METHODS, SEE https://realm.io/docs/java/#faq
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public int getNextPage() {
+        return nextPage;
+    }
+
+    public void setNextPage(int nextPage) {
+        this.nextPage = nextPage;
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    public void setGeneration(long generation) {
+        this.generation = generation;
+    }
+
+    public Date getWatermark() {
+        return watermark;
+    }
+
+    public void setWatermark(Date watermark) {
+        this.watermark = watermark;
+    }
+
+    public Date getLastFullSyncAt() {
+        return lastFullSyncAt;
+    }
+
+    public void setLastFullSyncAt(Date lastFullSyncAt) {
+        this.lastFullSyncAt = lastFullSyncAt;
+    }
+
+}
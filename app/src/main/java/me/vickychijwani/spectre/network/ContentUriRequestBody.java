@@ -0,0 +1,83 @@
+package me.vickychijwani.spectre.network;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import okio.Okio;
+import okio.Source;
+
+/**
+ * A request body that streams a file from a content URI straight to the socket, a chunk at a time,
+ * so the file is never held in memory as a whole (a full-size photo can be several MB).
+ *
+ * The length is reported as unknown, so the body is sent with chunked transfer encoding: the size
+ * reported by the content provider is only used for progress, because it isn't always accurate and
+ * a wrong Content-Length would fail the upload. The stream is re-opened on every write, so the
+ * request can be retried. Cancelling the call closes the socket, which stops the write.
+ */
+final class ContentUriRequestBody extends RequestBody {
+
+    // same as an Okio segment, so every chunk is written out as soon as it's read
+    private static final long CHUNK_SIZE = 8192;
+
+    interface ProgressListener {
+        // totalBytes is -1 if unknown; called on the thread the request is executed on
+        void onProgress(long bytesWritten, long totalBytes);
+    }
+
+    private final ContentResolver mContentResolver;
+    private final Uri mUri;
+    private final MediaType mContentType;
+    private final long mSize;
+    private final ProgressListener mProgressListener;
+
+    ContentUriRequestBody(@NonNull ContentResolver contentResolver, @NonNull Uri uri,
+                          @Nullable MediaType contentType, long size,
+                          @NonNull ProgressListener progressListener) {
+        mContentResolver = contentResolver;
+        mUri = uri;
+        mContentType = contentType;
+        mSize = size;
+        mProgressListener = progressListener;
+    }
+
+    @Override
+    public MediaType contentType() {
+        return mContentType;
+    }
+
+    @Override
+    public long contentLength() {
+        return -1;
+    }
+
+    @Override
+    public void writeTo(@NonNull BufferedSink sink) throws IOException {
+        InputStream inputStream = mContentResolver.openInputStream(mUri);
+        if (inputStream == null) {
+            throw new FileNotFoundException("Failed to open input stream for uri: " + mUri);
+        }
+        Source source = Okio.source(inputStream);
+        try {
+            long bytesWritten = 0;
+            long read;
+            while ((read = source.read(sink.buffer(), CHUNK_SIZE)) != -1) {
+                sink.emitCompleteSegments();
+                bytesWritten += read;
+                mProgressListener.onProgress(bytesWritten, mSize);
+            }
+        } finally {
+            source.close();
+        }
+    }
+
+}
@@ -8,6 +8,7 @@ import me.vickychijwani.spectre.model.entity.AuthToken;
 import me.vickychijwani.spectre.network.entity.AuthReqBody;
 import me.vickychijwani.spectre.network.entity.ConfigurationList;
 import me.vickychijwani.spectre.network.entity.PostList;
+import me.vickychijwani.spectre.network.entity.PostStream;
 import me.vickychijwani.spectre.network.entity.PostStubList;
 import me.vickychijwani.spectre.network.entity.RefreshReqBody;
 import me.vickychijwani.spectre.network.entity.RevokeReqBody;
@@ -28,6 +29,12 @@ import retrofit2.http.Query;
 
 public interface GhostApiService {
 
+    // all the post metadata needed for the post list, but not the content, see streamPostSummaries()
+    String POST_SUMMARIES_URL = "posts/?status=all&staticPages=all&include=tags&order=updated_at%20desc"
+            + "&fields=id,uuid,title,slug,status,feature_image,featured,page,language,author,"
+            + "created_by,updated_by,published_by,created_at,published_at,updated_at,"
+            + "meta_title,meta_description,custom_excerpt";
+
     @POST("authentication/token/")
     Observable<AuthToken> getAuthToken(@Body AuthReqBody credentials);
 
@@ -48,16 +55,44 @@ public interface GhostApiService {
     Call<PostList> createPost(@Header("Authorization") String authHeader,
                               @Body PostStubList posts);
 
-    // FIXME (issue #81) only allowing N posts right now to avoid too much data transfer
-    @GET("posts/?status=all&staticPages=all&include=tags&formats=mobiledoc,html")
+    // most-recently-updated first: an edit or a new post always lands on the first page, so walking
+    // pages in order never skips a post because of concurrent edits
+    @GET("posts/?status=all&staticPages=all&include=tags&formats=mobiledoc,html&order=updated_at%20desc")
     Call<PostList> getPosts(@Header("Authorization") String authHeader,
                             @Header("If-None-Match") String etag,
                             @Query("filter") String filter,
-                            @Query("limit") int numPosts);
-
+                            @Query("limit") int numPosts,
+                            @Query("page") int page);
+
+    // same as getPosts(), minus the mobiledoc and html, which are by far the largest fields; used
+    // for the post list, the content is loaded with streamPost() when a post is opened; the
+    // response is spooled to disk instead of being parsed into memory, so that it can be saved
+    // one post at a time
+    @GET(POST_SUMMARIES_URL)
+    Call<PostStream> streamPostSummaries(@Header("Authorization") String authHeader,
+                                         @Header("If-None-Match") String etag,
+                                         @Query("filter") String filter,
+                                         @Query("limit") int numPosts,
+                                         @Query("page") int page);
+
+    // ids only, e.g., to look posts up by uuid or check that they still exist
+    @GET("posts/?status=all&staticPages=all&fields=id")
+    Call<PostList> getPostIds(@Header("Authorization") String authHeader,
+                              @Query("filter") String filter,
+                              @Query("limit") int numPosts);
+
+    // for when the post must be in memory anyway, e.g., to merge it
     @GET("posts/{id}/?status=all&include=tags&formats=mobiledoc,html")
     Call<PostList> getPost(@Header("Authorization") String authHeader, @Path("id") String id);
 
+    // same as getPost(), but spooled to disk, so that it's parsed on the thread that saves it
+    @GET("posts/{id}/?status=all&include=tags&formats=mobiledoc,html")
+    Call<PostStream> streamPost(@Header("Authorization") String authHeader, @Path("id") String id);
+
+    // just enough to detect whether the post has changed on the server, see getPost() for the rest
+    @GET("posts/{id}/?status=all&fields=id,updated_at")
+    Call<PostList> getPostVersion(@Header("Authorization") String authHeader, @Path("id") String id);
+
     @PUT("posts/{id}/?include=tags&formats=mobiledoc,html")
     Call<PostList> updatePost(@Header("Authorization") String authHeader,
                               @Path("id") String id, @Body PostStubList posts);
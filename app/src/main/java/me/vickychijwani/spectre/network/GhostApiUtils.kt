@@ -1,6 +1,8 @@
 package me.vickychijwani.spectre.network
 
 import com.google.gson.*
+import com.google.gson.stream.JsonReader
+import com.google.gson.stream.JsonToken
 import me.vickychijwani.spectre.network.entity.*
 import me.vickychijwani.spectre.util.NetworkUtils
 import me.vickychijwani.spectre.util.log.Log
@@ -9,21 +11,22 @@ import retrofit2.*
 import retrofit2.adapter.rxjava2.RxJava2CallAdapterFactory
 import retrofit2.converter.gson.GsonConverterFactory
 import java.io.IOException
+import java.io.StringReader
+import java.text.SimpleDateFormat
 import java.util.*
 
 object GhostApiUtils {
 
     private val TAG = GhostApiUtils::class.java.simpleName
 
+    // kinds of mobiledoc sections, as far as the markdown-only check is concerned
+    private const val SECTION_EMPTY = 0
+    private const val SECTION_FIRST_CARD = 1
+    private const val SECTION_OTHER = 2
+
     fun getRetrofit(blogUrl: String, httpClient: OkHttpClient): Retrofit {
         val baseUrl = NetworkUtils.makeAbsoluteUrl(blogUrl, "ghost/api/v0.1/")
-        val gson = GsonBuilder()
-                .registerTypeAdapter(Date::class.java, DateDeserializer())
-                .registerTypeAdapter(ConfigurationList::class.java, ConfigurationListDeserializer())
-                .registerTypeAdapterFactory(PostTypeAdapterFactory())
-                .setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
-                .setExclusionStrategies(RealmExclusionStrategy(), AnnotationExclusionStrategy())
-                .create()
+        val gson = getGson()
         return Retrofit.Builder()
                 .baseUrl(baseUrl)
                 .client(httpClient)
@@ -32,11 +35,23 @@ object GhostApiUtils {
                 .addConverterFactory(StringConverterFactory.create())
                 // for raw JSONObject output (e.g., for the /configuration/about call)
                 .addConverterFactory(JSONObjectConverterFactory.create())
+                // for post lists that are saved one post at a time, see PostStream
+                .addConverterFactory(PostStreamConverterFactory.create(gson))
                 // for domain objects
                 .addConverterFactory(GsonConverterFactory.create(gson))
                 .build()
     }
 
+    fun getGson(): Gson {
+        return GsonBuilder()
+                .registerTypeAdapter(Date::class.java, DateDeserializer())
+                .registerTypeAdapter(ConfigurationList::class.java, ConfigurationListDeserializer())
+                .registerTypeAdapterFactory(PostTypeAdapterFactory())
+                .setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
+                .setExclusionStrategies(RealmExclusionStrategy(), AnnotationExclusionStrategy())
+                .create()
+    }
+
     fun parseApiErrors(retrofit: Retrofit, exception: HttpException): ApiErrorList? {
         var apiErrors: ApiErrorList? = null
         try {
@@ -56,10 +71,40 @@ object GhostApiUtils {
         return apiErrors
     }
 
+    /**
+     * Builds a filter matching posts updated at or after the given instant. Ghost compares dates
+     * at second granularity, so the bound is inclusive to avoid missing same-second updates.
+     */
+    fun updatedSinceFilter(since: Date): String {
+        val format = SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US)
+        format.timeZone = TimeZone.getTimeZone("UTC")
+        return "updated_at:>='${format.format(since)}'"
+    }
+
+    /**
+     * ANDs together the given filters, skipping null ones. Returns null if all are null, so that
+     * Retrofit omits the parameter altogether.
+     */
+    fun combineFilters(vararg filters: String?): String? {
+        val nonNullFilters = filters.filterNotNull()
+        return if (nonNullFilters.isEmpty()) null else nonNullFilters.joinToString("+")
+    }
+
+    /**
+     * Same check as [hasOnlyMarkdownCard] on a parsed mobiledoc, but done in a single streaming
+     * pass over the JSON, without building a tree of it or throwing for Koenig posts, so it's
+     * cheap enough to classify every post as it's saved (see Post#updateEditorCompatibility).
+     */
     fun hasOnlyMarkdownCard(mobiledoc: String): Boolean {
-        val jsonParser = JsonParser()
-        val mobiledocJson = jsonParser.parse(mobiledoc).asJsonObject
-        return hasOnlyMarkdownCard(mobiledocJson)
+        return try {
+            val reader = JsonReader(StringReader(mobiledoc))
+            reader.isLenient = true
+            scanMobiledoc(reader)
+        } catch (e: IOException) {
+            false
+        } catch (e: RuntimeException) {
+            false
+        }
     }
 
     fun hasOnlyMarkdownCard(mobiledocJson: JsonObject): Boolean {
@@ -100,6 +145,110 @@ object GhostApiUtils {
         }
     }
 
+    private fun scanMobiledoc(reader: JsonReader): Boolean {
+        var hasOnlyMarkdownCard = false
+        var hasOnlyCardSection = false
+        reader.beginObject()
+        while (reader.hasNext()) {
+            when (reader.nextName()) {
+                "cards" -> hasOnlyMarkdownCard = scanCards(reader)
+                "sections" -> hasOnlyCardSection = scanSections(reader)
+                else -> reader.skipValue()
+            }
+        }
+        reader.endObject()
+        return hasOnlyMarkdownCard && hasOnlyCardSection
+    }
+
+    private fun scanCards(reader: JsonReader): Boolean {
+        var numCards = 0
+        var isFirstCardMarkdown = false
+        reader.beginArray()
+        while (reader.hasNext()) {
+            if (numCards == 0) {
+                isFirstCardMarkdown = scanCard(reader)
+            } else {
+                reader.skipValue()
+            }
+            ++numCards
+        }
+        reader.endArray()
+        return numCards == 1 && isFirstCardMarkdown
+    }
+
+    // a card is of the form [name, content]
+    private fun scanCard(reader: JsonReader): Boolean {
+        reader.beginArray()
+        val name = reader.nextString()
+        var hasMarkdown = false
+        reader.beginObject()
+        while (reader.hasNext()) {
+            if (reader.nextName() == "markdown") {
+                val token = reader.peek()
+                hasMarkdown = token == JsonToken.STRING || token == JsonToken.NUMBER
+                        || token == JsonToken.BOOLEAN
+            }
+            reader.skipValue()
+        }
+        reader.endObject()
+        while (reader.hasNext()) {
+            reader.skipValue()
+        }
+        reader.endArray()
+        // the markdown card was named "card-markdown" before Koenig came along
+        return (name == "markdown" || name == "card-markdown") && hasMarkdown
+    }
+
+    private fun scanSections(reader: JsonReader): Boolean {
+        var numNonEmptySections = 0
+        var isFirstSectionCard = false
+        reader.beginArray()
+        while (reader.hasNext()) {
+            val section = scanSection(reader)
+            if (section != SECTION_EMPTY) {
+                ++numNonEmptySections
+                if (numNonEmptySections == 1) {
+                    isFirstSectionCard = section == SECTION_FIRST_CARD
+                }
+            }
+        }
+        reader.endArray()
+        return numNonEmptySections == 1 && isFirstSectionCard
+    }
+
+    // https://github.com/bustle/mobiledoc-kit/blob/master/MOBILEDOC.md#sections
+    private fun scanSection(reader: JsonReader): Int {
+        var size = 0
+        var type = -1
+        var cardIndex = -1
+        var hasNoMarkers = false
+        reader.beginArray()
+        while (reader.hasNext()) {
+            when {
+                size == 0 -> type = reader.nextInt()
+                // card sections are of the form [10, cardIndex]
+                size == 1 && type == 10 -> cardIndex = reader.nextInt()
+                // empty sections are of the form [1, "p", []]
+                size == 2 && type == 1 -> {
+                    reader.beginArray()
+                    hasNoMarkers = !reader.hasNext()
+                    while (reader.hasNext()) {
+                        reader.skipValue()
+                    }
+                    reader.endArray()
+                }
+                else -> reader.skipValue()
+            }
+            ++size
+        }
+        reader.endArray()
+        return when {
+            size == 3 && type == 1 && hasNoMarkers -> SECTION_EMPTY
+            type == 10 && cardIndex == 0 -> SECTION_FIRST_CARD
+            else -> SECTION_OTHER
+        }
+    }
+
     fun initializeMobiledoc(): String {
         return """
             {
@@ -119,44 +268,11 @@ object GhostApiUtils {
     }
 
     fun insertMarkdownIntoMobiledoc(markdown: String, mobiledoc: String): String {
-        val jsonParser = JsonParser()
-        val mobiledocJson = jsonParser.parse(mobiledoc).asJsonObject
-
-        if (! hasOnlyMarkdownCard(mobiledocJson)) {
-            throw KoenigPostException()
-        }
-
-        try {
-            mobiledocJson
-                    .get("cards").asJsonArray
-                    .get(0).asJsonArray
-                    .get(1).asJsonObject
-                    .addProperty("markdown", markdown)
-        } catch (e: RuntimeException) {
-            Log.w(TAG, mobiledoc)
-            throw KoenigPostException()
-        }
-        return mobiledocJson.toString()
+        return MobiledocCodec.insertMarkdown(markdown, mobiledoc)
     }
 
     fun mobiledocToMarkdown(mobiledoc: String): String? {
-        val jsonParser = JsonParser()
-        val mobiledocJson = jsonParser.parse(mobiledoc).asJsonObject
-
-        if (! hasOnlyMarkdownCard(mobiledocJson)) {
-            throw KoenigPostException()
-        }
-
-        try {
-            return mobiledocJson
-                    .get("cards").asJsonArray
-                    .get(0).asJsonArray
-                    .get(1).asJsonObject
-                    .get("markdown").asString
-        } catch (e: RuntimeException) {
-            Log.w(TAG, mobiledoc)
-            throw KoenigPostException()
-        }
+        return MobiledocCodec.markdown(mobiledoc)
     }
 
 }
@@ -0,0 +1,94 @@
+package me.vickychijwani.spectre.network;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.IOException;
+import java.util.Locale;
+
+import okhttp3.Cache;
+
+/**
+ * A snapshot of the statistics of an HTTP cache, to tune its size budget from data.
+ *
+ * OkHttp doesn't report evictions, but writes while the cache is (nearly) full evict other
+ * entries, so the fill level and write count together show how much the cache churns.
+ */
+public final class HttpCacheStats {
+
+    // counted since the cache was created, or since the earlier snapshot, see since()
+    public final int requestCount;
+    public final int hitCount;              // includes conditional hits
+    public final int networkCount;          // includes conditional hits
+    public final int writeCount;
+    // current, in bytes
+    public final long size;
+    public final long maxSize;
+
+    HttpCacheStats(int requestCount, int hitCount, int networkCount, int writeCount,
+                   long size, long maxSize) {
+        this.requestCount = requestCount;
+        this.hitCount = hitCount;
+        this.networkCount = networkCount;
+        this.writeCount = writeCount;
+        this.size = size;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * NOTE: may do disk I/O, if the cache hasn't been used yet
+     */
+    @NonNull
+    public static HttpCacheStats of(@NonNull Cache cache) {
+        long size;
+        try {
+            size = cache.size();
+        } catch (IOException e) {
+            size = -1;
+        }
+        return new HttpCacheStats(cache.requestCount(), cache.hitCount(), cache.networkCount(),
+                cache.writeSuccessCount(), size, cache.maxSize());
+    }
+
+    /**
+     * @return the counts since the given earlier snapshot of the same cache (if any), and the
+     * current size
+     */
+    @NonNull
+    public HttpCacheStats since(@Nullable HttpCacheStats earlier) {
+        if (earlier == null) {
+            return this;
+        }
+        return new HttpCacheStats(requestCount - earlier.requestCount,
+                hitCount - earlier.hitCount, networkCount - earlier.networkCount,
+                writeCount - earlier.writeCount, size, maxSize);
+    }
+
+    public int getMissCount() {
+        return requestCount - hitCount;
+    }
+
+    /**
+     * @return hits that were revalidated with the server, e.g., with an ETag
+     */
+    public int getConditionalHitCount() {
+        return hitCount + networkCount - requestCount;
+    }
+
+    public int getHitPercent() {
+        return (requestCount == 0) ? 0 : Math.round(100f * hitCount / requestCount);
+    }
+
+    public int getFillPercent() {
+        return (size < 0 || maxSize <= 0) ? 0 : Math.round(100f * size / maxSize);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "%d requests, %d hits (%d conditional), %d misses, "
+                        + "%d writes, %d / %d KB used", requestCount, hitCount,
+                getConditionalHitCount(), getMissCount(), writeCount, size / 1024,
+                maxSize / 1024);
+    }
+
+}
@@ -1,5 +1,6 @@
 package me.vickychijwani.spectre.network;
 
+import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
 import java.io.File;
@@ -10,4 +11,11 @@ public interface HttpClientFactory {
 
     OkHttpClient create(@Nullable File cacheDir);
 
+    /**
+     * @param httpClient - client to share connections, timeouts and interceptors with
+     * @param cacheDir - directory for the image cache, disabled if null
+     * @return an HTTP client for images, with a cache separate from that of the given client
+     */
+    OkHttpClient createForImages(@NonNull OkHttpClient httpClient, @Nullable File cacheDir);
+
 }
@@ -0,0 +1,116 @@
+package me.vickychijwani.spectre.network
+
+import com.google.gson.JsonParser
+import com.google.gson.JsonPrimitive
+import me.vickychijwani.spectre.util.log.Log
+import java.util.*
+
+/**
+ * Parses mobiledoc JSON at most once per distinct string, so that repeated markdown reads and
+ * writes on the same post (e.g., on every auto-save or preview) don't re-parse the whole document.
+ *
+ * A parsed mobiledoc is kept as the serialized JSON split around the markdown card's content,
+ * so inserting new markdown is just a matter of escaping it and splicing it in between. The
+ * resulting string is cached too, so reading it back doesn't need a parse either.
+ */
+internal object MobiledocCodec {
+
+    private val TAG = MobiledocCodec::class.java.simpleName
+
+    // a few entries are enough: the post being edited, its last-saved version, and the server's
+    // version when resolving a conflict
+    private const val MAX_CACHE_SIZE = 8
+
+    // can never occur in a real post, used to locate the markdown content in the serialized JSON
+    private const val PLACEHOLDER = "\u0000spectre-markdown\u0000"
+
+    private val cache = object : LinkedHashMap<String, ParsedMobiledoc>(MAX_CACHE_SIZE, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, ParsedMobiledoc>?): Boolean {
+            return size > MAX_CACHE_SIZE
+        }
+    }
+
+    /**
+     * A parsed mobiledoc. [markdown] and the splice points are only available if
+     * [hasOnlyMarkdownCard] is true, i.e., if the post can be edited in this app.
+     */
+    class ParsedMobiledoc internal constructor(
+            val hasOnlyMarkdownCard: Boolean,
+            val markdown: String?,
+            // serialized JSON before and after the quoted markdown string
+            private val prefix: String?,
+            private val suffix: String?) {
+
+        /** @throws KoenigPostException if this is not a markdown-only post */
+        fun requireMarkdown(): String {
+            return markdown ?: throw KoenigPostException()
+        }
+
+        internal fun withMarkdown(source: String, newMarkdown: String): String {
+            if (prefix == null || suffix == null) {
+                throw KoenigPostException()
+            }
+            if (newMarkdown == markdown) {
+                return source
+            }
+            val mobiledoc = prefix + JsonPrimitive(newMarkdown).toString() + suffix
+            put(mobiledoc, ParsedMobiledoc(true, newMarkdown, prefix, suffix))
+            return mobiledoc
+        }
+    }
+
+    fun parse(mobiledoc: String): ParsedMobiledoc {
+        synchronized(cache) {
+            cache[mobiledoc]?.let { return it }
+        }
+        val parsed = parseUncached(mobiledoc)
+        put(mobiledoc, parsed)
+        return parsed
+    }
+
+    fun markdown(mobiledoc: String): String {
+        return parse(mobiledoc).requireMarkdown()
+    }
+
+    fun insertMarkdown(markdown: String, mobiledoc: String): String {
+        return parse(mobiledoc).withMarkdown(mobiledoc, markdown)
+    }
+
+    // exposed for tests
+    internal fun clearCache() {
+        synchronized(cache) {
+            cache.clear()
+        }
+    }
+
+    private fun put(mobiledoc: String, parsed: ParsedMobiledoc) {
+        synchronized(cache) {
+            cache[mobiledoc] = parsed
+        }
+    }
+
+    private fun parseUncached(mobiledoc: String): ParsedMobiledoc {
+        val mobiledocJson = JsonParser().parse(mobiledoc).asJsonObject
+        if (! GhostApiUtils.hasOnlyMarkdownCard(mobiledocJson)) {
+            return ParsedMobiledoc(false, null, null, null)
+        }
+        try {
+            val cardContent = mobiledocJson
+                    .get("cards").asJsonArray
+                    .get(0).asJsonArray
+                    .get(1).asJsonObject
+            val markdown = cardContent.get("markdown").asString
+            cardContent.addProperty("markdown", PLACEHOLDER)
+            val template = mobiledocJson.toString()
+            val quotedPlaceholder = JsonPrimitive(PLACEHOLDER).toString()
+            val start = template.indexOf(quotedPlaceholder)
+            val end = start + quotedPlaceholder.length
+            return ParsedMobiledoc(true, markdown,
+                    template.substring(0, start), template.substring(end))
+        } catch (e: RuntimeException) {
+            Log.w(TAG, mobiledoc)
+            return ParsedMobiledoc(false, null, null, null)
+        }
+    }
+
+}
@@ -1,6 +1,13 @@
 package me.vickychijwani.spectre.network;
 
-import android.annotation.SuppressLint;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
@@ -9,23 +16,33 @@ import com.google.gson.JsonObject;
 import com.squareup.otto.Bus;
 import com.squareup.otto.Subscribe;
 
-import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
+import java.net.HttpURLConnection;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.Deque;
+import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import io.reactivex.Observable;
+import io.reactivex.Single;
+import io.reactivex.android.schedulers.AndroidSchedulers;
+import io.reactivex.schedulers.Schedulers;
 import io.realm.Case;
 import io.realm.Realm;
 import io.realm.RealmModel;
 import io.realm.RealmObject;
 import io.realm.RealmQuery;
 import io.realm.RealmResults;
+import me.vickychijwani.spectre.SpectreApplication;
 import me.vickychijwani.spectre.account.AccountManager;
 import me.vickychijwani.spectre.analytics.AnalyticsService;
 import me.vickychijwani.spectre.auth.AuthService;
@@ -36,53 +53,70 @@ import me.vickychijwani.spectre.event.ApiCallEvent;
 import me.vickychijwani.spectre.event.ApiErrorEvent;
 import me.vickychijwani.spectre.event.BlogSettingsLoadedEvent;
 import me.vickychijwani.spectre.event.BusProvider;
+import me.vickychijwani.spectre.event.CancelFileUploadEvent;
 import me.vickychijwani.spectre.event.CreatePostEvent;
 import me.vickychijwani.spectre.event.DataRefreshedEvent;
 import me.vickychijwani.spectre.event.DeletePostEvent;
 import me.vickychijwani.spectre.event.FileUploadErrorEvent;
 import me.vickychijwani.spectre.event.FileUploadEvent;
+import me.vickychijwani.spectre.event.FileUploadProgressEvent;
 import me.vickychijwani.spectre.event.FileUploadedEvent;
 import me.vickychijwani.spectre.event.ForceCancelRefreshEvent;
 import me.vickychijwani.spectre.event.GhostVersionLoadedEvent;
 import me.vickychijwani.spectre.event.LoadBlogSettingsEvent;
 import me.vickychijwani.spectre.event.LoadGhostVersionEvent;
+import me.vickychijwani.spectre.event.LoadPostContentEvent;
+import me.vickychijwani.spectre.event.LoadPostRevisionsEvent;
 import me.vickychijwani.spectre.event.LoadPostsEvent;
 import me.vickychijwani.spectre.event.LoadTagsEvent;
 import me.vickychijwani.spectre.event.LoadUserEvent;
 import me.vickychijwani.spectre.event.LogoutEvent;
 import me.vickychijwani.spectre.event.LogoutStatusEvent;
 import me.vickychijwani.spectre.event.PostConflictFoundEvent;
+import me.vickychijwani.spectre.event.PostContentLoadedEvent;
 import me.vickychijwani.spectre.event.PostCreatedEvent;
 import me.vickychijwani.spectre.event.PostDeletedEvent;
+import me.vickychijwani.spectre.event.PostMergedEvent;
 import me.vickychijwani.spectre.event.PostReplacedEvent;
+import me.vickychijwani.spectre.event.PostRevisionsLoadedEvent;
 import me.vickychijwani.spectre.event.PostSavedEvent;
 import me.vickychijwani.spectre.event.PostSyncedEvent;
 import me.vickychijwani.spectre.event.PostsLoadedEvent;
 import me.vickychijwani.spectre.event.RefreshDataEvent;
+import me.vickychijwani.spectre.event.RestorePostRevisionEvent;
 import me.vickychijwani.spectre.event.SavePostEvent;
 import me.vickychijwani.spectre.event.SyncPostsEvent;
 import me.vickychijwani.spectre.event.TagsLoadedEvent;
+import me.vickychijwani.spectre.event.UploadImagesEvent;
 import me.vickychijwani.spectre.event.UserLoadedEvent;
-import me.vickychijwani.spectre.model.RealmUtils;
+import me.vickychijwani.spectre.model.ImageUploadQueue;
+import me.vickychijwani.spectre.model.OperationJournal;
+import me.vickychijwani.spectre.model.RealmWriter;
+import me.vickychijwani.spectre.model.RevisionStore;
 import me.vickychijwani.spectre.model.entity.AuthToken;
 import me.vickychijwani.spectre.model.entity.BlogMetadata;
 import me.vickychijwani.spectre.model.entity.ConfigurationParam;
 import me.vickychijwani.spectre.model.entity.ETag;
+import me.vickychijwani.spectre.model.entity.ImageUpload;
 import me.vickychijwani.spectre.model.entity.PendingAction;
 import me.vickychijwani.spectre.model.entity.Post;
+import me.vickychijwani.spectre.model.entity.PostOperation;
 import me.vickychijwani.spectre.model.entity.Setting;
+import me.vickychijwani.spectre.model.entity.SyncCursor;
 import me.vickychijwani.spectre.model.entity.Tag;
 import me.vickychijwani.spectre.model.entity.User;
+import me.vickychijwani.spectre.network.entity.ApiMeta;
 import me.vickychijwani.spectre.network.entity.PostList;
+import me.vickychijwani.spectre.network.entity.PostStream;
 import me.vickychijwani.spectre.network.entity.PostStubList;
 import me.vickychijwani.spectre.network.entity.SettingsList;
 import me.vickychijwani.spectre.network.entity.UserList;
+import me.vickychijwani.spectre.pref.UserPrefs;
 import me.vickychijwani.spectre.util.DateTimeUtils;
+import me.vickychijwani.spectre.util.DeviceUtils;
 import me.vickychijwani.spectre.util.NetworkUtils;
 import me.vickychijwani.spectre.util.PostUtils;
-import me.vickychijwani.spectre.util.functions.Action0;
-import me.vickychijwani.spectre.util.functions.Action1;
-import me.vickychijwani.spectre.util.functions.Action2;
+import me.vickychijwani.spectre.util.ThreeWayMerge;
 import me.vickychijwani.spectre.util.log.Log;
 import okhttp3.Headers;
 import okhttp3.MediaType;
@@ -100,10 +134,25 @@ public class NetworkService implements
 
     private static final String TAG = "NetworkService";
 
-    // number of posts to fetch
-    private static final int POSTS_FETCH_LIMIT = 30;
+    // number of posts to fetch per page when syncing
+    private static final int POSTS_PAGE_SIZE = 30;
+
+    // max time between full walks of the posts endpoint; refreshes in between only fetch changes
+    private static final long FULL_SYNC_INTERVAL = TimeUnit.HOURS.toMillis(24);
+
+    // number of posts whose existence is checked per request after a walk, see evictDeletedPosts()
+    private static final int EVICTION_CHECK_BATCH_SIZE = 50;
+
+    // post uploads: stay well under OkHttp's default limit of 5 requests per host, so that other
+    // requests (e.g., the post list refresh) aren't starved
+    private static final int UPLOAD_MAX_CONCURRENCY = 3;
+    private static final int UPLOAD_MAX_ATTEMPTS = 4;
+    private static final long UPLOAD_RETRY_BASE_DELAY = TimeUnit.SECONDS.toMillis(2);
+    private static final long UPLOAD_RETRY_MAX_DELAY = TimeUnit.SECONDS.toMillis(30);
 
     private Realm mRealm = null;
+    // all writes caused by network responses go through this, to keep them off the main thread
+    private RealmWriter mRealmWriter = null;
     private GhostApiService mApi = null;
     private AuthToken mAuthToken = null;
     private AuthService mAuthService = null;
@@ -112,6 +161,14 @@ public class NetworkService implements
     private ApiFailure mRefreshError = null;
     private final ArrayDeque<ApiCallEvent> mApiEventQueue = new ArrayDeque<>();
     private final ArrayDeque<ApiCallEvent> mRefreshEventsQueue = new ArrayDeque<>();
+    private final Handler mMainThreadHandler = new Handler(Looper.getMainLooper());
+
+    // image uploads (see ImageUploadQueue), one at a time
+    private Call<JsonElement> mImageUploadCall = null;
+    private String mImageUploadId = null;
+    private final Set<String> mCancelledImageUploadIds = new HashSet<>();
+    private BroadcastReceiver mImageUploadConstraintsReceiver = null;
+    private final Runnable mProcessImageUploadsRunnable = this::processImageUploads;
 
     public void start(OkHttpClient httpClient) {
         Log.i(TAG, "Initializing NetworkService...");
@@ -123,7 +180,9 @@ public class NetworkService implements
             setApiService(activeBlog.getBlogUrl(), api);
 
             mRealm = Realm.getInstance(activeBlog.getDataRealmConfig());
+            mRealmWriter = new RealmWriter(mRealm);
             mAuthToken = new AuthToken(mRealm.where(AuthToken.class).findFirst());
+            resumeImageUploads();
         }
     }
 
@@ -131,7 +190,8 @@ public class NetworkService implements
     @SuppressWarnings("unused")
     public void stop() {
         getBus().unregister(this);
-        mRealm.close();
+        stopImageUploads();
+        mRealmWriter.close(mRealm::close);
     }
 
     // TODO temporary crutch while I refactor this huge class
@@ -149,7 +209,10 @@ public class NetworkService implements
     public void onNewAuthToken(AuthToken authToken) {
         Log.d(TAG, "Got new access token = " + authToken.getAccessToken());
         authToken.setCreatedAt(DateTimeUtils.getEpochSeconds());
-        mAuthToken = new AuthToken(createOrUpdateModel(authToken));
+        mAuthToken = new AuthToken(authToken);
+        mRealmWriter.write(realm -> {
+            createOrUpdateModel(realm, authToken);
+        });
         flushApiEventQueue(false);
     }
 
@@ -158,7 +221,9 @@ public class NetworkService implements
         AccountManager.setActiveBlog(blogUrl);
         BlogMetadata activeBlog = AccountManager.getActiveBlog();
         mRealm = Realm.getInstance(activeBlog.getDataRealmConfig());
+        mRealmWriter = new RealmWriter(mRealm);
         onNewAuthToken(authToken);
+        resumeImageUploads();
     }
 
     @Override
@@ -262,15 +327,17 @@ public class NetworkService implements
             public void onResponse(@NonNull Call<UserList> call, @NonNull Response<UserList> response) {
                 if (response.isSuccessful()) {
                     UserList userList = response.body();
-                    storeEtag(response.headers(), ETag.TYPE_CURRENT_USER);
-                    createOrUpdateModel(userList.users);
-                    getBus().post(new UserLoadedEvent(userList.users.get(0)));
-
-                    // download all posts again to enforce role-based permissions for this user
-                    removeEtag(ETag.TYPE_ALL_POSTS);
-                    getBus().post(new SyncPostsEvent(false));
-
-                    refreshSucceeded(event);
+                    mRealmWriter.write(realm -> {
+                        storeEtag(realm, response.headers(), ETag.TYPE_CURRENT_USER);
+                        insertOrUpdateModels(realm, userList.users);
+                        // download all posts again to enforce role-based permissions for this user
+                        removeEtag(realm, ETag.TYPE_ALL_POSTS);
+                        resetSyncCursor(realm, SyncCursor.TYPE_POSTS);
+                    }, () -> {
+                        getBus().post(new UserLoadedEvent(userList.users.get(0)));
+                        getBus().post(new SyncPostsEvent(false));
+                        refreshSucceeded(event);
+                    });
                 } else {
                     // fallback to cached data
                     RealmResults<User> users = mRealm.where(User.class).findAll();
@@ -318,13 +385,16 @@ public class NetworkService implements
             public void onResponse(@NonNull Call<SettingsList> call, @NonNull Response<SettingsList> response) {
                 if (response.isSuccessful()) {
                     SettingsList settingsList = response.body();
-                    storeEtag(response.headers(), ETag.TYPE_BLOG_SETTINGS);
-                    createOrUpdateModel(settingsList.settings);
-                    // TODO this is dead code; permalink setting was removed in Ghost 2.0
-                    // see https://github.com/TryGhost/Ghost/pull/9768/files
-                    savePermalinkFormat(settingsList.settings);
-                    getBus().post(new BlogSettingsLoadedEvent(settingsList.settings));
-                    refreshSucceeded(event);
+                    mRealmWriter.write(realm -> {
+                        storeEtag(realm, response.headers(), ETag.TYPE_BLOG_SETTINGS);
+                        insertOrUpdateModels(realm, settingsList.settings);
+                    }, () -> {
+                        // TODO this is dead code; permalink setting was removed in Ghost 2.0
+                        // see https://github.com/TryGhost/Ghost/pull/9768/files
+                        savePermalinkFormat(settingsList.settings);
+                        getBus().post(new BlogSettingsLoadedEvent(settingsList.settings));
+                        refreshSucceeded(event);
+                    });
                 } else {
                     // fallback to cached data
                     RealmResults<Setting> settings = mRealm.where(Setting.class).findAll();
@@ -358,12 +428,11 @@ public class NetworkService implements
     @Subscribe
     public void onLoadPostsEvent(final LoadPostsEvent event) {
         if (event.loadCachedData || ! event.forceNetworkCall) {
-            List<Post> posts = getPostsSorted();
             // if there are no posts, there could be 2 cases:
             // 1. there are actually no posts
             // 2. we just haven't fetched any posts from the server yet (Realm returns an empty list in this case too)
-            if (posts.size() > 0) {
-                getBus().post(new PostsLoadedEvent(posts, POSTS_FETCH_LIMIT));
+            if (mRealm.where(Post.class).count() > 0) {
+                getBus().post(new PostsLoadedEvent());
                 refreshSucceeded(event);
                 return;
             }
@@ -380,59 +449,150 @@ public class NetworkService implements
             authorFilter = "author:" + user.getSlug();
         }
 
-        final Call<PostList> postListCall = mApi.getPosts(mAuthToken.getAuthHeader(),
-                loadEtag(ETag.TYPE_ALL_POSTS), authorFilter, POSTS_FETCH_LIMIT);
-        postListCall.enqueue(new Callback<PostList>() {
+        SyncCursor cursor = findSyncCursor(mRealm, SyncCursor.TYPE_POSTS);
+        if (cursor != null && cursor.getNextPage() > 0) {
+            // resume an unfinished walk (e.g., the app was killed midway)
+            loadPostsPage(event, authorFilter, cursor.getNextPage());
+        } else if (cursor != null && isDeltaSyncPossible(cursor)) {
+            loadPostsDelta(event, authorFilter, cursor.getWatermark(), 1, null);
+        } else {
+            loadPostsPage(event, authorFilter, 1);
+        }
+    }
+
+    private boolean isDeltaSyncPossible(@NonNull SyncCursor cursor) {
+        // deletions don't show up in a delta, so fall back to a full walk once in a while
+        return cursor.getWatermark() != null && cursor.getLastFullSyncAt() != null
+                && System.currentTimeMillis() - cursor.getLastFullSyncAt().getTime() < FULL_SYNC_INTERVAL;
+    }
+
+    private void loadPostsPage(final LoadPostsEvent event, @Nullable final String authorFilter,
+                               final int page) {
+        Log.i(TAG, "[loadPostsPage] loading page %d", page);
+        // the first page is ordered by updated_at, so it changes whenever *any* post changes,
+        // hence a 304 Not Modified on the first page means there is nothing new to fetch at all
+        String etag = (page == 1) ? loadEtag(ETag.TYPE_ALL_POSTS) : "";
+        final Call<PostStream> postStreamCall = mApi.streamPostSummaries(mAuthToken.getAuthHeader(),
+                etag, authorFilter, POSTS_PAGE_SIZE, page);
+        postStreamCall.enqueue(new Callback<PostStream>() {
             @Override
-            public void onResponse(@NonNull Call<PostList> call, @NonNull Response<PostList> response) {
+            public void onResponse(@NonNull Call<PostStream> call, @NonNull Response<PostStream> response) {
                 if (response.isSuccessful()) {
-                    PostList postList = response.body();
-                    storeEtag(response.headers(), ETag.TYPE_ALL_POSTS);
-
-                    // delete local copies of posts that are no longer within the POSTS_FETCH_LIMIT
-                    // FIXME if there are any locally-edited posts at this point that were pushed
-                    // FIXME beyond POSTS_FETCH_LIMIT, their local copies will also be deleted!
-                    Iterable<Post> deletedPosts = Observable.fromIterable(mRealm.where(Post.class).findAll())
-                            .filter(cached -> ! postList.contains(cached.getId()))
-                            .blockingIterable();
-                    deleteModels(deletedPosts);
-
-                    // skip edited posts because they've not yet been uploaded
-                    RealmResults<Post> localOnlyEdits = mRealm.where(Post.class)
-                            .in("pendingActions.type", new String[] {
-                                    PendingAction.EDIT_LOCAL,
-                                    PendingAction.EDIT
-                            })
-                            .findAll();
-                    for (int i = postList.getPosts().size() - 1; i >= 0; --i) {
-                        for (int j = 0; j < localOnlyEdits.size(); ++j) {
-                            if (postList.getPosts().get(i).getId().equals(localOnlyEdits.get(j).getId())) {
-                                postList.getPosts().remove(i);
-                            }
+                    PostStream postStream = response.body();
+                    mRealmWriter.write(realm -> {
+                        if (page == 1) {
+                            startSyncWalk(realm, SyncCursor.TYPE_POSTS);
+                        }
+                        long generation = getOrCreateSyncCursor(realm, SyncCursor.TYPE_POSTS).getGeneration();
+                        SavedPage savedPage = savePostsPage(realm, postStream, generation);
+                        if (savedPage.error != null) {
+                            // the posts saved so far are fine, the page will be fetched again; its
+                            // ETag isn't stored, else that would get a 304 and skip the page
+                            return savedPage;
+                        }
+                        if (page == 1) {
+                            storeEtag(realm, response.headers(), ETag.TYPE_ALL_POSTS);
+                        }
+                        // anything updated after the first page was fetched will be picked up by
+                        // the next delta, so the first page's newest updated_at is a safe watermark
+                        if (page == 1 && savedPage.newestUpdatedAt != null) {
+                            setSyncWatermark(realm, SyncCursor.TYPE_POSTS, savedPage.newestUpdatedAt);
+                        }
+                        // progress is saved along with the page, so the walk can be resumed
+                        // exactly where it was interrupted
+                        if (savedPage.hasNextPage(page)) {
+                            advanceSyncWalk(realm, SyncCursor.TYPE_POSTS, savedPage.nextPage);
+                        } else {
+                            finishSyncWalk(realm, SyncCursor.TYPE_POSTS);
                         }
+                        return savedPage;
+                    }, savedPage -> {
+                        getBus().post(new PostsLoadedEvent());
+                        if (savedPage.error != null) {
+                            ApiFailure<PostStream> apiFailure = new ApiFailure<>(savedPage.error);
+                            getBus().post(new ApiErrorEvent(apiFailure));
+                            refreshFailed(event, apiFailure);
+                        } else if (savedPage.hasNextPage(page)) {
+                            loadPostsPage(event, authorFilter, savedPage.nextPage);
+                        } else {
+                            evictDeletedPosts(savedPage.generation);
+                            refreshSucceeded(event);
+                        }
+                    });
+                } else {
+                    // fallback to cached data
+                    getBus().post(new PostsLoadedEvent());
+                    if (NetworkUtils.isNotModified(response)) {
+                        // the ETag covers the total count too, so nothing was deleted either
+                        mRealmWriter.write(realm -> finishSyncWalk(realm, SyncCursor.TYPE_POSTS),
+                                () -> refreshSucceeded(event));
+                    } else if (NetworkUtils.isUnauthorized(response)) {
+                        // defer the event and try to re-authorize
+                        refreshAccessToken(event);
+                    } else {
+                        ApiFailure<PostStream> apiFailure = new ApiFailure<>(response);
+                        getBus().post(new ApiErrorEvent(apiFailure));
+                        refreshFailed(event, apiFailure);
                     }
+                }
+            }
 
-                    // make sure drafts have a publishedAt of FAR_FUTURE so they're sorted to the top
-                    Observable.fromIterable(postList.getPosts())
-                            .filter(post -> post.getPublishedAt() == null)
-                            .forEach(post -> post.setPublishedAt(DateTimeUtils.FAR_FUTURE));
-
-                    // now create / update received posts
-                    // TODO use Realm#insertOrUpdate() for faster insertion here: https://realm.io/news/realm-java-1.1.0/
-                    createOrUpdateModel(postList.getPosts());
-                    getBus().post(new PostsLoadedEvent(getPostsSorted(), POSTS_FETCH_LIMIT));
+            @Override
+            public void onFailure(@NonNull Call<PostStream> call, @NonNull Throwable error) {
+                // error in transport layer, or lower
+                ApiFailure<PostStream> apiFailure = new ApiFailure<>(error);
+                getBus().post(new ApiErrorEvent(apiFailure));
+                refreshFailed(event, apiFailure);
+            }
+        });
+    }
 
-                    refreshSucceeded(event);
+    private void loadPostsDelta(final LoadPostsEvent event, @Nullable final String authorFilter,
+                                @NonNull final Date since, final int page,
+                                @Nullable final Date newWatermark) {
+        Log.i(TAG, "[loadPostsDelta] loading page %d of posts updated since %s", page, since);
+        String filter = GhostApiUtils.INSTANCE.combineFilters(authorFilter,
+                GhostApiUtils.INSTANCE.updatedSinceFilter(since));
+        final Call<PostStream> postStreamCall = mApi.streamPostSummaries(mAuthToken.getAuthHeader(),
+                "", filter, POSTS_PAGE_SIZE, page);
+        postStreamCall.enqueue(new Callback<PostStream>() {
+            @Override
+            public void onResponse(@NonNull Call<PostStream> call, @NonNull Response<PostStream> response) {
+                if (response.isSuccessful()) {
+                    PostStream postStream = response.body();
+                    mRealmWriter.write(realm -> {
+                        long generation = getOrCreateSyncCursor(realm, SyncCursor.TYPE_POSTS).getGeneration();
+                        return savePostsPage(realm, postStream, generation);
+                    }, savedPage -> {
+                        getBus().post(new PostsLoadedEvent());
+                        if (savedPage.error != null) {
+                            ApiFailure<PostStream> apiFailure = new ApiFailure<>(savedPage.error);
+                            getBus().post(new ApiErrorEvent(apiFailure));
+                            refreshFailed(event, apiFailure);
+                            return;
+                        }
+                        // the watermark only moves once the whole delta is saved, so an
+                        // interrupted delta is simply fetched again
+                        Date watermark = (page == 1)
+                                ? getNewer(since, savedPage.newestUpdatedAt)
+                                : newWatermark;
+                        if (savedPage.hasNextPage(page)) {
+                            loadPostsDelta(event, authorFilter, since, savedPage.nextPage, watermark);
+                        } else if (watermark != null) {
+                            mRealmWriter.write(realm -> setSyncWatermark(realm, SyncCursor.TYPE_POSTS, watermark),
+                                    () -> refreshSucceeded(event));
+                        } else {
+                            refreshSucceeded(event);
+                        }
+                    });
                 } else {
                     // fallback to cached data
-                    getBus().post(new PostsLoadedEvent(getPostsSorted(), POSTS_FETCH_LIMIT));
-                    if (NetworkUtils.isNotModified(response)) {
-                        refreshSucceeded(event);
-                    } else if (NetworkUtils.isUnauthorized(response)) {
+                    getBus().post(new PostsLoadedEvent());
+                    if (NetworkUtils.isUnauthorized(response)) {
                         // defer the event and try to re-authorize
                         refreshAccessToken(event);
                     } else {
-                        ApiFailure<PostList> apiFailure = new ApiFailure<>(response);
+                        ApiFailure<PostStream> apiFailure = new ApiFailure<>(response);
                         getBus().post(new ApiErrorEvent(apiFailure));
                         refreshFailed(event, apiFailure);
                     }
@@ -440,25 +600,280 @@ public class NetworkService implements
             }
 
             @Override
-            public void onFailure(@NonNull Call<PostList> call, @NonNull Throwable error) {
+            public void onFailure(@NonNull Call<PostStream> call, @NonNull Throwable error) {
                 // error in transport layer, or lower
-                ApiFailure<PostList> apiFailure = new ApiFailure<>(error);
+                ApiFailure<PostStream> apiFailure = new ApiFailure<>(error);
                 getBus().post(new ApiErrorEvent(apiFailure));
                 refreshFailed(event, apiFailure);
             }
         });
     }
 
+    @Nullable
+    private static Date getNewer(@Nullable Date a, @Nullable Date b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        return b.after(a) ? b : a;
+    }
+
+    // what's known about a page of posts after saving it, see savePostsPage()
+    private static final class SavedPage {
+        long generation;
+        @Nullable Integer nextPage = null;
+        // newest updated_at among the posts in the page, including the skipped ones
+        @Nullable Date newestUpdatedAt = null;
+        // set if the page couldn't be read completely
+        @Nullable IOException error = null;
+
+        boolean hasNextPage(int currentPage) {
+            return nextPage != null && nextPage > currentPage;
+        }
+    }
+
+    // the list only fetches post summaries, see GhostApiService#streamPostSummaries()
+    // NOTE: must be called inside a transaction
+    @NonNull
+    private static SavedPage savePostsPage(@NonNull Realm realm, @NonNull PostStream postStream,
+                                           long generation) {
+        SavedPage savedPage = new SavedPage();
+        savedPage.generation = generation;
+        try {
+            // each post is saved as soon as it's parsed, so only one is in memory at a time
+            ApiMeta meta = postStream.read(post -> {
+                savedPage.newestUpdatedAt = getNewer(savedPage.newestUpdatedAt, post.getUpdatedAt());
+                savePostSummary(realm, post, generation);
+            });
+            if (meta != null && meta.pagination != null) {
+                savedPage.nextPage = meta.pagination.next;
+            }
+        } catch (IOException e) {
+            savedPage.error = e;
+        } finally {
+            postStream.close();
+        }
+        return savedPage;
+    }
+
+    // NOTE: must be called inside a transaction
+    private static void savePostSummary(@NonNull Realm realm, @NonNull Post post,
+                                        long generation) {
+        Post realmPost = realm.where(Post.class).equalTo("id", post.getId()).findFirst();
+        // skip edited posts because they've not yet been uploaded, but do note that they were
+        // seen, else they'd be considered for eviction at the end of the walk
+        if (realmPost != null && (realmPost.hasPendingAction(PendingAction.EDIT_LOCAL)
+                || realmPost.hasPendingAction(PendingAction.EDIT))) {
+            realmPost.setSyncGeneration(generation);
+            return;
+        }
+
+        // make sure drafts have a publishedAt of FAR_FUTURE so they're sorted to the top
+        if (post.getPublishedAt() == null) {
+            post.setPublishedAt(DateTimeUtils.FAR_FUTURE);
+        }
+        post.setSyncGeneration(generation);
+        // keep the already-loaded content if it's still current, else it's loaded on demand
+        if (realmPost != null && realmPost.isContentLoaded()
+                && realmPost.getUpdatedAt() != null
+                && realmPost.getUpdatedAt().equals(post.getUpdatedAt())) {
+            post.setMobiledoc(realmPost.getMobiledoc());
+            post.setHtml(realmPost.getHtml());
+            post.setEditorCompatibility(realmPost.getEditorCompatibility());
+            post.setContentLoaded(true);
+        } else {
+            post.setContentLoaded(false);
+        }
+        insertOrUpdateModel(realm, post);
+    }
+
+    /**
+     * Evicts local copies of posts that were not seen in the walk that just completed, but only
+     * after the server confirms that they are gone. A post can be missed by a walk without being
+     * deleted, e.g., when a deletion elsewhere shifts it onto an already-fetched page.
+     *
+     * The unseen posts are checked in batches, one request at a time, and only their ids are
+     * fetched.
+     */
+    private void evictDeletedPosts(long generation) {
+        List<String> unseenPostIds = new ArrayList<>();
+        for (Post post : mRealm.where(Post.class)
+                .notEqualTo("syncGeneration", generation)
+                .isEmpty("pendingActions")
+                .findAll()) {
+            unseenPostIds.add(post.getId());
+        }
+        evictDeletedPosts(unseenPostIds, 0);
+    }
+
+    private void evictDeletedPosts(final List<String> unseenPostIds, final int start) {
+        if (start >= unseenPostIds.size()) {
+            return;
+        }
+        final List<String> batch = unseenPostIds.subList(start,
+                Math.min(start + EVICTION_CHECK_BATCH_SIZE, unseenPostIds.size()));
+        StringBuilder filter = new StringBuilder("id:[");
+        for (int i = 0; i < batch.size(); ++i) {
+            filter.append((i > 0) ? "," : "").append(batch.get(i));
+        }
+        filter.append("]");
+        mApi.getPostIds(mAuthToken.getAuthHeader(), filter.toString(), batch.size())
+                .enqueue(new Callback<PostList>() {
+            @Override
+            public void onResponse(@NonNull Call<PostList> call, @NonNull Response<PostList> response) {
+                if (! response.isSuccessful()) {
+                    // not confirmed, so keep the local copies; they'll be checked again after
+                    // the next walk
+                    return;
+                }
+                // posts missing from the response are deleted, or no longer visible to this
+                // user (e.g., role changed)
+                final Set<String> deletedPostIds = new HashSet<>(batch);
+                for (Post post : response.body().getPosts()) {
+                    deletedPostIds.remove(post.getId());
+                }
+                // returns the removed image uploads, or null if no post was deleted
+                mRealmWriter.write(realm -> {
+                    List<ImageUpload> removedUploads = null;
+                    for (String postId : deletedPostIds) {
+                        Post realmPost = realm.where(Post.class)
+                                .equalTo("id", postId)
+                                .findFirst();
+                        // the post could've been edited locally while we were waiting
+                        if (realmPost != null && realmPost.isPendingActionsEmpty()) {
+                            Log.i(TAG, "[evictDeletedPosts] deleting local copy of post %s", postId);
+                            // along with its history and images, like any other deleted post
+                            RevisionStore.delete(realm, postId);
+                            if (removedUploads == null) {
+                                removedUploads = new ArrayList<>();
+                            }
+                            removedUploads.addAll(ImageUploadQueue.delete(realm, postId));
+                            RealmObject.deleteFromRealm(realmPost);
+                        }
+                    }
+                    return removedUploads;
+                }, removedUploads -> {
+                    if (removedUploads != null) {
+                        ImageUploadQueue.deleteFiles(removedUploads);
+                        getBus().post(new PostsLoadedEvent());
+                    }
+                });
+                evictDeletedPosts(unseenPostIds, start + batch.size());
+            }
+
+            @Override
+            public void onFailure(@NonNull Call<PostList> call, @NonNull Throwable error) {
+                // not confirmed, so keep the local copies; they'll be checked again after the
+                // next walk
+            }
+        });
+    }
+
+    @Subscribe
+    public void onLoadPostContentEvent(final LoadPostContentEvent event) {
+        Post realmPost = mRealm.where(Post.class).equalTo("id", event.postId).findFirst();
+        if (realmPost == null) {
+            return;
+        }
+        if (realmPost.isContentLoaded() || event.loadCachedData) {
+            getBus().post(new PostContentLoadedEvent(new Post(realmPost)));
+            return;
+        }
+
+        // the post is parsed and saved on the writer's thread, so the main thread never holds (or
+        // parses) the whole body; see PostStream
+        mApi.streamPost(mAuthToken.getAuthHeader(), event.postId).enqueue(new Callback<PostStream>() {
+            @Override
+            public void onResponse(@NonNull Call<PostStream> call, @NonNull Response<PostStream> response) {
+                if (response.isSuccessful()) {
+                    PostStream postStream = response.body();
+                    final Date now = new Date();
+                    mRealmWriter.write(realm -> saveLoadedPost(realm, event.postId, postStream, now),
+                            savedPost -> {
+                        if (savedPost != null) {
+                            getBus().post(new PostContentLoadedEvent(savedPost));
+                            getBus().post(new PostsLoadedEvent());
+                        } else {
+                            onPostContentLoadFailed(event.postId, null);
+                        }
+                    });
+                } else if (NetworkUtils.isUnauthorized(response)) {
+                    // defer the event and try to re-authorize
+                    refreshAccessToken(event);
+                } else {
+                    onPostContentLoadFailed(event.postId, new ApiFailure<>(response));
+                }
+            }
+
+            @Override
+            public void onFailure(@NonNull Call<PostStream> call, @NonNull Throwable error) {
+                // error in transport layer, or lower
+                onPostContentLoadFailed(event.postId, new ApiFailure<>(error));
+            }
+        });
+    }
+
+    // NOTE: must be called inside a transaction
+    // returns an unmanaged copy of the saved post, or null if it couldn't be read or the local copy
+    // was deleted in the meantime
+    @Nullable
+    private static Post saveLoadedPost(@NonNull Realm realm, @NonNull String postId,
+                                       @NonNull PostStream postStream, @NonNull Date now) {
+        final Post[] savedPost = { null };
+        try {
+            postStream.read(serverPost -> {
+                Post realmPost = realm.where(Post.class).equalTo("id", postId).findFirst();
+                if (realmPost == null || ! postId.equals(serverPost.getId())) {
+                    return;     // deleted in the meantime
+                }
+                // make sure drafts have a publishedAt of FAR_FUTURE so they're sorted to the top
+                if (serverPost.getPublishedAt() == null) {
+                    serverPost.setPublishedAt(DateTimeUtils.FAR_FUTURE);
+                }
+                serverPost.setContentLoaded(true);
+                serverPost.updateEditorCompatibility();
+                serverPost.setSyncGeneration(realmPost.getSyncGeneration());
+                if (serverPost.isEditorCompatible()) {
+                    RevisionStore.markSynced(realm, postId, serverPost.getMarkdown(), now);
+                }
+                savedPost[0] = new Post(createOrUpdateModel(realm, serverPost));
+            });
+        } catch (IOException e) {
+            Log.e(TAG, "[onLoadPostContentEvent] failed to read post %s", postId);
+            Log.exception(e);
+            return null;
+        } finally {
+            postStream.close();
+        }
+        return savedPost[0];
+    }
+
+    // falls back to the local copy, if it still exists
+    private void onPostContentLoadFailed(@NonNull String postId, @Nullable ApiFailure apiFailure) {
+        if (apiFailure != null) {
+            getBus().post(new ApiErrorEvent(apiFailure));
+        }
+        Post localPost = mRealm.where(Post.class).equalTo("id", postId).findFirst();
+        if (localPost != null) {
+            getBus().post(new PostContentLoadedEvent(new Post(localPost)));
+        }
+    }
+
     @Subscribe
     public void onCreatePostEvent(final CreatePostEvent event) {
         Log.i(TAG, "[onCreatePostEvent] creating new post");
         Post newPost = new Post();
         newPost.setMobiledoc(GhostApiUtils.INSTANCE.initializeMobiledoc());
         newPost.addPendingAction(PendingAction.CREATE);
-        newPost.setId(getTempUniqueId(Post.class));
-        createOrUpdateModel(newPost);                    // save the local post to db
-        getBus().post(new PostCreatedEvent(newPost));
-        getBus().post(new SyncPostsEvent(false));
+        mRealmWriter.write(realm -> {
+            newPost.setId(getTempUniqueId(realm, Post.class));
+            PostOperation operation = OperationJournal.append(realm, newPost.getId(),
+                    PostOperation.CREATE, 0);
+            // the key of the create operation doubles as the uuid of the new post (see uploadNewPost)
+            newPost.setUuid(operation.getKey());
+            createOrUpdateModel(realm, newPost);         // save the local post to db
+        }, () -> {
+            getBus().post(new PostCreatedEvent(newPost));
+            getBus().post(new SyncPostsEvent(false));
+        });
     }
 
     @Subscribe
@@ -481,25 +896,30 @@ public class NetworkService implements
         }
 
         // load cached data, to update the post list immediately when a conflict is resolved
-        getBus().post(new PostsLoadedEvent(getPostsSorted(), POSTS_FETCH_LIMIT));
-
-        final List<Post> localDeletedPosts = copyPosts(mRealm.where(Post.class)
-                .equalTo("pendingActions.type", PendingAction.DELETE)
-                .findAll());
-        final List<Post> localNewPosts = copyPosts(mRealm.where(Post.class)
-                .equalTo("pendingActions.type", PendingAction.CREATE)
-                .findAll());
-        final List<Post> localEditedPosts = copyPosts(mRealm.where(Post.class)
-                .equalTo("pendingActions.type", PendingAction.EDIT)
-                .findAll());
-
-        Deque<Post> postUploadQueue = new ArrayDeque<>();
-        postUploadQueue.addAll(localDeletedPosts);
-        postUploadQueue.addAll(localNewPosts);
-        postUploadQueue.addAll(localEditedPosts);
+        getBus().post(new PostsLoadedEvent());
+
+        // the journal is compacted into at most one upload per post, e.g., a post that was created
+        // and deleted offline is never uploaded at all
+        final List<OperationJournal.Upload> uploads = new ArrayList<>();
+        final List<String> discardedOperations = new ArrayList<>();
+        for (OperationJournal.Upload upload : OperationJournal.getUploads(mRealm)) {
+            boolean isPostMissing = mRealm.where(Post.class)
+                    .equalTo("id", upload.postId)
+                    .count() == 0;
+            if (upload.type == OperationJournal.Upload.Type.DISCARD || isPostMissing) {
+                discardedOperations.addAll(upload.keys);
+            } else {
+                uploads.add(upload);
+            }
+        }
+        if (! discardedOperations.isEmpty()) {
+            mRealmWriter.write(realm -> {
+                OperationJournal.acknowledge(realm, discardedOperations);
+            });
+        }
 
         // nothing to upload
-        if (postUploadQueue.isEmpty()) {
+        if (uploads.isEmpty()) {
             LoadPostsEvent loadPostsEvent = new LoadPostsEvent(event.forceNetworkCall);
             mRefreshEventsQueue.add(loadPostsEvent);
             getBus().post(loadPostsEvent);
@@ -510,360 +930,931 @@ public class NetworkService implements
         // keep track of new posts created successfully and posts deleted successfully, so the local copies can be deleted
         List<Post> postsToDelete = new ArrayList<>();
 
-        // ugly hack (suggested by the IDE) because this must be declared "final"
-        final ApiFailure[] uploadError = {null};
-
-        final Action0 syncFinishedCB = () -> {
-            // delete local copies
-            if (!postsToDelete.isEmpty()) {
-                RealmQuery<Post> deleteQuery = mRealm.where(Post.class);
-                for (int i = 0; i < postsToDelete.size(); ++i) {
-                    Post post = postsToDelete.get(i);
-                    if (i > 0) deleteQuery.or();
-                    deleteQuery.equalTo("id", post.getId());
-                    Log.i(TAG, "[onSyncPostsEvent] deleted local copy of post %s",
-                            post.getId());
-                }
-                deleteModels(deleteQuery.findAll());
-            }
-
-            ApiFailure apiFailure = uploadError[0];
-            if (apiFailure != null && NetworkUtils.isUnauthorized(apiFailure.response)) {
-                // defer the event and try to re-authorize
-                refreshAccessToken(event);
-            } else {
-                if (apiFailure != null && NetworkUtils.isNotModified(apiFailure.response)) {
-                    refreshSucceeded(event);
-                } else {
-                    //noinspection ConstantConditions
-                    refreshFailed(event, apiFailure);
-                }
-                getBus().post(new PostsLoadedEvent(getPostsSorted(), POSTS_FETCH_LIMIT));
-                // if forceNetworkCall is true, first load from the db, AND only then from the network,
-                // to avoid a crash because local posts have been deleted above but are still being
-                // displayed, so we need to refresh the UI first
-                if (event.forceNetworkCall) {
-                    LoadPostsEvent loadPostsEvent = new LoadPostsEvent(true);
-                    mRefreshEventsQueue.add(loadPostsEvent);
-                    getBus().post(loadPostsEvent);
-                }
-            }
-
-            // SYNC COMPLETE
-            mbSyncOnGoing = false;
-        };
-
-        final Action2<Post, ApiFailure> onFailure = (post, apiFailure) -> {
-            uploadError[0] = apiFailure;
-            postUploadQueue.removeFirstOccurrence(post);
-            getBus().post(new ApiErrorEvent(apiFailure));
-            if (postUploadQueue.isEmpty()) syncFinishedCB.call();
-        };
-
         // MAKE SURE THIS IS NEVER true LONGER THAN IT NEEDS TO BE, CHECK ALL EXIT POINTS OF THIS FN
         mbSyncOnGoing = true;
 
-        // 1. DELETED POSTS
+        UploadScheduler scheduler = new UploadScheduler(UPLOAD_MAX_CONCURRENCY,
+                UPLOAD_MAX_ATTEMPTS, UPLOAD_RETRY_BASE_DELAY, UPLOAD_RETRY_MAX_DELAY,
+                mMainThreadHandler::postDelayed);
+        scheduler.outcomes()
+                .filter(outcome -> outcome.failure != null)
+                .subscribe(outcome -> {
+                    Log.e(TAG, "[onSyncPostsEvent] failed to sync post %s after %d attempt(s)",
+                            outcome.key, outcome.attempts);
+                    getBus().post(new ApiErrorEvent(outcome.failure));
+                });
+        scheduler.outcomes()
+                .toList()
+                .subscribe(outcomes -> onSyncPostsFinished(event, outcomes, postsToDelete));
+
+        // uploads are submitted in journal order, and there's one per post, so a post's upload
+        // never races with another one for the same post
         // the loop variable is *local* to the loop block, so it can be captured in a closure easily
         // this is unlike JavaScript, in which the same loop variable is mutated
-        for (final Post localPost : localDeletedPosts) {
-            Log.i(TAG, "[onSyncPostsEvent] deleting post %s", localPost.getId());
-            mApi.deletePost(mAuthToken.getAuthHeader(), localPost.getId()).enqueue(new Callback<String>() {
-                @Override
-                public void onResponse(@NonNull Call<String> call, @NonNull Response<String> response) {
-                    if (response.isSuccessful()) {
-                        AnalyticsService.logDraftDeleted();
-                        Log.i(TAG, "[onSyncPostsEvent] deleted remote post %s",
-                                localPost.getId());
-                        postUploadQueue.removeFirstOccurrence(localPost);
-                        postsToDelete.add(localPost);
-                        if (postUploadQueue.isEmpty()) syncFinishedCB.call();
-                    } else {
-                        Log.e(TAG, "[onSyncPostsEvent] failed to delete remote post, " +
-                                "id %s", localPost.getId());
-                        onFailure.call(localPost, new ApiFailure<>(response));
-                    }
-                }
-
-                @Override
-                public void onFailure(@NonNull Call<String> call, @NonNull Throwable error) {
-                    Log.e(TAG, "[onSyncPostsEvent] failed to delete remote post, " +
-                            "id %s", localPost.getId());
-                    onFailure.call(localPost, new ApiFailure<>(error));
-                }
-            });
-        }
-
-        // 2. NEW POSTS
-        for (final Post localPost : localNewPosts) {
-            Log.i(TAG, "[onSyncPostsEvent] creating post with local id %s", localPost.getId());
-            mApi.createPost(mAuthToken.getAuthHeader(), PostStubList.from(localPost)).enqueue(new Callback<PostList>() {
-                @Override
-                public void onResponse(@NonNull Call<PostList> call, @NonNull Response<PostList> response) {
-                    if (response.isSuccessful()) {
-                        PostList postList = response.body();
-                        AnalyticsService.logNewDraftUploaded();
-                        Post updatedPost = copyPosts(createOrUpdateModel(postList.getPosts())).get(0);
-                        Log.i(TAG, "[onSyncPostsEvent] created post %s", updatedPost.getId());
-                        postUploadQueue.removeFirstOccurrence(localPost);
-                        postsToDelete.add(localPost);
-                        // new posts do not have the mobiledoc field set, so retain
-                        // those values from the local copy
-                        updatedPost.setMobiledoc(localPost.getMobiledoc());
-                        // FIXME this is a new post! how do subscribers know which post changed?
-                        getBus().post(new PostReplacedEvent(updatedPost));
-                        if (postUploadQueue.isEmpty()) syncFinishedCB.call();
-                    } else {
-                        Log.e(TAG, "[onSyncPostsEvent] failed to sync new post, " +
-                                "local id %s", localPost.getId());
-                        onFailure.call(localPost, new ApiFailure<>(response));
-                    }
-                }
-
-                @Override
-                public void onFailure(@NonNull Call<PostList> call, @NonNull Throwable error) {
-                    Log.e(TAG, "[onSyncPostsEvent] failed to sync new post, " +
-                            "local id %s", localPost.getId());
-                    onFailure.call(localPost, new ApiFailure<>(error));
-                }
-            });
+        for (final OperationJournal.Upload upload : uploads) {
+            final Post localPost = new Post(mRealm.where(Post.class)
+                    .equalTo("id", upload.postId)
+                    .findFirst());
+            switch (upload.type) {
+                case CREATE:
+                    // set once a create request may have reached the server
+                    final AtomicBoolean mayBeCreated = new AtomicBoolean(false);
+                    scheduler.submit(upload.postId, attempt -> uploadNewPost(localPost, upload,
+                            mayBeCreated, attempt, postsToDelete));
+                    break;
+                case UPDATE:
+                    scheduler.submit(upload.postId, attempt -> uploadEditedPost(localPost, upload,
+                            attempt));
+                    break;
+                case DELETE:
+                    scheduler.submit(upload.postId, attempt -> deleteRemotePost(localPost, attempt,
+                            postsToDelete));
+                    break;
+            }
         }
 
-        // 3. EDITED POSTS
-        Action1<Post> uploadEditedPost = (editedPost) -> {
-            Log.i(TAG, "[onSyncPostsEvent] updating post %s", editedPost.getId());
-            PostStubList postStubList = PostStubList.from(editedPost);
-            mApi.updatePost(mAuthToken.getAuthHeader(), editedPost.getId(), postStubList).enqueue(new Callback<PostList>() {
-                @Override
-                public void onResponse(@NonNull Call<PostList> call, @NonNull Response<PostList> response) {
-                    if (response.isSuccessful()) {
-                        PostList postList = response.body();
-                        Post syncedPost = postList.getPosts().get(0);
-                        Post realmPost = mRealm.where(Post.class)
-                                .equalTo("id", editedPost.getId())
-                                .findFirst();
-                        // saved posts do not have the mobiledoc field set, so retain
-                        // those values from a pre-save copy
-                        syncedPost.setMobiledoc(realmPost.getMobiledoc());
-                        if (!realmPost.getId().equals(syncedPost.getId())) {
-                            Log.wtf("Trying to update a post with a different id! " +
-                                    "syncedPost.id = %s, realmPost.id = %s",
-                                    syncedPost.getId(), realmPost.getId());
-                        }
-                        Log.i(TAG, "[onSyncPostsEvent] updated post %s",
-                                syncedPost.getId());
-                        createOrUpdateModel(postList.getPosts());
-                        postUploadQueue.removeFirstOccurrence(editedPost);
-                        getBus().post(new PostSyncedEvent(syncedPost));
-                        if (postUploadQueue.isEmpty()) syncFinishedCB.call();
-                    } else {
-                        Log.e(TAG, "[onSyncPostsEvent] failed to update post %s",
-                                editedPost.getId());
-                        onFailure.call(editedPost, new ApiFailure<>(response));
-                    }
-                }
-
-                @Override
-                public void onFailure(@NonNull Call<PostList> call, @NonNull Throwable error) {
-                    Log.e(TAG, "[onSyncPostsEvent] failed to update post %s",
-                            editedPost.getId());
-                    onFailure.call(editedPost, new ApiFailure<>(error));
-                }
-            });
-        };
-        for (final Post localPost : localEditedPosts) {
-            Log.i(TAG, "[onSyncPostsEvent] downloading edited post %s for comparison",
-                    localPost.getId());
-            mApi.getPost(mAuthToken.getAuthHeader(), localPost.getId()).enqueue(new Callback<PostList>() {
-                @Override
-                public void onResponse(@NonNull Call<PostList> call, @NonNull Response<PostList> response) {
-                    if (response.isSuccessful()) {
-                        PostList postList = response.body();
-                        Post serverPost = null;
-                        boolean hasConflict = false;
-                        if (!postList.getPosts().isEmpty()) {
-                            serverPost = postList.getPosts().get(0);
-                            hasConflict = (serverPost.getUpdatedAt() != null
-                                    && !serverPost.getUpdatedAt().equals(localPost.getUpdatedAt()));
-                        }
-                        if (hasConflict && PostUtils.isDirty(serverPost, localPost)) {
-                            Log.w(TAG, "[onSyncPostsEvent] conflict found for post %s", localPost.getId());
-                            postUploadQueue.removeFirstOccurrence(localPost);
-                            if (postUploadQueue.isEmpty()) syncFinishedCB.call();
-                            localPost.setConflictState(Post.CONFLICT_UNRESOLVED);
-                            createOrUpdateModel(localPost);
-                            Log.i(TAG, "localPost updated at: %s", localPost.getUpdatedAt().toString());
-                            Log.i(TAG, "serverPost updated at: %s", serverPost.getUpdatedAt().toString());
-                            Log.i(TAG, "localPost contents: %s", localPost.getMarkdown());
-                            Log.i(TAG, "serverPost contents: %s", serverPost.getMarkdown());
-                            Log.exception(new PostConflictFoundException());
-                            getBus().post(new PostConflictFoundEvent(localPost, serverPost));
-                        } else {
-                            uploadEditedPost.call(localPost);
-                        }
-                    } else {
-                        Log.w(TAG, "[onSyncPostsEvent] couldn't get server post for " +
-                                "conflict detection - uploading local copy optimistically");
-                        uploadEditedPost.call(localPost);
-                    }
-                }
-
-                @Override
-                public void onFailure(@NonNull Call<PostList> call, @NonNull Throwable error) {
-                    Log.w(TAG, "[onSyncPostsEvent] couldn't get server post for " +
-                            "conflict detection - uploading local copy optimistically");
-                    uploadEditedPost.call(localPost);
-                }
-            });
-        }
+        scheduler.shutdown();
     }
 
-    @Subscribe
-    public void onSavePostEvent(SavePostEvent event) {
-        Post updatedPost = event.post;
-        Post realmPost = mRealm.where(Post.class)
-                .equalTo("id", event.post.getId())
-                .findFirst();
-        Log.i(TAG, "[onSavePostEvent] post id = %s", event.post.getId());
-
-        if (realmPost.hasPendingAction(PendingAction.DELETE)) {
-            RuntimeException e = new IllegalArgumentException("Trying to save deleted post with id = " + realmPost.getId());
-            Log.exception(e);
+    private void onSyncPostsFinished(SyncPostsEvent event, List<UploadScheduler.Outcome> outcomes,
+                                     List<Post> postsToDelete) {
+        // delete local copies
+        if (postsToDelete.isEmpty()) {
+            onLocalCopiesDeleted(event, outcomes);
+            return;
         }
-
-        // TODO bug in edge-case:
-        // TODO 1. user publishes draft, offline => pending actions = { EDIT }
-        // TODO 2. then makes some edits offline which are auto-saved => pending actions = { EDIT_LOCAL }
-        // TODO the post will not actually be published now!
-        // TODO to resolve this we would require some notion of pending actions associated with
-        // TODO specific fields of a post rather than the entire post
-
-        // save tags to Realm first
-        for (Tag tag : updatedPost.getTags()) {
-            if (tag.getId() == null) {
-                tag.setId(getTempUniqueId(Tag.class));
-                createOrUpdateModel(tag);
+        mRealmWriter.write(realm -> {
+            List<ImageUpload> removedUploads = new ArrayList<>();
+            RealmQuery<Post> deleteQuery = realm.where(Post.class);
+            for (int i = 0; i < postsToDelete.size(); ++i) {
+                Post post = postsToDelete.get(i);
+                if (i > 0) deleteQuery.or();
+                deleteQuery.equalTo("id", post.getId());
+                // for deleted posts, this acknowledges the delete operation (and any others)
+                OperationJournal.discard(realm, post.getId());
+                RevisionStore.delete(realm, post.getId());
+                removedUploads.addAll(ImageUploadQueue.delete(realm, post.getId()));
+                Log.i(TAG, "[onSyncPostsEvent] deleted local copy of post %s",
+                        post.getId());
             }
-        }
+            deleteQuery.findAll().deleteAllFromRealm();
+            return removedUploads;
+        }, removedUploads -> {
+            ImageUploadQueue.deleteFiles(removedUploads);
+            onLocalCopiesDeleted(event, outcomes);
+        });
+    }
 
-        // At first glance, this might seem redundant: shouldn't the post being saved have the same
-        // timestamp as the one in the DB? Actually, no, not if a sync was in progress when the post
-        // was opened. This prevents spurious conflict detections caused by the following flow:
-        // post saved => sync started => post opened again => sync complete => post saved again
-        // NOTE: This logic does not harm conflict detection AS LONG AS THE POST IS SAVED BEFORE
-        // THE NEXT SYNC OCCURS.
-        if (realmPost.getUpdatedAt() != null && !realmPost.getUpdatedAt().equals(updatedPost.getUpdatedAt())) {
-            updatedPost.setUpdatedAt(realmPost.getUpdatedAt());
+    private void onLocalCopiesDeleted(SyncPostsEvent event, List<UploadScheduler.Outcome> outcomes) {
+        ApiFailure apiFailure = null;
+        for (UploadScheduler.Outcome outcome : outcomes) {
+            if (outcome.failure != null) {
+                apiFailure = outcome.failure;
+                // an auth failure takes precedence over all others
+                if (NetworkUtils.isUnauthorized(apiFailure.response)) break;
+            }
         }
-        createOrUpdateModel(updatedPost);                  // save the local post to db
 
-        // must set PendingActions after other stuff, else the updated post's pending actions will
-        // override the one in Realm!
-        //noinspection StatementWithEmptyBody
-        if (realmPost.hasPendingAction(PendingAction.CREATE)) {
-            // no-op; if the post is yet to be created, we DO NOT change the PendingAction on it
-        } else if (realmPost.isDraft()) {
-            clearAndSetPendingActionOnPost(realmPost, PendingAction.EDIT);
-        } else if ((realmPost.isScheduled() || realmPost.isPublished()) && event.isAutoSave) {
-            clearAndSetPendingActionOnPost(realmPost, PendingAction.EDIT_LOCAL);
+        if (apiFailure != null && NetworkUtils.isUnauthorized(apiFailure.response)) {
+            // defer the event and try to re-authorize
+            refreshAccessToken(event);
         } else {
-            // user hit "update" explicitly, on a scheduled or published post, so mark it for uploading
-            clearAndSetPendingActionOnPost(realmPost, PendingAction.EDIT);
+            if (apiFailure == null) {
+                refreshSucceeded(event);
+            } else {
+                refreshFailed(event, apiFailure);
+            }
+            getBus().post(new PostsLoadedEvent());
+            // if forceNetworkCall is true, first load from the db, AND only then from the network,
+            // to avoid a crash because local posts have been deleted above but are still being
+            // displayed, so we need to refresh the UI first
+            if (event.forceNetworkCall) {
+                LoadPostsEvent loadPostsEvent = new LoadPostsEvent(true);
+                mRefreshEventsQueue.add(loadPostsEvent);
+                getBus().post(loadPostsEvent);
+            }
         }
 
-        Post savedPost = new Post(realmPost);   // realmPost is guaranteed to be up-to-date
-        getBus().post(new PostSavedEvent(savedPost));
-        // FIXME #synchack: force a network call because this preempts sync requests from the data
-        // FIXME refresh phase triggered when going back to the post list
-        getBus().post(new SyncPostsEvent(true));
+        // SYNC COMPLETE
+        mbSyncOnGoing = false;
     }
 
-    @Subscribe
-    public void onDeletePostEvent(DeletePostEvent event) {
-        String postId = event.post.getId();
-        Log.i(TAG, "[onDeletePostEvent] post id = %s", postId);
+    private void deleteRemotePost(Post localPost, UploadScheduler.Attempt attempt,
+                                  List<Post> postsToDelete) {
+        Log.i(TAG, "[onSyncPostsEvent] deleting post %s", localPost.getId());
+        mApi.deletePost(mAuthToken.getAuthHeader(), localPost.getId()).enqueue(new Callback<String>() {
+            @Override
+            public void onResponse(@NonNull Call<String> call, @NonNull Response<String> response) {
+                // 404 => already deleted, e.g., by an earlier attempt whose response was lost
+                if (response.isSuccessful() || response.code() == HttpURLConnection.HTTP_NOT_FOUND) {
+                    AnalyticsService.logDraftDeleted();
+                    Log.i(TAG, "[onSyncPostsEvent] deleted remote post %s",
+                            localPost.getId());
+                    postsToDelete.add(localPost);
+                    attempt.succeed();
+                } else {
+                    Log.e(TAG, "[onSyncPostsEvent] failed to delete remote post, " +
+                            "id %s", localPost.getId());
+                    ApiFailure<String> apiFailure = new ApiFailure<>(response);
+                    attempt.fail(apiFailure, UploadScheduler.isRetryable(apiFailure));
+                }
+            }
 
-        Post realmPost = mRealm.where(Post.class).equalTo("id", postId).findFirst();
-        if (realmPost == null) {
-            RuntimeException e = new IllegalArgumentException("Trying to delete post with non-existent id = " + postId);
-            Log.exception(e);
-        } else if (realmPost.hasPendingAction(PendingAction.CREATE)) {
-            deleteModel(realmPost);
-            getBus().post(new PostDeletedEvent(postId));
-        } else {
-            // don't delete locally until the remote copy is deleted
-            clearAndSetPendingActionOnPost(realmPost, PendingAction.DELETE);
-            getBus().post(new PostDeletedEvent(postId));
+            @Override
+            public void onFailure(@NonNull Call<String> call, @NonNull Throwable error) {
+                Log.e(TAG, "[onSyncPostsEvent] failed to delete remote post, " +
+                        "id %s", localPost.getId());
+                attempt.fail(new ApiFailure<>(error), true);
+            }
+        });
+    }
 
-            // DON'T trigger a sync here, because it is automatically triggered by the post list anyway
-            // triggering it twice causes crashes due to invalid Realm objects (deleted twice)
-            //getBus().post(new SyncPostsEvent(false));
+    // creation is not idempotent, so if an earlier attempt may have gone through (e.g., its
+    // response was lost), look the post up by the uuid we sent before trying again, else we could
+    // end up with duplicate posts
+    private void uploadNewPost(Post localPost, OperationJournal.Upload upload,
+                               AtomicBoolean mayBeCreated, UploadScheduler.Attempt attempt,
+                               List<Post> postsToDelete) {
+        if (mayBeCreated.get() && localPost.getUuid() != null) {
+            findCreatedPost(localPost, upload, mayBeCreated, attempt, postsToDelete);
+        } else {
+            createRemotePost(localPost, upload, mayBeCreated, attempt, postsToDelete);
         }
     }
 
-    @SuppressLint("DefaultLocale")
-    @Subscribe
-    public void onFileUploadEvent(FileUploadEvent event) {
-        Log.i(TAG, "[onFileUploadEvent] uploading file");
+    private void createRemotePost(Post localPost, OperationJournal.Upload upload,
+                                  AtomicBoolean mayBeCreated, UploadScheduler.Attempt attempt,
+                                  List<Post> postsToDelete) {
+        Log.i(TAG, "[onSyncPostsEvent] creating post with local id %s", localPost.getId());
+        // images that are still queued are left out, see onRemotePostCreated
+        Post uploadedPost = ImageUploadQueue.withoutPlaceholders(resolveImagePlaceholders(localPost));
+        mApi.createPost(mAuthToken.getAuthHeader(), PostStubList.from(uploadedPost)).enqueue(new Callback<PostList>() {
+            @Override
+            public void onResponse(@NonNull Call<PostList> call, @NonNull Response<PostList> response) {
+                if (response.isSuccessful()) {
+                    AnalyticsService.logNewDraftUploaded();
+                    onRemotePostCreated(localPost, upload, response.body(), attempt, postsToDelete);
+                } else {
+                    Log.e(TAG, "[onSyncPostsEvent] failed to sync new post, " +
+                            "local id %s", localPost.getId());
+                    ApiFailure<PostList> apiFailure = new ApiFailure<>(response);
+                    attempt.fail(apiFailure, UploadScheduler.isRetryable(apiFailure));
+                }
+            }
 
-        final InputStream inputStream = event.inputStream;
-        final String filename = event.filename;
-        final String mimeType = event.mimeType;
+            @Override
+            public void onFailure(@NonNull Call<PostList> call, @NonNull Throwable error) {
+                Log.e(TAG, "[onSyncPostsEvent] failed to sync new post, " +
+                        "local id %s", localPost.getId());
+                // the request may have gone through, so the next attempt must check for that;
+                // without a uuid to check by, it's not safe to retry at all
+                mayBeCreated.set(true);
+                attempt.fail(new ApiFailure<>(error), localPost.getUuid() != null);
+            }
+        });
+    }
 
-        byte[] fileBytes = null;
-        try {
-            final int CHUNK_SIZE = 4096;
-            ByteArrayOutputStream baos = new ByteArrayOutputStream(inputStream.available());
-            byte[] buffer = new byte[CHUNK_SIZE];
-            int read;
-            while ((read = inputStream.read(buffer)) != -1) {
-                baos.write(buffer, 0, read);
+    private void findCreatedPost(Post localPost, OperationJournal.Upload upload,
+                                 AtomicBoolean mayBeCreated, UploadScheduler.Attempt attempt,
+                                 List<Post> postsToDelete) {
+        Log.i(TAG, "[onSyncPostsEvent] looking for new post with local id %s on the server",
+                localPost.getId());
+        String filter = "uuid:'" + localPost.getUuid() + "'";
+        mApi.getPostIds(mAuthToken.getAuthHeader(), filter, 1).enqueue(new Callback<PostList>() {
+            @Override
+            public void onResponse(@NonNull Call<PostList> call, @NonNull Response<PostList> response) {
+                if (response.isSuccessful() && response.body().getPosts().isEmpty()) {
+                    // the earlier attempt never reached the server
+                    createRemotePost(localPost, upload, mayBeCreated, attempt, postsToDelete);
+                } else if (response.isSuccessful()) {
+                    // the earlier attempt did create the post, fetch all of it
+                    String id = response.body().getPosts().get(0).getId();
+                    fetchCreatedPost(localPost, upload, id, attempt, postsToDelete);
+                } else {
+                    ApiFailure<PostList> apiFailure = new ApiFailure<>(response);
+                    attempt.fail(apiFailure, UploadScheduler.isRetryable(apiFailure));
+                }
             }
 
-            fileBytes = baos.toByteArray();
-        } catch (IOException e) {
-            getBus().post(new FileUploadErrorEvent(new ApiFailure(e)));
-        } finally {
-            try {
-                inputStream.close();
-            } catch (IOException e) {
-                getBus().post(new FileUploadErrorEvent(new ApiFailure(e)));
+            @Override
+            public void onFailure(@NonNull Call<PostList> call, @NonNull Throwable error) {
+                attempt.fail(new ApiFailure<>(error), true);
             }
-        }
+        });
+    }
 
-        if (fileBytes == null) {
-            return;
-        }
+    private void fetchCreatedPost(Post localPost, OperationJournal.Upload upload, String id,
+                                  UploadScheduler.Attempt attempt, List<Post> postsToDelete) {
+        Log.i(TAG, "[onSyncPostsEvent] found new post with local id %s on the server, id %s",
+                localPost.getId(), id);
+        mApi.getPost(mAuthToken.getAuthHeader(), id).enqueue(new Callback<PostList>() {
+            @Override
+            public void onResponse(@NonNull Call<PostList> call, @NonNull Response<PostList> response) {
+                if (response.isSuccessful()) {
+                    onRemotePostCreated(localPost, upload, response.body(), attempt, postsToDelete);
+                } else {
+                    ApiFailure<PostList> apiFailure = new ApiFailure<>(response);
+                    attempt.fail(apiFailure, UploadScheduler.isRetryable(apiFailure));
+                }
+            }
+
+            @Override
+            public void onFailure(@NonNull Call<PostList> call, @NonNull Throwable error) {
+                attempt.fail(new ApiFailure<>(error), true);
+            }
+        });
+    }
 
-        RequestBody body = RequestBody.create(MediaType.parse(mimeType), fileBytes);
-        MultipartBody.Part filePart = MultipartBody.Part.createFormData("uploadimage", filename, body);
+    private void onRemotePostCreated(Post localPost, OperationJournal.Upload upload,
+                                     PostList postList, UploadScheduler.Attempt attempt,
+                                     List<Post> postsToDelete) {
+        // if the post has images that are still queued, it was created without them, as a draft;
+        // its body and status are uploaded by a later sync, once the images are
+        final Post uploadedPost = resolveImagePlaceholders(localPost);
+        @Post.Field final int heldBackFields = ImageUploadQueue.getHeldBackFields(uploadedPost, 0);
+        final String uploadedMarkdown = ImageUploadQueue.withoutPlaceholders(uploadedPost)
+                .getMarkdown();
+        final Date now = new Date();
+        mRealmWriter.write(realm -> {
+            Post createdPost = createOrUpdateModel(realm, postList.getPosts()).get(0);
+            // the create is acknowledged along with saving its result, and edits journaled while
+            // it was in flight now apply to the post created on the server
+            OperationJournal.acknowledge(realm, upload.keys);
+            OperationJournal.renamePost(realm, localPost.getId(), createdPost.getId());
+            RevisionStore.renamePost(realm, localPost.getId(), createdPost.getId());
+            ImageUploadQueue.renamePost(realm, localPost.getId(), createdPost.getId());
+            if (uploadedMarkdown != null) {
+                RevisionStore.markSynced(realm, createdPost.getId(), uploadedMarkdown, now);
+            }
+            if (heldBackFields != 0) {
+                copyEditableFields(localPost, createdPost, heldBackFields);
+                createdPost.setUnsyncedFields(heldBackFields);
+                createdPost.addPendingAction(PendingAction.EDIT);
+                createdPost.updateSortKeys();
+                journalHeldBackFields(realm, createdPost.getId(), heldBackFields);
+            }
+            return new Post(createdPost);
+        }, updatedPost -> {
+            Log.i(TAG, "[onSyncPostsEvent] created post %s", updatedPost.getId());
+            postsToDelete.add(localPost);
+            // new posts do not have the mobiledoc field set, so retain
+            // those values from the local copy
+            updatedPost.setMobiledoc(localPost.getMobiledoc());
+            updatedPost.setEditorCompatibility(localPost.getEditorCompatibility());
+            // FIXME this is a new post! how do subscribers know which post changed?
+            getBus().post(new PostReplacedEvent(updatedPost));
+            attempt.succeed();
+        }, e -> attempt.fail(new ApiFailure<>(e), false));
+    }
 
-        mApi.uploadFile(mAuthToken.getAuthHeader(), filePart).enqueue(new Callback<JsonElement>() {
+    private void uploadEditedPost(Post localPost, OperationJournal.Upload upload,
+                                  UploadScheduler.Attempt attempt) {
+        // cheap check first: if updated_at hasn't changed on the server, there's no conflict
+        Log.i(TAG, "[onSyncPostsEvent] checking server version of edited post %s",
+                localPost.getId());
+        mApi.getPostVersion(mAuthToken.getAuthHeader(), localPost.getId()).enqueue(new Callback<PostList>() {
             @Override
-            public void onResponse(@NonNull Call<JsonElement> call, @NonNull Response<JsonElement> response) {
+            public void onResponse(@NonNull Call<PostList> call, @NonNull Response<PostList> response) {
                 if (response.isSuccessful()) {
-                    String url = response.body().getAsString();
-                    getBus().post(new FileUploadedEvent(url));
+                    PostList postList = response.body();
+                    if (!postList.getPosts().isEmpty() && isChangedOnServer(localPost, postList.getPosts().get(0))) {
+                        checkConflictAndUpload(localPost, upload, attempt);
+                    } else {
+                        updateRemotePost(localPost, upload, attempt);
+                    }
                 } else {
-                    if (NetworkUtils.isUnauthorized(response)) {
-                        // defer the event and try to re-authorize
-                        refreshAccessToken(event);
+                    Log.w(TAG, "[onSyncPostsEvent] couldn't get server post for " +
+                            "conflict detection - uploading local copy optimistically");
+                    updateRemotePost(localPost, upload, attempt);
+                }
+            }
+
+            @Override
+            public void onFailure(@NonNull Call<PostList> call, @NonNull Throwable error) {
+                Log.w(TAG, "[onSyncPostsEvent] couldn't get server post for " +
+                        "conflict detection - uploading local copy optimistically");
+                updateRemotePost(localPost, upload, attempt);
+            }
+        });
+    }
+
+    private static boolean isChangedOnServer(Post localPost, Post serverPost) {
+        return serverPost.getUpdatedAt() != null
+                && !serverPost.getUpdatedAt().equals(localPost.getUpdatedAt());
+    }
+
+    // the post was changed on the server, but it could still be a false alarm, e.g., if only the
+    // server-side fields changed; download the full post to know for sure
+    private void checkConflictAndUpload(Post localPost, OperationJournal.Upload upload,
+                                        UploadScheduler.Attempt attempt) {
+        Log.i(TAG, "[onSyncPostsEvent] downloading edited post %s for comparison",
+                localPost.getId());
+        mApi.getPost(mAuthToken.getAuthHeader(), localPost.getId()).enqueue(new Callback<PostList>() {
+            @Override
+            public void onResponse(@NonNull Call<PostList> call, @NonNull Response<PostList> response) {
+                if (response.isSuccessful()) {
+                    PostList postList = response.body();
+                    Post serverPost = null;
+                    boolean hasConflict = false;
+                    if (!postList.getPosts().isEmpty()) {
+                        serverPost = postList.getPosts().get(0);
+                        hasConflict = isChangedOnServer(localPost, serverPost);
+                    }
+                    if (hasConflict && PostUtils.isDirty(serverPost, localPost)) {
+                        mergeConflictingPost(localPost, serverPost, upload, attempt);
                     } else {
-                        ApiFailure<JsonElement> apiFailure = new ApiFailure<>(response);
-                        getBus().post(new FileUploadErrorEvent(apiFailure));
-                        getBus().post(new ApiErrorEvent(apiFailure));
+                        updateRemotePost(localPost, upload, attempt);
                     }
+                } else {
+                    Log.w(TAG, "[onSyncPostsEvent] couldn't get server post for " +
+                            "conflict detection - uploading local copy optimistically");
+                    updateRemotePost(localPost, upload, attempt);
                 }
             }
 
             @Override
-            public void onFailure(@NonNull Call<JsonElement> call, @NonNull Throwable error) {
-                // error in transport layer, or lower
-                getBus().post(new ApiErrorEvent(new ApiFailure(error)));
+            public void onFailure(@NonNull Call<PostList> call, @NonNull Throwable error) {
+                Log.w(TAG, "[onSyncPostsEvent] couldn't get server post for " +
+                        "conflict detection - uploading local copy optimistically");
+                updateRemotePost(localPost, upload, attempt);
             }
         });
     }
 
+    // 3-way merge of the local and server copies against the version last synced (see
+    // RevisionStore): edits to different parts of the post are uploaded without bothering the
+    // user, and only the overlapping ones are left for them to resolve
+    private void mergeConflictingPost(Post localPost, Post serverPost,
+                                      OperationJournal.Upload upload,
+                                      UploadScheduler.Attempt attempt) {
+        String postId = localPost.getId();
+        final RealmWriter writer = mRealmWriter;
+        // the base is read through the writer so that it includes writes still pending there
+        // (e.g., the last sync's), and the merge (a diff of the whole post) runs in the background
+        writer.write(realm -> RevisionStore.getSyncedMarkdown(realm, postId), baseMarkdown -> {
+            Single.fromCallable(() -> mergePosts(localPost, serverPost, baseMarkdown))
+                    .subscribeOn(Schedulers.computation())
+                    .observeOn(AndroidSchedulers.mainThread())
+                    .subscribe(merge -> {
+                                // logged out (and maybe into another blog) in the meantime
+                                if (writer != mRealmWriter) return;
+                                saveMergedPost(localPost, serverPost, merge, upload, attempt);
+                            }, e -> {
+                                Log.exception(e);
+                                // the operations stay in the journal, merge again on the next sync
+                                attempt.fail(new ApiFailure<>(e), false);
+                            });
+        }, e -> attempt.fail(new ApiFailure<>(e), false));
+    }
+
+    // the result of mergePosts()
+    private static final class MergedPost {
+        Post post;
+        boolean isMerged;
+        // markdown of each copy, if it's editor-compatible
+        @Nullable String localMarkdown;
+        @Nullable String serverMarkdown;
+        @Nullable String mergedMarkdown;
+    }
+
+    // NOTE: updates the server copy with the local copy's non-conflicting edits
+    @NonNull
+    private static MergedPost mergePosts(@NonNull Post localPost, @NonNull Post serverPost,
+                                         @Nullable String baseMarkdown) {
+        String postId = localPost.getId();
+        MergedPost merged = new MergedPost();
+        // a post edited in Koenig on the server can't be merged, so it's a conflict
+        serverPost.updateEditorCompatibility();
+        merged.localMarkdown = localPost.isEditorCompatible() ? localPost.getMarkdown() : null;
+        merged.serverMarkdown = serverPost.isEditorCompatible() ? serverPost.getMarkdown() : null;
+        @Post.Field int editedFields = (localPost.getUnsyncedFields() == 0)
+                ? Post.ALL_FIELDS : localPost.getUnsyncedFields();
+
+        // start from the local copy, with the fields it didn't edit taken from the server; there's
+        // no base to merge the other fields against, so edits to them conflict unless they match
+        final Post mergedPost = new Post(localPost);
+        copyEditableFields(serverPost, mergedPost, Post.ALL_FIELDS & ~editedFields);
+        boolean hasConflicts = (PostUtils.getChangedFields(serverPost, mergedPost)
+                & ~Post.FIELD_MOBILEDOC) != 0;
+        if ((editedFields & Post.FIELD_MOBILEDOC) != 0) {
+            ThreeWayMerge.Result merge = null;
+            if (baseMarkdown != null && merged.localMarkdown != null
+                    && merged.serverMarkdown != null) {
+                merge = ThreeWayMerge.merge(baseMarkdown, merged.localMarkdown,
+                        merged.serverMarkdown);
+            }
+            if (merge != null) {
+                Log.i(TAG, "[onSyncPostsEvent] merged post %s with %d conflicts", postId,
+                        merge.numConflicts);
+                hasConflicts |= merge.hasConflicts();
+                // if there are conflicts, both copies get the other's non-conflicting edits, so
+                // the user's pick only decides the conflicting ones
+                mergedPost.setMarkdown(merge.mergedWithLocal);
+                serverPost.setMarkdown(merge.mergedWithServer);
+            } else {
+                hasConflicts = true;
+            }
+        }
+
+        if (hasConflicts) {
+            Log.w(TAG, "[onSyncPostsEvent] conflict found for post %s", postId);
+            Log.i(TAG, "localPost updated at: %s", localPost.getUpdatedAt().toString());
+            Log.i(TAG, "serverPost updated at: %s", serverPost.getUpdatedAt().toString());
+            Log.i(TAG, "localPost contents: %s", merged.localMarkdown);
+            Log.i(TAG, "serverPost contents: %s", merged.serverMarkdown);
+            Log.exception(new PostConflictFoundException());
+            mergedPost.setConflictState(Post.CONFLICT_UNRESOLVED);
+        } else {
+            // the merge has all the server's edits
+            mergedPost.setUpdatedAt(serverPost.getUpdatedAt());
+        }
+        merged.post = mergedPost;
+        merged.isMerged = !hasConflicts;
+        merged.mergedMarkdown = mergedPost.isEditorCompatible() ? mergedPost.getMarkdown() : null;
+        return merged;
+    }
+
+    private void saveMergedPost(Post localPost, Post serverPost, MergedPost merged,
+                                OperationJournal.Upload upload,
+                                UploadScheduler.Attempt attempt) {
+        final String postId = localPost.getId();
+        final Post mergedPost = merged.post;
+        final Date now = new Date();
+        mRealmWriter.write(realm -> {
+            Post realmPost = realm.where(Post.class).equalTo("id", postId).findFirst();
+            if (realmPost == null || PostUtils.isDirty(localPost, realmPost)) {
+                // deleted or edited in the meantime, merge again on the next sync
+                return false;
+            }
+            createOrUpdateModel(realm, mergedPost);
+            // keep every version in the local history, so that nothing is lost whichever one
+            // the user picks if there's a conflict; if not, the server's copy is the new base,
+            // because the merge has all of its edits
+            if (merged.localMarkdown != null) {
+                RevisionStore.save(realm, postId, merged.localMarkdown, now);
+            }
+            if (merged.serverMarkdown != null && merged.isMerged) {
+                RevisionStore.markSynced(realm, postId, merged.serverMarkdown, now);
+            } else if (merged.serverMarkdown != null) {
+                RevisionStore.save(realm, postId, merged.serverMarkdown, now);
+            }
+            if (merged.mergedMarkdown != null) {
+                RevisionStore.save(realm, postId, merged.mergedMarkdown, now);
+            }
+            return true;
+        }, isWritten -> {
+            if (!isWritten) {
+                attempt.succeed();
+                return;
+            }
+            getBus().post(new PostMergedEvent(mergedPost));
+            if (merged.isMerged) {
+                updateRemotePost(mergedPost, upload, attempt);
+            } else {
+                getBus().post(new PostConflictFoundEvent(mergedPost, serverPost));
+                // not an upload failure, the conflict is resolved by the user; the operations
+                // stay in the journal until then
+                attempt.succeed();
+            }
+        }, e -> attempt.fail(new ApiFailure<>(e), false));
+    }
+
+    private void updateRemotePost(Post editedPost, OperationJournal.Upload upload,
+                                  UploadScheduler.Attempt attempt) {
+        Log.i(TAG, "[onSyncPostsEvent] updating post %s", editedPost.getId());
+        // the body of a post with images that are still queued is held back (and the post isn't
+        // published) until they're uploaded, so their placeholders never reach the server
+        Post uploadedPost = resolveImagePlaceholders(editedPost);
+        @Post.Field final int heldBackFields = ImageUploadQueue.getHeldBackFields(uploadedPost,
+                upload.fields);
+        @Post.Field final int uploadedFields = upload.fields & ~heldBackFields;
+        if (uploadedFields == 0) {
+            Log.i(TAG, "[onSyncPostsEvent] waiting for images of post %s to be uploaded",
+                    editedPost.getId());
+            // the operations stay in the journal for the next sync
+            attempt.succeed();
+            return;
+        }
+        // Ghost accepts partial posts, so there's no need to upload e.g. the whole body when only
+        // the tags have changed
+        PostStubList postStubList = PostStubList.from(uploadedPost, uploadedFields);
+        final String uploadedMarkdown = ((uploadedFields & Post.FIELD_MOBILEDOC) != 0)
+                ? uploadedPost.getMarkdown() : null;
+        mApi.updatePost(mAuthToken.getAuthHeader(), editedPost.getId(), postStubList).enqueue(new Callback<PostList>() {
+            @Override
+            public void onResponse(@NonNull Call<PostList> call, @NonNull Response<PostList> response) {
+                if (response.isSuccessful()) {
+                    PostList postList = response.body();
+                    Post syncedPost = postList.getPosts().get(0);
+                    Log.i(TAG, "[onSyncPostsEvent] updated post %s",
+                            syncedPost.getId());
+                    mRealmWriter.write(realm -> {
+                        Post realmPost = realm.where(Post.class)
+                                .equalTo("id", editedPost.getId())
+                                .findFirst();
+                        if (realmPost == null) {
+                            // deleted while this request was in flight, the delete is uploaded
+                            // by the next sync
+                            return false;
+                        }
+                        // saved posts do not have the mobiledoc field set, so retain
+                        // those values from a pre-save copy
+                        syncedPost.setMobiledoc(realmPost.getMobiledoc());
+                        syncedPost.setEditorCompatibility(realmPost.getEditorCompatibility());
+                        // the sync generation is local-only, keep it so the post still counts as
+                        // seen by the last walk (see evictDeletedPosts)
+                        syncedPost.setSyncGeneration(realmPost.getSyncGeneration());
+                        if (!realmPost.getId().equals(syncedPost.getId())) {
+                            Log.wtf("Trying to update a post with a different id! " +
+                                    "syncedPost.id = %s, realmPost.id = %s",
+                                    syncedPost.getId(), realmPost.getId());
+                        }
+                        OperationJournal.acknowledge(realm, upload.keys);
+                        if (heldBackFields != 0) {
+                            journalHeldBackFields(realm, realmPost.getId(), heldBackFields);
+                        }
+                        if (uploadedMarkdown != null) {
+                            // the base for merging future conflicts (see mergeConflictingPost)
+                            RevisionStore.markSynced(realm, editedPost.getId(), uploadedMarkdown,
+                                    new Date());
+                        }
+                        @Post.Field int editedFields = PostUtils.getChangedFields(editedPost, realmPost);
+                        if (editedFields != 0) {
+                            // the editor auto-saved newer edits while this request was in flight,
+                            // keep those (and their pending action and operations) for the next
+                            // sync, and only take the new timestamp to avoid a spurious conflict then
+                            realmPost.setUpdatedAt(syncedPost.getUpdatedAt());
+                            realmPost.setUnsyncedFields((realmPost.getUnsyncedFields()
+                                    & ~uploadedFields) | editedFields | heldBackFields);
+                            if (! OperationJournal.hasOperations(realm, realmPost.getId())) {
+                                // the newer edits were not journaled, they're local-only
+                                realmPost.getPendingActions().deleteAllFromRealm();
+                                realmPost.addPendingAction(PendingAction.EDIT_LOCAL);
+                            }
+                            return true;
+                        }
+                        @Post.Field int localOnlyFields = ((realmPost.getUnsyncedFields() == 0)
+                                ? 0 : (realmPost.getUnsyncedFields() & ~uploadedFields))
+                                | heldBackFields;
+                        if (localOnlyFields != 0) {
+                            // edits that were not journaled for upload (see onSavePostEvent) stay
+                            // local, as if they had been auto-saved after this sync, and so do the
+                            // held back ones, which are journaled again
+                            copyEditableFields(new Post(realmPost), syncedPost, localOnlyFields);
+                            syncedPost.setUnsyncedFields(localOnlyFields);
+                            syncedPost.addPendingAction((heldBackFields != 0)
+                                    ? PendingAction.EDIT : PendingAction.EDIT_LOCAL);
+                        }
+                        insertOrUpdateModels(realm, postList.getPosts());
+                        return true;
+                    }, isWritten -> {
+                        if (isWritten) {
+                            getBus().post(new PostSyncedEvent(syncedPost));
+                        }
+                        attempt.succeed();
+                    }, e -> attempt.fail(new ApiFailure<>(e), false));
+                } else {
+                    Log.e(TAG, "[onSyncPostsEvent] failed to update post %s",
+                            editedPost.getId());
+                    ApiFailure<PostList> apiFailure = new ApiFailure<>(response);
+                    attempt.fail(apiFailure, UploadScheduler.isRetryable(apiFailure));
+                }
+            }
+
+            @Override
+            public void onFailure(@NonNull Call<PostList> call, @NonNull Throwable error) {
+                Log.e(TAG, "[onSyncPostsEvent] failed to update post %s",
+                        editedPost.getId());
+                // updates are idempotent, so they're safe to retry
+                attempt.fail(new ApiFailure<>(error), true);
+            }
+        });
+    }
+
+    // placeholders of images that have been uploaded are replaced with their urls, and those of
+    // images no longer in the queue (e.g., failed for good) are removed; the rest hold back the
+    // body from uploads (see ImageUploadQueue#getHeldBackFields)
+    @NonNull
+    private Post resolveImagePlaceholders(@NonNull Post post) {
+        if (! post.isEditorCompatible() || ! ImageUploadQueue.hasPlaceholders(post.getMarkdown())) {
+            return post;
+        }
+        String markdown = post.getMarkdown();
+        String resolvedMarkdown = ImageUploadQueue.resolvePlaceholders(mRealm, post.getId(),
+                markdown);
+        if (! ImageUploadQueue.hasUnfinishedUploads(mRealm, post.getId())) {
+            resolvedMarkdown = ImageUploadQueue.removeAllPlaceholders(resolvedMarkdown);
+        }
+        if (resolvedMarkdown.equals(markdown)) {
+            return post;
+        }
+        Post resolvedPost = new Post(post);
+        resolvedPost.setMarkdown(resolvedMarkdown);
+        return resolvedPost;
+    }
+
+    // fields held back from an upload are journaled again, for the first sync after the images
+    // of the post are uploaded (which triggers one, see updateImagePlaceholder)
+    private static void journalHeldBackFields(@NonNull Realm realm, @NonNull String postId,
+                                              @Post.Field int fields) {
+        OperationJournal.append(realm, postId, ((fields & Post.FIELD_STATUS) != 0)
+                ? PostOperation.PUBLISH : PostOperation.SET_FIELDS, fields);
+    }
+
+    // local edits are saved through the writer like all other writes, so that the main thread
+    // never waits for Realm's write lock while the writer holds it, e.g., to save a page of posts;
+    // PostSavedEvent is sent once the save is committed
+    @Subscribe
+    public void onSavePostEvent(SavePostEvent event) {
+        Log.i(TAG, "[onSavePostEvent] post id = %s", event.post.getId());
+        // the editor keeps editing its own copy while this one is saved
+        final Post updatedPost = new Post(event.post);
+        final boolean isBackgroundSave = event.isBackgroundSave();
+        mRealmWriter.write(realm -> savePost(realm, updatedPost, event.isAutoSave,
+                event.changedFields), savedPost -> {
+            if (savedPost == null) {
+                return;
+            }
+            getBus().post(new PostSavedEvent(savedPost, isBackgroundSave));
+            // background saves are synced by the editor at a limited rate (see AutoSaveScheduler)
+            if (! isBackgroundSave) {
+                // FIXME #synchack: force a network call because this preempts sync requests from the
+                // FIXME data refresh phase triggered when going back to the post list
+                getBus().post(new SyncPostsEvent(true));
+            }
+        });
+    }
+
+    // NOTE: must be called inside a transaction
+    // returns an unmanaged copy of the saved post, or null if it no longer exists
+    @Nullable
+    private static Post savePost(@NonNull Realm realm, @NonNull Post updatedPost,
+                                 boolean isAutoSave, @Post.Field int backgroundSaveFields) {
+        Post realmPost = realm.where(Post.class)
+                .equalTo("id", updatedPost.getId())
+                .findFirst();
+        if (realmPost == null) {
+            Log.exception(new IllegalArgumentException("Trying to save non-existent post with id = "
+                    + updatedPost.getId()));
+            return null;
+        }
+        if (realmPost.hasPendingAction(PendingAction.DELETE)) {
+            RuntimeException e = new IllegalArgumentException("Trying to save deleted post with id = " + realmPost.getId());
+            Log.exception(e);
+        }
+        boolean isBackgroundSave = backgroundSaveFields != 0;
+
+        // images that finished uploading while this copy of the post still had their placeholders,
+        // e.g., in an editor that was paused at the time
+        if ((! isBackgroundSave || (backgroundSaveFields & Post.FIELD_MOBILEDOC) != 0)
+                && ImageUploadQueue.hasDoneUploads(realm, updatedPost.getId())
+                && updatedPost.isEditorCompatible()) {
+            String markdown = updatedPost.getMarkdown();
+            String resolvedMarkdown = ImageUploadQueue.resolvePlaceholders(realm,
+                    updatedPost.getId(), markdown);
+            if (! resolvedMarkdown.equals(markdown)) {
+                updatedPost.setMarkdown(resolvedMarkdown);
+            }
+        }
+
+        // keep track of the fields edited since the last sync (see updateRemotePost); posts with
+        // edits from before this was tracked are uploaded in full
+        @Post.Field int changedFields = isBackgroundSave
+                ? backgroundSaveFields
+                : PostUtils.getChangedFields(realmPost, updatedPost);
+        boolean hasUntrackedEdits = realmPost.getUnsyncedFields() == 0
+                && (realmPost.hasPendingAction(PendingAction.EDIT)
+                    || realmPost.hasPendingAction(PendingAction.EDIT_LOCAL));
+        @Post.Field int unsyncedFields = hasUntrackedEdits
+                ? 0 : (realmPost.getUnsyncedFields() | changedFields);
+
+        // journal what must be uploaded: drafts are always uploaded, and so are scheduled and
+        // published posts that the user saved explicitly (by hitting "update"), along with the
+        // edits auto-saved before that; auto-saved edits to a scheduled or published post are not
+        // journaled, but an explicit edit that is still pending (e.g., publishing a draft offline)
+        // is uploaded regardless; a post that is yet to be created is uploaded whole anyway
+        // the journal entry is written in the same transaction as the post, so that neither can
+        // be saved without the other
+        boolean isNew = realmPost.hasPendingAction(PendingAction.CREATE);
+        boolean isJournaled = false;
+        if (!isNew && !isAutoSave) {
+            @PostOperation.Type String operation;
+            if (realmPost.getStatus() != null && !realmPost.getStatus().equals(updatedPost.getStatus())) {
+                operation = updatedPost.isDraft() ? PostOperation.UNPUBLISH : PostOperation.PUBLISH;
+            } else {
+                operation = PostOperation.SET_FIELDS;
+            }
+            OperationJournal.append(realm, realmPost.getId(), operation, unsyncedFields);
+            isJournaled = true;
+        } else if (!isNew && updatedPost.isDraft() && changedFields != 0) {
+            OperationJournal.append(realm, realmPost.getId(), PostOperation.SET_FIELDS,
+                    changedFields);
+            isJournaled = true;
+        }
+
+        // the pending action reflects the journal, for the UI; if the post is yet to be created,
+        // we DO NOT change the PendingAction on it
+        @PendingAction.Type String pendingAction = null;
+        if (isNew) {
+            pendingAction = PendingAction.CREATE;
+        } else if (isJournaled || OperationJournal.hasOperations(realm, realmPost.getId())) {
+            pendingAction = PendingAction.EDIT;
+        } else if (unsyncedFields != 0 || hasUntrackedEdits) {
+            pendingAction = PendingAction.EDIT_LOCAL;
+        }
+
+        if (isBackgroundSave && (backgroundSaveFields & Post.FIELD_TAGS) == 0) {
+            // background saves happen often while typing, so write only the fields that changed
+            // instead of the whole post (the mobiledoc is rewritten only if the body changed)
+            copyEditableFields(updatedPost, realmPost, backgroundSaveFields);
+            realmPost.setUnsyncedFields(unsyncedFields);
+            realmPost.updateSortKeys();
+            realmPost.updateEditorCompatibility();
+        } else {
+            // save tags to Realm first; a new tag may have been saved with an earlier save of the
+            // editor's copy of the post already, which doesn't get the id it was saved with
+            List<Tag> tags = updatedPost.getTags();
+            for (int i = 0; i < tags.size(); ++i) {
+                Tag tag = tags.get(i);
+                if (tag.getId() != null) {
+                    continue;
+                }
+                Tag savedTag = realm.where(Tag.class).equalTo("name", tag.getName()).findFirst();
+                if (savedTag != null) {
+                    tags.set(i, realm.copyFromRealm(savedTag));
+                } else {
+                    tag.setId(getTempUniqueId(realm, Tag.class));
+                    createOrUpdateModel(realm, tag);
+                }
+            }
+
+            // At first glance, this might seem redundant: shouldn't the post being saved have the
+            // same timestamp as the one in the DB? Actually, no, not if a sync was in progress when
+            // the post was opened. This prevents spurious conflict detections caused by the
+            // following flow:
+            // post saved => sync started => post opened again => sync complete => post saved again
+            // NOTE: This logic does not harm conflict detection AS LONG AS THE POST IS SAVED BEFORE
+            // THE NEXT SYNC OCCURS.
+            if (realmPost.getUpdatedAt() != null && !realmPost.getUpdatedAt().equals(updatedPost.getUpdatedAt())) {
+                updatedPost.setUpdatedAt(realmPost.getUpdatedAt());
+            }
+            updatedPost.setUnsyncedFields(unsyncedFields);
+            createOrUpdateModel(realm, updatedPost);                  // save the local post to db
+        }
+
+        // must set PendingActions after other stuff, else the updated post's pending actions will
+        // override the one in Realm!
+        if (pendingAction != null) {
+            clearAndSetPendingAction(realmPost, pendingAction);
+        }
+
+        Post savedPost = new Post(realmPost);
+        // keep every saved version of the markdown in the local history
+        String markdown = savedPost.isEditorCompatible() ? savedPost.getMarkdown() : null;
+        if ((! isBackgroundSave || (backgroundSaveFields & Post.FIELD_MOBILEDOC) != 0)
+                && markdown != null) {
+            RevisionStore.save(realm, savedPost.getId(), markdown, new Date());
+        }
+        return savedPost;
+    }
+
+    // revisions are read through the writer, so that revisions still waiting to be saved there
+    // are included (see savePost), and so that long histories are walked off the main thread
+    @Subscribe
+    public void onLoadPostRevisionsEvent(LoadPostRevisionsEvent event) {
+        final String postId = event.postId;
+        mRealmWriter.write(realm -> RevisionStore.getRevisionSummaries(realm, postId),
+                revisions -> getBus().post(new PostRevisionsLoadedEvent(postId, revisions)));
+    }
+
+    @Subscribe
+    public void onRestorePostRevisionEvent(RestorePostRevisionEvent event) {
+        Log.i(TAG, "[onRestorePostRevisionEvent] post id = %s, revision id = %s",
+                event.postId, event.revisionId);
+        final String postId = event.postId;
+        final String revisionId = event.revisionId;
+        // reconstructing a revision applies the deltas of all the newer ones
+        mRealmWriter.write(realm -> RevisionStore.getMarkdown(realm, revisionId), markdown -> {
+            Post realmPost = mRealm.where(Post.class).equalTo("id", postId).findFirst();
+            if (realmPost == null || markdown == null) {
+                Log.e(TAG, "[onRestorePostRevisionEvent] couldn't restore revision %s of post %s",
+                        revisionId, postId);
+                return;
+            }
+            // restoring is an explicit edit: it's saved and synced like one, and the restored
+            // version becomes the latest revision, so the version it replaces stays in the history
+            Post restoredPost = new Post(realmPost);
+            restoredPost.setMarkdown(markdown);
+            onSavePostEvent(new SavePostEvent(restoredPost, false));
+        });
+    }
+
+    // NOTE: must be called inside a transaction if the target post is managed by Realm
+    private static void copyEditableFields(@NonNull Post from, @NonNull Post to,
+                                           @Post.Field int fields) {
+        if ((fields & Post.FIELD_TITLE) != 0) {
+            to.setTitle(from.getTitle());
+        }
+        if ((fields & Post.FIELD_MOBILEDOC) != 0) {
+            to.setMobiledoc(from.getMobiledoc());
+            to.setHtml(from.getHtml());
+            to.setEditorCompatibility(from.getEditorCompatibility());
+        }
+        if ((fields & Post.FIELD_TAGS) != 0) {
+            to.setTags(from.getTags());
+        }
+        if ((fields & Post.FIELD_CUSTOM_EXCERPT) != 0) {
+            to.setCustomExcerpt(from.getCustomExcerpt());
+        }
+        if ((fields & Post.FIELD_FEATURED) != 0) {
+            to.setFeatured(from.isFeatured());
+        }
+        if ((fields & Post.FIELD_PAGE) != 0) {
+            to.setPage(from.isPage());
+        }
+        if ((fields & Post.FIELD_FEATURE_IMAGE) != 0) {
+            to.setFeatureImage(from.getFeatureImage());
+        }
+        if ((fields & Post.FIELD_SLUG) != 0) {
+            to.setSlug(from.getSlug());
+        }
+        if ((fields & Post.FIELD_STATUS) != 0) {
+            to.setStatus(from.getStatus());
+        }
+    }
+
+    @Subscribe
+    public void onDeletePostEvent(DeletePostEvent event) {
+        String postId = event.post.getId();
+        Log.i(TAG, "[onDeletePostEvent] post id = %s", postId);
+        // returns the removed image uploads, or null if there's no such post
+        mRealmWriter.write(realm -> {
+            Post realmPost = realm.where(Post.class).equalTo("id", postId).findFirst();
+            if (realmPost == null) {
+                RuntimeException e = new IllegalArgumentException("Trying to delete post with non-existent id = " + postId);
+                Log.exception(e);
+                return null;
+            } else if (realmPost.hasPendingAction(PendingAction.CREATE)) {
+                // never uploaded, so there's nothing to delete on the server
+                OperationJournal.discard(realm, postId);
+                RevisionStore.delete(realm, postId);
+                List<ImageUpload> removedUploads = ImageUploadQueue.delete(realm, postId);
+                RealmObject.deleteFromRealm(realmPost);
+                return removedUploads;
+            } else {
+                // don't delete locally until the remote copy is deleted
+                OperationJournal.append(realm, postId, PostOperation.DELETE, 0);
+                clearAndSetPendingAction(realmPost, PendingAction.DELETE);
+                return Collections.<ImageUpload>emptyList();
+            }
+        }, removedUploads -> {
+            if (removedUploads != null) {
+                ImageUploadQueue.deleteFiles(removedUploads);
+                getBus().post(new PostDeletedEvent(postId));
+            }
+            // DON'T trigger a sync here, because it is automatically triggered by the post list anyway
+            // triggering it twice causes crashes due to invalid Realm objects (deleted twice)
+            //getBus().post(new SyncPostsEvent(false));
+        });
+    }
+
+    @Subscribe
+    public void onFileUploadEvent(FileUploadEvent event) {
+        Log.i(TAG, "[onFileUploadEvent] queueing upload %s for post %s", event.uploadId,
+                event.postId);
+        ImageUpload upload = new ImageUpload(event.uploadId, event.postId, event.filePath,
+                event.filename, event.mimeType, new Date());
+        mRealmWriter.write(realm -> {
+            ImageUploadQueue.enqueue(realm, upload);
+        }, this::processImageUploads);
+    }
+
+    @Subscribe
+    public void onUploadImagesEvent(UploadImagesEvent event) {
+        processImageUploads();
+    }
+
+    @Subscribe
+    public void onCancelFileUploadEvent(CancelFileUploadEvent event) {
+        Log.i(TAG, "[onCancelFileUploadEvent] cancelling upload %s", event.uploadId);
+        if (event.uploadId.equals(mImageUploadId)) {
+            mImageUploadCall.cancel();
+            mImageUploadCall = null;
+            mImageUploadId = null;
+        } else {
+            // it may have just finished uploading, in which case the result must be ignored
+            mCancelledImageUploadIds.add(event.uploadId);
+        }
+        // removed after any write of the job that's already pending
+        mRealmWriter.write(realm -> ImageUploadQueue.remove(realm, event.uploadId), upload -> {
+            if (upload != null) {
+                ImageUploadQueue.deleteFile(upload);
+            }
+            mCancelledImageUploadIds.remove(event.uploadId);
+            processImageUploads();
+        });
+    }
+
     @Subscribe
     public void onLoadTagsEvent(LoadTagsEvent event) {
         RealmResults<Tag> tags = mRealm.where(Tag.class).findAllSorted("name");
@@ -890,7 +1881,14 @@ public class NetworkService implements
         // revoke access and refresh tokens in the background
         mAuthService.revokeToken(mAuthToken);
 
+        // the Realm can't be deleted while a write is in progress
+        mRealmWriter.close(this::deleteActiveBlog);
+    }
+
+    private void deleteActiveBlog() {
         // clear all persisted blog data to avoid primary key conflicts
+        stopImageUploads();
+        ImageUploadQueue.deleteFiles(mRealm);
         mRealm.close();
         Realm.deleteRealm(mRealm.getConfiguration());
         String activeBlogUrl = AccountManager.getActiveBlogUrl();
@@ -900,6 +1898,7 @@ public class NetworkService implements
         // switch the Realm to the now-active blog
         if (AccountManager.hasActiveBlog()) {
             mRealm = Realm.getInstance(AccountManager.getActiveBlog().getDataRealmConfig());
+            mRealmWriter = new RealmWriter(mRealm);
         }
 
         // reset state, to be sure
@@ -914,19 +1913,225 @@ public class NetworkService implements
 
 
     // private methods
-    private void clearAndSetPendingActionOnPost(@NonNull Post post, @PendingAction.Type String newPendingAction) {
+    // NOTE: must be called inside a transaction
+    private static void clearAndSetPendingAction(@NonNull Post post,
+                                                 @PendingAction.Type String newPendingAction) {
         List<PendingAction> pendingActions = post.getPendingActions();
-        mRealm.executeTransaction(realm -> {
-            // make a copy since the original is a live-updating RealmList
-            List<PendingAction> pendingActionsCopy = new ArrayList<>(pendingActions);
-            for (PendingAction pa : pendingActionsCopy) {
-                RealmObject.deleteFromRealm(pa);
-            }
-            pendingActions.clear();
-            post.addPendingAction(newPendingAction);
+        if (pendingActions.size() == 1 && post.hasPendingAction(newPendingAction)) {
+            return;     // nothing to do (this happens on every background save)
+        }
+        // make a copy since the original is a live-updating RealmList
+        List<PendingAction> pendingActionsCopy = new ArrayList<>(pendingActions);
+        for (PendingAction pa : pendingActionsCopy) {
+            RealmObject.deleteFromRealm(pa);
+        }
+        pendingActions.clear();
+        post.addPendingAction(newPendingAction);
+        post.updateSortKeys();
+    }
+
+    private void resumeImageUploads() {
+        final Date now = new Date();
+        mRealmWriter.write(realm -> {
+            ImageUploadQueue.resetInterrupted(realm);
+            ImageUploadQueue.pruneDone(realm, now);
+        }, this::processImageUploads);
+    }
+
+    // uploads the next queued image, if one is due and the constraints allow it; called whenever
+    // that may have changed: at startup, when an image is queued, when an upload ends, when a
+    // retry is due, and when the network or power state changes
+    private void processImageUploads() {
+        mMainThreadHandler.removeCallbacks(mProcessImageUploadsRunnable);
+        if (mRealm == null || mApi == null || mAuthToken == null || mImageUploadCall != null) {
+            return;
+        }
+        Date now = new Date();
+        ImageUpload next = ImageUploadQueue.getNext(mRealm, now);
+        if (next == null) {
+            Date nextAttemptAt = ImageUploadQueue.getNextAttemptAt(mRealm);
+            if (nextAttemptAt != null) {
+                mMainThreadHandler.postDelayed(mProcessImageUploadsRunnable,
+                        Math.max(0, nextAttemptAt.getTime() - now.getTime()));
+            }
+            return;
+        }
+        Context context = SpectreApplication.getInstance();
+        if (! canUploadImages(context)) {
+            Log.i(TAG, "[processImageUploads] waiting for the network or a charger");
+            waitForImageUploadConstraints(context);
+            return;
+        }
+        stopWaitingForImageUploadConstraints(context);
+
+        final String uploadId = next.getId();
+        final File file = new File(next.getFilePath());
+        final String filename = next.getFilename();
+        final String mimeType = next.getMimeType();
+        Log.i(TAG, "[processImageUploads] uploading %s, attempt %d", uploadId,
+                next.getAttempts() + 1);
+        if (! file.exists()) {
+            failImageUpload(uploadId, new ApiFailure<>(new FileNotFoundException(file.getPath())),
+                    false);
+            return;
+        }
+        // only needed to resume the upload if the app is killed, so it's not waited for;
+        // mImageUploadCall (set below) keeps the job from being picked again in the meantime
+        mRealmWriter.write(realm -> {
+            ImageUploadQueue.markUploading(realm, uploadId);
+        });
+
+        // the file is streamed on OkHttp's thread; progress is reported on the main thread, only
+        // when the percentage changes (or just once, if the size is unknown)
+        final int[] lastPercent = { Integer.MIN_VALUE };
+        RequestBody body = new ContentUriRequestBody(context.getContentResolver(),
+                Uri.fromFile(file), (mimeType == null) ? null : MediaType.parse(mimeType),
+                file.length(), (bytesWritten, totalBytes) -> {
+            int percent = (totalBytes > 0) ? (int) (100 * bytesWritten / totalBytes) : -1;
+            if (percent == lastPercent[0]) {
+                return;
+            }
+            lastPercent[0] = percent;
+            mMainThreadHandler.post(() -> getBus().post(
+                    new FileUploadProgressEvent(uploadId, bytesWritten, totalBytes)));
+        });
+        MultipartBody.Part filePart = MultipartBody.Part.createFormData("uploadimage",
+                filename, body);
+
+        mImageUploadId = uploadId;
+        mImageUploadCall = mApi.uploadFile(mAuthToken.getAuthHeader(), filePart);
+        mImageUploadCall.enqueue(new Callback<JsonElement>() {
+            @Override
+            public void onResponse(@NonNull Call<JsonElement> call, @NonNull Response<JsonElement> response) {
+                if (mImageUploadCall != call) {
+                    return;     // cancelled
+                }
+                mImageUploadCall = null;
+                mImageUploadId = null;
+                if (response.isSuccessful()) {
+                    finishImageUpload(uploadId, response.body().getAsString());
+                } else if (NetworkUtils.isUnauthorized(response)) {
+                    // put the job back and try to re-authorize
+                    mRealmWriter.write(realm -> {
+                        ImageUploadQueue.requeue(realm, uploadId);
+                    }, () -> refreshAccessToken(new UploadImagesEvent()));
+                } else {
+                    ApiFailure<JsonElement> apiFailure = new ApiFailure<>(response);
+                    failImageUpload(uploadId, apiFailure, UploadScheduler.isRetryable(apiFailure));
+                }
+            }
+
+            @Override
+            public void onFailure(@NonNull Call<JsonElement> call, @NonNull Throwable error) {
+                if (mImageUploadCall != call) {
+                    return;     // cancelled
+                }
+                mImageUploadCall = null;
+                mImageUploadId = null;
+                // error in transport layer, or lower, or while reading the file
+                failImageUpload(uploadId, new ApiFailure<>(error), true);
+            }
         });
     }
 
+    private void finishImageUpload(@NonNull String uploadId, @NonNull String url) {
+        Log.i(TAG, "[finishImageUpload] uploaded %s to %s", uploadId, url);
+        mRealmWriter.write(realm -> ImageUploadQueue.markDone(realm, uploadId, url), upload -> {
+            if (upload != null) {
+                ImageUploadQueue.deleteFile(upload);
+            }
+            if (upload != null && ! mCancelledImageUploadIds.contains(uploadId)) {
+                updateImagePlaceholder(upload.getPostId(), uploadId, url);
+                getBus().post(new FileUploadedEvent(uploadId, upload.getPostId(), url));
+            }
+            processImageUploads();
+        });
+    }
+
+    private void failImageUpload(@NonNull String uploadId, @NonNull ApiFailure apiFailure,
+                                 boolean retryable) {
+        Log.w(TAG, "[failImageUpload] failed to upload %s, retryable = %b", uploadId, retryable);
+        final Date now = new Date();
+        mRealmWriter.write(realm -> ImageUploadQueue.markFailed(realm, uploadId, retryable, now),
+                upload -> {
+            // null if it will be retried
+            if (upload != null) {
+                ImageUploadQueue.deleteFile(upload);
+                updateImagePlaceholder(upload.getPostId(), uploadId, null);
+                getBus().post(new FileUploadErrorEvent(uploadId, upload.getPostId(), apiFailure));
+                getBus().post(new ApiErrorEvent(apiFailure));
+            }
+            processImageUploads();
+        });
+    }
+
+    // replaces the placeholder of the given upload in the saved copy of the post with the url of
+    // the image, or removes the image if the url is null; an editor that has the post open merges
+    // the change like any other, and if the placeholder hasn't been saved yet, the editor itself
+    // (or the next save, see onSavePostEvent) takes care of it
+    private void updateImagePlaceholder(@NonNull String postId, @NonNull String uploadId,
+                                        @Nullable String url) {
+        Post realmPost = mRealm.where(Post.class).equalTo("id", postId).findFirst();
+        if (realmPost == null || ! realmPost.isEditorCompatible()
+                || realmPost.hasPendingAction(PendingAction.DELETE)) {
+            return;
+        }
+        String markdown = realmPost.getMarkdown();
+        String updatedMarkdown = (url != null)
+                ? ImageUploadQueue.replacePlaceholder(markdown, uploadId, url)
+                : ImageUploadQueue.removePlaceholder(markdown, uploadId);
+        if (updatedMarkdown.equals(markdown)) {
+            return;
+        }
+        Post updatedPost = new Post(realmPost);
+        updatedPost.setMarkdown(updatedMarkdown);
+        getBus().post(new SavePostEvent(updatedPost, true, Post.FIELD_MOBILEDOC));
+        getBus().post(new PostMergedEvent(updatedPost));
+        getBus().post(new SyncPostsEvent(false));
+    }
+
+    private boolean canUploadImages(@NonNull Context context) {
+        return NetworkUtils.isConnected(context)
+                && (! UserPrefs.getInstance(context).getBoolean(
+                        UserPrefs.Key.IMAGE_UPLOAD_REQUIRES_CHARGING)
+                    || DeviceUtils.isCharging(context));
+    }
+
+    // there's no job scheduler to wake the app up for this on all supported API levels, so the
+    // queue only resumes on these while the app is running, and at startup
+    private void waitForImageUploadConstraints(@NonNull Context context) {
+        if (mImageUploadConstraintsReceiver != null) {
+            return;
+        }
+        mImageUploadConstraintsReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                processImageUploads();
+            }
+        };
+        IntentFilter filter = new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION);
+        filter.addAction(Intent.ACTION_POWER_CONNECTED);
+        context.registerReceiver(mImageUploadConstraintsReceiver, filter);
+    }
+
+    private void stopWaitingForImageUploadConstraints(@NonNull Context context) {
+        if (mImageUploadConstraintsReceiver != null) {
+            context.unregisterReceiver(mImageUploadConstraintsReceiver);
+            mImageUploadConstraintsReceiver = null;
+        }
+    }
+
+    // the queue itself is left as it is
+    private void stopImageUploads() {
+        if (mImageUploadCall != null) {
+            mImageUploadCall.cancel();
+            mImageUploadCall = null;
+            mImageUploadId = null;
+        }
+        mMainThreadHandler.removeCallbacks(mProcessImageUploadsRunnable);
+        stopWaitingForImageUploadConstraints(SpectreApplication.getInstance());
+    }
+
     private void refreshAccessToken(@Nullable final ApiCallEvent eventToDefer) {
         if (eventToDefer != null) {
             mApiEventQueue.addLast(eventToDefer);
@@ -977,19 +2182,13 @@ public class NetworkService implements
         }
     }
 
-    private List<Post> getPostsSorted() {
-        // FIXME time complexity O(n) for copying + O(n log n) for sorting!
-        RealmResults<Post> realmPosts = mRealm.where(Post.class).findAll();
-        List<Post> unmanagedPosts = copyPosts(realmPosts);
-        Collections.sort(unmanagedPosts, PostUtils.COMPARATOR_MAIN_LIST);
-        return unmanagedPosts;
-    }
-
-    private void storeEtag(Headers headers, @ETag.Type String etagType) {
+    // NOTE: must be called inside a transaction
+    private static void storeEtag(@NonNull Realm realm, Headers headers,
+                                  @ETag.Type String etagType) {
         for (String name : headers.names()) {
             if ("ETag".equals(name) && !headers.values(name).isEmpty()) {
                 ETag etag = new ETag(etagType, headers.values(name).get(0));
-                createOrUpdateModel(etag);
+                createOrUpdateModel(realm, etag);
             }
         }
     }
@@ -999,11 +2198,52 @@ public class NetworkService implements
         return (etag != null) ? etag.getTag() : "";
     }
 
-    private void removeEtag(@ETag.Type String etagType) {
-        RealmResults<ETag> etags = mRealm.where(ETag.class).equalTo("type", etagType).findAll();
-        if (etags.size() > 0) {
-            deleteModel(etags.first());
-        }
+    // NOTE: must be called inside a transaction
+    private static void removeEtag(@NonNull Realm realm, @ETag.Type String etagType) {
+        realm.where(ETag.class).equalTo("type", etagType).findAll().deleteAllFromRealm();
+    }
+
+    @Nullable
+    private static SyncCursor findSyncCursor(@NonNull Realm realm,
+                                             @SyncCursor.Type String cursorType) {
+        return realm.where(SyncCursor.class).equalTo("type", cursorType).findFirst();
+    }
+
+    // NOTE: the sync cursor helpers below must be called inside a transaction
+    @NonNull
+    private static SyncCursor getOrCreateSyncCursor(@NonNull Realm realm,
+                                                    @SyncCursor.Type String cursorType) {
+        SyncCursor cursor = findSyncCursor(realm, cursorType);
+        return (cursor != null) ? cursor : createOrUpdateModel(realm, new SyncCursor(cursorType));
+    }
+
+    private static void startSyncWalk(@NonNull Realm realm, @SyncCursor.Type String cursorType) {
+        SyncCursor cursor = getOrCreateSyncCursor(realm, cursorType);
+        cursor.setGeneration(cursor.getGeneration() + 1);
+        cursor.setNextPage(0);
+    }
+
+    private static void advanceSyncWalk(@NonNull Realm realm, @SyncCursor.Type String cursorType,
+                                        int nextPage) {
+        getOrCreateSyncCursor(realm, cursorType).setNextPage(nextPage);
+    }
+
+    private static void finishSyncWalk(@NonNull Realm realm, @SyncCursor.Type String cursorType) {
+        SyncCursor cursor = getOrCreateSyncCursor(realm, cursorType);
+        cursor.setNextPage(0);
+        cursor.setLastFullSyncAt(new Date());
+    }
+
+    private static void setSyncWatermark(@NonNull Realm realm, @SyncCursor.Type String cursorType,
+                                         @NonNull Date watermark) {
+        getOrCreateSyncCursor(realm, cursorType).setWatermark(watermark);
+    }
+
+    private static void resetSyncCursor(@NonNull Realm realm, @SyncCursor.Type String cursorType) {
+        SyncCursor cursor = getOrCreateSyncCursor(realm, cursorType);
+        cursor.setNextPage(0);
+        cursor.setWatermark(null);
+        cursor.setLastFullSyncAt(null);
     }
 
     /**
@@ -1012,70 +2252,62 @@ public class NetworkService implements
      * you'll get the same id twice!</b>
      */
     @NonNull
-    private <T extends RealmModel> String getTempUniqueId(Class<T> clazz) {
+    private static <T extends RealmModel> String getTempUniqueId(@NonNull Realm realm,
+                                                                 Class<T> clazz) {
         int tempId = Integer.MAX_VALUE;
-        while (mRealm.where(clazz).equalTo("id", String.valueOf(tempId)).findAll().size() > 0) {
+        while (realm.where(clazz).equalTo("id", String.valueOf(tempId)).findAll().size() > 0) {
             --tempId;
         }
         return String.valueOf(tempId);
     }
 
-    private List<Post> copyPosts(List<Post> posts) {
-        List<Post> copied = new ArrayList<>(posts.size());
-        for (Post model : posts) {
-            copied.add(new Post(model));
-        }
-        return copied;
-    }
-
-    private <T extends RealmModel> T createOrUpdateModel(T object) {
-        return createOrUpdateModel(object, null);
-    }
-
-    private <T extends RealmModel> T createOrUpdateModel(T object,
-                                                         @Nullable Runnable afterTransaction) {
-        return RealmUtils.executeTransaction(mRealm, realm -> {
-            T realmObject = mRealm.copyToRealmOrUpdate(object);
-            if (afterTransaction != null) {
-                afterTransaction.run();
-            }
-            return realmObject;
-        });
+    // NOTE: must be called inside a transaction
+    private static <T extends RealmModel> T createOrUpdateModel(@NonNull Realm realm, T object) {
+        updateDerivedFields(object);
+        return realm.copyToRealmOrUpdate(object);
     }
 
-    private <T extends RealmModel> List<T> createOrUpdateModel(Iterable<T> objects) {
-        return createOrUpdateModel(objects, null);
-    }
-
-    private <T extends RealmModel> List<T> createOrUpdateModel(Iterable<T> objects,
-                                                               @Nullable Runnable afterTransaction) {
+    // NOTE: must be called inside a transaction
+    private static <T extends RealmModel> List<T> createOrUpdateModel(@NonNull Realm realm,
+                                                                      Iterable<T> objects) {
         if (! objects.iterator().hasNext()) {
             return Collections.emptyList();
         }
-        return RealmUtils.executeTransaction(mRealm, realm -> {
-            List<T> realmObjects = mRealm.copyToRealmOrUpdate(objects);
-            if (afterTransaction != null) {
-                afterTransaction.run();
-            }
-            return realmObjects;
-        });
+        for (T object : objects) {
+            updateDerivedFields(object);
+        }
+        return realm.copyToRealmOrUpdate(objects);
     }
 
-    private <T extends RealmModel> void deleteModel(T realmObject) {
-        RealmUtils.executeTransaction(mRealm, realm -> {
-            RealmObject.deleteFromRealm(realmObject);
-        });
+    /**
+     * Bulk version of {@link #createOrUpdateModel(Realm, Iterable)} that's much faster for large
+     * responses, because it doesn't create (and return) managed copies of the saved objects. Use
+     * it whenever those aren't needed.
+     * NOTE: must be called inside a transaction
+     */
+    private static <T extends RealmModel> void insertOrUpdateModels(@NonNull Realm realm,
+                                                                    Collection<T> objects) {
+        if (objects.isEmpty()) {
+            return;
+        }
+        for (T object : objects) {
+            updateDerivedFields(object);
+        }
+        realm.insertOrUpdate(objects);
     }
 
-    private <T extends RealmModel> void deleteModels(Iterable<T> realmObjects) {
-        if (! realmObjects.iterator().hasNext()) {
-            return;
+    // NOTE: must be called inside a transaction
+    private static <T extends RealmModel> void insertOrUpdateModel(@NonNull Realm realm, T object) {
+        updateDerivedFields(object);
+        realm.insertOrUpdate(object);
+    }
+
+    // keep fields that are derived from other fields in sync, before every write
+    private static <T extends RealmModel> void updateDerivedFields(T object) {
+        if (object instanceof Post) {
+            ((Post) object).updateSortKeys();
+            ((Post) object).updateEditorCompatibility();
         }
-        RealmUtils.executeTransaction(mRealm, realm -> {
-            for (T realmObject : realmObjects) {
-                RealmObject.deleteFromRealm(realmObject);
-            }
-        });
     }
 
     private Bus getBus() {
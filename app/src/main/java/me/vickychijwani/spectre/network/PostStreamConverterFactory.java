@@ -0,0 +1,58 @@
+package me.vickychijwani.spectre.network;
+
+import com.google.gson.Gson;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+import me.vickychijwani.spectre.model.entity.Post;
+import me.vickychijwani.spectre.network.entity.ApiMeta;
+import me.vickychijwani.spectre.network.entity.PostStream;
+import okhttp3.ResponseBody;
+import okio.BufferedSink;
+import okio.Okio;
+import retrofit2.Converter;
+import retrofit2.Retrofit;
+
+// copies the response body to a temporary file, on the same (background) thread that reads it
+// from the network; see PostStream
+/* package */ class PostStreamConverterFactory extends Converter.Factory {
+
+    private final Gson mGson;
+
+    public static PostStreamConverterFactory create(Gson gson) {
+        return new PostStreamConverterFactory(gson);
+    }
+
+    private PostStreamConverterFactory(Gson gson) {
+        mGson = gson;
+    }
+
+    @Override
+    public Converter<ResponseBody, ?> responseBodyConverter(Type type, Annotation[] annotations,
+                                                            Retrofit retrofit) {
+        if (! PostStream.class.equals(type)) {
+            return null;
+        }
+        return (Converter<ResponseBody, PostStream>) body -> {
+            // java.io.tmpdir is the app's cache dir on Android
+            File file = File.createTempFile("posts", ".json");
+            BufferedSink sink = Okio.buffer(Okio.sink(file));
+            try {
+                sink.writeAll(body.source());
+            } catch (IOException e) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+                throw e;
+            } finally {
+                sink.close();
+                body.close();
+            }
+            return new PostStream(file, mGson.getAdapter(Post.class),
+                    mGson.getAdapter(ApiMeta.class));
+        };
+    }
+
+}
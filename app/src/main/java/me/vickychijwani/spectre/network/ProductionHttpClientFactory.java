@@ -2,6 +2,7 @@ package me.vickychijwani.spectre.network;
 
 import android.os.Build;
 import android.os.StatFs;
+import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
 import java.io.File;
@@ -12,22 +13,30 @@ import okhttp3.OkHttpClient;
 
 public class ProductionHttpClientFactory implements HttpClientFactory {
 
-    private static final int MIN_DISK_CACHE_SIZE = 5 * 1024 * 1024;     // in bytes
-    private static final int MAX_DISK_CACHE_SIZE = 50 * 1024 * 1024;    // in bytes
+    // API responses and images are cached separately, so that large images don't evict the small
+    // API responses that are revalidated with ETags on every sync; each cache evicts the least
+    // recently used entries beyond its own budget
+    private static final long MIN_API_CACHE_SIZE = 2 * 1024 * 1024;       // in bytes
+    private static final long MAX_API_CACHE_SIZE = 10 * 1024 * 1024;      // in bytes
+    private static final int API_CACHE_DISK_FRACTION = 200;              // i.e., 0.5%
+    private static final long MIN_IMAGE_CACHE_SIZE = 5 * 1024 * 1024;     // in bytes
+    private static final long MAX_IMAGE_CACHE_SIZE = 50 * 1024 * 1024;    // in bytes
+    private static final int IMAGE_CACHE_DISK_FRACTION = 50;             // i.e., 2%
 
     private static final int CONNECT_TIMEOUT = 20;
     private static final int READ_TIMEOUT = 30;
     private static final int WRITE_TIMEOUT = 5 * 60;    // for file uploads
 
     /**
-     * @param cacheDir - directory for the HTTP cache, disabled if null
+     * @param cacheDir - directory for the cache of API responses, disabled if null
      * @return an HTTP client intended for production use
      */
     @Override
     public OkHttpClient create(@Nullable File cacheDir) {
         OkHttpClient.Builder builder = new OkHttpClient.Builder();
         if (cacheDir != null) {
-            long size = calculateDiskCacheSize(cacheDir);
+            long size = calculateDiskCacheSize(cacheDir, API_CACHE_DISK_FRACTION,
+                    MIN_API_CACHE_SIZE, MAX_API_CACHE_SIZE);
             builder.cache(new Cache(cacheDir, size));
         }
         return builder
@@ -37,8 +46,24 @@ public class ProductionHttpClientFactory implements HttpClientFactory {
                 .build();
     }
 
-    private static long calculateDiskCacheSize(File dir) {
-        long size = MIN_DISK_CACHE_SIZE;
+    @Override
+    public OkHttpClient createForImages(@NonNull OkHttpClient httpClient,
+                                        @Nullable File cacheDir) {
+        Cache cache = null;
+        if (cacheDir != null) {
+            long size = calculateDiskCacheSize(cacheDir, IMAGE_CACHE_DISK_FRACTION,
+                    MIN_IMAGE_CACHE_SIZE, MAX_IMAGE_CACHE_SIZE);
+            cache = new Cache(cacheDir, size);
+        }
+        // shares the connection pool and dispatcher of the given client
+        return httpClient.newBuilder()
+                .cache(cache)
+                .build();
+    }
+
+    private static long calculateDiskCacheSize(File dir, int diskFraction, long minSize,
+                                               long maxSize) {
+        long size = minSize;
         try {
             StatFs statFs = new StatFs(dir.getAbsolutePath());
             long available;
@@ -49,12 +74,12 @@ public class ProductionHttpClientFactory implements HttpClientFactory {
                 //noinspection deprecation
                 available = statFs.getBlockCount() * statFs.getBlockSize();
             }
-            // Target 2% of the total space.
-            size = available / 50;
+            // Target a fraction of the total space.
+            size = available / diskFraction;
         } catch (IllegalArgumentException ignored) {
         }
         // Bound inside min/max size for disk cache.
-        return Math.max(Math.min(size, MAX_DISK_CACHE_SIZE), MIN_DISK_CACHE_SIZE);
+        return Math.max(Math.min(size, maxSize), minSize);
     }
 
 }
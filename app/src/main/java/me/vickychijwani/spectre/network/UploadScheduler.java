@@ -0,0 +1,230 @@
+package me.vickychijwani.spectre.network;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import io.reactivex.Observable;
+import io.reactivex.subjects.PublishSubject;
+
+/**
+ * Runs upload tasks with a bounded number of them in flight at a time, retrying failed ones with
+ * exponential backoff.
+ *
+ * Tasks with the same key (e.g., a post id) run one after another, in the order they were
+ * submitted. If one of them fails for good, the remaining tasks for that key are skipped since
+ * they may depend on it. Tasks with different keys are independent, so one failure doesn't
+ * affect the others.
+ *
+ * Every submitted task produces exactly one {@link Outcome} on {@link #outcomes()}, which
+ * completes once {@link #shutdown()} has been called and all tasks are done.
+ *
+ * NOTE: this class is not thread-safe, all methods and {@link Attempt} callbacks must be called
+ * on the same thread (the main thread in the app, which is where Retrofit delivers callbacks).
+ */
+public class UploadScheduler {
+
+    public interface Task {
+        /**
+         * Starts one attempt at the task. Must eventually call exactly one method on the attempt.
+         */
+        void run(@NonNull Attempt attempt);
+    }
+
+    public interface Attempt {
+        void succeed();
+
+        /**
+         * @param retryable whether the task may be retried, see {@link #isRetryable(ApiFailure)}
+         */
+        void fail(@NonNull ApiFailure failure, boolean retryable);
+    }
+
+    public interface DelayedExecutor {
+        void execute(@NonNull Runnable runnable, long delayMillis);
+    }
+
+    public static final class Outcome {
+
+        public enum Status { SUCCEEDED, FAILED, SKIPPED }
+
+        public final String key;
+        public final Status status;
+        @Nullable public final ApiFailure failure;
+        public final int attempts;
+
+        Outcome(String key, Status status, @Nullable ApiFailure failure, int attempts) {
+            this.key = key;
+            this.status = status;
+            this.failure = failure;
+            this.attempts = attempts;
+        }
+
+    }
+
+    private final int mMaxConcurrency;
+    private final int mMaxAttempts;
+    private final long mBaseRetryDelay;
+    private final long mMaxRetryDelay;
+    private final DelayedExecutor mDelayedExecutor;
+
+    // pending tasks per key, in order of submission of each key's first task
+    private final Map<String, Deque<Task>> mQueues = new LinkedHashMap<>();
+    // keys that have a task in flight or waiting to be retried
+    private final Set<String> mActiveKeys = new HashSet<>();
+    private final PublishSubject<Outcome> mOutcomes = PublishSubject.create();
+    private boolean mShutdown = false;
+    private boolean mDraining = false;
+
+    /**
+     * @param maxConcurrency    max number of tasks in flight at a time
+     * @param maxAttempts       max number of attempts per task, including the first one
+     * @param baseRetryDelay    delay before the first retry in milliseconds, doubled every retry
+     * @param maxRetryDelay     upper bound on the delay between retries in milliseconds
+     * @param delayedExecutor   used to schedule retries, must run them on the calling thread
+     */
+    public UploadScheduler(int maxConcurrency, int maxAttempts, long baseRetryDelay,
+                           long maxRetryDelay, @NonNull DelayedExecutor delayedExecutor) {
+        if (maxConcurrency < 1 || maxAttempts < 1) {
+            throw new IllegalArgumentException("maxConcurrency and maxAttempts must be positive");
+        }
+        mMaxConcurrency = maxConcurrency;
+        mMaxAttempts = maxAttempts;
+        mBaseRetryDelay = baseRetryDelay;
+        mMaxRetryDelay = maxRetryDelay;
+        mDelayedExecutor = delayedExecutor;
+    }
+
+    /**
+     * Per-task outcomes, in order of completion. Subscribe before submitting any tasks, as
+     * outcomes are not replayed.
+     */
+    public Observable<Outcome> outcomes() {
+        return mOutcomes;
+    }
+
+    public void submit(@NonNull String key, @NonNull Task task) {
+        if (mShutdown) {
+            throw new IllegalStateException("Cannot submit tasks after shutdown()");
+        }
+        Deque<Task> queue = mQueues.get(key);
+        if (queue == null) {
+            queue = new ArrayDeque<>();
+            mQueues.put(key, queue);
+        }
+        queue.addLast(task);
+        drain();
+    }
+
+    /**
+     * Stop accepting new tasks; {@link #outcomes()} completes after the submitted ones are done.
+     */
+    public void shutdown() {
+        mShutdown = true;
+        completeIfDone();
+    }
+
+    /**
+     * Transport-level errors, server errors and rate-limiting are worth retrying, other errors
+     * (e.g., validation errors, expired credentials) will just fail again.
+     */
+    public static boolean isRetryable(@NonNull ApiFailure failure) {
+        if (failure.response == null) {
+            return true;
+        }
+        int code = failure.response.code();
+        return code >= 500 || code == 429;
+    }
+
+    private void drain() {
+        // tasks can complete synchronously, which re-enters this method
+        if (mDraining) {
+            return;
+        }
+        mDraining = true;
+        try {
+            String key;
+            while (mActiveKeys.size() < mMaxConcurrency && (key = nextRunnableKey()) != null) {
+                Task task = mQueues.get(key).removeFirst();
+                mActiveKeys.add(key);
+                start(key, task, 1);
+            }
+        } finally {
+            mDraining = false;
+        }
+    }
+
+    @Nullable
+    private String nextRunnableKey() {
+        for (Map.Entry<String, Deque<Task>> entry : mQueues.entrySet()) {
+            if (! mActiveKeys.contains(entry.getKey()) && ! entry.getValue().isEmpty()) {
+                return entry.getKey();
+            }
+        }
+        return null;
+    }
+
+    private void start(String key, Task task, int attemptNumber) {
+        task.run(new Attempt() {
+            private boolean mDone = false;
+
+            @Override
+            public void succeed() {
+                markDone();
+                finish(new Outcome(key, Outcome.Status.SUCCEEDED, null, attemptNumber));
+            }
+
+            @Override
+            public void fail(@NonNull ApiFailure failure, boolean retryable) {
+                markDone();
+                if (retryable && attemptNumber < mMaxAttempts) {
+                    mDelayedExecutor.execute(() -> start(key, task, attemptNumber + 1),
+                            getRetryDelay(attemptNumber));
+                } else {
+                    finish(new Outcome(key, Outcome.Status.FAILED, failure, attemptNumber));
+                }
+            }
+
+            private void markDone() {
+                if (mDone) {
+                    throw new IllegalStateException("Attempt for key " + key + " already done");
+                }
+                mDone = true;
+            }
+        });
+    }
+
+    private long getRetryDelay(int attemptNumber) {
+        // 1st retry => base delay, 2nd retry => 2 * base delay, and so on
+        long delay = mBaseRetryDelay << Math.min(attemptNumber - 1, 30);
+        return (delay < 0 || delay > mMaxRetryDelay) ? mMaxRetryDelay : delay;
+    }
+
+    private void finish(Outcome outcome) {
+        mActiveKeys.remove(outcome.key);
+        Deque<Task> queue = mQueues.remove(outcome.key);
+        mOutcomes.onNext(outcome);
+        if (queue != null && outcome.status == Outcome.Status.FAILED) {
+            for (int i = queue.size(); i > 0; --i) {
+                mOutcomes.onNext(new Outcome(outcome.key, Outcome.Status.SKIPPED, null, 0));
+            }
+        } else if (queue != null && ! queue.isEmpty()) {
+            mQueues.put(outcome.key, queue);
+        }
+        drain();
+        completeIfDone();
+    }
+
+    private void completeIfDone() {
+        if (mShutdown && mActiveKeys.isEmpty() && mQueues.isEmpty() && ! mOutcomes.hasComplete()) {
+            mOutcomes.onComplete();
+        }
+    }
+
+}
@@ -0,0 +1,20 @@
+package me.vickychijwani.spectre.network.entity;
+
+import android.support.annotation.Nullable;
+
+// "meta" object sent alongside browse responses, e.g., GET /posts/
+@SuppressWarnings({"WeakerAccess", "unused"})
+public class ApiMeta {
+
+    @Nullable public Pagination pagination;
+
+    public static class Pagination {
+        public int page;
+        public int limit;
+        public int pages;
+        public int total;
+        @Nullable public Integer next;
+        @Nullable public Integer prev;
+    }
+
+}
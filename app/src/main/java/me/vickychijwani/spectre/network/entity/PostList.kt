@@ -5,6 +5,13 @@ import me.vickychijwani.spectre.model.entity.Post
 // dummy wrapper class needed for Retrofit
 class PostList(var posts: MutableList<Post>) {
 
+    // absent in responses to single-post requests (read / add / edit)
+    var meta: ApiMeta? = null
+
+    // page number to request next, or null if this is the last page
+    val nextPage: Int?
+        get() = meta?.pagination?.next
+
     operator fun contains(id: String): Boolean {
         for (post in posts) {
             if (id == post.id) {
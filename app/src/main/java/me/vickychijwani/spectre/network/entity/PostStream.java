@@ -0,0 +1,80 @@
+package me.vickychijwani.spectre.network.entity;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+import me.vickychijwani.spectre.model.entity.Post;
+
+/**
+ * A posts response that is spooled to a temporary file instead of being parsed into memory all
+ * at once like {@link PostList}, so that it can be read (and saved) one post at a time. Peak
+ * memory use is then bounded by the largest post instead of the page size.
+ *
+ * Must be {@link #close() closed} after use, to delete the file.
+ */
+public final class PostStream implements Closeable {
+
+    public interface Sink {
+        void accept(@NonNull Post post);
+    }
+
+    private final File mFile;
+    private final TypeAdapter<Post> mPostAdapter;
+    private final TypeAdapter<ApiMeta> mMetaAdapter;
+
+    public PostStream(@NonNull File file, @NonNull TypeAdapter<Post> postAdapter,
+                      @NonNull TypeAdapter<ApiMeta> metaAdapter) {
+        mFile = file;
+        mPostAdapter = postAdapter;
+        mMetaAdapter = metaAdapter;
+    }
+
+    /**
+     * Passes each post to the sink as soon as it is parsed. Posts are not retained.
+     * @return the "meta" object of the response, if any
+     */
+    @Nullable
+    public ApiMeta read(@NonNull Sink sink) throws IOException {
+        ApiMeta meta = null;
+        JsonReader reader = new JsonReader(new BufferedReader(
+                new InputStreamReader(new FileInputStream(mFile), "UTF-8")));
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if ("posts".equals(name)) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        sink.accept(mPostAdapter.read(reader));
+                    }
+                    reader.endArray();
+                } else if ("meta".equals(name)) {
+                    meta = mMetaAdapter.read(reader);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } finally {
+            reader.close();
+        }
+        return meta;
+    }
+
+    @Override
+    public void close() {
+        //noinspection ResultOfMethodCallIgnored
+        mFile.delete();
+    }
+
+}
@@ -12,29 +12,53 @@ import me.vickychijwani.spectre.model.entity.Tag;
 public final class PostStub {
 
     // field names should EXACTLY match those in Post class
+    // null fields are left out of the request body, which Ghost treats as "unchanged"
+    public final String uuid;
     public final String title;
     public final String slug;
     public final String status;
     public final String mobiledoc;
     public final List<TagStub> tags;
     public final String featureImage;
-    public final boolean featured;
-    public final boolean page;
+    public final Boolean featured;
+    public final Boolean page;
     public final String customExcerpt;
 
     public PostStub(@NonNull Post post) {
-        this.title = post.getTitle();
-        this.slug = post.getSlug();
-        this.status = post.getStatus();
-        this.mobiledoc = post.getMobiledoc();
-        this.tags = new ArrayList<>(post.getTags().size());
-        for (Tag tag : post.getTags()) {
-            this.tags.add(new TagStub(tag));
+        this(post, Post.ALL_FIELDS, post.getUuid());
+    }
+
+    /**
+     * Creates a stub with only the given fields of the post, for partial updates.
+     */
+    public PostStub(@NonNull Post post, @Post.Field int fields) {
+        this(post, fields, null);
+    }
+
+    // the uuid is only sent when creating a post, so that it can be found on the server if the
+    // response is lost (see NetworkService#uploadNewPost)
+    private PostStub(@NonNull Post post, @Post.Field int fields, String uuid) {
+        this.uuid = uuid;
+        this.title = has(fields, Post.FIELD_TITLE) ? post.getTitle() : null;
+        this.slug = has(fields, Post.FIELD_SLUG) ? post.getSlug() : null;
+        this.status = has(fields, Post.FIELD_STATUS) ? post.getStatus() : null;
+        this.mobiledoc = has(fields, Post.FIELD_MOBILEDOC) ? post.getMobiledoc() : null;
+        if (has(fields, Post.FIELD_TAGS)) {
+            this.tags = new ArrayList<>(post.getTags().size());
+            for (Tag tag : post.getTags()) {
+                this.tags.add(new TagStub(tag));
+            }
+        } else {
+            this.tags = null;
         }
-        this.featureImage = post.getFeatureImage();
-        this.featured = post.isFeatured();
-        this.page = post.isPage();
-        this.customExcerpt = post.getCustomExcerpt();
+        this.featureImage = has(fields, Post.FIELD_FEATURE_IMAGE) ? post.getFeatureImage() : null;
+        this.featured = has(fields, Post.FIELD_FEATURED) ? post.isFeatured() : null;
+        this.page = has(fields, Post.FIELD_PAGE) ? post.isPage() : null;
+        this.customExcerpt = has(fields, Post.FIELD_CUSTOM_EXCERPT) ? post.getCustomExcerpt() : null;
+    }
+
+    private static boolean has(@Post.Field int fields, @Post.Field int field) {
+        return (fields & field) != 0;
     }
 
 }
@@ -23,4 +23,10 @@ public class PostStubList {
         return stubList;
     }
 
+    public static PostStubList from(Post post, @Post.Field int fields) {
+        PostStubList stubList = new PostStubList();
+        stubList.posts = Arrays.asList(new PostStub(post, fields));
+        return stubList;
+    }
+
 }
@@ -17,6 +17,12 @@ public class UserPrefs extends Prefs<UserPrefs.Key> {
 
         public static final Key ACTIVE_BLOG_URL = new Key("active_blog_url", String.class, "");
 
+        // images are downscaled to this width before uploading (see ImageUtils)
+        public static final Key IMAGE_UPLOAD_MAX_WIDTH = new Key("image_upload_max_width", Integer.class, 2000);
+        public static final Key IMAGE_UPLOAD_JPEG_QUALITY = new Key("image_upload_jpeg_quality", Integer.class, 85);
+        // queued image uploads wait for the device to be charging (see ImageUploadQueue)
+        public static final Key IMAGE_UPLOAD_REQUIRES_CHARGING = new Key("image_upload_requires_charging", Boolean.class, false);
+
         // legacy preferences, no longer used but kept around for database migrations
         public static final Key BLOG_URL = new Key("blog_url", String.class, "");
         public static final Key EMAIL = new Key("email", String.class, "");
@@ -113,6 +113,23 @@ public class AppUtils {
         return filename;
     }
 
+    /**
+     * @return the size of the file in bytes as reported by its content provider, or -1 if unknown
+     */
+    public static long getFileSizeFromUri(@NonNull ContentResolver contentResolver,
+                                          @NonNull Uri uri) {
+        long size = -1;
+        if (uri.getScheme().equals("content")) {
+            try (Cursor cursor = contentResolver.query(uri, new String[] { OpenableColumns.SIZE },
+                    null, null, null)) {
+                if (cursor != null && cursor.moveToFirst() && !cursor.isNull(0)) {
+                    size = cursor.getLong(0);
+                }
+            }
+        }
+        return size;
+    }
+
     // Add a custom event handler for link clicks in TextView HTML
     // credits: https://stackoverflow.com/a/19989677/504611
     public static void setHtmlWithLinkClickHandler(TextView tv, String html,
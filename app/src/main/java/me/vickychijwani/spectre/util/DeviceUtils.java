@@ -1,7 +1,10 @@
 package me.vickychijwani.spectre.util;
 
 import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.res.Resources;
+import android.os.BatteryManager;
 import android.support.annotation.NonNull;
 
 public class DeviceUtils {
@@ -14,4 +17,14 @@ public class DeviceUtils {
         return dp * Resources.getSystem().getDisplayMetrics().density;
     }
 
+    public static boolean isCharging(@NonNull Context context) {
+        // ACTION_BATTERY_CHANGED is sticky, so this just returns the last one without registering
+        Intent batteryStatus = context.registerReceiver(null,
+                new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        int status = (batteryStatus == null) ? -1
+                : batteryStatus.getIntExtra(BatteryManager.EXTRA_STATUS, -1);
+        return status == BatteryManager.BATTERY_STATUS_CHARGING
+                || status == BatteryManager.BATTERY_STATUS_FULL;
+    }
+
 }
@@ -0,0 +1,99 @@
+package me.vickychijwani.spectre.util;
+
+import android.support.annotation.NonNull;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.widget.EditText;
+
+/**
+ * Reads and writes the text of an EditText holding a potentially very long document, like the body
+ * of a post, without redoing work proportional to the whole document when little has changed.
+ *
+ * - Reading the text copies it only if it changed since the last read, so, e.g., saves with no
+ *   edits in between get the same String. A version number tells callers whether the text changed
+ *   without comparing it.
+ * - Writing new text replaces only the range that differs from the current text, instead of the
+ *   whole text, so only the changed paragraphs are laid out again, and the cursor, selection and
+ *   scroll position stay put, e.g., when a sync merges a small edit into a long post.
+ *
+ * The EditText's own Editable is a gap buffer already, so small edits to it are cheap; it's the
+ * whole-text operations on top of it that are avoided here.
+ */
+public final class EditTextBuffer implements TextWatcher {
+
+    private final EditText mEditText;
+    private String mText = null;        // text as of the last read, null if it changed since
+    private int mVersion = 0;           // incremented on every change
+
+    public EditTextBuffer(@NonNull EditText editText) {
+        mEditText = editText;
+        mEditText.addTextChangedListener(this);
+    }
+
+    @NonNull
+    public String getText() {
+        if (mText == null) {
+            mText = mEditText.getText().toString();
+        }
+        return mText;
+    }
+
+    public int getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * Sets the text by replacing only the range that differs from the current text.
+     */
+    public void setText(@NonNull String text) {
+        Editable editable = mEditText.getText();
+        int prefix = commonPrefixLength(editable, text);
+        if (prefix == editable.length() && prefix == text.length()) {
+            return;
+        }
+        int suffix = commonSuffixLength(editable, text, prefix);
+        editable.replace(prefix, editable.length() - suffix, text, prefix, text.length() - suffix);
+        mText = text;
+    }
+
+    // a range never starts or ends in the middle of a surrogate pair
+    static int commonPrefixLength(@NonNull CharSequence a, @NonNull CharSequence b) {
+        int max = Math.min(a.length(), b.length());
+        int prefix = 0;
+        while (prefix < max && a.charAt(prefix) == b.charAt(prefix)) {
+            ++prefix;
+        }
+        if (prefix > 0 && prefix < max && Character.isHighSurrogate(a.charAt(prefix - 1))) {
+            --prefix;
+        }
+        return prefix;
+    }
+
+    // the suffix never overlaps the given common prefix
+    static int commonSuffixLength(@NonNull CharSequence a, @NonNull CharSequence b, int prefix) {
+        int max = Math.min(a.length(), b.length()) - prefix;
+        int suffix = 0;
+        while (suffix < max
+                && a.charAt(a.length() - 1 - suffix) == b.charAt(b.length() - 1 - suffix)) {
+            ++suffix;
+        }
+        if (suffix > 0 && suffix < max
+                && Character.isLowSurrogate(a.charAt(a.length() - suffix))) {
+            --suffix;
+        }
+        return suffix;
+    }
+
+    @Override
+    public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
+
+    @Override
+    public void onTextChanged(CharSequence s, int start, int before, int count) {}
+
+    @Override
+    public void afterTextChanged(Editable s) {
+        mText = null;
+        ++mVersion;
+    }
+
+}
@@ -0,0 +1,242 @@
+package me.vickychijwani.spectre.util;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.media.ExifInterface;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import me.vickychijwani.spectre.util.log.Log;
+
+/**
+ * Shrinks images before they're uploaded: camera photos are far larger than a blog post needs, and
+ * Ghost serves them as uploaded, so every reader would download them at full size too.
+ *
+ * Images are decoded at the smallest power-of-2 subsample that's still at least as wide as the
+ * target (so a 12MP photo is never decoded in full), scaled down to the target width, rotated
+ * upright according to their EXIF orientation, and re-encoded. The new file has no EXIF data at
+ * all, so location and camera details in photos are not published with them.
+ *
+ * JPEGs are re-encoded as JPEG at the given quality and PNGs stay lossless PNGs. Ghost (up to
+ * 1.x, i.e., API v0.1) doesn't accept WebP uploads, so that's not an option. Other types (e.g., GIF,
+ * which may be animated) are always uploaded as-is.
+ */
+public final class ImageUtils {
+
+    private static final String TAG = ImageUtils.class.getSimpleName();
+
+    public static final String MIME_TYPE_JPEG = "image/jpeg";
+    public static final String MIME_TYPE_PNG = "image/png";
+
+    // leftovers from uploads older than this are deleted
+    private static final long MAX_TEMP_FILE_AGE = 60 * 60 * 1000;
+
+    private ImageUtils() {}
+
+    /**
+     * Downscales and re-encodes the given image into a new file in {@code outputDir}. Must NOT be
+     * called on the main thread.
+     * @return the new file, or null if the original should be uploaded as-is (unsupported type,
+     * or the result wouldn't be smaller)
+     */
+    @Nullable
+    public static File downscaleForUpload(@NonNull ContentResolver contentResolver,
+                                          @NonNull Uri uri, @Nullable String mimeType,
+                                          long originalSize, @NonNull File outputDir,
+                                          int maxWidth, int jpegQuality) throws IOException {
+        boolean isJpeg = MIME_TYPE_JPEG.equals(mimeType);
+        boolean isPng = MIME_TYPE_PNG.equals(mimeType);
+        if (! isJpeg && ! isPng) {
+            return null;
+        }
+
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        decodeStream(contentResolver, uri, bounds);
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+            return null;
+        }
+        int orientation = isJpeg ? readOrientation(contentResolver, uri)
+                : ExifInterface.ORIENTATION_NORMAL;
+        boolean isTransposed = isTransposed(orientation);
+        int width = isTransposed ? bounds.outHeight : bounds.outWidth;
+        // PNGs are lossless, so there's nothing to gain from re-encoding them at the same size;
+        // JPEGs are re-encoded anyway, to strip their EXIF data and apply the quality setting
+        if (isPng && width <= maxWidth) {
+            return null;
+        }
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = getSampleSize(width, maxWidth);
+        Bitmap bitmap;
+        try {
+            bitmap = decodeStream(contentResolver, uri, options);
+        } catch (OutOfMemoryError e) {
+            // a bit narrower than the target is better than no upload at all
+            Log.w(TAG, "Out of memory decoding %d px wide image at 1/%d, retrying at 1/%d",
+                    width, options.inSampleSize, options.inSampleSize * 2);
+            options.inSampleSize *= 2;
+            bitmap = decodeStream(contentResolver, uri, options);
+        }
+        if (bitmap == null) {
+            return null;
+        }
+
+        Matrix matrix = getOrientationMatrix(orientation);
+        int sampledWidth = isTransposed ? bitmap.getHeight() : bitmap.getWidth();
+        if (sampledWidth > maxWidth) {
+            float scale = (float) maxWidth / sampledWidth;
+            matrix.postScale(scale, scale);
+        }
+        if (! matrix.isIdentity()) {
+            Bitmap transformed = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(),
+                    bitmap.getHeight(), matrix, true);
+            if (transformed != bitmap) {
+                bitmap.recycle();
+                bitmap = transformed;
+            }
+        }
+
+        deleteOldFiles(outputDir);
+        File outputFile = new File(outputDir, "upload-" + System.currentTimeMillis()
+                + (isJpeg ? ".jpg" : ".png"));
+        OutputStream outputStream = null;
+        try {
+            outputStream = new FileOutputStream(outputFile);
+            bitmap.compress(isJpeg ? Bitmap.CompressFormat.JPEG : Bitmap.CompressFormat.PNG,
+                    jpegQuality, outputStream);
+        } finally {
+            bitmap.recycle();
+            if (outputStream != null) {
+                outputStream.close();
+            }
+        }
+
+        Log.i(TAG, "Downscaled %d px wide image from %d to %d bytes", width, originalSize,
+                outputFile.length());
+        if (originalSize > 0 && outputFile.length() >= originalSize
+                && orientation == ExifInterface.ORIENTATION_NORMAL) {
+            //noinspection ResultOfMethodCallIgnored
+            outputFile.delete();
+            return null;
+        }
+        return outputFile;
+    }
+
+    /**
+     * @return the largest power of 2 to subsample an image of the given width by, such that it's
+     * still at least {@code targetWidth} wide
+     */
+    public static int getSampleSize(int width, int targetWidth) {
+        int sampleSize = 1;
+        while (width / (sampleSize * 2) >= targetWidth) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    // true for orientations that swap width and height
+    static boolean isTransposed(int orientation) {
+        switch (orientation) {
+            case ExifInterface.ORIENTATION_ROTATE_90:
+            case ExifInterface.ORIENTATION_ROTATE_270:
+            case ExifInterface.ORIENTATION_TRANSPOSE:
+            case ExifInterface.ORIENTATION_TRANSVERSE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    @NonNull
+    private static Matrix getOrientationMatrix(int orientation) {
+        Matrix matrix = new Matrix();
+        switch (orientation) {
+            case ExifInterface.ORIENTATION_FLIP_HORIZONTAL:
+                matrix.setScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_180:
+                matrix.setRotate(180);
+                break;
+            case ExifInterface.ORIENTATION_FLIP_VERTICAL:
+                matrix.setScale(1, -1);
+                break;
+            case ExifInterface.ORIENTATION_TRANSPOSE:
+                matrix.setRotate(90);
+                matrix.postScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_90:
+                matrix.setRotate(90);
+                break;
+            case ExifInterface.ORIENTATION_TRANSVERSE:
+                matrix.setRotate(-90);
+                matrix.postScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_270:
+                matrix.setRotate(-90);
+                break;
+        }
+        return matrix;
+    }
+
+    private static int readOrientation(@NonNull ContentResolver contentResolver,
+                                       @NonNull Uri uri) throws IOException {
+        InputStream inputStream = openInputStream(contentResolver, uri);
+        try {
+            return new ExifInterface(inputStream).getAttributeInt(
+                    ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    @Nullable
+    private static Bitmap decodeStream(@NonNull ContentResolver contentResolver,
+                                       @NonNull Uri uri, @NonNull BitmapFactory.Options options)
+            throws IOException {
+        InputStream inputStream = openInputStream(contentResolver, uri);
+        try {
+            return BitmapFactory.decodeStream(inputStream, null, options);
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    @NonNull
+    private static InputStream openInputStream(@NonNull ContentResolver contentResolver,
+                                               @NonNull Uri uri) throws IOException {
+        InputStream inputStream = contentResolver.openInputStream(uri);
+        if (inputStream == null) {
+            throw new FileNotFoundException("Failed to open input stream for uri: " + uri);
+        }
+        return inputStream;
+    }
+
+    private static void deleteOldFiles(@NonNull File dir) throws IOException {
+        if (! dir.isDirectory() && ! dir.mkdirs()) {
+            throw new IOException("Failed to create directory: " + dir);
+        }
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (File file : files) {
+            if (now - file.lastModified() > MAX_TEMP_FILE_AGE) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+    }
+
+}
@@ -10,11 +10,11 @@ import android.support.v4.content.ContextCompat;
 import android.text.TextUtils;
 
 import java.util.Calendar;
-import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
 import java.util.TimeZone;
 
+import io.realm.Sort;
 import me.vickychijwani.spectre.R;
 import me.vickychijwani.spectre.account.AccountManager;
 import me.vickychijwani.spectre.model.entity.BlogMetadata;
@@ -25,88 +25,84 @@ import me.vickychijwani.spectre.util.log.Log;
 
 public class PostUtils {
 
+    // post list groups, in display order:
+    // 1. new posts that are yet to be created on the server
+    // 2. scheduled posts
+    // 3. drafts
+    // 4. published posts
+    // see Ghost Admin's sort order in core/server/models/post.js, search for 'orderDefaultOptions'
+    public static final int SORT_GROUP_NEW = 0;
+    public static final int SORT_GROUP_SCHEDULED = 1;
+    public static final int SORT_GROUP_DRAFT = 2;
+    public static final int SORT_GROUP_PUBLISHED = 3;
+    public static final int SORT_GROUP_OTHER = 4;
+
+    // persisted sort keys, the post list is sorted by (sortGroup ASC, sortDate DESC)
+    public static final String[] SORT_FIELDS_MAIN_LIST = { "sortGroup", "sortDate" };
+    public static final Sort[] SORT_ORDERS_MAIN_LIST = { Sort.ASCENDING, Sort.DESCENDING };
+
     /**
-     * Sort order:
-     * 1. New posts that are yet to be created on the server, sorted by updatedAt
-     * 2. Scheduled posts, sorted by publishedAt
-     * 3. Drafts, sorted by updatedAt
-     * 4. Published posts, sorted by publishedAt
-     *
-     * See Ghost Admin's sort order in the file core/server/models/post.js, search for 'orderDefaultOptions'
+     * @return the group a post is listed in, persisted as {@link Post}'s sortGroup so that the
+     * database can do the sorting
      */
-    @SuppressWarnings("unused")
-    public static Comparator<Post> COMPARATOR_MAIN_LIST = (lhs, rhs) -> {
-        boolean isLhsNew = lhs.hasPendingAction(PendingAction.CREATE);
-        boolean isRhsNew = rhs.hasPendingAction(PendingAction.CREATE);
-        boolean isLhsScheduled = lhs.isScheduled();
-        boolean isRhsScheduled = rhs.isScheduled();
-        boolean isLhsDraft = lhs.isDraft();
-        boolean isRhsDraft = rhs.isDraft();
-        boolean isLhsPublished = lhs.isPublished();
-        boolean isRhsPublished = rhs.isPublished();
-
-        if (isLhsNew && !isRhsNew) return -1;
-        if (isRhsNew && !isLhsNew) return 1;
-
-        if (isLhsScheduled && !isRhsScheduled) return -1;
-        if (isRhsScheduled && !isLhsScheduled) return 1;
-
-        if (isLhsDraft && !isRhsDraft) return -1;
-        if (isRhsDraft && !isLhsDraft) return 1;
-
-        if (isLhsPublished && !isRhsPublished) return -1;
-        if (isRhsPublished && !isLhsPublished) return 1;
-
-        // at this point, we know both lhs and rhs belong to the same group (new, scheduled, drafts,
-        // published). NOTE: (-) sign because we want to sort in reverse chronological order.
-        if ((isLhsPublished || isLhsScheduled)) {
-            // FIXME Crashlytics issue #110 - published posts can have null date - why?
-            if (lhs.getPublishedAt() != null && rhs.getPublishedAt() != null) {
-                // use date published for sorting scheduled or published posts ...
-                return -lhs.getPublishedAt().compareTo(rhs.getPublishedAt());
-            }
-        }
-
-        // ... else use date modified (for drafts and new posts)
-        if (lhs.getUpdatedAt() != null && rhs.getUpdatedAt() != null) {
-            return -lhs.getUpdatedAt().compareTo(rhs.getUpdatedAt());
-        }
+    public static int getSortGroup(boolean isNew, @Nullable String status) {
+        if (isNew) return SORT_GROUP_NEW;
+        if (Post.SCHEDULED.equals(status)) return SORT_GROUP_SCHEDULED;
+        if (Post.DRAFT.equals(status)) return SORT_GROUP_DRAFT;
+        if (Post.PUBLISHED.equals(status)) return SORT_GROUP_PUBLISHED;
+        return SORT_GROUP_OTHER;
+    }
 
-        // fallback to creation date
-        if (lhs.getCreatedAt() != null && rhs.getCreatedAt() != null) {
-            return -lhs.getCreatedAt().compareTo(rhs.getCreatedAt());
+    /**
+     * @return the date a post is ordered by within its group (newest first), persisted as
+     * {@link Post}'s sortDate: the publish date for scheduled and published posts, else the date
+     * it was last updated, falling back to the creation date
+     */
+    @Nullable
+    public static Date getSortDate(int sortGroup, @Nullable Date publishedAt,
+                                   @Nullable Date updatedAt, @Nullable Date createdAt) {
+        boolean usePublishedAt = (sortGroup == SORT_GROUP_SCHEDULED
+                || sortGroup == SORT_GROUP_PUBLISHED);
+        if (usePublishedAt && publishedAt != null) {
+            return publishedAt;
         }
+        return (updatedAt != null) ? updatedAt : createdAt;
+    }
 
-        // if all else fails
-        return -1;
-    };
-
-    @SuppressWarnings({"RedundantIfStatement", "OverlyComplexMethod"})
     public static boolean isDirty(@NonNull Post original, @NonNull Post current) {
+        return getChangedFields(original, current) != 0;
+    }
+
+    /**
+     * @return the user-editable fields that differ between the two posts, as {@link Post.Field}
+     * flags
+     */
+    @SuppressWarnings("OverlyComplexMethod")
+    public static @Post.Field int getChangedFields(@NonNull Post original, @NonNull Post current) {
+        int fields = 0;
         if (! original.getTitle().equals(current.getTitle()))
-            return true;
+            fields |= Post.FIELD_TITLE;
         if (! original.getStatus().equals(current.getStatus()))
-            return true;
+            fields |= Post.FIELD_STATUS;
         if (! original.getSlug().equals(current.getSlug()))
-            return true;
+            fields |= Post.FIELD_SLUG;
         if (! original.getMobiledoc().equals(current.getMobiledoc()))
-            return true;
+            fields |= Post.FIELD_MOBILEDOC;
         if (! TextUtils.equals(original.getFeatureImage(), current.getFeatureImage()))
-            return true;
-        if (original.getTags().size() != current.getTags().size())
-            return true;
-        if (! tagListsMatch(original.getTags(), current.getTags()))
-            return true;
+            fields |= Post.FIELD_FEATURE_IMAGE;
+        if (original.getTags().size() != current.getTags().size()
+                || ! tagListsMatch(original.getTags(), current.getTags()))
+            fields |= Post.FIELD_TAGS;
         if (! TextUtils.equals(original.getCustomExcerpt(), current.getCustomExcerpt())
                 // default from API is null, and in the UI is empty string "", but they are the same
                 // so at least one of them must be non-empty for the post to be considered dirty
                 && (!TextUtils.isEmpty(original.getCustomExcerpt()) || !TextUtils.isEmpty(current.getCustomExcerpt())))
-            return true;
+            fields |= Post.FIELD_CUSTOM_EXCERPT;
         if (original.isFeatured() != current.isFeatured())
-            return true;
+            fields |= Post.FIELD_FEATURED;
         if (original.isPage() != current.isPage())
-            return true;
-        return false;
+            fields |= Post.FIELD_PAGE;
+        return fields;
     }
 
     public static String getPostUrl(@Nullable Post post) {
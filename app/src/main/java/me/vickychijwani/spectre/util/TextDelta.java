@@ -0,0 +1,184 @@
+package me.vickychijwani.spectre.util;
+
+import android.support.annotation.NonNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compressed deltas between two versions of a text, to store many versions of a long post
+ * cheaply (see {@link me.vickychijwani.spectre.model.RevisionStore}).
+ *
+ * A delta is a list of instructions that rebuild the target text from the base text: copy a range
+ * of the base, or insert new text. Copies are found by indexing the base in fixed-size blocks and
+ * looking those up with a rolling hash of the target, so two versions that share most of their
+ * text (e.g., consecutive auto-saves) differ by a handful of instructions. The instructions are
+ * then deflated.
+ */
+public final class TextDelta {
+
+    private static final int BLOCK_SIZE = 16;
+    private static final int HASH_BASE = 31;
+    private static final int HASH_BASE_POW;     // HASH_BASE ^ (BLOCK_SIZE-1), to roll the hash
+
+    private static final int OP_COPY = 0;
+    private static final int OP_INSERT = 1;
+
+    static {
+        int pow = 1;
+        for (int i = 1; i < BLOCK_SIZE; ++i) {
+            pow *= HASH_BASE;
+        }
+        HASH_BASE_POW = pow;
+    }
+
+    private TextDelta() {}
+
+    @NonNull
+    public static byte[] create(@NonNull String base, @NonNull String target) {
+        // hash of each block of the base => offset of its first occurrence
+        Map<Integer, Integer> blocks = new HashMap<>();
+        for (int i = 0; i + BLOCK_SIZE <= base.length(); i += BLOCK_SIZE) {
+            int hash = hash(base, i);
+            if (! blocks.containsKey(hash)) {
+                blocks.put(hash, i);
+            }
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes));
+        try {
+            int insertStart = 0;
+            int pos = 0;
+            int hash = (target.length() >= BLOCK_SIZE) ? hash(target, 0) : 0;
+            while (pos + BLOCK_SIZE <= target.length()) {
+                Integer offset = blocks.get(hash);
+                if (offset != null && base.regionMatches(offset, target, pos, BLOCK_SIZE)) {
+                    // extend the match backwards (into the pending insert) and forwards
+                    int copyStart = offset, matchStart = pos;
+                    while (matchStart > insertStart && copyStart > 0
+                            && base.charAt(copyStart - 1) == target.charAt(matchStart - 1)) {
+                        --copyStart;
+                        --matchStart;
+                    }
+                    int copyEnd = offset + BLOCK_SIZE, matchEnd = pos + BLOCK_SIZE;
+                    while (copyEnd < base.length() && matchEnd < target.length()
+                            && base.charAt(copyEnd) == target.charAt(matchEnd)) {
+                        ++copyEnd;
+                        ++matchEnd;
+                    }
+                    writeInsert(out, target, insertStart, matchStart);
+                    writeCopy(out, copyStart, copyEnd - copyStart);
+                    pos = insertStart = matchEnd;
+                    if (pos + BLOCK_SIZE <= target.length()) {
+                        hash = hash(target, pos);
+                    }
+                } else {
+                    if (pos + BLOCK_SIZE < target.length()) {
+                        hash = (hash - target.charAt(pos) * HASH_BASE_POW) * HASH_BASE
+                                + target.charAt(pos + BLOCK_SIZE);
+                    }
+                    ++pos;
+                }
+            }
+            writeInsert(out, target, insertStart, target.length());
+            out.close();
+        } catch (IOException e) {
+            // can't happen, the output is in memory
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @throws IllegalArgumentException if the delta is malformed, or was not created from the
+     * given base
+     */
+    @NonNull
+    public static String apply(@NonNull String base, @NonNull byte[] delta) {
+        StringBuilder target = new StringBuilder();
+        DataInputStream in = new DataInputStream(
+                new InflaterInputStream(new ByteArrayInputStream(delta)));
+        try {
+            int op;
+            while ((op = in.read()) != -1) {
+                if (op == OP_COPY) {
+                    int offset = readVarInt(in);
+                    int length = readVarInt(in);
+                    if (offset < 0 || length < 0 || offset > base.length() - length) {
+                        throw new IllegalArgumentException("Delta copies beyond the end of the base");
+                    }
+                    target.append(base, offset, offset + length);
+                } else if (op == OP_INSERT) {
+                    int length = readVarInt(in);
+                    for (int i = 0; i < length; ++i) {
+                        target.append(in.readChar());
+                    }
+                } else {
+                    throw new IllegalArgumentException("Unknown delta instruction: " + op);
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Malformed delta", e);
+        } finally {
+            try {
+                in.close();
+            } catch (IOException ignored) {}
+        }
+        return target.toString();
+    }
+
+    private static int hash(@NonNull String text, int start) {
+        int hash = 0;
+        for (int i = start; i < start + BLOCK_SIZE; ++i) {
+            hash = hash * HASH_BASE + text.charAt(i);
+        }
+        return hash;
+    }
+
+    private static void writeCopy(@NonNull DataOutputStream out, int offset, int length)
+            throws IOException {
+        out.writeByte(OP_COPY);
+        writeVarInt(out, offset);
+        writeVarInt(out, length);
+    }
+
+    // chars are written as UTF-16 code units, so a range may split a surrogate pair safely
+    private static void writeInsert(@NonNull DataOutputStream out, @NonNull String text,
+                                    int start, int end) throws IOException {
+        if (end <= start) {
+            return;
+        }
+        out.writeByte(OP_INSERT);
+        writeVarInt(out, end - start);
+        out.writeChars(text.substring(start, end));
+    }
+
+    private static void writeVarInt(@NonNull DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(@NonNull DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint in delta");
+    }
+
+}
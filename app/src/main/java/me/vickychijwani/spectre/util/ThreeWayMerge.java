@@ -0,0 +1,262 @@
+package me.vickychijwani.spectre.util;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Line-based three-way merge of two versions of a text that were edited independently from a
+ * common base version, e.g., the local and server copies of a post since it was last synced.
+ *
+ * Both versions are diffed against the base, and the changes (hunks) are merged: changes to
+ * different lines merge cleanly, and so do identical changes made on both sides; only changes from
+ * both sides to the same lines (or insertions at the same place) conflict. In Ghost's markdown
+ * every paragraph, list item, heading or table row is on a line of its own, so this amounts to a
+ * block-level merge, e.g., two people editing different paragraphs of a post never conflict.
+ *
+ * Conflicts are not marked up in the text. Instead the result has two versions, with every
+ * conflicting hunk resolved in favour of one side or the other, and every other change merged, so
+ * that picking either one never loses a non-conflicting change from the other side.
+ */
+public final class ThreeWayMerge {
+
+    // beyond this, diffing takes too much time and memory on a phone (it's O(N*D) time and O(D^2)
+    // memory), and such widespread changes would hardly merge cleanly anyway
+    private static final int MAX_EDITS = 1000;
+
+    public static final class Result {
+        // the merged text, with conflicts resolved in favour of the local / server version
+        @NonNull public final String mergedWithLocal;
+        @NonNull public final String mergedWithServer;
+        public final int numConflicts;
+
+        Result(@NonNull String mergedWithLocal, @NonNull String mergedWithServer,
+               int numConflicts) {
+            this.mergedWithLocal = mergedWithLocal;
+            this.mergedWithServer = mergedWithServer;
+            this.numConflicts = numConflicts;
+        }
+
+        public boolean hasConflicts() {
+            return numConflicts > 0;
+        }
+    }
+
+    // a range of base lines [start, end) replaced by the lines [otherStart, otherEnd) of one side
+    private static final class Hunk {
+        final int start, end, otherStart, otherEnd;
+        final boolean isLocal;
+
+        Hunk(int start, int end, int otherStart, int otherEnd, boolean isLocal) {
+            this.start = start;
+            this.end = end;
+            this.otherStart = otherStart;
+            this.otherEnd = otherEnd;
+            this.isLocal = isLocal;
+        }
+
+        boolean overlaps(int rangeStart, int rangeEnd) {
+            if (start == end || rangeStart == rangeEnd) {
+                // an insertion conflicts with anything right next to it, because the order of
+                // the lines would be ambiguous
+                return start <= rangeEnd && rangeStart <= end;
+            }
+            return start < rangeEnd && rangeStart < end;
+        }
+    }
+
+    private ThreeWayMerge() {}
+
+    /**
+     * @return the merge result, or null if the versions are too different from the base to merge
+     */
+    @Nullable
+    public static Result merge(@NonNull String base, @NonNull String local,
+                               @NonNull String server) {
+        List<String> baseLines = splitLines(base);
+        List<String> localLines = splitLines(local);
+        List<String> serverLines = splitLines(server);
+        List<Hunk> localHunks = diff(baseLines, localLines, true);
+        List<Hunk> serverHunks = diff(baseLines, serverLines, false);
+        if (localHunks == null || serverHunks == null) {
+            return null;
+        }
+
+        List<Hunk> hunks = new ArrayList<>(localHunks.size() + serverHunks.size());
+        hunks.addAll(localHunks);
+        hunks.addAll(serverHunks);
+        Collections.sort(hunks, (h1, h2) -> (h1.start != h2.start)
+                ? (h1.start < h2.start ? -1 : 1)
+                : (h1.end < h2.end ? -1 : (h1.end == h2.end ? 0 : 1)));
+
+        StringBuilder mergedWithLocal = new StringBuilder();
+        StringBuilder mergedWithServer = new StringBuilder();
+        int numConflicts = 0;
+        int pos = 0;
+        int i = 0;
+        while (i < hunks.size()) {
+            // group all the hunks that overlap each other, transitively
+            int groupStart = hunks.get(i).start, groupEnd = hunks.get(i).end;
+            int groupEndIndex = i + 1;
+            while (groupEndIndex < hunks.size()
+                    && hunks.get(groupEndIndex).overlaps(groupStart, groupEnd)) {
+                groupEnd = Math.max(groupEnd, hunks.get(groupEndIndex).end);
+                ++groupEndIndex;
+            }
+            List<Hunk> group = hunks.subList(i, groupEndIndex);
+
+            appendLines(mergedWithLocal, baseLines, pos, groupStart);
+            appendLines(mergedWithServer, baseLines, pos, groupStart);
+            String localVersion = applyHunks(baseLines, localLines, group, true, groupStart, groupEnd);
+            String serverVersion = applyHunks(baseLines, serverLines, group, false, groupStart, groupEnd);
+            boolean isChangedLocally = false, isChangedOnServer = false;
+            for (Hunk hunk : group) {
+                isChangedLocally |= hunk.isLocal;
+                isChangedOnServer |= !hunk.isLocal;
+            }
+            if (isChangedLocally && isChangedOnServer && !localVersion.equals(serverVersion)) {
+                ++numConflicts;
+                mergedWithLocal.append(localVersion);
+                mergedWithServer.append(serverVersion);
+            } else {
+                String version = isChangedLocally ? localVersion : serverVersion;
+                mergedWithLocal.append(version);
+                mergedWithServer.append(version);
+            }
+            pos = groupEnd;
+            i = groupEndIndex;
+        }
+        appendLines(mergedWithLocal, baseLines, pos, baseLines.size());
+        appendLines(mergedWithServer, baseLines, pos, baseLines.size());
+        return new Result(mergedWithLocal.toString(), mergedWithServer.toString(), numConflicts);
+    }
+
+    // lines keep their terminators, so that joining them gives back the exact text
+    @NonNull
+    private static List<String> splitLines(@NonNull String text) {
+        List<String> lines = new ArrayList<>();
+        int start = 0;
+        while (start < text.length()) {
+            int newline = text.indexOf('\n', start);
+            int end = (newline == -1) ? text.length() : newline + 1;
+            lines.add(text.substring(start, end));
+            start = end;
+        }
+        return lines;
+    }
+
+    private static void appendLines(@NonNull StringBuilder sb, @NonNull List<String> lines,
+                                    int start, int end) {
+        for (int i = start; i < end; ++i) {
+            sb.append(lines.get(i));
+        }
+    }
+
+    // the given range of the base, with one side's hunks in it applied
+    @NonNull
+    private static String applyHunks(@NonNull List<String> baseLines,
+                                     @NonNull List<String> otherLines, @NonNull List<Hunk> hunks,
+                                     boolean isLocal, int start, int end) {
+        StringBuilder sb = new StringBuilder();
+        int pos = start;
+        for (Hunk hunk : hunks) {
+            if (hunk.isLocal != isLocal) {
+                continue;
+            }
+            appendLines(sb, baseLines, pos, hunk.start);
+            appendLines(sb, otherLines, hunk.otherStart, hunk.otherEnd);
+            pos = hunk.end;
+        }
+        appendLines(sb, baseLines, pos, end);
+        return sb.toString();
+    }
+
+    /**
+     * Myers' diff algorithm, see "An O(ND) Difference Algorithm and Its Variations".
+     * @return the hunks that turn {@code a} into {@code b}, in order, or null if that takes more
+     * than {@link #MAX_EDITS} line insertions and deletions
+     */
+    @Nullable
+    private static List<Hunk> diff(@NonNull List<String> a, @NonNull List<String> b,
+                                   boolean isLocal) {
+        // skip the common prefix and suffix, usually the bulk of the text
+        int prefix = 0;
+        while (prefix < a.size() && prefix < b.size() && a.get(prefix).equals(b.get(prefix))) {
+            ++prefix;
+        }
+        int suffix = 0;
+        while (suffix < a.size() - prefix && suffix < b.size() - prefix
+                && a.get(a.size() - 1 - suffix).equals(b.get(b.size() - 1 - suffix))) {
+            ++suffix;
+        }
+        int n = a.size() - prefix - suffix, m = b.size() - prefix - suffix;
+
+        // v[k + offset] = furthest x reached on diagonal k = x - y; the part of v that can be
+        // reached in d edits, [-d, d], is saved before each round, to backtrack later
+        int offset = n + m + 1;
+        int[] v = new int[2 * offset + 1];
+        List<int[]> trace = new ArrayList<>();
+        int numEdits = -1;
+        for (int d = 0; d <= Math.min(n + m, MAX_EDITS) && numEdits == -1; ++d) {
+            int[] saved = new int[2 * d + 1];
+            System.arraycopy(v, offset - d, saved, 0, 2 * d + 1);
+            trace.add(saved);
+            for (int k = -d; k <= d; k += 2) {
+                int x = (k == -d || (k != d && v[offset + k - 1] < v[offset + k + 1]))
+                        ? v[offset + k + 1]         // move down, i.e., insert from b
+                        : v[offset + k - 1] + 1;    // move right, i.e., delete from a
+                int y = x - k;
+                while (x < n && y < m && a.get(prefix + x).equals(b.get(prefix + y))) {
+                    ++x;
+                    ++y;
+                }
+                v[offset + k] = x;
+                if (x >= n && y >= m) {
+                    numEdits = d;
+                    break;
+                }
+            }
+        }
+        if (numEdits == -1) {
+            return null;
+        }
+
+        // backtrack to find the matching lines, from the end
+        List<int[]> matches = new ArrayList<>();
+        int x = n, y = m;
+        for (int d = numEdits; d > 0; --d) {
+            int[] saved = trace.get(d);     // v as it was before round d, for k in [-d, d]
+            int k = x - y;
+            int prevK = (k == -d || (k != d && saved[k - 1 + d] < saved[k + 1 + d])) ? k + 1 : k - 1;
+            int prevX = saved[prevK + d];
+            int prevY = prevX - prevK;
+            while (x > prevX && y > prevY) {
+                matches.add(new int[] { --x, --y });
+            }
+            x = prevX;
+            y = prevY;
+        }
+        while (x > 0 && y > 0) {
+            matches.add(new int[] { --x, --y });
+        }
+        Collections.reverse(matches);
+
+        // the gaps between matching lines are the hunks
+        List<Hunk> hunks = new ArrayList<>();
+        int prevA = 0, prevB = 0;
+        matches.add(new int[] { n, m });    // sentinel
+        for (int[] match : matches) {
+            if (match[0] > prevA || match[1] > prevB) {
+                hunks.add(new Hunk(prefix + prevA, prefix + match[0], prefix + prevB,
+                        prefix + match[1], isLocal));
+            }
+            prevA = match[0] + 1;
+            prevB = match[1] + 1;
+        }
+        return hunks;
+    }
+
+}
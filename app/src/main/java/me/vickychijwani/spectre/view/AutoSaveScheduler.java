@@ -0,0 +1,133 @@
+package me.vickychijwani.spectre.view;
+
+import android.support.annotation.NonNull;
+
+import me.vickychijwani.spectre.model.entity.Post;
+
+/**
+ * Decides when the post editor saves edits automatically, while the user is still editing.
+ *
+ * Edits are coalesced: the post is saved locally once no edits have been made for a quiet
+ * window, or once the oldest unsaved edit is older than a max delay, whichever comes first (so a
+ * long, uninterrupted typing session is still saved regularly). The fields edited since the last
+ * save are tracked as {@link Post.Field} flags, so only those have to be read from the UI and
+ * written to the database.
+ *
+ * Network syncs are rate-limited independently of local saves: every save makes a sync due, but
+ * syncs happen at most once per min sync interval, picking up all the saves made in between.
+ *
+ * NOTE: this class is not thread-safe, all methods must be called on the thread the
+ * {@link Timer} runs tasks on (the main thread in the app).
+ */
+public class AutoSaveScheduler {
+
+    public interface Callbacks {
+        /**
+         * @return true if the post was saved, false if it can't be saved right now, in which case
+         * the fields are saved along with the next edit
+         */
+        boolean save(@Post.Field int changedFields);
+
+        /**
+         * @return true if a sync was started, false if it can't be started right now, in which
+         * case it stays due until the next save (or until {@link #cancel()} is called)
+         */
+        boolean sync();
+    }
+
+    public interface Timer {
+        /**
+         * @return current time in milliseconds, from a monotonic clock
+         */
+        long now();
+        void schedule(@NonNull Runnable runnable, long delayMillis);
+        void cancel(@NonNull Runnable runnable);
+    }
+
+    private final long mQuietWindow;
+    private final long mMaxSaveDelay;
+    private final long mMinSyncInterval;
+    private final Timer mTimer;
+    private final Callbacks mCallbacks;
+
+    private final Runnable mSaveRunnable = this::save;
+    private final Runnable mSyncRunnable = this::sync;
+
+    @Post.Field private int mDirtyFields = 0;
+    private long mFirstEditTime = 0;        // time of the oldest unsaved edit
+    private boolean mSyncDue = false;       // saved locally, but not synced yet
+    private long mNextSyncTime = 0;         // earliest time at which the next sync may start
+
+    /**
+     * @param quietWindow       save after this long without edits (milliseconds)
+     * @param maxSaveDelay      save at most this long after the oldest unsaved edit (milliseconds)
+     * @param minSyncInterval   minimum time between the start of two syncs (milliseconds)
+     */
+    public AutoSaveScheduler(long quietWindow, long maxSaveDelay, long minSyncInterval,
+                             @NonNull Timer timer, @NonNull Callbacks callbacks) {
+        mQuietWindow = quietWindow;
+        mMaxSaveDelay = maxSaveDelay;
+        mMinSyncInterval = minSyncInterval;
+        mTimer = timer;
+        mCallbacks = callbacks;
+    }
+
+    public void onFieldsChanged(@Post.Field int fields) {
+        if (fields == 0) {
+            return;
+        }
+        long now = mTimer.now();
+        if (mDirtyFields == 0) {
+            mFirstEditTime = now;
+        }
+        mDirtyFields |= fields;
+        long delay = Math.min(mQuietWindow, mFirstEditTime + mMaxSaveDelay - now);
+        mTimer.cancel(mSaveRunnable);
+        mTimer.schedule(mSaveRunnable, Math.max(delay, 0));
+    }
+
+    @Post.Field
+    public int getDirtyFields() {
+        return mDirtyFields;
+    }
+
+    /**
+     * Drops all pending saves and syncs, e.g., because the whole post is about to be saved (and
+     * synced) explicitly.
+     * @return true if a sync was still due for changes saved earlier
+     */
+    public boolean cancel() {
+        mTimer.cancel(mSaveRunnable);
+        mTimer.cancel(mSyncRunnable);
+        mDirtyFields = 0;
+        boolean syncDue = mSyncDue;
+        mSyncDue = false;
+        return syncDue;
+    }
+
+    private void save() {
+        int fields = mDirtyFields;
+        if (fields == 0) {
+            return;
+        }
+        mDirtyFields = 0;
+        if (! mCallbacks.save(fields)) {
+            // keep the fields dirty, but don't retry until the next edit
+            mDirtyFields = fields;
+            mFirstEditTime = mTimer.now();
+            return;
+        }
+        mSyncDue = true;
+        mTimer.cancel(mSyncRunnable);
+        mTimer.schedule(mSyncRunnable, Math.max(mNextSyncTime - mTimer.now(), 0));
+    }
+
+    private void sync() {
+        if (! mSyncDue || ! mCallbacks.sync()) {
+            return;
+        }
+        mSyncDue = false;
+        mNextSyncTime = mTimer.now() + mMinSyncInterval;
+    }
+
+}
@@ -1,17 +1,26 @@
 package me.vickychijwani.spectre.view;
 
 import android.content.ContentResolver;
+import android.content.Context;
 import android.net.Uri;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.v7.app.AlertDialog;
+import android.webkit.MimeTypeMap;
 
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 
 import io.reactivex.Observable;
 import io.reactivex.ObservableEmitter;
+import me.vickychijwani.spectre.model.ImageUploadQueue;
+import me.vickychijwani.spectre.pref.UserPrefs;
 import me.vickychijwani.spectre.util.AppUtils;
+import me.vickychijwani.spectre.util.ImageUtils;
 import me.vickychijwani.spectre.util.log.Log;
 
 public class Observables {
@@ -34,30 +43,34 @@ public class Observables {
     }
 
     public static final class FileUploadMetadata {
-        public final InputStream inputStream;
+        @NonNull public final Uri uri;
         @Nullable public final String filename;
         public final String mimeType;
-        public FileUploadMetadata(InputStream inputStream, @Nullable String filename,
-                                  String mimeType) {
-            this.inputStream = inputStream;
+        public final long size;     // -1 if unknown
+        public FileUploadMetadata(@NonNull Uri uri, @Nullable String filename, String mimeType,
+                                  long size) {
+            this.uri = uri;
             this.filename = filename;
             this.mimeType = mimeType;
+            this.size = size;
         }
     }
 
+    // the file itself isn't read here, it's streamed from the uri when uploading
     public static Observable<FileUploadMetadata> getFileUploadMetadataFromUri(
             @NonNull ContentResolver contentResolver,
             @NonNull Uri fileUri) {
         return Observable.create(emitter -> {
             try {
                 Log.d(TAG, "Attempting to read uri: %s", fileUri.toString());
-                InputStream inputStream = contentResolver.openInputStream(fileUri);
                 String filename = AppUtils.getFileNameFromUri(contentResolver, fileUri);
                 String mimeType = contentResolver.getType(fileUri);
-                emitter.onNext(new FileUploadMetadata(inputStream, filename, mimeType));
-            } catch (IOException e) {
+                long size = AppUtils.getFileSizeFromUri(contentResolver, fileUri);
+                emitter.onNext(new FileUploadMetadata(fileUri, filename, mimeType, size));
+            } catch (RuntimeException e) {
+                // e.g., SecurityException if the uri is no longer accessible
                 emitter.onError(e);
-                Log.exception(new Exception("Failed to open input stream for uri, " +
+                Log.exception(new Exception("Failed to query metadata for uri, " +
                         "see previous exception", e));
             } finally {
                 emitter.onComplete();
@@ -65,4 +78,81 @@ public class Observables {
         });
     }
 
+    /**
+     * Replaces the image to upload with a downscaled copy, if that's smaller (see
+     * {@link ImageUtils}). Must NOT be called on the main thread.
+     */
+    @NonNull
+    public static FileUploadMetadata downscaleImageForUpload(@NonNull Context context,
+                                                             @NonNull FileUploadMetadata metadata) {
+        UserPrefs prefs = UserPrefs.getInstance(context);
+        try {
+            File file = ImageUtils.downscaleForUpload(context.getContentResolver(), metadata.uri,
+                    metadata.mimeType, metadata.size, getDownscaleDir(context),
+                    prefs.getInteger(UserPrefs.Key.IMAGE_UPLOAD_MAX_WIDTH),
+                    prefs.getInteger(UserPrefs.Key.IMAGE_UPLOAD_JPEG_QUALITY));
+            if (file != null) {
+                return new FileUploadMetadata(Uri.fromFile(file), metadata.filename,
+                        metadata.mimeType, file.length());
+            }
+        } catch (IOException | RuntimeException | OutOfMemoryError e) {
+            // not fatal, the original is uploaded instead
+            Log.exception(new Exception("Failed to downscale image, uploading the original", e));
+        }
+        return metadata;
+    }
+
+    /**
+     * Copies the image to upload into the app's files dir (or moves it there, if it's a downscaled
+     * copy already), so it's still around when the upload queue gets to it, even after the app is
+     * restarted (see {@link ImageUploadQueue}). Must NOT be called on the main thread.
+     */
+    @NonNull
+    public static FileUploadMetadata stageImageForUpload(@NonNull Context context,
+                                                         @NonNull FileUploadMetadata metadata,
+                                                         @NonNull String uploadId)
+            throws IOException {
+        File dir = ImageUploadQueue.getFilesDir(context);
+        if (! dir.isDirectory() && ! dir.mkdirs()) {
+            throw new IOException("Failed to create directory: " + dir);
+        }
+        String ext = MimeTypeMap.getSingleton().getExtensionFromMimeType(metadata.mimeType);
+        File file = new File(dir, (ext == null) ? uploadId : uploadId + "." + ext);
+        // only a downscaled copy is moved, never the user's own file
+        boolean isDownscaledCopy = ContentResolver.SCHEME_FILE.equals(metadata.uri.getScheme())
+                && getDownscaleDir(context).equals(new File(metadata.uri.getPath()).getParentFile());
+        if (! isDownscaledCopy || ! new File(metadata.uri.getPath()).renameTo(file)) {
+            copy(context.getContentResolver(), metadata.uri, file);
+        }
+        return new FileUploadMetadata(Uri.fromFile(file), metadata.filename, metadata.mimeType,
+                file.length());
+    }
+
+    @NonNull
+    private static File getDownscaleDir(@NonNull Context context) {
+        return new File(context.getCacheDir(), "uploads");
+    }
+
+    private static void copy(@NonNull ContentResolver contentResolver, @NonNull Uri uri,
+                             @NonNull File file) throws IOException {
+        InputStream inputStream = contentResolver.openInputStream(uri);
+        if (inputStream == null) {
+            throw new FileNotFoundException("Failed to open input stream for uri: " + uri);
+        }
+        OutputStream outputStream = null;
+        try {
+            outputStream = new FileOutputStream(file);
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, read);
+            }
+        } finally {
+            inputStream.close();
+            if (outputStream != null) {
+                outputStream.close();
+            }
+        }
+    }
+
 }
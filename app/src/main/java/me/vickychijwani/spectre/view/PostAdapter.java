@@ -8,12 +8,12 @@ import android.os.Handler;
 import android.os.Looper;
 import android.support.annotation.ColorInt;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.support.v4.view.ViewCompat;
 import android.support.v4.view.ViewPropertyAnimatorListener;
+import android.support.v7.util.DiffUtil;
 import android.support.v7.widget.RecyclerView;
-import android.support.v7.widget.StaggeredGridLayoutManager;
 import android.text.TextUtils;
-import android.text.method.LinkMovementMethod;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -23,32 +23,33 @@ import android.widget.TextView;
 
 import com.squareup.picasso.Picasso;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 import butterknife.BindView;
 import butterknife.ButterKnife;
+import io.reactivex.Single;
+import io.reactivex.android.schedulers.AndroidSchedulers;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.schedulers.Schedulers;
 import me.vickychijwani.spectre.R;
-import me.vickychijwani.spectre.model.entity.Post;
-import me.vickychijwani.spectre.model.entity.Tag;
 import me.vickychijwani.spectre.util.DeviceUtils;
-import me.vickychijwani.spectre.util.NetworkUtils;
-import me.vickychijwani.spectre.util.PostUtils;
+import me.vickychijwani.spectre.util.log.Log;
+import me.vickychijwani.spectre.view.PostListDiffCallback.Change;
+import me.vickychijwani.spectre.view.image.ThumbnailRequestHandler;
 
 import static me.vickychijwani.spectre.util.NetworkUtils.makePicassoUrl;
 
 class PostAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
 
-    private static final int TYPE_POST = 1;
-    private static final int TYPE_FOOTER = 2;
-
     private final LayoutInflater mLayoutInflater;
-    private final List<Post> mPosts;
-    private final Context mContext;
+    private List<PostListItem> mItems = new ArrayList<>();
+    @Nullable private Disposable mPendingDiff = null;
     private final String mBlogUrl;
     private final Picasso mPicasso;
     private final View.OnClickListener mItemClickListener;
     private final Paint mLowAlphaPaint;
-    private CharSequence mFooterText;
 
     // animation stuff
     private static final DecelerateInterpolator ANIM_INTERPOLATOR = new DecelerateInterpolator();
@@ -57,13 +58,11 @@ class PostAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
     private final Handler mHandler = new Handler(Looper.getMainLooper());
     private int mAnimationDelay = 0; // for staggering
 
-    public PostAdapter(Context context, List<Post> posts, String blogUrl, Picasso picasso,
+    public PostAdapter(Context context, String blogUrl, Picasso picasso,
                        View.OnClickListener itemClickListener) {
-        mContext = context;
         mBlogUrl = blogUrl;
         mPicasso = picasso;
         mLayoutInflater = (LayoutInflater) context.getSystemService(Context.LAYOUT_INFLATER_SERVICE);
-        mPosts = posts;
         mItemClickListener = itemClickListener;
 
         mLowAlphaPaint = new Paint();
@@ -77,114 +76,136 @@ class PostAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
         setHasStableIds(true);
     }
 
-    @Override
-    public int getItemCount() {
-        int count = mPosts.size();
-        if (mFooterText != null) {
-            ++count; // +1 for footer
-        }
-        return count;
+    /**
+     * Diffs the given items against the displayed ones on a background thread, then applies only
+     * the changes (insertions, removals, moves and partial re-binds) to the list. If this is called
+     * again before the diff is done, the older diff is discarded.
+     */
+    public void setItems(@NonNull List<PostListItem> items) {
+        cancelPendingDiff();
+        final List<PostListItem> oldItems = mItems;
+        mPendingDiff = Single.fromCallable(() -> DiffUtil.calculateDiff(
+                        new PostListDiffCallback(oldItems, items), true))
+                .subscribeOn(Schedulers.computation())
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(diffResult -> {
+                    mPendingDiff = null;
+                    mItems = items;
+                    diffResult.dispatchUpdatesTo(this);
+                }, e -> {
+                    mPendingDiff = null;
+                    Log.exception(e);
+                    mItems = items;
+                    notifyDataSetChanged();
+                });
     }
 
-    public Object getItem(int position) {
-        if (position < mPosts.size()) {
-            return mPosts.get(position);
-        } else {
-            return mFooterText;
+    private void cancelPendingDiff() {
+        if (mPendingDiff != null) {
+            mPendingDiff.dispose();
+            mPendingDiff = null;
         }
     }
 
     @Override
-    public long getItemId(int position) {
-        if (getItemViewType(position) == TYPE_POST) {
-            return ((Post) getItem(position)).getId().hashCode();
-        } else {
-            return -9999;   // footer
-        }
+    public int getItemCount() {
+        return mItems.size();
+    }
+
+    public PostListItem getItem(int position) {
+        return mItems.get(position);
     }
 
     @Override
-    public int getItemViewType(int position) {
-        if (position < mPosts.size()) {
-            return TYPE_POST;
-        } else {
-            return TYPE_FOOTER;
-        }
+    public long getItemId(int position) {
+        return getItem(position).id.hashCode();
     }
 
     @Override
     public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
-        if (viewType == TYPE_POST) {
-            View view = mLayoutInflater.inflate(R.layout.post_list_item, parent, false);
-            return new PostViewHolder(view, mItemClickListener);
-        } else if (viewType == TYPE_FOOTER) {
-            View view = mLayoutInflater.inflate(R.layout.post_list_footer, parent, false);
-
-            // make sure the footer spans the entire grid
-            StaggeredGridLayoutManager.LayoutParams lp = (StaggeredGridLayoutManager.LayoutParams) view.getLayoutParams();
-            if (lp == null) {
-                lp = new StaggeredGridLayoutManager.LayoutParams(
-                        ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT);
-            }
-            lp.setFullSpan(true);
-            view.setLayoutParams(lp);
-
-            return new FooterViewHolder(view);
-        }
-        throw new IllegalArgumentException("Invalid view type: " + viewType);
+        View view = mLayoutInflater.inflate(R.layout.post_list_item, parent, false);
+        return new PostViewHolder(view, mItemClickListener);
     }
 
     @Override
     public void onBindViewHolder(RecyclerView.ViewHolder viewHolder, int position) {
         if (viewHolder instanceof PostViewHolder) {
             PostViewHolder postVH = (PostViewHolder) viewHolder;
-            Post post = (Post) getItem(position);
-            bindPost(postVH, post);
-        } else if (viewHolder instanceof FooterViewHolder) {
-            FooterViewHolder footerVH = (FooterViewHolder) viewHolder;
-            CharSequence footerText = (CharSequence) getItem(position);
-            bindFooter(footerVH, footerText);
+            PostListItem item = getItem(position);
+            bindTitle(postVH, item);
+            bindImage(postVH, item);
+            bindStatus(postVH, item);
+            bindTags(postVH, item);
+            bindDeletionState(postVH, item);
         } else {
             throw new IllegalArgumentException("Invalid ViewHolder type: " +
                     viewHolder.getClass().getSimpleName());
         }
     }
 
-    private void bindPost(PostViewHolder viewHolder, Post post) {
-        viewHolder.title.setText(post.getTitle());
-        if (! TextUtils.isEmpty(post.getFeatureImage())) {
-            String imageUrl = makePicassoUrl(mBlogUrl, post.getFeatureImage());
+    @Override
+    public void onBindViewHolder(RecyclerView.ViewHolder viewHolder, int position,
+                                 List<Object> payloads) {
+        if (payloads.isEmpty() || ! (viewHolder instanceof PostViewHolder)) {
+            onBindViewHolder(viewHolder, position);
+            return;
+        }
+        // partial re-bind, payloads come from PostListDiffCallback#getChangePayload
+        PostViewHolder postVH = (PostViewHolder) viewHolder;
+        PostListItem item = getItem(position);
+        for (Object payload : payloads) {
+            //noinspection unchecked
+            Set<Change> changes = (Set<Change>) payload;
+            if (changes.contains(Change.TITLE)) bindTitle(postVH, item);
+            if (changes.contains(Change.IMAGE)) bindImage(postVH, item);
+            if (changes.contains(Change.STATUS)) bindStatus(postVH, item);
+            if (changes.contains(Change.TAGS)) bindTags(postVH, item);
+            if (changes.contains(Change.DELETION)) bindDeletionState(postVH, item);
+        }
+    }
+
+    private void bindTitle(PostViewHolder viewHolder, PostListItem item) {
+        viewHolder.title.setText(item.title);
+    }
+
+    private void bindImage(PostViewHolder viewHolder, PostListItem item) {
+        if (! TextUtils.isEmpty(item.featureImage)) {
+            String imageUrl = makePicassoUrl(mBlogUrl, item.featureImage);
             viewHolder.image.setVisibility(View.VISIBLE);
-            mPicasso.load(imageUrl)
+            // a small thumbnail, not the full-size image
+            mPicasso.load(ThumbnailRequestHandler.getUri(imageUrl))
                     .fit().centerCrop()
                     .into(viewHolder.image);
         } else {
+            viewHolder.cleanup();
             viewHolder.image.setVisibility(View.GONE);
             viewHolder.image.setImageResource(android.R.color.transparent);
         }
-        @ColorInt int postStatusColor = PostUtils.getStatusColor(post, mContext);
-        viewHolder.statusIcon.setImageResource(PostUtils.getStatusIconResId(post));
+    }
+
+    private void bindStatus(PostViewHolder viewHolder, PostListItem item) {
+        @ColorInt int postStatusColor = item.statusColor;
+        viewHolder.statusIcon.setImageResource(item.statusIconResId);
         viewHolder.statusIcon.setColorFilter(postStatusColor, PorterDuff.Mode.SRC_IN);
-        viewHolder.statusText.setText(PostUtils.getStatusString(post, mContext));
+        viewHolder.statusText.setText(item.statusText);
         viewHolder.statusText.setTextColor(postStatusColor);
-        List<Tag> tags = post.getTags();
-        if (tags.size() > 0) {
-            String tagsStr = "#" + tags.get(0).getName();
-            if (tags.size() > 1) {
-                tagsStr += " +" + (tags.size()-1);
-            }
-            viewHolder.tags.setText(tagsStr);
+    }
+
+    private void bindTags(PostViewHolder viewHolder, PostListItem item) {
+        if (item.tagsText != null) {
+            viewHolder.tags.setText(item.tagsText);
             viewHolder.tags.setVisibility(View.VISIBLE);
         } else {
             viewHolder.tags.setVisibility(View.GONE);
         }
+    }
 
+    private void bindDeletionState(PostViewHolder viewHolder, PostListItem item) {
         // grey out to-be-deleted posts, by making all the child Views of the item translucent
         ViewGroup viewGroup = (ViewGroup) viewHolder.itemView;
-        boolean isMarkedForDeletion = post.isMarkedForDeletion();
         for (int i = 0, len = viewGroup.getChildCount(); i < len; ++i) {
             View childView = viewGroup.getChildAt(i);
-            if (isMarkedForDeletion) {
+            if (item.markedForDeletion) {
                 childView.setLayerType(View.LAYER_TYPE_HARDWARE, mLowAlphaPaint);
             } else {
                 childView.setLayerType(View.LAYER_TYPE_NONE, null);
@@ -198,6 +219,11 @@ class PostAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
         mHandler.postDelayed(() -> mAnimateOnAttach = false, 1000);
     }
 
+    @Override
+    public void onDetachedFromRecyclerView(RecyclerView recyclerView) {
+        cancelPendingDiff();
+    }
+
     @Override
     public void onViewAttachedToWindow(RecyclerView.ViewHolder viewHolder) {
         if (! (viewHolder instanceof PostViewHolder)) {
@@ -249,19 +275,6 @@ class PostAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
         }
     }
 
-    private void bindFooter(FooterViewHolder viewHolder, CharSequence footerText) {
-        viewHolder.textView.setText(footerText);
-        viewHolder.textView.setMovementMethod(LinkMovementMethod.getInstance());
-    }
-
-    public void showFooter(CharSequence footerText) {
-        mFooterText = footerText;
-    }
-
-    public void hideFooter() {
-        mFooterText = null;
-    }
-
 
     static class PostViewHolder extends RecyclerView.ViewHolder {
         @BindView(R.id.post_title)          TextView title;
@@ -283,14 +296,4 @@ class PostAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
         }
     }
 
-
-    static class FooterViewHolder extends RecyclerView.ViewHolder {
-        @BindView(R.id.post_limit_exceeded) TextView textView;
-
-        public FooterViewHolder(View view) {
-            super(view);
-            ButterKnife.bind(this, view);
-        }
-    }
-
 }
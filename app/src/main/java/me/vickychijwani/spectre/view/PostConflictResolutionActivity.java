@@ -100,7 +100,8 @@ public class PostConflictResolutionActivity extends BaseActivity implements View
         String postStatusLine = getString(R.string.conflict_post_preview_status, postStatus.toUpperCase());
         mPostPreviewStatusView.setText(Html.fromHtml(postStatusLine));
         mPostPreviewTitleView.setText(post.getTitle());
-        mPostPreviewMarkdownView.setText(post.getMarkdown());
+        mPostPreviewMarkdownView.setText(post.isEditorCompatible()
+                ? post.getMarkdown() : getString(R.string.koenig_post_error));
     }
 
     private void resolveConflict(@NonNull Post acceptedPost) {
@@ -7,6 +7,7 @@ import android.animation.ArgbEvaluator;
 import android.animation.ObjectAnimator;
 import android.animation.ValueAnimator;
 import android.app.ActivityOptions;
+import android.content.Context;
 import android.content.Intent;
 import android.graphics.drawable.Drawable;
 import android.os.Bundle;
@@ -23,7 +24,6 @@ import android.support.v7.widget.DefaultItemAnimator;
 import android.support.v7.widget.RecyclerView;
 import android.support.v7.widget.StaggeredGridLayoutManager;
 import android.support.v7.widget.Toolbar;
-import android.text.Html;
 import android.util.TypedValue;
 import android.view.Menu;
 import android.view.MenuItem;
@@ -44,6 +44,12 @@ import java.util.List;
 import butterknife.BindDimen;
 import butterknife.BindView;
 import butterknife.OnClick;
+import io.reactivex.Single;
+import io.reactivex.android.schedulers.AndroidSchedulers;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.schedulers.Schedulers;
+import io.realm.Realm;
+import io.realm.RealmConfiguration;
 import me.vickychijwani.spectre.BuildConfig;
 import me.vickychijwani.spectre.R;
 import me.vickychijwani.spectre.SpectreApplication;
@@ -62,8 +68,8 @@ import me.vickychijwani.spectre.event.RefreshDataEvent;
 import me.vickychijwani.spectre.event.UserLoadedEvent;
 import me.vickychijwani.spectre.model.entity.Post;
 import me.vickychijwani.spectre.model.entity.Setting;
-import me.vickychijwani.spectre.network.GhostApiUtils;
 import me.vickychijwani.spectre.util.DeviceUtils;
+import me.vickychijwani.spectre.util.PostUtils;
 import me.vickychijwani.spectre.util.log.Log;
 import me.vickychijwani.spectre.view.image.BorderedCircleTransformation;
 import me.vickychijwani.spectre.view.widget.SpaceItemDecoration;
@@ -77,8 +83,9 @@ public class PostListActivity extends BaseActivity {
     private static final String TAG = "PostListActivity";
     private static final int REQUEST_CODE_VIEW_POST = 1;
 
-    private final List<Post> mPosts = new ArrayList<>();
+    private RealmConfiguration mDataRealmConfig;
     private PostAdapter mPostAdapter;
+    @Nullable private Disposable mPendingItems = null;
 
     private final Handler mHandler = new Handler(Looper.getMainLooper());
     private Runnable mRefreshDataRunnable;
@@ -120,6 +127,7 @@ public class PostListActivity extends BaseActivity {
             // password has changed or Ghost Auth code is expired?
             credentialsExpired();
         }
+        mDataRealmConfig = AccountManager.getActiveBlog().getDataRealmConfig();
 
         setLayout(R.layout.activity_post_list);
         setSupportActionBar(mToolbar);
@@ -140,11 +148,13 @@ public class PostListActivity extends BaseActivity {
 
         // initialize post list UI
         final String activeBlogUrl = AccountManager.getActiveBlogUrl();
-        mPostAdapter = new PostAdapter(this, mPosts, activeBlogUrl, getPicasso(), v -> {
+        mPostAdapter = new PostAdapter(this, activeBlogUrl, getPicasso(), v -> {
             int pos = mPostList.getChildLayoutPosition(v);
             if (pos == RecyclerView.NO_POSITION) return;
-            Post post = (Post) mPostAdapter.getItem(pos);
-            if (! GhostApiUtils.INSTANCE.hasOnlyMarkdownCard(post.getMobiledoc())) {
+            Post post = findPostById(mPostAdapter.getItem(pos).id);
+            if (post == null) return;
+            // if the content isn't loaded yet, PostViewActivity checks this after loading it
+            if (post.isContentLoaded() && ! post.isEditorCompatible()) {
                 Snackbar.make(mPostList, R.string.koenig_post_error,
                         Snackbar.LENGTH_SHORT).show();
                 return;
@@ -232,6 +242,10 @@ public class PostListActivity extends BaseActivity {
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        if (mPendingItems != null) {
+            mPendingItems.dispose();
+            mPendingItems = null;
+        }
         if (mPostList != null) {
             // cancel any ongoing image requests, courtesy http://stackoverflow.com/a/33961706/504611
             // not doing this in onPause or onStop because there we wouldn't want to clear the list itself
@@ -339,22 +353,56 @@ public class PostListActivity extends BaseActivity {
 
     @Subscribe
     public void onPostsLoadedEvent(PostsLoadedEvent event) {
-        // this exists to let animation run to completion because posts are loaded
-        // twice on launch: once cached data, and once from the network
-        if (mPosts.equals(event.posts)) {
-            return;
+        // the displayed fields are snapshotted from the database on a background thread; only the
+        // latest snapshot is shown, and PostAdapter then diffs it against the displayed one
+        if (mPendingItems != null) {
+            mPendingItems.dispose();
         }
-        mPosts.clear();
-        mPosts.addAll(event.posts);
-        if (mPosts.size() >= event.postsFetchLimit) {
-            CharSequence message = Html.fromHtml(getString(R.string.post_limit_exceeded,
-                    getString(R.string.app_name), event.postsFetchLimit,
-                    "https://github.com/TryGhost/Ghost-Android/issues/15"));
-            mPostAdapter.showFooter(message);
-        } else {
-            mPostAdapter.hideFooter();
+        final RealmConfiguration config = mDataRealmConfig;
+        final Context appContext = getApplicationContext();
+        mPendingItems = Single.fromCallable(() -> loadPostListItems(config, appContext))
+                .subscribeOn(Schedulers.io())
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(items -> {
+                    mPendingItems = null;
+                    mPostAdapter.setItems(items);
+                }, e -> {
+                    mPendingItems = null;
+                    Log.exception(e);
+                });
+    }
+
+    private static List<PostListItem> loadPostListItems(RealmConfiguration config,
+                                                        Context context) {
+        Realm realm = Realm.getInstance(config);
+        try {
+            // sorted by the database using the persisted (and indexed) sort keys
+            List<Post> posts = realm.where(Post.class).findAllSorted(
+                    PostUtils.SORT_FIELDS_MAIN_LIST, PostUtils.SORT_ORDERS_MAIN_LIST);
+            List<PostListItem> items = new ArrayList<>(posts.size());
+            for (Post post : posts) {
+                items.add(PostListItem.from(post, context));
+            }
+            return items;
+        } finally {
+            realm.close();
+        }
+    }
+
+    // returns an unmanaged copy, to pass it to another Activity
+    @Nullable
+    private Post findPostById(String id) {
+        // the blog's Realm is deleted on logout
+        if (! AccountManager.hasActiveBlog()) {
+            return null;
+        }
+        Realm realm = Realm.getInstance(mDataRealmConfig);
+        try {
+            Post post = realm.where(Post.class).equalTo("id", id).findFirst();
+            return (post != null) ? new Post(post) : null;
+        } finally {
+            realm.close();
         }
-        mPostAdapter.notifyDataSetChanged();
     }
 
     @OnClick(R.id.new_post_btn)
@@ -0,0 +1,71 @@
+package me.vickychijwani.spectre.view;
+
+import android.support.annotation.Nullable;
+import android.support.v7.util.DiffUtil;
+
+import java.util.EnumSet;
+import java.util.List;
+
+/**
+ * Diffs two snapshots of the post list. Items are matched by post id, and changed items get an
+ * {@link EnumSet} of {@link Change}s as payload so only the affected views are re-bound.
+ */
+final class PostListDiffCallback extends DiffUtil.Callback {
+
+    enum Change { TITLE, IMAGE, STATUS, TAGS, DELETION }
+
+    private final List<PostListItem> mOldItems;
+    private final List<PostListItem> mNewItems;
+
+    PostListDiffCallback(List<PostListItem> oldItems, List<PostListItem> newItems) {
+        mOldItems = oldItems;
+        mNewItems = newItems;
+    }
+
+    @Override
+    public int getOldListSize() {
+        return mOldItems.size();
+    }
+
+    @Override
+    public int getNewListSize() {
+        return mNewItems.size();
+    }
+
+    @Override
+    public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+        return mOldItems.get(oldItemPosition).id.equals(mNewItems.get(newItemPosition).id);
+    }
+
+    @Override
+    public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+        return mOldItems.get(oldItemPosition).hasSameContent(mNewItems.get(newItemPosition));
+    }
+
+    @Nullable
+    @Override
+    public Object getChangePayload(int oldItemPosition, int newItemPosition) {
+        return getChanges(mOldItems.get(oldItemPosition), mNewItems.get(newItemPosition));
+    }
+
+    static EnumSet<Change> getChanges(PostListItem oldItem, PostListItem newItem) {
+        EnumSet<Change> changes = EnumSet.noneOf(Change.class);
+        if (! PostListItem.equal(oldItem.title, newItem.title)) {
+            changes.add(Change.TITLE);
+        }
+        if (! PostListItem.equal(oldItem.featureImage, newItem.featureImage)) {
+            changes.add(Change.IMAGE);
+        }
+        if (! oldItem.hasSameStatus(newItem)) {
+            changes.add(Change.STATUS);
+        }
+        if (! PostListItem.equal(oldItem.tagsText, newItem.tagsText)) {
+            changes.add(Change.TAGS);
+        }
+        if (oldItem.markedForDeletion != newItem.markedForDeletion) {
+            changes.add(Change.DELETION);
+        }
+        return changes;
+    }
+
+}
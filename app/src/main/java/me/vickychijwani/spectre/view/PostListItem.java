@@ -0,0 +1,86 @@
+package me.vickychijwani.spectre.view;
+
+import android.content.Context;
+import android.support.annotation.ColorInt;
+import android.support.annotation.DrawableRes;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.List;
+
+import me.vickychijwani.spectre.model.entity.Post;
+import me.vickychijwani.spectre.model.entity.Tag;
+import me.vickychijwani.spectre.util.PostUtils;
+
+/**
+ * Immutable snapshot of what the post list displays for a single post. Unlike the (live, managed)
+ * {@link Post}, it can be handed to a background thread for diffing.
+ */
+final class PostListItem {
+
+    final String id;
+    final String title;
+    @Nullable final String featureImage;
+    final String statusText;
+    @ColorInt final int statusColor;
+    @DrawableRes final int statusIconResId;
+    @Nullable final String tagsText;
+    final boolean markedForDeletion;
+
+    private final int mContentHash;
+
+    PostListItem(String id, String title, @Nullable String featureImage, String statusText,
+                 @ColorInt int statusColor, @DrawableRes int statusIconResId,
+                 @Nullable String tagsText, boolean markedForDeletion) {
+        this.id = id;
+        this.title = title;
+        this.featureImage = featureImage;
+        this.statusText = statusText;
+        this.statusColor = statusColor;
+        this.statusIconResId = statusIconResId;
+        this.tagsText = tagsText;
+        this.markedForDeletion = markedForDeletion;
+        mContentHash = Arrays.hashCode(new Object[] { title, featureImage, statusText,
+                statusColor, statusIconResId, tagsText, markedForDeletion });
+    }
+
+    static PostListItem from(@NonNull Post post, @NonNull Context context) {
+        return new PostListItem(post.getId(), post.getTitle(), post.getFeatureImage(),
+                PostUtils.getStatusString(post, context), PostUtils.getStatusColor(post, context),
+                PostUtils.getStatusIconResId(post), getTagsText(post.getTags()),
+                post.isMarkedForDeletion());
+    }
+
+    @Nullable
+    private static String getTagsText(List<Tag> tags) {
+        if (tags.isEmpty()) {
+            return null;
+        }
+        String tagsStr = "#" + tags.get(0).getName();
+        if (tags.size() > 1) {
+            tagsStr += " +" + (tags.size()-1);
+        }
+        return tagsStr;
+    }
+
+    boolean hasSameStatus(PostListItem other) {
+        return statusText.equals(other.statusText) && statusColor == other.statusColor
+                && statusIconResId == other.statusIconResId;
+    }
+
+    // compares only the displayed content, i.e., everything except the id
+    boolean hasSameContent(PostListItem other) {
+        return mContentHash == other.mContentHash
+                && equal(title, other.title)
+                && equal(featureImage, other.featureImage)
+                && hasSameStatus(other)
+                && equal(tagsText, other.tagsText)
+                && markedForDeletion == other.markedForDeletion;
+    }
+
+    static boolean equal(@Nullable Object a, @Nullable Object b) {
+        return (a == null) ? (b == null) : a.equals(b);
+    }
+
+}
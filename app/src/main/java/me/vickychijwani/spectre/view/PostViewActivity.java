@@ -49,8 +49,11 @@ import io.realm.RealmList;
 import me.vickychijwani.spectre.R;
 import me.vickychijwani.spectre.account.AccountManager;
 import me.vickychijwani.spectre.event.DeletePostEvent;
+import me.vickychijwani.spectre.event.LoadPostContentEvent;
 import me.vickychijwani.spectre.event.LoadTagsEvent;
+import me.vickychijwani.spectre.event.PostContentLoadedEvent;
 import me.vickychijwani.spectre.event.PostDeletedEvent;
+import me.vickychijwani.spectre.event.PostMergedEvent;
 import me.vickychijwani.spectre.event.PostReplacedEvent;
 import me.vickychijwani.spectre.event.PostSavedEvent;
 import me.vickychijwani.spectre.event.PostSyncedEvent;
@@ -223,6 +226,10 @@ public class PostViewActivity extends BaseActivity implements
         if (mPostTagsEditText.getAdapter() == null || mPostTagsEditText.getAdapter().isEmpty()) {
             getBus().post(new LoadTagsEvent());
         }
+        if (! mPost.isContentLoaded()) {
+            // only the summary was fetched for the post list, load the content now
+            getBus().post(new LoadPostContentEvent(mPost.getId()));
+        }
     }
 
     @Override
@@ -387,6 +394,41 @@ public class PostViewActivity extends BaseActivity implements
         mPostTagsEditText.setAdapter(tagSuggestionsAdapter);
     }
 
+    @Subscribe
+    public void onPostContentLoadedEvent(PostContentLoadedEvent event) {
+        if (! event.post.getId().equals(mPost.getId()) || mPost.isContentLoaded()) {
+            return;
+        }
+        if (! event.post.isContentLoaded()) {
+            Toast.makeText(this, R.string.post_content_load_error, Toast.LENGTH_SHORT).show();
+            finish();
+        } else if (! event.post.isEditorCompatible()) {
+            // couldn't check this in the post list without the content
+            Toast.makeText(this, R.string.koenig_post_error, Toast.LENGTH_SHORT).show();
+            finish();
+        } else {
+            unsafeUpdatePost(event.post);
+        }
+    }
+
+    @Subscribe
+    public void onPostMergedEvent(PostMergedEvent event) {
+        if (! mPost.getId().equals(event.post.getId())) {
+            return;
+        }
+        // the user may have typed since the post was last saved, and those edits were not part of
+        // the merge, so they're merged again on top by the editor instead of being overwritten
+        if (mPostEditFragment == null) {
+            unsafeUpdatePost(event.post);
+            return;
+        }
+        mPostEditFragment.mergePost(event.post);    // updates mPost in place
+        if (mPostViewFragment != null) {
+            mPostViewFragment.setPost(mPost);
+        }
+        updatePostSettings();
+    }
+
     @Subscribe
     public void onPostReplacedEvent(PostReplacedEvent event) {
         // FIXME check which post changed before blindly assigning to mPost!
@@ -395,9 +437,17 @@ public class PostViewActivity extends BaseActivity implements
 
     @Subscribe
     public void onPostSavedEvent(PostSavedEvent event) {
-        // since saving happens synchronously (from the time the SavePostEvent was fired), updating
-        // the post editor is also safe - it won't overwrite the user's edits
-        if (mPost.getId().equals(event.post.getId())) {
+        if (! mPost.getId().equals(event.post.getId())) {
+            return;
+        }
+        // saving happens in the background, so the user may have typed since the post was saved;
+        // updating the editor is only safe if they haven't, else it'd overwrite their edits
+        boolean hasNewerEdits = mPostEditFragment != null && mPostEditFragment.hasUnsavedEdits();
+        if (event.isBackgroundSave || hasNewerEdits) {
+            // the user is still typing, so the editor may have newer edits than the saved post,
+            // and reloading it would also reset the cursor; only the pending actions can change
+            mPost.setPendingActions(event.post.getPendingActions());
+        } else {
             unsafeUpdatePost(event.post);
         }
     }
@@ -4,12 +4,14 @@ import android.Manifest;
 import android.annotation.SuppressLint;
 import android.app.Activity;
 import android.app.ProgressDialog;
+import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.annotation.StringRes;
@@ -34,6 +36,8 @@ import com.github.slugify.Slugify;
 import com.squareup.otto.Subscribe;
 
 import java.io.IOException;
+import java.text.NumberFormat;
+import java.util.UUID;
 
 import butterknife.BindView;
 import io.reactivex.Observable;
@@ -46,25 +50,31 @@ import me.vickychijwani.spectre.R;
 import me.vickychijwani.spectre.analytics.AnalyticsService;
 import me.vickychijwani.spectre.error.FileUploadFailedException;
 import me.vickychijwani.spectre.error.UserEditsLostException;
+import me.vickychijwani.spectre.event.CancelFileUploadEvent;
 import me.vickychijwani.spectre.event.FileUploadErrorEvent;
 import me.vickychijwani.spectre.event.FileUploadEvent;
+import me.vickychijwani.spectre.event.FileUploadProgressEvent;
 import me.vickychijwani.spectre.event.FileUploadedEvent;
 import me.vickychijwani.spectre.event.PostSavedEvent;
 import me.vickychijwani.spectre.event.PostSyncedEvent;
 import me.vickychijwani.spectre.event.SavePostEvent;
+import me.vickychijwani.spectre.event.SyncPostsEvent;
+import me.vickychijwani.spectre.model.ImageUploadQueue;
 import me.vickychijwani.spectre.model.entity.PendingAction;
 import me.vickychijwani.spectre.model.entity.Post;
 import me.vickychijwani.spectre.model.entity.Tag;
 import me.vickychijwani.spectre.network.ApiFailure;
 import me.vickychijwani.spectre.network.GhostApiUtils;
 import me.vickychijwani.spectre.util.AppUtils;
+import me.vickychijwani.spectre.util.EditTextBuffer;
 import me.vickychijwani.spectre.util.EditTextSelectionState;
 import me.vickychijwani.spectre.util.EditTextUtils;
 import me.vickychijwani.spectre.util.KeyboardUtils;
-import me.vickychijwani.spectre.util.NetworkUtils;
 import me.vickychijwani.spectre.util.PostUtils;
+import me.vickychijwani.spectre.util.ThreeWayMerge;
 import me.vickychijwani.spectre.util.functions.Action1;
 import me.vickychijwani.spectre.util.log.Log;
+import me.vickychijwani.spectre.view.AutoSaveScheduler;
 import me.vickychijwani.spectre.view.BundleKeys;
 import me.vickychijwani.spectre.view.FormatOptionClickListener;
 import me.vickychijwani.spectre.view.Observables;
@@ -103,6 +113,11 @@ public class PostEditFragment extends BaseFragment implements
     private Post mLastSavedPost;    // copy of post since it was last saved
     private Post mPost;             // current copy of post in memory
 
+    // the body can be very long, so it's only copied out of the editor and converted to mobiledoc
+    // if it changed since the last time (see readMarkdownFromEditor)
+    private EditTextBuffer mPostEditBuffer;
+    private int mPostMarkdownVersion = -1;      // version of the editor text that mPost has
+
     // used in onPause/onResume
     private int mPostEditViewCursorPos = -1;
     // used only when changing tabs (no fragment lifecycle methods are triggered)
@@ -118,12 +133,23 @@ public class PostEditFragment extends BaseFragment implements
     private boolean mPostChangedInMemory = false;
     private PostTextWatcher mPostTextWatcher = null;
 
+    // background auto-save while editing
+    private static final int AUTO_SAVE_QUIET_WINDOW = 2 * 1000;         // milliseconds
+    private static final int AUTO_SAVE_MAX_DELAY = 10 * 1000;           // milliseconds
+    private static final int AUTO_SAVE_MIN_SYNC_INTERVAL = 60 * 1000;   // milliseconds
+    // the settings drawer doesn't say which setting changed
+    private static final int SETTINGS_FIELDS = Post.FIELD_TAGS | Post.FIELD_CUSTOM_EXCERPT
+            | Post.FIELD_FEATURED | Post.FIELD_PAGE;
+    private AutoSaveScheduler mAutoSaveScheduler;
+    private boolean mbSettingPost = false;      // ignore text changes made by setPost()
+
     // image insert / upload
     private static final int REQUEST_CODE_IMAGE_PICK = 1;
     private Disposable mUploadDisposable = null;
     private ProgressDialog mUploadProgress = null;
     private EditTextSelectionState mMarkdownEditSelectionState;
     private Action1<String> mImageUploadDoneAction = null;
+    private String mUploadId = null;    // the queued upload whose progress is shown, if any
 
 
     @SuppressWarnings("unused")
@@ -154,11 +180,19 @@ public class PostEditFragment extends BaseFragment implements
             mPostChangedInMemory = args.getBoolean(BundleKeys.POST_EDITED);
         }
 
+        mAutoSaveScheduler = new AutoSaveScheduler(AUTO_SAVE_QUIET_WINDOW, AUTO_SAVE_MAX_DELAY,
+                AUTO_SAVE_MIN_SYNC_INTERVAL, new HandlerTimer(), new AutoSaveCallbacks());
+        mPostTitleEditView.addTextChangedListener(new AutoSaveTextWatcher(Post.FIELD_TITLE));
+        mPostEditView.addTextChangedListener(new AutoSaveTextWatcher(Post.FIELD_MOBILEDOC));
+        mPostEditBuffer = new EditTextBuffer(mPostEditView);
+
         //noinspection ConstantConditions
         setPost(args.getParcelable(BundleKeys.POST), true);
 
         // must occur after setPost() to prevent being triggered when setting the post initially
         startMonitoringPostSettings();
+        // unlike the above, this stays registered until the view is destroyed, for auto-saving
+        mPostSettingsManager.setOnPostSettingsChangedListener(new PostSettingsChangedListener());
 
         mSaveTimeoutRunnable = () -> {
             View parent = PostEditFragment.this.getView();
@@ -221,15 +255,22 @@ public class PostEditFragment extends BaseFragment implements
         super.onPause();
         // remove pending callbacks
         mHandler.removeCallbacks(mSaveTimeoutRunnable);
+        // the post is saved in full below, so pending background saves are redundant
+        boolean syncDue = mAutoSaveScheduler.cancel();
         // note misc editor state before saving post, because setPost is called in onResume
         mPostEditViewCursorPos = mPostEditView.getSelectionEnd();
         // persist changes to disk, unless the user opted to discard those changes
-        // workaround: do this ONLY if an image upload is NOT in progress - this is to avoid saving
+        // workaround: do this ONLY if an image is NOT being picked or prepared for upload (after
+        // that, it's queued and the post has a placeholder for it) - this is to avoid saving
         // the post prematurely and generating a spurious conflict that cannot be dealt with cleanly
         // because the post gets uploaded after this Activity goes away, putting it out-of-sync with
         // the model
         if (mImageUploadDoneAction == null) {
-            saveAutomatically();
+            // even if there's nothing left to save, changes saved in the background earlier may
+            // not have been synced yet
+            if (! saveAutomatically() && syncDue) {
+                getBus().post(new SyncPostsEvent(true));
+            }
         } else {
             // we still need to save to memory, else the post will revert to its original state!
             saveToMemory();
@@ -251,6 +292,8 @@ public class PostEditFragment extends BaseFragment implements
     public void onDestroyView() {
         // avoid leaking the activity (listeners hold a strong reference to it)
         stopMonitoringPostSettings();
+        mPostSettingsManager.removeOnPostSettingsChangedListener();
+        mAutoSaveScheduler.cancel();
         super.onDestroyView();
     }
 
@@ -291,8 +334,6 @@ public class PostEditFragment extends BaseFragment implements
             mPostTitleEditView.addTextChangedListener(mPostTextWatcher);
             mPostEditView.addTextChangedListener(mPostTextWatcher);
         }
-        // this is safe to do multiple times as it is idempotent (even though a new instance is created)
-        mPostSettingsManager.setOnPostSettingsChangedListener(new PostSettingsChangedListener());
     }
 
     private void stopMonitoringPostSettings() {
@@ -301,8 +342,6 @@ public class PostEditFragment extends BaseFragment implements
             mPostEditView.removeTextChangedListener(mPostTextWatcher);
             mPostTextWatcher = null;
         }
-        // this is safe to do multiple times as it is idempotent
-        mPostSettingsManager.removeOnPostSettingsChangedListener();
     }
 
     @Override
@@ -412,10 +451,7 @@ public class PostEditFragment extends BaseFragment implements
     @SuppressLint("InlinedApi") // suppressed because PermissionsDispatcher handles API levels for us
     @NeedsPermission(Manifest.permission.READ_EXTERNAL_STORAGE)
     public void onInsertImageUploadClicked(Action1<String> uploadDoneAction) {
-        if (! NetworkUtils.isConnected(getActivity())) {
-            Toast.makeText(getActivity(), R.string.no_internet_connection, Toast.LENGTH_SHORT).show();
-            return;
-        }
+        // no need to be online, the upload is queued until it can go through
         mImageUploadDoneAction = uploadDoneAction;
         Intent imagePickIntent = new Intent(Intent.ACTION_GET_CONTENT);
         imagePickIntent.addCategory(Intent.CATEGORY_OPENABLE);
@@ -457,11 +493,30 @@ public class PostEditFragment extends BaseFragment implements
             mUploadDisposable = null;
         }
 
-        mUploadProgress = ProgressDialog.show(mActivity, null,
-                mActivity.getString(R.string.uploading), true, false);
+        // the upload can outlive this activity, so don't hold on to it
+        final Context appContext = mActivity.getApplicationContext();
+        final String uploadId = UUID.randomUUID().toString();
+        mUploadProgress = new ProgressDialog(mActivity);
+        mUploadProgress.setMessage(mActivity.getString(R.string.uploading));
+        mUploadProgress.setProgressStyle(ProgressDialog.STYLE_HORIZONTAL);
+        // indeterminate until the upload starts, or for good if the size of the file is unknown
+        mUploadProgress.setIndeterminate(true);
+        mUploadProgress.setProgressNumberFormat(null);
+        mUploadProgress.setProgressPercentFormat(null);
+        mUploadProgress.setCancelable(false);
+        mUploadProgress.setButton(DialogInterface.BUTTON_NEGATIVE,
+                mActivity.getString(android.R.string.cancel), (dialog, which) -> cancelImageUpload());
+        mUploadProgress.setButton(DialogInterface.BUTTON_NEUTRAL,
+                mActivity.getString(R.string.upload_in_background), (dialog, which) -> {
+            mUploadProgress = null;
+            KeyboardUtils.focusAndShowKeyboard(mActivity, mPostEditView);
+        });
+        mUploadProgress.show();
 
         mUploadDisposable = Observables
                 .getFileUploadMetadataFromUri(mActivity.getContentResolver(), uri)
+                .map(metadata -> Observables.downscaleImageForUpload(appContext, metadata))
+                .map(metadata -> Observables.stageImageForUpload(appContext, metadata, uploadId))
                 .subscribeOn(Schedulers.io())
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe((metadata) -> {
@@ -471,7 +526,16 @@ public class PostEditFragment extends BaseFragment implements
                         String ext = MimeTypeMap.getSingleton().getExtensionFromMimeType(metadata.mimeType);
                         filename = String.format("upload-%d.%s", System.currentTimeMillis() / 1000, ext);
                     }
-                    getBus().post(new FileUploadEvent(metadata.inputStream, filename, metadata.mimeType));
+                    // the image goes into the post right away, with a placeholder url until it's
+                    // uploaded (see ImageUploadQueue), so editing can go on in the meantime
+                    if (mImageUploadDoneAction != null) {
+                        mImageUploadDoneAction.call(ImageUploadQueue.getPlaceholderUrl(uploadId));
+                        mImageUploadDoneAction = null;
+                    }
+                    mMarkdownEditSelectionState = null;
+                    mUploadId = uploadId;
+                    getBus().post(new FileUploadEvent(mPost.getId(), uploadId,
+                            metadata.uri.getPath(), filename, metadata.mimeType));
                 }, (error) -> {
                     onFileUploadErrorEvent(new FileUploadErrorEvent(new ApiFailure(error)));
                 }, () -> {
@@ -479,20 +543,69 @@ public class PostEditFragment extends BaseFragment implements
                 });
     }
 
+    private void cancelImageUpload() {
+        if (mUploadDisposable != null && !mUploadDisposable.isDisposed()) {
+            mUploadDisposable.dispose();
+            mUploadDisposable = null;
+        }
+        if (mUploadId != null) {
+            getBus().post(new CancelFileUploadEvent(mUploadId));
+            removeImagePlaceholder(mUploadId);
+            mUploadId = null;
+        }
+        if (mUploadProgress != null) {
+            mUploadProgress.dismiss();
+            mUploadProgress = null;
+        }
+        mImageUploadDoneAction = null;
+        mMarkdownEditSelectionState = null;
+    }
+
+    private void removeImagePlaceholder(@NonNull String uploadId) {
+        String markdown = mPostEditBuffer.getText();
+        String updatedMarkdown = ImageUploadQueue.removePlaceholder(markdown, uploadId);
+        if (! updatedMarkdown.equals(markdown)) {
+            mPostEditBuffer.setText(updatedMarkdown);
+        }
+    }
+
+    @Subscribe
+    public void onFileUploadProgressEvent(FileUploadProgressEvent event) {
+        // the activity could have been destroyed and re-created
+        if (mUploadProgress == null || ! event.uploadId.equals(mUploadId)
+                || event.totalBytes <= 0) {
+            return;
+        }
+        if (mUploadProgress.isIndeterminate()) {
+            mUploadProgress.setIndeterminate(false);
+            mUploadProgress.setProgressPercentFormat(NumberFormat.getPercentInstance());
+            mUploadProgress.setMax(100);
+        }
+        mUploadProgress.setProgress((int) (100 * event.bytesUploaded / event.totalBytes));
+    }
+
     @Subscribe
     public void onFileUploadedEvent(FileUploadedEvent event) {
+        // if the placeholder was saved already, the saved post has been updated and the change
+        // merged into the editor, else the placeholder is only here
+        if (mPost != null && mPost.getId().equals(event.postId)) {
+            String markdown = mPostEditBuffer.getText();
+            String updatedMarkdown = ImageUploadQueue.replacePlaceholder(markdown,
+                    event.uploadId, event.relativeUrl);
+            if (! updatedMarkdown.equals(markdown)) {
+                mPostEditBuffer.setText(updatedMarkdown);
+            }
+        }
+        if (! event.uploadId.equals(mUploadId)) {
+            return;
+        }
+        mUploadId = null;
         // the activity could have been destroyed and re-created
         if (mUploadProgress != null) {
             mUploadProgress.dismiss();
             mUploadProgress = null;
+            KeyboardUtils.focusAndShowKeyboard(mActivity, mPostEditView);
         }
-        // the activity could have been destroyed and re-created
-        if (mImageUploadDoneAction != null) {
-            mImageUploadDoneAction.call(event.relativeUrl);
-            mImageUploadDoneAction = null;
-        }
-        mMarkdownEditSelectionState = null;
-        KeyboardUtils.focusAndShowKeyboard(mActivity, mPostEditView);
     }
 
     @Subscribe
@@ -509,6 +622,14 @@ public class PostEditFragment extends BaseFragment implements
             }
         }
         Toast.makeText(mActivity, R.string.image_upload_failed, Toast.LENGTH_SHORT).show();
+        if (event.uploadId != null && mPost != null && mPost.getId().equals(event.postId)) {
+            removeImagePlaceholder(event.uploadId);
+        }
+        // null if the image failed before it was queued, i.e., it's the one being shown
+        if (event.uploadId != null && ! event.uploadId.equals(mUploadId)) {
+            return;
+        }
+        mUploadId = null;
         // the activity could have been destroyed and re-created
         if (mUploadProgress != null) {
             mUploadProgress.dismiss();
@@ -543,6 +664,13 @@ public class PostEditFragment extends BaseFragment implements
         return savePost(true, false, newStatus);
     }
 
+    /**
+     * @return true if the post has been edited since it was last saved
+     */
+    public boolean hasUnsavedEdits() {
+        return mAutoSaveScheduler != null && mAutoSaveScheduler.getDirtyFields() != 0;
+    }
+
     public boolean saveToMemory() {
         return savePost(false, true, null);
     }
@@ -570,9 +698,16 @@ public class PostEditFragment extends BaseFragment implements
     // returns true if a network call is pending, false otherwise
     private boolean savePost(boolean persistChanges, boolean isAutoSave,
                              @Nullable @Post.Status String newStatus) {
+        if (! mPost.isContentLoaded()) {
+            // the editor only has placeholder content, saving would clobber the real content
+            return false;
+        }
+        if (persistChanges) {
+            // the whole post is about to be saved, so pending background saves are redundant
+            mAutoSaveScheduler.cancel();
+        }
         mPost.setTitleFromPostEditor(mPostTitleEditView.getText().toString());
-        mPost.setMarkdown(mPostEditView.getText().toString());
-        mPost.setHtml(null);   // omit stale HTML from request body
+        readMarkdownFromEditor();
         mPost.setTags(mPostSettingsManager.getTags());
         mPost.setCustomExcerpt(mPostSettingsManager.getCustomExcerpt());
         mPost.setFeatured(mPostSettingsManager.isFeatured());
@@ -680,10 +815,14 @@ public class PostEditFragment extends BaseFragment implements
 
     @Subscribe
     public void onPostSavedEvent(PostSavedEvent event) {
-        // FIXME the assumption is that SavePostEvent and PostSavedEvent are synchronously sent one
-        // FIXME after the other, which breaks the EventBus' "don't assume synchronous" contract
+        // the post is saved in the background, so the editor may have newer edits by now; compare
+        // them against what was actually saved
         if (mPost.getId().equals(event.post.getId())) {
-            mLastSavedPost = new Post(mPost);
+            mLastSavedPost = new Post(event.post);
+        }
+        if (event.isBackgroundSave) {
+            // no feedback needed for saves the user didn't ask for, and no save scenario applies
+            return;
         }
 
         // hide the Publish / Unpublish actions if appropriate
@@ -760,9 +899,12 @@ public class PostEditFragment extends BaseFragment implements
     }
 
     public void setPost(@NonNull Post post, boolean isOriginal) {
+        String markdown = post.getMarkdown();
         // check if this method is being called at a time when the user has some edits that will
-        // be lost as soon as this method completes
-        if (mPost != null && !mPost.getMarkdown().trim().equals(post.getMarkdown().trim())) {
+        // be lost as soon as this method completes (never the case when re-setting the same post,
+        // e.g., in onResume)
+        if (mPost != null && mPost != post && mPost.isContentLoaded()
+                && !mPost.getMarkdown().trim().equals(markdown.trim())) {
             RuntimeException e = new UserEditsLostException();
             if (BuildConfig.DEBUG) {
                 throw e;
@@ -776,8 +918,12 @@ public class PostEditFragment extends BaseFragment implements
             mOriginalPost = new Post(post);             // store a copy for calculating diff later
             mLastSavedPost = new Post(mOriginalPost);   // the original is obviously already "saved"
         }
+        mbSettingPost = true;
         mPostTitleEditView.setText(post.getTitleForPostEditor());
-        mPostEditView.setText(post.getMarkdown());
+        // only the part that differs is replaced, which for the same post is nothing at all
+        mPostEditBuffer.setText((markdown != null) ? markdown : "");
+        mPostMarkdownVersion = mPostEditBuffer.getVersion();
+        mbSettingPost = false;
         if (mPostEditViewCursorPos >= 0
                 // cursor pos is == length, when it's at the very end
                 && mPostEditViewCursorPos <= mPostEditView.getText().length()) {
@@ -785,6 +931,64 @@ public class PostEditFragment extends BaseFragment implements
         }
     }
 
+    /**
+     * Takes in edits from the server that a sync merged into this post (see NetworkService). The
+     * user's edits since the post was last saved were not part of that merge, so they're merged
+     * again on top of it instead of being overwritten.
+     */
+    public void mergePost(@NonNull Post mergedPost) {
+        if (mPost == null || mLastSavedPost == null || ! mPost.isContentLoaded()) {
+            return;
+        }
+        String savedMarkdown = mLastSavedPost.getMarkdown();
+        String editorMarkdown = mPostEditBuffer.getText();
+        String mergedMarkdown = mergedPost.getMarkdown();
+        ThreeWayMerge.Result merge = (savedMarkdown != null && mergedMarkdown != null)
+                ? ThreeWayMerge.merge(savedMarkdown, editorMarkdown, mergedMarkdown)
+                : null;
+        if (merge == null) {
+            // the merged version is in the revision history, nothing is lost
+            Log.w(TAG, "Couldn't merge the editor contents into post %s", mergedPost.getId());
+            return;
+        }
+        String markdown = merge.mergedWithLocal;    // on conflicts, the user's latest edits win
+        String editorTitle = mPostTitleEditView.getText().toString();
+        boolean isTitleEdited = ! editorTitle.equals(mLastSavedPost.getTitleForPostEditor());
+
+        mLastSavedPost = new Post(mergedPost);
+        mPost.setTitle(isTitleEdited ? mPost.getTitle() : mergedPost.getTitle());
+        mPost.setSlug(mergedPost.getSlug());
+        mPost.setStatus(mergedPost.getStatus());
+        mPost.setTags(mergedPost.getTags());
+        mPost.setCustomExcerpt(mergedPost.getCustomExcerpt());
+        mPost.setFeatured(mergedPost.isFeatured());
+        mPost.setPage(mergedPost.isPage());
+        mPost.setFeatureImage(mergedPost.getFeatureImage());
+        mPost.setUpdatedAt(mergedPost.getUpdatedAt());
+        mPost.setConflictState(mergedPost.getConflictState());
+        mPost.setMarkdown(markdown);
+        mPost.setHtml(null);   // omit stale HTML from request body
+
+        mbSettingPost = true;
+        if (! isTitleEdited) {
+            mPostTitleEditView.setText(mPost.getTitleForPostEditor());
+        }
+        // only the merged-in edits are replaced, so the cursor stays where it was relative to the
+        // text around it
+        mPostEditBuffer.setText(markdown);
+        mPostMarkdownVersion = mPostEditBuffer.getVersion();
+        mbSettingPost = false;
+    }
+
+    // converting to mobiledoc copies the whole body, so it's skipped if the body didn't change
+    private void readMarkdownFromEditor() {
+        if (mPostEditBuffer.getVersion() != mPostMarkdownVersion) {
+            mPost.setMarkdown(mPostEditBuffer.getText());
+            mPostMarkdownVersion = mPostEditBuffer.getVersion();
+        }
+        mPost.setHtml(null);   // omit stale HTML from request body
+    }
+
     private class PostTextWatcher implements TextWatcher {
         @Override
         public void beforeTextChanged(CharSequence s, int start, int count, int after) {
@@ -807,8 +1011,93 @@ public class PostEditFragment extends BaseFragment implements
     private class PostSettingsChangedListener implements PostViewActivity.PostSettingsChangedListener {
         @Override
         public void onPostSettingsChanged() {
-            mPostChangedInMemory = true;
-            mActivity.supportInvalidateOptionsMenu();
+            mAutoSaveScheduler.onFieldsChanged(SETTINGS_FIELDS);
+            if (! mPostChangedInMemory) {
+                mPostChangedInMemory = true;
+                mActivity.supportInvalidateOptionsMenu();
+            }
+        }
+    }
+
+    private class AutoSaveTextWatcher implements TextWatcher {
+        @Post.Field private final int mField;
+
+        AutoSaveTextWatcher(@Post.Field int field) {
+            mField = field;
+        }
+
+        @Override
+        public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
+
+        @Override
+        public void onTextChanged(CharSequence s, int start, int before, int count) {}
+
+        @Override
+        public void afterTextChanged(Editable s) {
+            if (! mbSettingPost) {
+                mAutoSaveScheduler.onFieldsChanged(mField);
+            }
+        }
+    }
+
+    private class AutoSaveCallbacks implements AutoSaveScheduler.Callbacks {
+        @Override
+        public boolean save(@Post.Field int changedFields) {
+            // see onPause() for why saving during an image upload is avoided
+            if (! mPost.isContentLoaded() || mPost.isMarkedForDeletion()
+                    || mImageUploadDoneAction != null || mbDiscardChanges) {
+                return false;
+            }
+            // read only the fields that changed from the UI, in particular, converting the
+            // markdown to mobiledoc is skipped unless the body changed
+            if ((changedFields & Post.FIELD_TITLE) != 0) {
+                mPost.setTitleFromPostEditor(mPostTitleEditView.getText().toString());
+            }
+            if ((changedFields & Post.FIELD_MOBILEDOC) != 0) {
+                readMarkdownFromEditor();
+            }
+            if ((changedFields & Post.FIELD_TAGS) != 0) {
+                mPost.setTags(mPostSettingsManager.getTags());
+            }
+            if ((changedFields & Post.FIELD_CUSTOM_EXCERPT) != 0) {
+                mPost.setCustomExcerpt(mPostSettingsManager.getCustomExcerpt());
+            }
+            if ((changedFields & Post.FIELD_FEATURED) != 0) {
+                mPost.setFeatured(mPostSettingsManager.isFeatured());
+            }
+            if ((changedFields & Post.FIELD_PAGE) != 0) {
+                mPost.setPage(mPostSettingsManager.isPage());
+            }
+            getBus().post(new SavePostEvent(mPost, true, changedFields));
+            return true;
+        }
+
+        @Override
+        public boolean sync() {
+            // a new post gets a new id when it's uploaded, and the editor's copy is replaced, which
+            // must not happen while the user is typing; it's synced when the editor is closed
+            if (mPost.hasPendingAction(PendingAction.CREATE)) {
+                return false;
+            }
+            getBus().post(new SyncPostsEvent(true));
+            return true;
+        }
+    }
+
+    private class HandlerTimer implements AutoSaveScheduler.Timer {
+        @Override
+        public long now() {
+            return SystemClock.uptimeMillis();      // same clock as Handler#postDelayed
+        }
+
+        @Override
+        public void schedule(@NonNull Runnable runnable, long delayMillis) {
+            mHandler.postDelayed(runnable, delayMillis);
+        }
+
+        @Override
+        public void cancel(@NonNull Runnable runnable) {
+            mHandler.removeCallbacks(runnable);
         }
     }
 
@@ -0,0 +1,336 @@
+package me.vickychijwani.spectre.view.image;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.squareup.picasso.NetworkPolicy;
+import com.squareup.picasso.Picasso;
+import com.squareup.picasso.Request;
+import com.squareup.picasso.RequestHandler;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import me.vickychijwani.spectre.util.ImageUtils;
+import me.vickychijwani.spectre.util.log.Log;
+import okhttp3.CacheControl;
+import okhttp3.OkHttpClient;
+import okhttp3.Response;
+import okio.BufferedSink;
+import okio.ByteString;
+import okio.Okio;
+
+/**
+ * Loads small thumbnails of images for Picasso, e.g., post feature images in the post list, so
+ * that scrolling the list only ever decodes small bitmaps, instead of the full-size original
+ * (often several MB) every time the memory cache misses.
+ *
+ * A thumbnail is made on first load: if the blog serves resized variants of its images (Ghost 2.x
+ * and later, with a theme that defines image sizes), the smallest one that's at least as wide as
+ * the target is downloaded, else the original is. The image is decoded subsampled, scaled down to
+ * just cover the target size, and saved in a dedicated disk cache, keyed by the url of the image
+ * and the target size, evicting the least recently used thumbnails beyond a size limit. The
+ * original is not stored in the HTTP cache, it's not needed again.
+ *
+ * Load thumbnails with {@link #getUri(String)} and fit() or resize(), which set the target size.
+ */
+public final class ThumbnailRequestHandler extends RequestHandler {
+
+    private static final String TAG = "ThumbnailRequestHandler";
+
+    private static final String SCHEME = "spectre-thumbnail";
+    private static final String PARAM_URL = "url";
+
+    // widths of the resized variants of Ghost's default theme, Casper
+    private static final int[] GHOST_IMAGE_WIDTHS = { 300, 600, 1000, 2000 };
+    private static final String GHOST_IMAGES_PATH = "/content/images/";
+    private static final String GHOST_SIZE_PATH = "size/";
+
+    private static final long MAX_CACHE_SIZE = 20 * 1024 * 1024;
+    private static final int JPEG_QUALITY = 85;
+
+    // number of consecutive 404s for resized variants after which a host is assumed to not serve
+    // them at all; one could just be an image uploaded before the theme defined image sizes
+    private static final int MAX_MISSING_SIZES = 3;
+
+    private final OkHttpClient mHttpClient;
+    private final File mCacheDir;
+    private final HostsWithoutSizes mHostsWithoutSizes = new HostsWithoutSizes(MAX_MISSING_SIZES);
+
+    public ThumbnailRequestHandler(@NonNull OkHttpClient httpClient, @NonNull File cacheDir) {
+        mHttpClient = httpClient;
+        mCacheDir = cacheDir;
+    }
+
+    @NonNull
+    public static Uri getUri(@NonNull String imageUrl) {
+        return new Uri.Builder()
+                .scheme(SCHEME)
+                .authority("thumbnail")
+                .appendQueryParameter(PARAM_URL, imageUrl)
+                .build();
+    }
+
+    @Override
+    public boolean canHandleRequest(Request data) {
+        return data.uri != null && SCHEME.equals(data.uri.getScheme());
+    }
+
+    // called on one of Picasso's background threads, maybe several at once
+    @Override
+    public Result load(Request request, int networkPolicy) throws IOException {
+        String imageUrl = request.uri.getQueryParameter(PARAM_URL);
+        if (imageUrl == null) {
+            throw new IOException("No image url in thumbnail uri: " + request.uri);
+        }
+        if (! mCacheDir.isDirectory() && ! mCacheDir.mkdirs()) {
+            throw new IOException("Failed to create directory: " + mCacheDir);
+        }
+        int width = request.targetWidth;
+        int height = request.targetHeight;
+        File file = new File(mCacheDir, getCacheKey(imageUrl, width, height));
+
+        Bitmap bitmap = file.exists() ? BitmapFactory.decodeFile(file.getPath()) : null;
+        if (bitmap != null) {
+            //noinspection ResultOfMethodCallIgnored
+            file.setLastModified(System.currentTimeMillis());   // for LRU eviction
+            return new Result(bitmap, Picasso.LoadedFrom.DISK);
+        }
+        if (NetworkPolicy.isOfflineOnly(networkPolicy)) {
+            throw new IOException("No cached thumbnail for image: " + imageUrl);
+        }
+
+        File download = File.createTempFile("download", ".tmp", mCacheDir);
+        try {
+            downloadImage(imageUrl, width, download);
+            bitmap = createThumbnail(download, width, height);
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            download.delete();
+        }
+        if (bitmap == null) {
+            throw new IOException("Failed to decode image: " + imageUrl);
+        }
+        try {
+            saveThumbnail(bitmap, file);
+        } catch (IOException e) {
+            // not fatal, it's made again next time
+            Log.w(TAG, "Failed to save thumbnail of %s: %s", imageUrl, e.getMessage());
+        }
+        return new Result(bitmap, Picasso.LoadedFrom.NETWORK);
+    }
+
+    /**
+     * @return the url of Ghost's smallest resized variant of the given image that's at least as
+     * wide as the target, or null if there's no such variant (not an image uploaded to Ghost, or
+     * wider than the largest variant)
+     */
+    @Nullable
+    static String getResizedImageUrl(@NonNull String imageUrl, int targetWidth) {
+        int pathEnd = imageUrl.indexOf(GHOST_IMAGES_PATH) + GHOST_IMAGES_PATH.length();
+        if (targetWidth <= 0 || pathEnd < GHOST_IMAGES_PATH.length()
+                || imageUrl.startsWith(GHOST_SIZE_PATH, pathEnd)) {
+            return null;
+        }
+        for (int width : GHOST_IMAGE_WIDTHS) {
+            if (width >= targetWidth) {
+                return imageUrl.substring(0, pathEnd) + GHOST_SIZE_PATH + "w" + width + "/"
+                        + imageUrl.substring(pathEnd);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the largest power of 2 to subsample an image by, such that it still covers the
+     * target size; a target dimension of 0 is unconstrained
+     */
+    static int getSampleSize(int width, int height, int targetWidth, int targetHeight) {
+        if (targetWidth <= 0 && targetHeight <= 0) {
+            return 1;
+        }
+        int sampleSizeForWidth = (targetWidth <= 0) ? Integer.MAX_VALUE
+                : ImageUtils.getSampleSize(width, targetWidth);
+        int sampleSizeForHeight = (targetHeight <= 0) ? Integer.MAX_VALUE
+                : ImageUtils.getSampleSize(height, targetHeight);
+        return Math.min(sampleSizeForWidth, sampleSizeForHeight);
+    }
+
+    private void downloadImage(@NonNull String imageUrl, int targetWidth, @NonNull File dest)
+            throws IOException {
+        String host = Uri.parse(imageUrl).getHost();
+        String resizedImageUrl = getResizedImageUrl(imageUrl, targetWidth);
+        if (resizedImageUrl != null && ! mHostsWithoutSizes.contains(host)) {
+            int code = download(resizedImageUrl, dest);
+            if (isSuccessful(code)) {
+                mHostsWithoutSizes.onFound(host);
+                return;
+            }
+            // anything else (e.g., a server error) only falls back to the original this time
+            if (code == HttpURLConnection.HTTP_NOT_FOUND && mHostsWithoutSizes.onNotFound(host)) {
+                Log.i(TAG, "No resized images on %s, downloading originals", host);
+            }
+        }
+        if (! isSuccessful(download(imageUrl, dest))) {
+            throw new IOException("Failed to download image: " + imageUrl);
+        }
+    }
+
+    // returns the HTTP status code, the image is saved only if it's successful
+    private int download(@NonNull String url, @NonNull File dest) throws IOException {
+        okhttp3.Request request = new okhttp3.Request.Builder()
+                .url(url)
+                .cacheControl(new CacheControl.Builder().noStore().build())
+                .build();
+        Response response = mHttpClient.newCall(request).execute();
+        try {
+            if (! response.isSuccessful()) {
+                return response.code();
+            }
+            BufferedSink sink = Okio.buffer(Okio.sink(dest));
+            try {
+                sink.writeAll(response.body().source());
+            } finally {
+                sink.close();
+            }
+            return response.code();
+        } finally {
+            response.close();
+        }
+    }
+
+    private static boolean isSuccessful(int code) {
+        return code >= 200 && code < 300;
+    }
+
+    /**
+     * Hosts that don't serve resized variants, so they're not requested again. A host is only
+     * added after several consecutive 404s for them; any variant found resets its count.
+     */
+    static final class HostsWithoutSizes {
+
+        private final int mMaxMissing;
+        private final Map<String, Integer> mMissingCounts = new HashMap<>();
+
+        HostsWithoutSizes(int maxMissing) {
+            mMaxMissing = maxMissing;
+        }
+
+        synchronized boolean contains(@Nullable String host) {
+            Integer count = mMissingCounts.get(host);
+            return count != null && count >= mMaxMissing;
+        }
+
+        synchronized void onFound(@Nullable String host) {
+            mMissingCounts.remove(host);
+        }
+
+        /**
+         * @return true if the host was just added
+         */
+        synchronized boolean onNotFound(@Nullable String host) {
+            Integer count = mMissingCounts.get(host);
+            int newCount = (count == null) ? 1 : count + 1;
+            mMissingCounts.put(host, newCount);
+            return newCount == mMaxMissing;
+        }
+
+    }
+
+    @Nullable
+    private static Bitmap createThumbnail(@NonNull File file, int targetWidth, int targetHeight) {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getPath(), bounds);
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+            return null;
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = getSampleSize(bounds.outWidth, bounds.outHeight, targetWidth,
+                targetHeight);
+        Bitmap bitmap = BitmapFactory.decodeFile(file.getPath(), options);
+        if (bitmap == null) {
+            return null;
+        }
+
+        // scale down to just cover the target, it's cropped (or not) by the Picasso request
+        float scale = Math.max(
+                (targetWidth <= 0) ? 0 : (float) targetWidth / bitmap.getWidth(),
+                (targetHeight <= 0) ? 0 : (float) targetHeight / bitmap.getHeight());
+        if (scale > 0 && scale < 1) {
+            Bitmap scaled = Bitmap.createScaledBitmap(bitmap,
+                    Math.max(1, Math.round(bitmap.getWidth() * scale)),
+                    Math.max(1, Math.round(bitmap.getHeight() * scale)), true);
+            if (scaled != bitmap) {
+                bitmap.recycle();
+                bitmap = scaled;
+            }
+        }
+        return bitmap;
+    }
+
+    private void saveThumbnail(@NonNull Bitmap bitmap, @NonNull File file) throws IOException {
+        File tempFile = File.createTempFile("thumbnail", ".tmp", mCacheDir);
+        OutputStream outputStream = null;
+        try {
+            outputStream = new FileOutputStream(tempFile);
+            bitmap.compress(bitmap.hasAlpha() ? Bitmap.CompressFormat.PNG
+                    : Bitmap.CompressFormat.JPEG, JPEG_QUALITY, outputStream);
+        } finally {
+            if (outputStream != null) {
+                outputStream.close();
+            }
+        }
+        if (! tempFile.renameTo(file)) {
+            //noinspection ResultOfMethodCallIgnored
+            tempFile.delete();
+            throw new IOException("Failed to rename " + tempFile + " to " + file);
+        }
+        trimCache();
+    }
+
+    // evicts the least recently used thumbnails until the cache fits in its size limit
+    private synchronized void trimCache() {
+        File[] files = mCacheDir.listFiles((dir, name) -> ! name.endsWith(".tmp"));
+        if (files == null) {
+            return;
+        }
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+        }
+        if (size <= MAX_CACHE_SIZE) {
+            return;
+        }
+        // the times are read up-front, a thumbnail may be used (and touched) while sorting
+        final Map<File, Long> lastUsed = new HashMap<>(files.length);
+        for (File file : files) {
+            lastUsed.put(file, file.lastModified());
+        }
+        Arrays.sort(files, (a, b) -> lastUsed.get(a).compareTo(lastUsed.get(b)));
+        for (File file : files) {
+            if (size <= MAX_CACHE_SIZE) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                size -= length;
+            }
+        }
+    }
+
+    @NonNull
+    private static String getCacheKey(@NonNull String imageUrl, int width, int height) {
+        return ByteString.encodeUtf8(imageUrl + "@" + width + "x" + height).sha1().hex();
+    }
+
+}
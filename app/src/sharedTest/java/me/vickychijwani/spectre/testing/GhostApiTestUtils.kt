@@ -16,7 +16,7 @@ const val TEST_PWD = "randomtestpwd"
 // extension functions for the GhostApiService
 fun GhostApiService.deleteDefaultPosts() {
     this.doWithAuthToken { token ->
-        val posts = execute(this.getPosts(token.authHeader, "", null, 100)).body()!!
+        val posts = execute(this.getPosts(token.authHeader, "", null, 100, 1)).body()!!
         // A default Ghost install has 8 posts initially. If there are more than this, or the blog
         // address is not localhost, abort. This is to avoid messing up a production blog by mistake.
         val MAX_EXPECTED_POSTS = 8
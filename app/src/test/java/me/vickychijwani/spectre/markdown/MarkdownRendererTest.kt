@@ -0,0 +1,81 @@
+package me.vickychijwani.spectre.markdown
+
+import me.vickychijwani.spectre.testing.JvmLoggingRule
+import org.hamcrest.MatcherAssert.assertThat
+import org.junit.ClassRule
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.ErrorCollector
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import org.hamcrest.Matchers.`is` as Is
+
+
+/**
+ * TYPE: unit tests
+ * PURPOSE: testing that the JVM markdown renderer produces exactly the same HTML as the JS converter
+ * used in the preview WebView. The expected output in src/test/resources/markdown/ is generated by
+ * running `node generate-golden-files.js` in the PROJECT_ROOT/markdown folder
+ */
+
+class MarkdownRendererTest {
+
+    companion object {
+        @ClassRule @JvmField val loggingRule = JvmLoggingRule()
+
+        private val GOLDEN_FILES = listOf(
+                "blank-lines", "blockquote", "code", "crlf", "emphasis", "empty", "entities",
+                "footnotes", "headings", "hr", "html", "linkify", "links", "lists", "mixed",
+                "nesting", "refs", "strike-mark", "tables", "tabs", "unicode", "urls"
+        )
+    }
+
+    @Rule @JvmField val errors = ErrorCollector()
+
+
+
+    @Test
+    fun render_matchesGoldenFiles() {
+        GOLDEN_FILES.forEach { name ->
+            val html = MarkdownRenderer.render(readResource("$name.md"))
+            errors.checkThat("markdown/$name.md", html, Is(readResource("$name.html")))
+        }
+    }
+
+    @Test
+    fun render_headingIdsAreShowdownCompatible() {
+        assertThat(MarkdownRenderer.render("# Hello, *World*!"),
+                Is("<h1 id=\"helloworld\">Hello, <em>World</em>!</h1>\n"))
+    }
+
+    @Test
+    fun render_lazyHeaders() {
+        assertThat(MarkdownRenderer.render("#Title"), Is("<h1 id=\"title\">Title</h1>\n"))
+    }
+
+    @Test
+    fun render_isThreadSafe() {
+        val markdown = GOLDEN_FILES.map { readResource("$it.md") }
+        val expected = markdown.map { MarkdownRenderer.render(it) }
+        val executor = Executors.newFixedThreadPool(4)
+        try {
+            val results = (1..20).map {
+                executor.submit(Callable { markdown.map { MarkdownRenderer.render(it) } })
+            }
+            results.forEach { assertThat(it.get(10, TimeUnit.SECONDS), Is(expected)) }
+        } finally {
+            executor.shutdownNow()
+        }
+    }
+
+
+
+    // helpers
+    private fun readResource(name: String): String {
+        val stream = javaClass.classLoader.getResourceAsStream("markdown/$name")
+                ?: throw IllegalArgumentException("missing test resource: markdown/$name")
+        return stream.use { it.readBytes().toString(Charsets.UTF_8) }
+    }
+
+}
@@ -0,0 +1,147 @@
+package me.vickychijwani.spectre.model
+
+import me.vickychijwani.spectre.model.entity.Post
+import me.vickychijwani.spectre.network.GhostApiUtils
+import me.vickychijwani.spectre.network.entity.PostStub
+import org.hamcrest.MatcherAssert.assertThat
+import org.hamcrest.Matchers.containsString
+import org.hamcrest.Matchers.not
+import org.hamcrest.Matchers.nullValue
+import org.junit.Test
+import java.util.concurrent.TimeUnit
+import org.hamcrest.Matchers.`is` as Is
+
+
+/**
+ * TYPE: unit tests
+ * PURPOSE: testing the placeholders of queued image uploads in a post's markdown, that they're
+ * never uploaded with the post, and the backoff between attempts to upload the images
+ */
+
+class ImageUploadQueueTest {
+
+    private val ID = "0b5e4e8a-6f6c-4d8e-9a3c-2f1d7b9e5c41"
+    private val OTHER_ID = "7d2c1f0e-3b4a-4c5d-8e6f-9a0b1c2d3e4f"
+    private val URL = "/content/images/2018/01/photo.jpg"
+
+    @Test
+    fun replacePlaceholder() {
+        val markdown = "Before\n\n![](${placeholder(ID)})\n\nAfter"
+        assertThat(ImageUploadQueue.replacePlaceholder(markdown, ID, URL),
+                Is("Before\n\n![]($URL)\n\nAfter"))
+    }
+
+    @Test
+    fun replacePlaceholder_keepsAltText() {
+        val markdown = "![A photo](${placeholder(ID)})"
+        assertThat(ImageUploadQueue.replacePlaceholder(markdown, ID, URL),
+                Is("![A photo]($URL)"))
+    }
+
+    @Test
+    fun replacePlaceholder_onlyOfTheGivenUpload() {
+        val markdown = "![](${placeholder(ID)}) ![](${placeholder(OTHER_ID)})"
+        assertThat(ImageUploadQueue.replacePlaceholder(markdown, ID, URL),
+                Is("![]($URL) ![](${placeholder(OTHER_ID)})"))
+    }
+
+    @Test
+    fun replacePlaceholder_missing() {
+        val markdown = "No images here"
+        assertThat(ImageUploadQueue.replacePlaceholder(markdown, ID, URL), Is(markdown))
+    }
+
+    @Test
+    fun removePlaceholder() {
+        val markdown = "Before ![A photo](${placeholder(ID)}) after"
+        assertThat(ImageUploadQueue.removePlaceholder(markdown, ID), Is("Before  after"))
+    }
+
+    @Test
+    fun removePlaceholder_onlyOfTheGivenUpload() {
+        val markdown = "![](${placeholder(ID)})![](${placeholder(OTHER_ID)})"
+        assertThat(ImageUploadQueue.removePlaceholder(markdown, ID),
+                Is("![](${placeholder(OTHER_ID)})"))
+    }
+
+    @Test
+    fun removePlaceholder_editedImageSyntax() {
+        // the user turned the image into a link, only the url can be removed
+        val markdown = "[link](${placeholder(ID)})"
+        assertThat(ImageUploadQueue.removePlaceholder(markdown, ID), Is("[link]()"))
+    }
+
+    @Test
+    fun removeAllPlaceholders() {
+        val markdown = "A ![](${placeholder(ID)}) B ![x](${placeholder(OTHER_ID)}) C [y](${placeholder(ID)})"
+        assertThat(ImageUploadQueue.removeAllPlaceholders(markdown), Is("A  B  C [y]()"))
+    }
+
+    @Test
+    fun getHeldBackFields_noPlaceholders() {
+        val post = post("No images here", Post.PUBLISHED)
+        assertThat(ImageUploadQueue.getHeldBackFields(post, 0), Is(0))
+    }
+
+    @Test
+    fun getHeldBackFields_draft() {
+        val post = post("![](${placeholder(ID)})", Post.DRAFT)
+        assertThat(ImageUploadQueue.getHeldBackFields(post, 0), Is(Post.FIELD_MOBILEDOC))
+        assertThat(ImageUploadQueue.getHeldBackFields(post, Post.FIELD_TITLE), Is(0))
+    }
+
+    @Test
+    fun getHeldBackFields_notPublishedWithoutImages() {
+        val post = post("![](${placeholder(ID)})", Post.PUBLISHED)
+        assertThat(ImageUploadQueue.getHeldBackFields(post, Post.FIELD_STATUS or Post.FIELD_TITLE),
+                Is(Post.FIELD_STATUS))
+    }
+
+    @Test
+    fun update_neverUploadsPlaceholders() {
+        val post = post("Text\n\n![](${placeholder(ID)})", Post.PUBLISHED)
+        val fields = Post.FIELD_MOBILEDOC or Post.FIELD_STATUS or Post.FIELD_TITLE
+        val stub = PostStub(post, fields and ImageUploadQueue.getHeldBackFields(post, fields).inv())
+        assertThat(stub.mobiledoc, nullValue())
+        assertThat(stub.status, nullValue())
+        assertThat(stub.title, Is(post.title))
+    }
+
+    @Test
+    fun create_neverUploadsPlaceholders() {
+        val post = post("Text\n\n![](${placeholder(ID)})", Post.PUBLISHED)
+        val stub = PostStub(ImageUploadQueue.withoutPlaceholders(post))
+        assertThat(stub.mobiledoc, not(containsString("spectre-upload:")))
+        assertThat(stub.mobiledoc, containsString("Text"))
+        assertThat(stub.status, Is(Post.DRAFT))
+    }
+
+    @Test
+    fun getRetryDelay_backsOffExponentially() {
+        assertThat(ImageUploadQueue.getRetryDelay(1), Is(TimeUnit.SECONDS.toMillis(30)))
+        assertThat(ImageUploadQueue.getRetryDelay(2), Is(TimeUnit.SECONDS.toMillis(60)))
+        assertThat(ImageUploadQueue.getRetryDelay(3), Is(TimeUnit.SECONDS.toMillis(120)))
+    }
+
+    @Test
+    fun getRetryDelay_isCapped() {
+        assertThat(ImageUploadQueue.getRetryDelay(ImageUploadQueue.MAX_ATTEMPTS),
+                Is(TimeUnit.HOURS.toMillis(1)))
+        assertThat(ImageUploadQueue.getRetryDelay(100), Is(TimeUnit.HOURS.toMillis(1)))
+    }
+
+
+
+    // helpers
+    private fun placeholder(id: String) = ImageUploadQueue.getPlaceholderUrl(id)
+
+    private fun post(markdown: String, status: String): Post {
+        return Post().also {
+            it.title = "Title"
+            it.status = status
+            it.mobiledoc = GhostApiUtils.insertMarkdownIntoMobiledoc(markdown,
+                    GhostApiUtils.initializeMobiledoc())
+        }
+    }
+
+}
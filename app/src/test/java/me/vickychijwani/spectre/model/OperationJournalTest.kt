@@ -0,0 +1,98 @@
+package me.vickychijwani.spectre.model
+
+import me.vickychijwani.spectre.model.OperationJournal.Upload
+import me.vickychijwani.spectre.model.entity.Post
+import me.vickychijwani.spectre.model.entity.PostOperation
+import org.hamcrest.MatcherAssert.assertThat
+import org.hamcrest.Matchers.contains
+import org.hamcrest.Matchers.empty
+import org.junit.Test
+import org.hamcrest.Matchers.`is` as Is
+
+
+/**
+ * TYPE: unit tests
+ * PURPOSE: testing the compaction of the operation journal into uploads
+ */
+
+class OperationJournalTest {
+
+    private var seq = 0L
+
+    @Test
+    fun compact_empty() {
+        assertThat(OperationJournal.compact(emptyList()), empty())
+    }
+
+    @Test
+    fun compact_mergesFieldsOfEachPost() {
+        val ops = listOf(
+                op("1", PostOperation.SET_FIELDS, Post.FIELD_TITLE),
+                op("1", PostOperation.SET_FIELDS, Post.FIELD_MOBILEDOC),
+                op("1", PostOperation.PUBLISH, Post.FIELD_STATUS))
+        val uploads = OperationJournal.compact(ops)
+
+        assertThat(uploads.size, Is(1))
+        assertThat(uploads[0].type, Is(Upload.Type.UPDATE))
+        assertThat(uploads[0].fields,
+                Is(Post.FIELD_TITLE or Post.FIELD_MOBILEDOC or Post.FIELD_STATUS))
+        assertThat(uploads[0].keys, contains(ops[0].key, ops[1].key, ops[2].key))
+    }
+
+    @Test
+    fun compact_unknownFieldsMeansAllFields() {
+        val uploads = OperationJournal.compact(listOf(
+                op("1", PostOperation.SET_FIELDS, Post.FIELD_TITLE),
+                op("1", PostOperation.SET_FIELDS, 0)))
+        assertThat(uploads[0].fields, Is(Post.ALL_FIELDS))
+    }
+
+    @Test
+    fun compact_uploadsAreOrderedByFirstOperation() {
+        val uploads = OperationJournal.compact(listOf(
+                op("2", PostOperation.SET_FIELDS, Post.FIELD_TITLE),
+                op("1", PostOperation.SET_FIELDS, Post.FIELD_TITLE),
+                op("2", PostOperation.SET_FIELDS, Post.FIELD_TAGS)))
+        assertThat(uploads.map { it.postId }, contains("2", "1"))
+    }
+
+    @Test
+    fun compact_createIncludesLaterEdits() {
+        val uploads = OperationJournal.compact(listOf(
+                op("-1", PostOperation.CREATE, 0),
+                op("-1", PostOperation.SET_FIELDS, Post.FIELD_TITLE)))
+        assertThat(uploads.size, Is(1))
+        assertThat(uploads[0].type, Is(Upload.Type.CREATE))
+        assertThat(uploads[0].keys.size, Is(2))
+    }
+
+    @Test
+    fun compact_deleteSupersedesEdits() {
+        val uploads = OperationJournal.compact(listOf(
+                op("1", PostOperation.SET_FIELDS, Post.FIELD_TITLE),
+                op("1", PostOperation.DELETE, 0)))
+        assertThat(uploads.size, Is(1))
+        assertThat(uploads[0].type, Is(Upload.Type.DELETE))
+        assertThat(uploads[0].keys.size, Is(2))
+    }
+
+    @Test
+    fun compact_createdAndDeletedPostIsDiscarded() {
+        val uploads = OperationJournal.compact(listOf(
+                op("-1", PostOperation.CREATE, 0),
+                op("-1", PostOperation.SET_FIELDS, Post.FIELD_TITLE),
+                op("-1", PostOperation.DELETE, 0)))
+        assertThat(uploads.size, Is(1))
+        assertThat(uploads[0].type, Is(Upload.Type.DISCARD))
+        assertThat(uploads[0].keys.size, Is(3))
+    }
+
+
+
+    // helpers
+    private fun op(postId: String, @PostOperation.Type type: String, @Post.Field fields: Int): PostOperation {
+        ++seq
+        return PostOperation("key$seq", seq, postId, type, fields)
+    }
+
+}
@@ -193,12 +193,30 @@ class GhostApiTest {
         }
     }
 
+    @Test
+    fun test_createPost_clientUuid() {
+        API.doWithAuthToken { token ->
+            // new posts are created with a uuid chosen by the app, so that a create request whose
+            // response was lost can be looked up before retrying it (see NetworkService)
+            val uuid = UUID.randomUUID().toString()
+            API.createRandomPost(token, uuid) { _, response, createdPost ->
+                val foundPosts = execute(API.getPostIds(token.authHeader, "uuid:'$uuid'", 1))
+                        .body()!!.posts
+
+                assertThat(response.code(), Is(HTTP_CREATED))
+                assertThat(createdPost.uuid, Is(uuid))
+                assertThat(foundPosts, hasSize(1))
+                assertThat(foundPosts[0].id, Is(createdPost.id))
+            }
+        }
+    }
+
     @Test
     fun test_getPosts() {
         API.doWithAuthToken { token ->
             API.createRandomPost(token) { post1, _, _ ->
                 API.createRandomPost(token) { post2, _, _ ->
-                    val response = execute(API.getPosts(token.authHeader, "", null, 100))
+                    val response = execute(API.getPosts(token.authHeader, "", null, 100, 1))
                     val posts = response.body()!!.posts
                     assertThat(response.code(), Is(HTTP_OK))
                     assertThat(posts.size, Is(2))
@@ -220,7 +238,7 @@ class GhostApiTest {
         API.doWithAuthToken { token ->
             API.createRandomPost(token) { _, _, _ ->
                 API.createRandomPost(token) { post2, _, _ ->
-                    val response = execute(API.getPosts(token.authHeader, "", null, 1))
+                    val response = execute(API.getPosts(token.authHeader, "", null, 1, 1))
                     val posts = response.body()!!.posts
                     assertThat(response.code(), Is(HTTP_OK))
                     assertThat(posts.size, Is(1))
@@ -231,6 +249,55 @@ class GhostApiTest {
         }
     }
 
+    @Test
+    fun test_getPosts_page() {
+        // pages are ordered by updated_at desc, and the last page has no "next" page
+        API.doWithAuthToken { token ->
+            API.createRandomPost(token) { post1, _, _ ->
+                API.createRandomPost(token) { _, _, _ ->
+                    val firstPage = execute(API.getPosts(token.authHeader, "", null, 1, 1)).body()!!
+                    assertThat(firstPage.meta!!.pagination!!.pages, Is(2))
+                    assertThat(firstPage.nextPage, Is(2))
+
+                    val lastPage = execute(API.getPosts(token.authHeader, "", null, 1, 2)).body()!!
+                    assertThat(lastPage.posts.size, Is(1))
+                    assertThat(lastPage.posts[0].title, Is(post1.title))
+                    assertThat(lastPage.nextPage, nullValue())
+                }
+            }
+        }
+    }
+
+    @Test
+    fun test_streamPostSummaries() {
+        // summaries have all the metadata needed for the post list, but no content
+        API.doWithAuthToken { token ->
+            API.createRandomPost(token) { expected, _, _ ->
+                val response = execute(API.streamPostSummaries(token.authHeader, "", null, 100, 1))
+                val posts = response.body()!!.use { readAll(it) }
+                assertThat(response.code(), Is(HTTP_OK))
+                assertThat(posts.size, Is(1))
+                assertThat(posts[0].title, Is(expected.title))
+                assertThat(posts[0].updatedAt, notNullValue())
+                assertThat(posts[0].html, isEmptyOrNullString())
+            }
+        }
+    }
+
+    @Test
+    fun test_streamPost() {
+        API.doWithAuthToken { token ->
+            API.createRandomPost(token) { expected, _, created ->
+                val response = execute(API.streamPost(token.authHeader, created.id))
+                val posts = response.body()!!.use { readAll(it) }
+                assertThat(response.code(), Is(HTTP_OK))
+                assertThat(posts, hasSize(1))
+                assertThat(posts[0].title, Is(expected.title))
+                assertThat(posts[0].mobiledoc, Is(expected.mobiledoc))
+            }
+        }
+    }
+
     @Test
     fun test_getPost() {
         API.doWithAuthToken { token ->
@@ -244,6 +311,20 @@ class GhostApiTest {
         }
     }
 
+    @Test
+    fun test_getPostVersion() {
+        API.doWithAuthToken { token ->
+            API.createRandomPost(token) { _, _, created ->
+                val response = execute(API.getPostVersion(token.authHeader, created.id))
+                val post = response.body()!!.posts[0]
+                assertThat(response.code(), Is(HTTP_OK))
+                assertThat(post.id, Is(created.id))
+                assertThat(post.updatedAt, Is(created.updatedAt))
+                assertThat(post.html, isEmptyOrNullString())
+            }
+        }
+    }
+
     @Test
     fun test_updatePost() {
         API.doWithAuthToken { token ->
@@ -276,6 +357,30 @@ class GhostApiTest {
         }
     }
 
+    @Test
+    fun test_updatePost_partial() {
+        API.doWithAuthToken { token ->
+            API.createRandomPost(token) { newPost, _, created ->
+                val expectedPost = Post(newPost).also {
+                    it.isFeatured = true
+                    it.title = "this title must not be uploaded"
+                }
+                val postStubs = PostStubList.from(expectedPost, Post.FIELD_FEATURED)
+
+                val response = execute(API.updatePost(token.authHeader, created.id, postStubs))
+                val actualPost = execute(API.getPost(token.authHeader, created.id))
+                        .body()!!.posts[0]
+
+                // fields left out of the request body must not change
+                assertThat(response.code(), Is(HTTP_OK))
+                assertThat(actualPost.isFeatured, Is(true))
+                assertThat(actualPost.title, Is(newPost.title))
+                assertThat(actualPost.mobiledoc, Is(newPost.mobiledoc))
+                assertThat(actualPost.customExcerpt, Is(newPost.customExcerpt))
+            }
+        }
+    }
+
     @Test
     fun test_customExcerptLimit() {
         API.doWithAuthToken { token ->
@@ -320,6 +425,20 @@ class GhostApiTest {
         }
     }
 
+    @Test
+    fun test_getPostIds_deletedPostsAreMissing() {
+        API.doWithAuthToken { token ->
+            var deleted: Post? = null
+            API.createRandomPost(token) { _, _, created -> deleted = created }
+            API.createRandomPost(token) { _, _, created ->
+                val filter = "id:[${created.id},${deleted!!.id}]"
+                val response = execute(API.getPostIds(token.authHeader, filter, 2))
+                assertThat(response.code(), Is(HTTP_OK))
+                assertThat(response.body()!!.posts.map { it.id }, contains(created.id))
+            }
+        }
+    }
+
     @Test
     fun test_getSettings() {
         API.doWithAuthToken { token ->
@@ -372,10 +491,12 @@ class GhostApiTest {
 
 // private helpers
 
-private fun GhostApiService.createRandomPost(token: AuthToken, callback: (Post, Response<PostList>, Post) -> Unit) {
+private fun GhostApiService.createRandomPost(token: AuthToken, uuid: String? = null,
+                                             callback: (Post, Response<PostList>, Post) -> Unit) {
     val title = getRandomString(20)
     val markdown = getRandomString(100)
     val newPost = Post().also {
+        it.uuid = uuid
         it.title = title
         it.mobiledoc = GhostApiUtils.initializeMobiledoc()
         it.mobiledoc = GhostApiUtils.insertMarkdownIntoMobiledoc(markdown, it.mobiledoc)
@@ -393,6 +514,12 @@ private fun GhostApiService.createRandomPost(token: AuthToken, callback: (Post,
     }
 }
 
+private fun readAll(postStream: PostStream): List<Post> {
+    val posts = mutableListOf<Post>()
+    postStream.read { posts.add(it) }
+    return posts
+}
+
 private fun getRandomString(length: Int): String {
     val random = Random()
     val sb = StringBuilder(length)
@@ -1,20 +1,24 @@
 package me.vickychijwani.spectre.network
 
+import me.vickychijwani.spectre.network.GhostApiUtils.combineFilters
 import me.vickychijwani.spectre.network.GhostApiUtils.hasOnlyMarkdownCard
 import me.vickychijwani.spectre.network.GhostApiUtils.initializeMobiledoc
 import me.vickychijwani.spectre.network.GhostApiUtils.insertMarkdownIntoMobiledoc
 import me.vickychijwani.spectre.network.GhostApiUtils.mobiledocToMarkdown
+import me.vickychijwani.spectre.network.GhostApiUtils.updatedSinceFilter
 import me.vickychijwani.spectre.testing.JvmLoggingRule
 import org.hamcrest.MatcherAssert.assertThat
 import org.hamcrest.Matchers.isEmptyString
+import org.hamcrest.Matchers.nullValue
 import org.junit.*
 import uk.co.datumedge.hamcrest.json.SameJSONAs.sameJSONAs
+import java.util.*
 import org.hamcrest.Matchers.`is` as Is
 
 
 /**
  * TYPE: unit tests
- * PURPOSE: testing logic for the mobiledoc utility methods
+ * PURPOSE: testing logic for the mobiledoc and filter utility methods
  */
 
 class GhostApiUtilsTest {
@@ -78,6 +82,34 @@ class GhostApiUtilsTest {
         assertThat(hasOnlyMarkdownCard(MOBILEDOC_KOENIG_NON_CARD_SECTIONS), Is(false))
     }
 
+    @Test
+    fun hasOnlyMarkdownCard_ignoresEmptySectionsAndKeyOrder() {
+        assertThat(hasOnlyMarkdownCard("""{
+            "sections": [[1, "p", []], [10, 0], [1, "p", []]],
+            "cards": [["markdown", { "markdown": "$MARKDOWN" }]]
+        }"""), Is(true))
+    }
+
+    @Test
+    fun hasOnlyMarkdownCard_invalidMobiledoc() {
+        assertThat(hasOnlyMarkdownCard(""), Is(false))
+        assertThat(hasOnlyMarkdownCard("[]"), Is(false))
+        assertThat(hasOnlyMarkdownCard("""{ "cards": [["markdown", {"""), Is(false))
+        assertThat(hasOnlyMarkdownCard("""{ "sections": [[10, 0]] }"""), Is(false))
+        assertThat(hasOnlyMarkdownCard(makeMobiledoc("""[["markdown", { "markdown": null }]]""")),
+                Is(false))
+    }
+
+    @Test
+    fun hasOnlyMarkdownCard_agreesWithParsedMobiledoc() {
+        for (mobiledoc in listOf(MOBILEDOC_BEFORE_KOENIG, MOBILEDOC_KOENIG_ONLY_MARKDOWN,
+                MOBILEDOC_KOENIG_NOT_MARKDOWN, MOBILEDOC_KOENIG_MIXED_MARKDOWN,
+                MOBILEDOC_KOENIG_NON_CARD_SECTIONS, initializeMobiledoc())) {
+            assertThat(hasOnlyMarkdownCard(mobiledoc),
+                    Is(MobiledocCodec.parse(mobiledoc).hasOnlyMarkdownCard))
+        }
+    }
+
 
 
     // mobiledocToMarkdown
@@ -168,6 +200,36 @@ class GhostApiUtilsTest {
 
 
 
+    // updatedSinceFilter
+    @Test
+    fun updatedSinceFilter_formatsInUtc() {
+        // 1514808000000 ms == 2018-01-01 12:00:00 UTC
+        assertThat(updatedSinceFilter(Date(1514808000000L)),
+                Is("updated_at:>='2018-01-01 12:00:00'"))
+    }
+
+
+
+    // combineFilters
+    @Test
+    fun combineFilters_skipsNulls() {
+        assertThat(combineFilters(null, "updated_at:>='2018-01-01 12:00:00'"),
+                Is("updated_at:>='2018-01-01 12:00:00'"))
+    }
+
+    @Test
+    fun combineFilters_joinsWithAnd() {
+        assertThat(combineFilters("author:jane", "updated_at:>='2018-01-01 12:00:00'"),
+                Is("author:jane+updated_at:>='2018-01-01 12:00:00'"))
+    }
+
+    @Test
+    fun combineFilters_allNull() {
+        assertThat(combineFilters(null, null), nullValue())
+    }
+
+
+
     // helpers
     private fun makeMobiledoc(cards: String): String {
         return """
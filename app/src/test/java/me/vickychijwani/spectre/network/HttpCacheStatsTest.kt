@@ -0,0 +1,65 @@
+package me.vickychijwani.spectre.network
+
+import org.hamcrest.MatcherAssert.assertThat
+import org.junit.Test
+import org.hamcrest.Matchers.`is` as Is
+
+
+/**
+ * TYPE: unit tests
+ * PURPOSE: testing the statistics reported for tuning the sizes of the HTTP caches
+ */
+
+class HttpCacheStatsTest {
+
+    @Test
+    fun counts() {
+        // 10 requests: 4 served from the cache, 2 revalidated with the server, 4 from the server
+        val stats = stats(requests = 10, hits = 6, network = 6)
+        assertThat(stats.missCount, Is(4))
+        assertThat(stats.conditionalHitCount, Is(2))
+        assertThat(stats.hitPercent, Is(60))
+    }
+
+    @Test
+    fun counts_noRequests() {
+        assertThat(stats(requests = 0, hits = 0, network = 0).hitPercent, Is(0))
+    }
+
+    @Test
+    fun fillPercent() {
+        assertThat(stats(size = 3 * MB, maxSize = 4 * MB).fillPercent, Is(75))
+        // size unknown
+        assertThat(stats(size = -1, maxSize = 4 * MB).fillPercent, Is(0))
+    }
+
+    @Test
+    fun since() {
+        val earlier = stats(requests = 10, hits = 6, network = 6, writes = 3, size = 1 * MB)
+        val later = stats(requests = 15, hits = 7, network = 10, writes = 7, size = 2 * MB)
+        val delta = later.since(earlier)
+        assertThat(delta.requestCount, Is(5))
+        assertThat(delta.hitCount, Is(1))
+        assertThat(delta.networkCount, Is(4))
+        assertThat(delta.writeCount, Is(4))
+        // the size is current, not a difference
+        assertThat(delta.size, Is(2 * MB))
+    }
+
+    @Test
+    fun since_noEarlierStats() {
+        val stats = stats(requests = 10, hits = 6, network = 6)
+        assertThat(stats.since(null), Is(stats))
+    }
+
+
+
+    // helpers
+    private val MB = 1024L * 1024L
+
+    private fun stats(requests: Int = 0, hits: Int = 0, network: Int = 0, writes: Int = 0,
+                      size: Long = 0, maxSize: Long = 10 * MB): HttpCacheStats {
+        return HttpCacheStats(requests, hits, network, writes, size, maxSize)
+    }
+
+}
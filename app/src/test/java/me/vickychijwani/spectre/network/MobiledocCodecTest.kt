@@ -0,0 +1,103 @@
+package me.vickychijwani.spectre.network
+
+import me.vickychijwani.spectre.network.GhostApiUtils.initializeMobiledoc
+import me.vickychijwani.spectre.testing.JvmLoggingRule
+import org.hamcrest.MatcherAssert.assertThat
+import org.hamcrest.Matchers.sameInstance
+import org.junit.*
+import uk.co.datumedge.hamcrest.json.SameJSONAs.sameJSONAs
+import org.hamcrest.Matchers.`is` as Is
+
+
+/**
+ * TYPE: unit tests
+ * PURPOSE: testing the cached mobiledoc parsing and markdown splicing
+ */
+
+class MobiledocCodecTest {
+
+    companion object {
+        @ClassRule @JvmField val loggingRule = JvmLoggingRule()
+    }
+
+    private val MARKDOWN = "**bold** _italic_"
+    private val TRICKY_MARKDOWN = "\"quotes\" \\backslashes\\ <html> & ☃\n\ttabs"
+
+    private val MOBILEDOC_KOENIG_NOT_MARKDOWN = """{
+        "version": "0.3.1",
+        "atoms": [],
+        "cards": [[ "code", { "code": "int x = 5" } ]],
+        "markups": [],
+        "sections": [[10, 0]]
+    }"""
+
+    @Before
+    fun setup() {
+        MobiledocCodec.clearCache()
+    }
+
+
+
+    @Test
+    fun parse_isCached() {
+        val mobiledoc = initializeMobiledoc()
+        assertThat(MobiledocCodec.parse(mobiledoc), sameInstance(MobiledocCodec.parse(mobiledoc)))
+    }
+
+    @Test
+    fun parse_isCachedByValue() {
+        // managed Realm objects return a new String instance on every access
+        val mobiledoc = initializeMobiledoc()
+        assertThat(MobiledocCodec.parse(mobiledoc),
+                sameInstance(MobiledocCodec.parse(String(mobiledoc.toCharArray()))))
+    }
+
+    @Test
+    fun insertMarkdown_resultIsCached() {
+        val mobiledoc = MobiledocCodec.insertMarkdown(MARKDOWN, initializeMobiledoc())
+        assertThat(MobiledocCodec.parse(mobiledoc).markdown, Is(MARKDOWN))
+    }
+
+    @Test
+    fun insertMarkdown_escapesMarkdown() {
+        val mobiledoc = MobiledocCodec.insertMarkdown(TRICKY_MARKDOWN, initializeMobiledoc())
+        MobiledocCodec.clearCache()
+        assertThat(MobiledocCodec.markdown(mobiledoc), Is(TRICKY_MARKDOWN))
+    }
+
+    @Test
+    fun insertMarkdown_sameAsUncached() {
+        val a = MobiledocCodec.insertMarkdown(MARKDOWN, initializeMobiledoc())
+        val b = MobiledocCodec.insertMarkdown(TRICKY_MARKDOWN, a)
+        MobiledocCodec.clearCache()
+        assertThat(MobiledocCodec.insertMarkdown(TRICKY_MARKDOWN, a), Is(b))
+    }
+
+    @Test
+    fun insertMarkdown_unchangedMarkdownReturnsSameMobiledoc() {
+        val mobiledoc = MobiledocCodec.insertMarkdown(MARKDOWN, initializeMobiledoc())
+        assertThat(MobiledocCodec.insertMarkdown(MARKDOWN, mobiledoc), sameInstance(mobiledoc))
+    }
+
+    @Test
+    fun insertMarkdown_preservesRestOfMobiledoc() {
+        val mobiledoc = MobiledocCodec.insertMarkdown(MARKDOWN, initializeMobiledoc())
+        assertThat(MobiledocCodec.insertMarkdown("", mobiledoc), sameJSONAs(initializeMobiledoc()))
+    }
+
+    @Test
+    fun parse_koenigNotMarkdown() {
+        assertThat(MobiledocCodec.parse(MOBILEDOC_KOENIG_NOT_MARKDOWN).hasOnlyMarkdownCard, Is(false))
+    }
+
+    @Test(expected = KoenigPostException::class)
+    fun markdown_koenigNotMarkdown() {
+        MobiledocCodec.markdown(MOBILEDOC_KOENIG_NOT_MARKDOWN)
+    }
+
+    @Test(expected = KoenigPostException::class)
+    fun insertMarkdown_koenigNotMarkdown() {
+        MobiledocCodec.insertMarkdown(MARKDOWN, MOBILEDOC_KOENIG_NOT_MARKDOWN)
+    }
+
+}
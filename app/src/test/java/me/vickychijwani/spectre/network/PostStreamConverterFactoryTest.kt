@@ -0,0 +1,79 @@
+package me.vickychijwani.spectre.network
+
+import me.vickychijwani.spectre.model.entity.Post
+import me.vickychijwani.spectre.network.entity.PostList
+import me.vickychijwani.spectre.network.entity.PostStream
+import okhttp3.MediaType
+import okhttp3.ResponseBody
+import okio.Buffer
+import org.hamcrest.MatcherAssert.assertThat
+import org.hamcrest.Matchers.contains
+import org.hamcrest.Matchers.notNullValue
+import org.hamcrest.Matchers.nullValue
+import org.junit.Test
+import retrofit2.Converter
+import retrofit2.Retrofit
+import java.io.IOException
+import org.hamcrest.Matchers.`is` as Is
+
+
+/**
+ * TYPE: unit tests
+ * PURPOSE: testing that post responses are spooled to disk and handed over as PostStreams
+ */
+
+class PostStreamConverterFactoryTest {
+
+    private val factory = PostStreamConverterFactory.create(GhostApiUtils.getGson())
+    private val retrofit = Retrofit.Builder().baseUrl("http://localhost/").build()
+
+    @Test
+    fun otherTypes() {
+        assertThat(factory.responseBodyConverter(PostList::class.java, arrayOf(), retrofit),
+                nullValue())
+    }
+
+    @Test
+    fun convert() {
+        val body = """{"posts": [{"id": "1", "title": "A"}, {"id": "2", "title": "B"}]}"""
+        val posts = mutableListOf<Post>()
+        converter().convert(responseBody(body))!!.use { it.read { post -> posts.add(post) } }
+        assertThat(posts.map { it.title }, contains("A", "B"))
+    }
+
+    @Test
+    fun convert_closesBody() {
+        val source = Buffer().writeUtf8("""{"posts": []}""")
+        converter().convert(ResponseBody.create(JSON, -1, source))!!.close()
+        assertThat(source.exhausted(), Is(true))
+    }
+
+    @Test
+    fun convert_malformedBodyFailsOnRead() {
+        // the body is only spooled by the converter, it's parsed when it's read
+        val stream = converter().convert(responseBody("""{"posts": [{"id": "1", """))
+        assertThat(stream, notNullValue())
+        try {
+            stream!!.read { }
+            throw AssertionError("expected an IOException")
+        } catch (e: IOException) {
+            // expected
+        } finally {
+            stream!!.close()
+        }
+    }
+
+
+
+    // helpers
+    private val JSON = MediaType.parse("application/json")
+
+    private fun converter(): Converter<ResponseBody, PostStream> {
+        @Suppress("UNCHECKED_CAST")
+        return factory.responseBodyConverter(PostStream::class.java, arrayOf(), retrofit)
+                as Converter<ResponseBody, PostStream>
+    }
+
+    private fun responseBody(json: String) = ResponseBody.create(JSON, json)
+
+}
@@ -0,0 +1,130 @@
+package me.vickychijwani.spectre.network
+
+import me.vickychijwani.spectre.network.UploadScheduler.Outcome.Status
+import org.hamcrest.MatcherAssert.assertThat
+import org.hamcrest.Matchers.contains
+import org.junit.Before
+import org.junit.Test
+import java.io.IOException
+import org.hamcrest.Matchers.`is` as Is
+
+
+/**
+ * TYPE: unit tests
+ * PURPOSE: testing concurrency limits, retries and per-key ordering of the upload scheduler
+ */
+
+class UploadSchedulerTest {
+
+    // retries are run only when the test asks for them
+    private val pendingRetries = mutableListOf<Pair<Runnable, Long>>()
+    // attempts started and not yet completed, in order
+    private val inFlight = mutableListOf<Pair<String, UploadScheduler.Attempt>>()
+    private val outcomes = mutableListOf<UploadScheduler.Outcome>()
+    private var completed = false
+
+    private lateinit var scheduler: UploadScheduler
+
+    @Before
+    fun setup() {
+        scheduler = UploadScheduler(2, 3, 1000, 3000) { runnable, delay ->
+            pendingRetries.add(Pair(runnable, delay))
+        }
+        scheduler.outcomes().subscribe({ outcomes.add(it) }, { throw it }, { completed = true })
+    }
+
+    @Test
+    fun concurrencyIsBounded() {
+        submit("a", "b", "c")
+        assertThat(inFlightKeys(), contains("a", "b"))
+
+        complete("a")
+        assertThat(inFlightKeys(), contains("b", "c"))
+    }
+
+    @Test
+    fun sameKeyRunsInOrder() {
+        submit("a", "a", "b")
+        // the second "a" must wait for the first, even though there's room for it
+        assertThat(inFlightKeys(), contains("a", "b"))
+
+        complete("a")
+        assertThat(inFlightKeys(), contains("b", "a"))
+    }
+
+    @Test
+    fun retriesWithExponentialBackoff() {
+        submit("a")
+        fail("a", retryable = true)
+        fail(retryFirst(expectedDelay = 1000L), retryable = true)
+        complete(retryFirst(expectedDelay = 2000L))
+        assertThat(outcomes.single().status, Is(Status.SUCCEEDED))
+        assertThat(outcomes.single().attempts, Is(3))
+    }
+
+    @Test
+    fun givesUpAfterMaxAttempts() {
+        submit("a")
+        fail("a", retryable = true)
+        fail(retryFirst(expectedDelay = 1000L), retryable = true)
+        fail(retryFirst(expectedDelay = 2000L), retryable = true)
+        assertThat(pendingRetries.size, Is(0))
+        assertThat(outcomes.single().status, Is(Status.FAILED))
+    }
+
+    @Test
+    fun nonRetryableFailureSkipsRestOfKeyOnly() {
+        submit("a", "a", "b")
+        fail("a", retryable = false)
+        complete("b")
+        assertThat(outcomes.map { it.key to it.status }, contains(
+                "a" to Status.FAILED, "a" to Status.SKIPPED, "b" to Status.SUCCEEDED))
+    }
+
+    @Test
+    fun completesAfterShutdownWhenDrained() {
+        submit("a")
+        scheduler.shutdown()
+        assertThat(completed, Is(false))
+        complete("a")
+        assertThat(completed, Is(true))
+    }
+
+    @Test
+    fun isRetryable_transportError() {
+        assertThat(UploadScheduler.isRetryable(ApiFailure<Any>(IOException())), Is(true))
+    }
+
+
+
+    // helpers
+    private fun submit(vararg keys: String) {
+        for (key in keys) {
+            scheduler.submit(key) { attempt -> inFlight.add(Pair(key, attempt)) }
+        }
+    }
+
+    private fun inFlightKeys() = inFlight.map { it.first }
+
+    private fun complete(key: String) {
+        removeInFlight(key).succeed()
+    }
+
+    private fun fail(key: String, retryable: Boolean) {
+        removeInFlight(key).fail(ApiFailure<Any>(IOException()), retryable)
+    }
+
+    private fun removeInFlight(key: String): UploadScheduler.Attempt {
+        val idx = inFlight.indexOfFirst { it.first == key }
+        return inFlight.removeAt(idx).second
+    }
+
+    // runs the first pending retry and returns the key of the restarted attempt
+    private fun retryFirst(expectedDelay: Long): String {
+        val (runnable, delay) = pendingRetries.removeAt(0)
+        assertThat(delay, Is(expectedDelay))
+        runnable.run()
+        return inFlight.last().first
+    }
+
+}
@@ -0,0 +1,88 @@
+package me.vickychijwani.spectre.network.entity
+
+import me.vickychijwani.spectre.model.entity.Post
+import me.vickychijwani.spectre.network.GhostApiUtils
+import org.hamcrest.MatcherAssert.assertThat
+import org.hamcrest.Matchers.contains
+import org.hamcrest.Matchers.nullValue
+import org.junit.After
+import org.junit.Test
+import java.io.File
+import java.io.IOException
+import org.hamcrest.Matchers.`is` as Is
+
+
+/**
+ * TYPE: unit tests
+ * PURPOSE: testing that post responses spooled to disk are read one post at a time
+ */
+
+class PostStreamTest {
+
+    private val files = mutableListOf<File>()
+
+    @After
+    fun teardown() {
+        files.forEach { it.delete() }
+    }
+
+    @Test
+    fun read() {
+        val posts = mutableListOf<Post>()
+        val meta = stream("""{"posts": [${post("1")}, ${post("2")}],
+                "meta": {"pagination": {"page": 1, "limit": 2, "pages": 2, "total": 3, "next": 2}}}""")
+                .read { posts.add(it) }
+
+        assertThat(posts.map { it.id }, contains("1", "2"))
+        assertThat(posts[0].title, Is("Post 1"))
+        assertThat(meta!!.pagination!!.next, Is(2))
+    }
+
+    @Test
+    fun read_noMeta() {
+        val meta = stream("""{"posts": [${post("1")}]}""").read { }
+        assertThat(meta, nullValue())
+    }
+
+    @Test
+    fun read_skipsUnknownFields() {
+        val posts = mutableListOf<Post>()
+        stream("""{"extra": {"posts": []}, "posts": [${post("1")}], "more": [1, 2]}""")
+                .read { posts.add(it) }
+        assertThat(posts.map { it.id }, contains("1"))
+    }
+
+    @Test
+    fun read_passesEachPostBeforeReadingTheNext() {
+        // the second post is cut off, but the first one has already been passed on
+        val posts = mutableListOf<Post>()
+        try {
+            stream("""{"posts": [${post("1")}, {"id": "2", "title": "Po""").read { posts.add(it) }
+            throw AssertionError("expected an IOException")
+        } catch (e: IOException) {
+            // expected
+        }
+        assertThat(posts.map { it.id }, contains("1"))
+    }
+
+    @Test(expected = IOException::class)
+    fun close_deletesFile() {
+        val stream = stream("""{"posts": []}""")
+        stream.close()
+        stream.read { }
+    }
+
+
+
+    // helpers
+    private fun stream(json: String): PostStream {
+        val file = File.createTempFile("posts", ".json")
+        files.add(file)
+        file.writeText(json)
+        val gson = GhostApiUtils.getGson()
+        return PostStream(file, gson.getAdapter(Post::class.java), gson.getAdapter(ApiMeta::class.java))
+    }
+
+    private fun post(id: String) = """{"id": "$id", "title": "Post $id", "status": "draft"}"""
+
+}
@@ -79,7 +79,15 @@ class MockGhostApiService(private val mDelegate: BehaviorDelegate<GhostApiServic
         return null
     }
 
-    override fun getPosts(@Header("Authorization") authHeader: String, @Header("If-None-Match") etag: String, @Query("filter") filter: String, @Query("limit") numPosts: Int): Call<PostList>? {
+    override fun getPosts(@Header("Authorization") authHeader: String, @Header("If-None-Match") etag: String, @Query("filter") filter: String, @Query("limit") numPosts: Int, @Query("page") page: Int): Call<PostList>? {
+        return null
+    }
+
+    override fun streamPostSummaries(@Header("Authorization") authHeader: String, @Header("If-None-Match") etag: String, @Query("filter") filter: String, @Query("limit") numPosts: Int, @Query("page") page: Int): Call<PostStream>? {
+        return null
+    }
+
+    override fun getPostIds(@Header("Authorization") authHeader: String, @Query("filter") filter: String, @Query("limit") numPosts: Int): Call<PostList>? {
         return null
     }
 
@@ -87,6 +95,14 @@ class MockGhostApiService(private val mDelegate: BehaviorDelegate<GhostApiServic
         return null
     }
 
+    override fun streamPost(@Header("Authorization") authHeader: String, @Path("id") id: String): Call<PostStream>? {
+        return null
+    }
+
+    override fun getPostVersion(@Header("Authorization") authHeader: String, @Path("id") id: String): Call<PostList>? {
+        return null
+    }
+
     override fun updatePost(@Header("Authorization") authHeader: String, @Path("id") id: String, @Body posts: PostStubList): Call<PostList>? {
         return null
     }
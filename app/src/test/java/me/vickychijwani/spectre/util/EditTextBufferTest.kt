@@ -0,0 +1,77 @@
+package me.vickychijwani.spectre.util
+
+import org.hamcrest.MatcherAssert.assertThat
+import org.junit.Test
+import org.hamcrest.Matchers.`is` as Is
+
+
+/**
+ * TYPE: unit tests
+ * PURPOSE: testing that the range replaced when setting the editor text is exactly the part that
+ * changed, and never splits a surrogate pair
+ */
+
+class EditTextBufferTest {
+
+    @Test
+    fun identicalText() {
+        assertChangedRange("same text", "same text", "same text", "")
+    }
+
+    @Test
+    fun emptyTexts() {
+        assertChangedRange("", "", "", "")
+        assertChangedRange("", "new", "", "")
+        assertChangedRange("old", "", "", "")
+    }
+
+    @Test
+    fun changeInTheMiddle() {
+        assertChangedRange("first second third", "first 2nd third", "first ", "nd third")
+    }
+
+    @Test
+    fun insertion() {
+        assertChangedRange("ab", "axb", "a", "b")
+        assertChangedRange("abc", "abcd", "abc", "")
+    }
+
+    @Test
+    fun suffixDoesNotOverlapPrefix() {
+        // the repeated "a" could be matched by both the prefix and the suffix
+        assertChangedRange("aa", "aaa", "aa", "")
+    }
+
+    @Test
+    fun surrogatePairsAreNotSplit() {
+        val smile = "😀"
+        val wink = "😉"
+        assertChangedRange("a${smile}b", "a${wink}b", "a", "b")
+        assertChangedRange("${smile}b", "${smile}${wink}b", smile, "b")
+    }
+
+    @Test
+    fun longText() {
+        val text = (1..10000).joinToString("\n") { "Paragraph $it." }
+        val edited = text.replace("Paragraph 5000.", "Edited paragraph 5000.")
+        val prefix = EditTextBuffer.commonPrefixLength(text, edited)
+        val suffix = EditTextBuffer.commonSuffixLength(text, edited, prefix)
+        assertThat(edited.substring(prefix, edited.length - suffix), Is("Edited p"))
+    }
+
+
+
+    // helpers
+    private fun assertChangedRange(old: String, new: String, expectedPrefix: String,
+                                   expectedSuffix: String) {
+        val prefix = EditTextBuffer.commonPrefixLength(old, new)
+        val suffix = EditTextBuffer.commonSuffixLength(old, new, prefix)
+        assertThat(old.substring(0, prefix), Is(expectedPrefix))
+        assertThat(old.substring(old.length - suffix), Is(expectedSuffix))
+        // replacing the changed range of the old text with that of the new one gives the new text
+        val replaced = old.substring(0, prefix) + new.substring(prefix, new.length - suffix) +
+                old.substring(old.length - suffix)
+        assertThat(replaced, Is(new))
+    }
+
+}
@@ -0,0 +1,41 @@
+package me.vickychijwani.spectre.util
+
+import android.support.media.ExifInterface
+import org.hamcrest.MatcherAssert.assertThat
+import org.junit.Test
+import org.hamcrest.Matchers.`is` as Is
+
+
+/**
+ * TYPE: unit tests
+ * PURPOSE: testing that images to upload are decoded at the smallest size that still fills the
+ * target width, taking their EXIF orientation into account
+ */
+
+class ImageUtilsTest {
+
+    @Test
+    fun getSampleSize_smallerThanTarget() {
+        assertThat(ImageUtils.getSampleSize(800, 2000), Is(1))
+        assertThat(ImageUtils.getSampleSize(2000, 2000), Is(1))
+    }
+
+    @Test
+    fun getSampleSize_neverNarrowerThanTarget() {
+        assertThat(ImageUtils.getSampleSize(3999, 2000), Is(1))
+        assertThat(ImageUtils.getSampleSize(4000, 2000), Is(2))
+        assertThat(ImageUtils.getSampleSize(4032, 2000), Is(2))
+        assertThat(ImageUtils.getSampleSize(8000, 1000), Is(8))
+    }
+
+    @Test
+    fun isTransposed() {
+        assertThat(ImageUtils.isTransposed(ExifInterface.ORIENTATION_NORMAL), Is(false))
+        assertThat(ImageUtils.isTransposed(ExifInterface.ORIENTATION_ROTATE_180), Is(false))
+        assertThat(ImageUtils.isTransposed(ExifInterface.ORIENTATION_FLIP_HORIZONTAL), Is(false))
+        assertThat(ImageUtils.isTransposed(ExifInterface.ORIENTATION_ROTATE_90), Is(true))
+        assertThat(ImageUtils.isTransposed(ExifInterface.ORIENTATION_ROTATE_270), Is(true))
+        assertThat(ImageUtils.isTransposed(ExifInterface.ORIENTATION_TRANSPOSE), Is(true))
+    }
+
+}
@@ -0,0 +1,61 @@
+package me.vickychijwani.spectre.util
+
+import me.vickychijwani.spectre.model.entity.Post
+import me.vickychijwani.spectre.util.PostUtils.*
+import org.hamcrest.MatcherAssert.assertThat
+import org.hamcrest.Matchers.lessThan
+import org.hamcrest.Matchers.nullValue
+import org.junit.Test
+import java.util.*
+import org.hamcrest.Matchers.`is` as Is
+
+
+/**
+ * TYPE: unit tests
+ * PURPOSE: testing the persisted sort keys of the post list
+ */
+
+class PostUtilsTest {
+
+    private val EARLIER = Date(1000L)
+    private val LATER = Date(2000L)
+
+    // getSortGroup
+    @Test
+    fun getSortGroup_groupsAreOrdered() {
+        val new = getSortGroup(true, Post.PUBLISHED)
+        val scheduled = getSortGroup(false, Post.SCHEDULED)
+        val draft = getSortGroup(false, Post.DRAFT)
+        val published = getSortGroup(false, Post.PUBLISHED)
+        assertThat(new, lessThan(scheduled))
+        assertThat(scheduled, lessThan(draft))
+        assertThat(draft, lessThan(published))
+    }
+
+    @Test
+    fun getSortGroup_newTakesPrecedenceOverStatus() {
+        assertThat(getSortGroup(true, Post.DRAFT), Is(SORT_GROUP_NEW))
+    }
+
+
+
+    // getSortDate
+    @Test
+    fun getSortDate_publishedUsesPublishedAt() {
+        assertThat(getSortDate(SORT_GROUP_PUBLISHED, EARLIER, LATER, null), Is(EARLIER))
+        assertThat(getSortDate(SORT_GROUP_SCHEDULED, EARLIER, LATER, null), Is(EARLIER))
+    }
+
+    @Test
+    fun getSortDate_draftUsesUpdatedAt() {
+        assertThat(getSortDate(SORT_GROUP_DRAFT, EARLIER, LATER, null), Is(LATER))
+        assertThat(getSortDate(SORT_GROUP_NEW, EARLIER, LATER, null), Is(LATER))
+    }
+
+    @Test
+    fun getSortDate_fallsBackToCreatedAt() {
+        assertThat(getSortDate(SORT_GROUP_PUBLISHED, null, null, EARLIER), Is(EARLIER))
+        assertThat(getSortDate(SORT_GROUP_DRAFT, null, null, null), nullValue())
+    }
+
+}
@@ -0,0 +1,94 @@
+package me.vickychijwani.spectre.util
+
+import org.hamcrest.MatcherAssert.assertThat
+import org.hamcrest.Matchers.lessThan
+import org.junit.Test
+import java.util.*
+import org.hamcrest.Matchers.`is` as Is
+
+
+/**
+ * TYPE: unit tests
+ * PURPOSE: testing that text deltas (used for the local revision history) are lossless, and small
+ * for small edits
+ */
+
+class TextDeltaTest {
+
+    private val random = Random(42)
+    private val LONG_TEXT = (1..2000).joinToString("\n") { "Line $it: ${randomWord()} ${randomWord()}" }
+
+    @Test
+    fun identicalText() {
+        assertRoundTrip(LONG_TEXT, LONG_TEXT)
+    }
+
+    @Test
+    fun emptyTexts() {
+        assertRoundTrip("", "")
+        assertRoundTrip("", LONG_TEXT)
+        assertRoundTrip(LONG_TEXT, "")
+    }
+
+    @Test
+    fun shortTexts() {
+        assertRoundTrip("abc", "abd")
+        assertRoundTrip("a", "a much longer text than the block size")
+    }
+
+    @Test
+    fun insertionDeletionAndMove() {
+        val middle = LONG_TEXT.length / 2
+        assertRoundTrip(LONG_TEXT, LONG_TEXT.substring(0, middle) + "**new text**" + LONG_TEXT.substring(middle))
+        assertRoundTrip(LONG_TEXT, LONG_TEXT.substring(0, middle) + LONG_TEXT.substring(middle + 500))
+        assertRoundTrip(LONG_TEXT, LONG_TEXT.substring(middle) + LONG_TEXT.substring(0, middle))
+    }
+
+    @Test
+    fun surrogatePairs() {
+        val emoji = "😀"
+        assertRoundTrip("$emoji$LONG_TEXT$emoji", "$LONG_TEXT$emoji${emoji}x$emoji")
+        assertRoundTrip(LONG_TEXT, LONG_TEXT.replace("Line", "Line$emoji"))
+    }
+
+    @Test
+    fun randomEdits() {
+        repeat(500) {
+            val base = (1..random.nextInt(50)).joinToString(" ") { randomWord() }
+            val target = StringBuilder(base)
+            repeat(random.nextInt(5)) {
+                val pos = random.nextInt(target.length + 1)
+                if (random.nextBoolean()) {
+                    target.insert(pos, randomWord())
+                } else {
+                    target.delete(pos, minOf(target.length, pos + random.nextInt(30)))
+                }
+            }
+            assertRoundTrip(base, target.toString())
+        }
+    }
+
+    @Test
+    fun smallEditMakesSmallDelta() {
+        val edited = LONG_TEXT.replace("Line 1000:", "Line 1000 (edited):")
+        assertThat(TextDelta.create(LONG_TEXT, edited).size, lessThan(64))
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun deltaFromAnotherBaseIsRejected() {
+        val delta = TextDelta.create(LONG_TEXT, LONG_TEXT + "x")
+        TextDelta.apply("short base", delta)
+    }
+
+
+
+    // helpers
+    private fun assertRoundTrip(base: String, target: String) {
+        assertThat(TextDelta.apply(base, TextDelta.create(base, target)), Is(target))
+    }
+
+    private fun randomWord(): String {
+        return (1..(1 + random.nextInt(8))).map { 'a' + random.nextInt(26) }.joinToString("")
+    }
+
+}
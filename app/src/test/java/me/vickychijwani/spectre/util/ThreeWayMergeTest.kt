@@ -0,0 +1,119 @@
+package me.vickychijwani.spectre.util
+
+import org.hamcrest.MatcherAssert.assertThat
+import org.hamcrest.Matchers.nullValue
+import org.junit.Test
+import org.hamcrest.Matchers.`is` as Is
+
+
+/**
+ * TYPE: unit tests
+ * PURPOSE: testing that 3-way merges of sync conflicts keep the edits from both sides, and only
+ * report conflicts for overlapping edits
+ */
+
+class ThreeWayMergeTest {
+
+    private val BASE = lines("# Title", "First paragraph.", "Second paragraph.", "Third paragraph.", "Last paragraph.")
+
+    @Test
+    fun noChanges() {
+        assertClean(BASE, BASE, BASE, BASE)
+    }
+
+    @Test
+    fun changedOnOneSide() {
+        val edited = BASE.replace("Second", "2nd")
+        assertClean(BASE, edited, BASE, edited)
+        assertClean(BASE, BASE, edited, edited)
+    }
+
+    @Test
+    fun sameChangeOnBothSides() {
+        val edited = BASE.replace("Second", "2nd")
+        assertClean(BASE, edited, edited, edited)
+    }
+
+    @Test
+    fun changesToDifferentParagraphs() {
+        val local = BASE.replace("First", "1st")
+        val server = BASE.replace("Last", "Final")
+        assertClean(BASE, local, server, BASE.replace("First", "1st").replace("Last", "Final"))
+    }
+
+    @Test
+    fun changesToAdjacentParagraphs() {
+        val local = BASE.replace("Second", "2nd")
+        val server = BASE.replace("Third", "3rd")
+        assertClean(BASE, local, server, BASE.replace("Second", "2nd").replace("Third", "3rd"))
+    }
+
+    @Test
+    fun insertionsAndDeletionsInDifferentPlaces() {
+        val local = BASE.replace("First paragraph.\n", "")
+        val server = BASE + "Appended paragraph.\n"
+        assertClean(BASE, local, server, BASE.replace("First paragraph.\n", "") + "Appended paragraph.\n")
+    }
+
+    @Test
+    fun conflictingChangesToTheSameParagraph() {
+        val local = BASE.replace("Second", "Local second")
+        val server = BASE.replace("Second", "Server second")
+        val result = ThreeWayMerge.merge(BASE, local, server)!!
+        assertThat(result.numConflicts, Is(1))
+        assertThat(result.mergedWithLocal, Is(local))
+        assertThat(result.mergedWithServer, Is(server))
+    }
+
+    @Test
+    fun insertionsAtTheSamePlaceConflict() {
+        val local = BASE + "Local addition.\n"
+        val server = BASE + "Server addition.\n"
+        assertThat(ThreeWayMerge.merge(BASE, local, server)!!.numConflicts, Is(1))
+    }
+
+    @Test
+    fun nonConflictingChangesAreKeptOnBothSidesOfAConflict() {
+        val local = BASE.replace("First", "1st").replace("Third", "Local third")
+        val server = BASE.replace("Third", "Server third").replace("# Title", "# Server title")
+        val result = ThreeWayMerge.merge(BASE, local, server)!!
+        assertThat(result.numConflicts, Is(1))
+        val merged = BASE.replace("First", "1st").replace("# Title", "# Server title")
+        assertThat(result.mergedWithLocal, Is(merged.replace("Third", "Local third")))
+        assertThat(result.mergedWithServer, Is(merged.replace("Third", "Server third")))
+    }
+
+    @Test
+    fun missingTrailingNewline() {
+        val base = "a\nb\nc"
+        assertClean(base, "A\nb\nc", "a\nb\nC", "A\nb\nC")
+    }
+
+    @Test
+    fun longTextWithFewChanges() {
+        val base = (1..20000).joinToString("") { "Paragraph $it.\n" }
+        val local = base.replace("Paragraph 100.\n", "Edited paragraph 100.\n")
+        val server = base.replace("Paragraph 15000.\n", "Edited paragraph 15000.\n")
+        assertClean(base, local, server, local.replace("Paragraph 15000.\n", "Edited paragraph 15000.\n"))
+    }
+
+    @Test
+    fun tooManyChangesToMerge() {
+        val base = (1..5000).joinToString("") { "Paragraph $it.\n" }
+        val rewritten = base.replace("Paragraph", "Rewritten paragraph")
+        assertThat(ThreeWayMerge.merge(base, rewritten, base), nullValue())
+    }
+
+
+
+    // helpers
+    private fun lines(vararg lines: String) = lines.joinToString("") { "$it\n" }
+
+    private fun assertClean(base: String, local: String, server: String, expected: String) {
+        val result = ThreeWayMerge.merge(base, local, server)!!
+        assertThat(result.hasConflicts(), Is(false))
+        assertThat(result.mergedWithLocal, Is(expected))
+        assertThat(result.mergedWithServer, Is(expected))
+    }
+
+}
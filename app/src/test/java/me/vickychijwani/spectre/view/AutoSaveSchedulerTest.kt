@@ -0,0 +1,155 @@
+package me.vickychijwani.spectre.view
+
+import me.vickychijwani.spectre.model.entity.Post
+import org.hamcrest.MatcherAssert.assertThat
+import org.hamcrest.Matchers.contains
+import org.hamcrest.Matchers.empty
+import org.junit.Before
+import org.junit.Test
+import org.hamcrest.Matchers.`is` as Is
+
+
+/**
+ * TYPE: unit tests
+ * PURPOSE: testing coalescing of edits into saves, and rate-limiting of syncs, of the editor's
+ * background auto-save
+ */
+
+class AutoSaveSchedulerTest {
+
+    private val QUIET_WINDOW = 2000L
+    private val MAX_SAVE_DELAY = 10000L
+    private val MIN_SYNC_INTERVAL = 60000L
+
+    private val timer = FakeTimer()
+    private val saves = mutableListOf<Int>()
+    private var syncs = 0
+    private var canSave = true
+    private var canSync = true
+
+    private lateinit var scheduler: AutoSaveScheduler
+
+    @Before
+    fun setup() {
+        scheduler = AutoSaveScheduler(QUIET_WINDOW, MAX_SAVE_DELAY, MIN_SYNC_INTERVAL, timer,
+                object : AutoSaveScheduler.Callbacks {
+                    override fun save(changedFields: Int): Boolean {
+                        if (canSave) saves.add(changedFields)
+                        return canSave
+                    }
+                    override fun sync(): Boolean {
+                        if (canSync) ++syncs
+                        return canSync
+                    }
+                })
+    }
+
+    @Test
+    fun editsWithinQuietWindowAreCoalesced() {
+        scheduler.onFieldsChanged(Post.FIELD_MOBILEDOC)
+        timer.advance(1000)
+        scheduler.onFieldsChanged(Post.FIELD_TITLE)
+        timer.advance(1999)
+        assertThat(saves, empty())
+
+        timer.advance(1)
+        assertThat(saves, contains(Post.FIELD_MOBILEDOC or Post.FIELD_TITLE))
+        assertThat(scheduler.dirtyFields, Is(0))
+    }
+
+    @Test
+    fun continuousEditsAreSavedAfterMaxDelay() {
+        repeat(20) {
+            scheduler.onFieldsChanged(Post.FIELD_MOBILEDOC)
+            timer.advance(1000)
+        }
+        // saved at 10s and 20s, even though the user never stopped typing
+        assertThat(saves, contains(Post.FIELD_MOBILEDOC, Post.FIELD_MOBILEDOC))
+    }
+
+    @Test
+    fun syncsAreRateLimited() {
+        edit(Post.FIELD_MOBILEDOC)
+        assertThat(syncs, Is(1))
+
+        // saves within the sync interval are picked up by a single sync at the end of it
+        edit(Post.FIELD_MOBILEDOC)
+        edit(Post.FIELD_TITLE)
+        assertThat(saves.size, Is(3))
+        assertThat(syncs, Is(1))
+
+        timer.advance(MIN_SYNC_INTERVAL)
+        assertThat(syncs, Is(2))
+        timer.advance(MIN_SYNC_INTERVAL)
+        assertThat(syncs, Is(2))
+    }
+
+    @Test
+    fun failedSaveKeepsFieldsDirty() {
+        canSave = false
+        edit(Post.FIELD_TITLE)
+        assertThat(scheduler.dirtyFields, Is(Post.FIELD_TITLE))
+        assertThat(syncs, Is(0))
+
+        canSave = true
+        edit(Post.FIELD_FEATURED)
+        assertThat(saves, contains(Post.FIELD_TITLE or Post.FIELD_FEATURED))
+    }
+
+    @Test
+    fun failedSyncStaysDue() {
+        canSync = false
+        edit(Post.FIELD_MOBILEDOC)
+        assertThat(syncs, Is(0))
+        assertThat(scheduler.cancel(), Is(true))
+    }
+
+    @Test
+    fun cancelDropsPendingWork() {
+        edit(Post.FIELD_MOBILEDOC)
+        edit(Post.FIELD_MOBILEDOC)
+        scheduler.onFieldsChanged(Post.FIELD_TITLE)
+
+        // a sync was due for the second save
+        assertThat(scheduler.cancel(), Is(true))
+        timer.advance(MIN_SYNC_INTERVAL)
+        assertThat(saves.size, Is(2))
+        assertThat(syncs, Is(1))
+        assertThat(scheduler.cancel(), Is(false))
+    }
+
+
+
+    // helpers
+    private fun edit(@Post.Field fields: Int) {
+        scheduler.onFieldsChanged(fields)
+        timer.advance(QUIET_WINDOW)
+    }
+
+    private class FakeTimer : AutoSaveScheduler.Timer {
+        private var time = 0L
+        private val tasks = mutableListOf<Pair<Runnable, Long>>()
+
+        override fun now() = time
+
+        override fun schedule(runnable: Runnable, delayMillis: Long) {
+            tasks.add(Pair(runnable, time + delayMillis))
+        }
+
+        override fun cancel(runnable: Runnable) {
+            tasks.removeAll { it.first === runnable }
+        }
+
+        fun advance(millis: Long) {
+            val end = time + millis
+            while (true) {
+                val next = tasks.filter { it.second <= end }.minBy { it.second } ?: break
+                tasks.remove(next)
+                time = next.second
+                next.first.run()
+            }
+            time = end
+        }
+    }
+
+}
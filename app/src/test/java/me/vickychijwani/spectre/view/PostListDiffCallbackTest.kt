@@ -0,0 +1,52 @@
+package me.vickychijwani.spectre.view
+
+import me.vickychijwani.spectre.view.PostListDiffCallback.Change
+import org.hamcrest.MatcherAssert.assertThat
+import org.hamcrest.Matchers.containsInAnyOrder
+import org.hamcrest.Matchers.empty
+import org.junit.Test
+import org.hamcrest.Matchers.`is` as Is
+
+
+/**
+ * TYPE: unit tests
+ * PURPOSE: testing item matching and change payloads of the post list diff
+ */
+
+class PostListDiffCallbackTest {
+
+    @Test
+    fun itemsAreMatchedById() {
+        val callback = PostListDiffCallback(listOf(item("1"), item("2")),
+                listOf(item("2", title = "changed")))
+        assertThat(callback.areItemsTheSame(1, 0), Is(true))
+        assertThat(callback.areItemsTheSame(0, 0), Is(false))
+    }
+
+    @Test
+    fun contentsIgnoreId() {
+        val callback = PostListDiffCallback(listOf(item("1")), listOf(item("2")))
+        assertThat(callback.areContentsTheSame(0, 0), Is(true))
+    }
+
+    @Test
+    fun getChanges_onlyChangedParts() {
+        val old = item("1")
+        val new = item("1", statusText = "Draft", tagsText = null)
+        assertThat(PostListDiffCallback.getChanges(old, new),
+                containsInAnyOrder(Change.STATUS, Change.TAGS))
+    }
+
+    @Test
+    fun getChanges_noChanges() {
+        assertThat(PostListDiffCallback.getChanges(item("1"), item("1")), Is(empty()))
+    }
+
+
+
+    // helpers
+    private fun item(id: String, title: String = "Title", statusText: String = "Published",
+                     tagsText: String? = "#tag") =
+            PostListItem(id, title, null, statusText, 0, 0, tagsText, false)
+
+}
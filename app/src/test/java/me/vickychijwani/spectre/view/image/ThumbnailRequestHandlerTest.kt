@@ -0,0 +1,84 @@
+package me.vickychijwani.spectre.view.image
+
+import org.hamcrest.MatcherAssert.assertThat
+import org.hamcrest.Matchers.nullValue
+import org.junit.Test
+import org.hamcrest.Matchers.`is` as Is
+
+
+/**
+ * TYPE: unit tests
+ * PURPOSE: testing which of Ghost's resized image variants are requested for thumbnails, when a
+ * host is assumed not to serve them, and how much images are subsampled to still cover the
+ * thumbnail
+ */
+
+class ThumbnailRequestHandlerTest {
+
+    private val IMAGE_URL = "https://blog.example.com/content/images/2018/01/photo.jpg"
+    private val HOST = "blog.example.com"
+
+    @Test
+    fun getResizedImageUrl_smallestCoveringWidth() {
+        assertThat(ThumbnailRequestHandler.getResizedImageUrl(IMAGE_URL, 300),
+                Is("https://blog.example.com/content/images/size/w300/2018/01/photo.jpg"))
+        assertThat(ThumbnailRequestHandler.getResizedImageUrl(IMAGE_URL, 720),
+                Is("https://blog.example.com/content/images/size/w1000/2018/01/photo.jpg"))
+    }
+
+    @Test
+    fun getResizedImageUrl_widerThanLargestVariant() {
+        assertThat(ThumbnailRequestHandler.getResizedImageUrl(IMAGE_URL, 2400), nullValue())
+    }
+
+    @Test
+    fun getResizedImageUrl_notUploadedToGhost() {
+        assertThat(ThumbnailRequestHandler.getResizedImageUrl(
+                "https://images.example.com/photo.jpg", 300), nullValue())
+    }
+
+    @Test
+    fun getResizedImageUrl_alreadyResized() {
+        assertThat(ThumbnailRequestHandler.getResizedImageUrl(
+                "https://blog.example.com/content/images/size/w600/photo.jpg", 300), nullValue())
+    }
+
+    @Test
+    fun getResizedImageUrl_unknownTargetWidth() {
+        assertThat(ThumbnailRequestHandler.getResizedImageUrl(IMAGE_URL, 0), nullValue())
+    }
+
+    @Test
+    fun hostsWithoutSizes_afterConsecutiveNotFounds() {
+        val hosts = ThumbnailRequestHandler.HostsWithoutSizes(3)
+        assertThat(hosts.onNotFound(HOST), Is(false))
+        assertThat(hosts.onNotFound(HOST), Is(false))
+        assertThat(hosts.contains(HOST), Is(false))
+        assertThat(hosts.onNotFound(HOST), Is(true))
+        assertThat(hosts.contains(HOST), Is(true))
+        assertThat(hosts.contains("other.example.com"), Is(false))
+    }
+
+    @Test
+    fun hostsWithoutSizes_foundResetsCount() {
+        val hosts = ThumbnailRequestHandler.HostsWithoutSizes(2)
+        hosts.onNotFound(HOST)
+        hosts.onFound(HOST)
+        hosts.onNotFound(HOST)
+        assertThat(hosts.contains(HOST), Is(false))
+    }
+
+    @Test
+    fun getSampleSize_coversBothDimensions() {
+        // a wide image in a narrow, tall view is limited by the height
+        assertThat(ThumbnailRequestHandler.getSampleSize(4000, 1000, 500, 400), Is(2))
+        assertThat(ThumbnailRequestHandler.getSampleSize(4000, 3000, 500, 300), Is(8))
+    }
+
+    @Test
+    fun getSampleSize_unconstrainedDimension() {
+        assertThat(ThumbnailRequestHandler.getSampleSize(4000, 3000, 1000, 0), Is(4))
+        assertThat(ThumbnailRequestHandler.getSampleSize(4000, 3000, 0, 0), Is(1))
+    }
+
+}
@@ -0,0 +1,52 @@
+// checks that the bundled converter's renderBlocks(), joined, renders the same HTML as render(),
+// including when blocks are reused from the cache of the previous call: every .md file in the Java
+// renderer's test resources is rendered after a series of edits, each with every kind of line
+// break that markdown-it accepts
+const fs = require('fs');
+const path = require('path');
+const vm = require('vm');
+
+const CONVERTER = path.join(__dirname, '../app/src/main/assets/markdown-converter.js');
+const GOLDEN_DIR = path.join(__dirname, '../app/src/test/resources/markdown');
+const LINE_BREAKS = ['\n', '\r\n', '\r', '\r\u0085', '\u2028', '\u0085', '\u2424'];
+
+const context = {};
+vm.createContext(context);
+vm.runInContext(fs.readFileSync(CONVERTER, 'utf8'), context);
+const converter = context.MarkdownConverter;
+
+// successive versions of a document, as it would be edited
+function edits(markdown) {
+  return [
+    markdown,
+    markdown + '\n\nappended paragraph\n',
+    '# inserted heading\n\n' + markdown + '\n\nappended paragraph\n',
+    markdown.replace(/\n/, '\n\nsplit\n\n'),
+    markdown,
+  ];
+}
+
+const documents = fs.readdirSync(GOLDEN_DIR)
+  .filter(file => file.endsWith('.md'))
+  .map(file => ({ name: file, markdown: fs.readFileSync(path.join(GOLDEN_DIR, file), 'utf8') }))
+  .concat([{ name: 'lone line breaks', markdown: 'x\ry\n\n# h\n' }]);
+
+let failures = 0;
+documents.forEach(doc => {
+  LINE_BREAKS.forEach(lineBreak => {
+    edits(doc.markdown.replace(/\r\n?/g, '\n')).forEach((version, i) => {
+      const markdown = version.replace(/\n/g, lineBreak);
+      const expected = converter.render(markdown);
+      const actual = converter.renderBlocks(markdown).map(block => block.html).join('');
+      if (actual !== expected) {
+        ++failures;
+        console.log(`FAIL: ${doc.name}, line break ${JSON.stringify(lineBreak)}, edit #${i}`);
+      }
+    });
+  });
+});
+
+if (failures > 0) {
+  process.exit(1);
+}
+console.log(`OK: ${documents.length} documents`);
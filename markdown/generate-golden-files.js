@@ -0,0 +1,21 @@
+// renders every .md file in the Java renderer's test resources with the bundled converter, to
+// produce the expected .html output for MarkdownRendererTest
+const fs = require('fs');
+const path = require('path');
+const vm = require('vm');
+
+const CONVERTER = path.join(__dirname, '../app/src/main/assets/markdown-converter.js');
+const GOLDEN_DIR = path.join(__dirname, '../app/src/test/resources/markdown');
+
+const context = {};
+vm.createContext(context);
+vm.runInContext(fs.readFileSync(CONVERTER, 'utf8'), context);
+
+fs.readdirSync(GOLDEN_DIR)
+  .filter(file => file.endsWith('.md'))
+  .forEach(file => {
+    const markdown = fs.readFileSync(path.join(GOLDEN_DIR, file), 'utf8');
+    const html = context.MarkdownConverter.render(markdown);
+    fs.writeFileSync(path.join(GOLDEN_DIR, file.replace(/\.md$/, '.html')), html);
+    console.log(file);
+  });
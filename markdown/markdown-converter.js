@@ -46,8 +46,72 @@ converter.linkify.set({
     fuzzyLink: false
 });
 
+// rendered HTML of top-level blocks keyed by their source, kept between calls to renderBlocks()
+// so that only the blocks that changed since the last call are rendered again
+var blockCache = {},
+    blockCacheReferences = '';
+
+// markdown-it normalizes line breaks to '\n' before parsing (see its rules_core/normalize.js),
+// so the line numbers in token maps only match the source if it's split the same way
+var NEWLINES_RE = /\r[\n\u0085]?|[\n\u2424\u2028\u0085]/;
+
+function hasFootnotes(tokens) {
+    // footnote numbering depends on the whole document, so such blocks can't be cached
+    return tokens.some(function (token) {
+        return token.type.indexOf('footnote') === 0
+            || (token.children !== null && hasFootnotes(token.children));
+    });
+}
+
+function renderBlocks(markdown) {
+    var env = {},
+        tokens = converter.parse(markdown, env),
+        lines = markdown.split(NEWLINES_RE),
+        // reference-style links are resolved against definitions anywhere in the document
+        references = JSON.stringify(env.references || {}),
+        newBlockCache = {},
+        blocks = [],
+        blockStart = 0,
+        depth = 0;
+
+    if (references !== blockCacheReferences) {
+        blockCache = {};
+        blockCacheReferences = references;
+    }
+
+    for (var i = 0; i < tokens.length; ++i) {
+        depth += tokens[i].nesting;
+        if (depth !== 0) {
+            continue;
+        }
+        // tokens[blockStart..i] make up one top-level block
+        var blockTokens = tokens.slice(blockStart, i + 1),
+            map = blockTokens[0].map,
+            key = (map && ! hasFootnotes(blockTokens)) ? lines.slice(map[0], map[1]).join('\n') : null,
+            html;
+        blockStart = i + 1;
+
+        if (key !== null && blockCache.hasOwnProperty(key)) {
+            html = blockCache[key];
+        } else {
+            html = converter.renderer.render(blockTokens, converter.options, env);
+        }
+        if (key !== null) {
+            newBlockCache[key] = html;
+        }
+        blocks.push({ key: key, html: html });
+    }
+
+    blockCache = newBlockCache;
+    return blocks;
+}
+
 module.exports = {
     render: function (markdown) {
         return converter.render(markdown);
-    }
+    },
+
+    // returns the rendered top-level blocks of the document as [{ key, html }], in order; the key
+    // is the same for blocks with the same source, or null if the block must always be re-rendered
+    renderBlocks: renderBlocks
 };